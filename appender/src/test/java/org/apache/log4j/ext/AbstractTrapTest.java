@@ -0,0 +1,164 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: AbstractTrapTest<br>
+ * Description: The base of the tests that send traps through an appender to a {@link TrapReceiver}.<p>
+ * Each test gets a started receiver, and a logger of its own with no other appenders.  The appenders and receivers
+ * made by a test are closed after it.<br>
+ * @version 1.0<br>
+ */
+public abstract class AbstractTrapTest {
+
+    static final String BER_SENDER = "org.apache.log4j.ext.BerSNMPTrapSender";
+    static final String USM_SENDER = "org.apache.log4j.ext.UsmSNMPTrapSender";
+    static final String JOE_SENDER = "org.apache.log4j.ext.JoeSNMPTrapSender";
+    static final String MESSAGE_OID = "1.3.6.1.2.1.2.0.0.0.0";
+    static final long TIMEOUT_MILLIS = 5000;
+
+    private static int loggerCount;
+
+    protected TrapReceiver receiver;
+    protected Logger logger;
+    private final List appenders = new ArrayList();
+    private final List receivers = new ArrayList();
+
+    @Before
+    public void startReceiver() throws IOException {
+        receiver = newReceiver();
+        synchronized (AbstractTrapTest.class) {
+            logger = Logger.getLogger(getClass().getName() + '.' + loggerCount++);
+        }
+        logger.setAdditivity(false);
+    }
+
+    @After
+    public void closeAll() {
+        logger.removeAllAppenders();
+        for (int i = 0; i < appenders.size(); i++) {
+            ((SNMPTrapAppender) appenders.get(i)).close();
+        }
+        for (int i = 0; i < receivers.size(); i++) {
+            ((TrapReceiver) receivers.get(i)).close();
+        }
+    }
+
+    /**
+     * @return another started receiver, closed after the test
+     */
+    protected TrapReceiver newReceiver() throws IOException {
+        final TrapReceiver started = new TrapReceiver();
+        started.start();
+        receivers.add(started);
+        return started;
+    }
+
+    /**
+     * Makes an appender that sends SNMPv2c traps to the receiver, with the message as the only VarBind.  It is not
+     * activated, nor added to the logger.
+     *
+     * @param implementationClassName the sender
+     * @return the appender, closed after the test
+     */
+    protected SNMPTrapAppender newAppender(final String implementationClassName) {
+        final SNMPTrapAppender appender = new SNMPTrapAppender(new PatternLayout("%m"));
+        appender.setName(getClass().getName());
+        appender.setImplementationClassName(implementationClassName);
+        appender.setManagementHosts(receiver.getManagementHost() + "/2");
+        appender.setJmxEnabled(false);
+        appenders.add(appender);
+        return appender;
+    }
+
+    /**
+     * Activates the appender, and adds it to the logger.
+     */
+    protected void attach(final SNMPTrapAppender appender) {
+        appender.activateOptions();
+        logger.addAppender(appender);
+    }
+
+    /**
+     * Waits for the receiver to have received the given number of traps, and fails if it does not in time.
+     *
+     * @return the traps received so far
+     */
+    protected static List await(final TrapReceiver trapReceiver, final int count) throws InterruptedException {
+        assertTrue("timed out waiting for " + count + " traps, received " + trapReceiver.getReceivedCount(),
+                   trapReceiver.awaitReceivedCount(count, TIMEOUT_MILLIS));
+        return trapReceiver.getTraps();
+    }
+
+    /**
+     * @return the values of the message VarBinds of the traps, in the order received
+     */
+    protected static List messages(final List traps) {
+        final List values = new ArrayList();
+        for (int i = 0; i < traps.size(); i++) {
+            final ReceivedTrap trap = (ReceivedTrap) traps.get(i);
+            for (int j = 0; j < trap.getVarBindCount(); j++) {
+                if (MESSAGE_OID.equals(trap.getOID(j))) values.add(trap.getValue(j));
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: InformTrackerTest<br>
+ * Description: Sends SNMPv2c informs, which are retransmitted until the receiver acknowledges them, or until the
+ * retries run out.<br>
+ * @version 1.0<br>
+ */
+public class InformTrackerTest extends AbstractTrapTest {
+
+    @Test
+    public void sendsInformsUntilAcknowledged() throws InterruptedException {
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setNotificationType("inform");
+        appender.setInformTimeoutMillis(100);
+        attach(appender);
+        for (int i = 0; i < 10; i++) {
+            logger.error("inform " + i);
+        }
+        final List traps = await(receiver, 10);
+        assertTrue(((ReceivedTrap) traps.get(0)).isInform());
+        final InformTracker tracker = appender.getInformTracker();
+        awaitOutstanding(tracker);
+        assertEquals(10, tracker.getAcknowledgedCount());
+        assertEquals(0, tracker.getFailedCount());
+    }
+
+    @Test
+    public void retransmitsUnacknowledgedInforms() throws InterruptedException {
+        receiver.setRespondToInforms(false);
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setNotificationType("inform");
+        appender.setInformTimeoutMillis(50);
+        appender.setInformRetries(2);
+        attach(appender);
+        logger.error("never acknowledged");
+        await(receiver, 3);
+        final InformTracker tracker = appender.getInformTracker();
+        awaitOutstanding(tracker);
+        assertEquals(0, tracker.getAcknowledgedCount());
+        assertEquals(2, tracker.getRetransmittedCount());
+        assertEquals(1, tracker.getFailedCount());
+        assertEquals(3, receiver.getReceivedCount());
+    }
+
+    private static void awaitOutstanding(final InformTracker tracker) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (0 < tracker.getOutstandingCount() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tracker.getOutstandingCount());
+    }
+}
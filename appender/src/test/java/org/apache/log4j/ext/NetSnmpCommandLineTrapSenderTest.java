@@ -0,0 +1,144 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: NetSnmpCommandLineTrapSenderTest<br>
+ * Description: Runs a stand-in for snmptrap through the {@link NetSnmpCommandLineTrapSender}, and checks what is
+ * recorded in the appender's {@link TrapMetrics}.  It needs a POSIX shell.<br>
+ * @version 1.0<br>
+ */
+public class NetSnmpCommandLineTrapSenderTest extends AbstractTrapTest {
+
+    private static final String SENDER = "org.apache.log4j.ext.NetSnmpCommandLineTrapSender";
+    private static final String BIN_PATH_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.binPath";
+    private static final String TIMEOUT_MILLIS_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.timeoutMillis";
+
+    private File binDirectory;
+
+    @Before
+    public void createBinDirectory() throws IOException {
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        binDirectory = File.createTempFile("snmptrap", "");
+        binDirectory.delete();
+        binDirectory.mkdir();
+        System.setProperty(BIN_PATH_PROPERTY, binDirectory.getPath() + File.separator);
+    }
+
+    @After
+    public void deleteBinDirectory() {
+        System.clearProperty(BIN_PATH_PROPERTY);
+        System.clearProperty(TIMEOUT_MILLIS_PROPERTY);
+        if (null == binDirectory) return;
+        final File[] files = binDirectory.listFiles();
+        for (int i = 0; null != files && i < files.length; i++) {
+            files[i].delete();
+        }
+        binDirectory.delete();
+    }
+
+    @Test
+    public void recordsTheForkLatency() throws Exception {
+        writeSnmpTrap("exit 0");
+        final SNMPTrapAppender appender = newAppender(SENDER);
+        attach(appender);
+        logger.error("forked");
+        final TrapMetrics metrics = appender.getMetrics();
+        awaitCount(metrics, 1);
+        assertEquals(1, metrics.getForkLatency().getCount());
+        assertTrue(0 < metrics.getForkLatency().getMaxMicros());
+        assertEquals(0, metrics.getProcessTimeouts());
+    }
+
+    @Test
+    public void killsProcessesThatDoNotExit() throws Exception {
+        writeSnmpTrap("sleep 10");
+        System.setProperty(TIMEOUT_MILLIS_PROPERTY, "100");
+        final SNMPTrapAppender appender = newAppender(SENDER);
+        attach(appender);
+        logger.error("hangs");
+        final TrapMetrics metrics = appender.getMetrics();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (0 == metrics.getProcessTimeouts() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, metrics.getProcessTimeouts());
+    }
+
+    private void writeSnmpTrap(final String command) throws IOException {
+        final File script = new File(binDirectory, "snmptrap");
+        final FileWriter writer = new FileWriter(script);
+        try {
+            writer.write("#!/bin/sh\n" + command + "\n");
+        } finally {
+            writer.close();
+        }
+        script.setExecutable(true);
+    }
+
+    private static void awaitCount(final TrapMetrics metrics, final long count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (count > metrics.getForkLatency().getCount() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
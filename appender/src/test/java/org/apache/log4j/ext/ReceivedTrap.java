@@ -0,0 +1,206 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Title: ReceivedTrap<br>
+ * Description: A trap or inform decoded by a {@link TrapReceiver}.<p>
+ * The VarBind values are rendered as strings: an OCTET STRING as UTF-8, an OBJECT IDENTIFIER in dotted form, an
+ * IpAddress as a dotted quad, the numeric types in decimal, and NULL and the exceptions as an empty string.  For an
+ * SNMPv2c or SNMPv3 trap, the sysUpTime.0 and snmpTrapOID.0 VarBinds are taken out of the list, into the time
+ * stamp and the trap OID.<br>
+ * @version 1.0<br>
+ */
+public final class ReceivedTrap {
+
+    private final InetSocketAddress source;
+    private final long receivedMillis;
+    private final int version;
+    private final String community;
+    private final int pduType;
+    private final String enterpriseOID;
+    private final int genericTrapType;
+    private final int specificTrapType;
+    private final long timeTicks;
+    private final String[] oids;
+    private final String[] values;
+
+    ReceivedTrap(final InetSocketAddress sourceValue,
+                 final long receivedMillisValue,
+                 final int versionValue,
+                 final String communityValue,
+                 final int pduTypeValue,
+                 final String enterpriseOIDValue,
+                 final int genericTrapTypeValue,
+                 final int specificTrapTypeValue,
+                 final long timeTicksValue,
+                 final String[] oidsValue,
+                 final String[] valuesValue) {
+        source = sourceValue;
+        receivedMillis = receivedMillisValue;
+        version = versionValue;
+        community = communityValue;
+        pduType = pduTypeValue;
+        enterpriseOID = enterpriseOIDValue;
+        genericTrapType = genericTrapTypeValue;
+        specificTrapType = specificTrapTypeValue;
+        timeTicks = timeTicksValue;
+        oids = oidsValue;
+        values = valuesValue;
+    }
+
+    /**
+     * @return the address the trap came from
+     */
+    public InetSocketAddress getSource() {
+        return source;
+    }
+
+    /**
+     * @return when the trap was received, in milliseconds since the epoch
+     */
+    public long getReceivedMillis() {
+        return receivedMillis;
+    }
+
+    /**
+     * @return 1 for SNMPv1, 2 for SNMPv2c, 3 for SNMPv3
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the community, or the security name of an SNMPv3 trap
+     */
+    public String getCommunity() {
+        return community;
+    }
+
+    /**
+     * @return true if it was an InformRequest-PDU
+     */
+    public boolean isInform() {
+        return BerEncoder.INFORM_PDU == pduType;
+    }
+
+    /**
+     * @return the enterprise OID of an SNMPv1 trap, or the snmpTrapOID.0 of an SNMPv2c or SNMPv3 trap
+     */
+    public String getEnterpriseOID() {
+        return enterpriseOID;
+    }
+
+    /**
+     * @return the generic trap type of an SNMPv1 trap, or -1
+     */
+    public int getGenericTrapType() {
+        return genericTrapType;
+    }
+
+    /**
+     * @return the specific trap type of an SNMPv1 trap, or -1
+     */
+    public int getSpecificTrapType() {
+        return specificTrapType;
+    }
+
+    /**
+     * @return the time stamp, in hundredths of a second
+     */
+    public long getTimeTicks() {
+        return timeTicks;
+    }
+
+    /**
+     * @return the number of VarBinds
+     */
+    public int getVarBindCount() {
+        return oids.length;
+    }
+
+    /**
+     * @param index of the VarBind
+     * @return its name
+     */
+    public String getOID(final int index) {
+        return oids[index];
+    }
+
+    /**
+     * @param index of the VarBind
+     * @return its value
+     */
+    public String getValue(final int index) {
+        return values[index];
+    }
+
+    /**
+     * @param oid the name of a VarBind
+     * @return the value of the first VarBind of that name, or null if there is none
+     */
+    public String getValue(final String oid) {
+        for (int i = 0; i < oids.length; i++) {
+            if (oids[i].equals(oid)) return values[i];
+        }
+        return null;
+    }
+
+    public String toString() {
+        final StringBuffer buffer = new StringBuffer().append(isInform() ? "INFORM v" : "TRAP v").append(version)
+                .append(' ').append(community).append(' ').append(enterpriseOID);
+        for (int i = 0; i < oids.length; i++) {
+            buffer.append(" | ").append(oids[i]).append('=').append(values[i]);
+        }
+        return buffer.toString();
+    }
+}
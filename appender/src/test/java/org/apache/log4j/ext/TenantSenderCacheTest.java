@@ -0,0 +1,119 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.MDC;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Title: TenantSenderCacheTest<br>
+ * Description: Routes the traps of each tenant, chosen by an MDC key, to the tenant's own destinations, and the
+ * others to the ManagementHosts.<br>
+ * @version 1.0<br>
+ */
+public class TenantSenderCacheTest extends AbstractTrapTest {
+
+    @After
+    public void removeTenant() {
+        MDC.remove("tenant");
+    }
+
+    @Test
+    public void routesEachTenantToItsDestinations() throws Exception {
+        final TrapReceiver acme = newReceiver();
+        final TrapReceiver globex = newReceiver();
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setTenantMDCKey("tenant");
+        appender.setTenantDestinations("acme=" + acme.getManagementHost() + "/2/acmeC; globex="
+                                       + globex.getManagementHost() + "/1/globexC");
+        appender.setTenantCacheSize(1);
+        attach(appender);
+        logger.error("no tenant");
+        MDC.put("tenant", "acme");
+        logger.error("acme 1");
+        MDC.put("tenant", "globex");
+        logger.error("globex 1");
+        MDC.put("tenant", "unknown");
+        logger.error("unknown tenant");
+        MDC.put("tenant", "acme");
+        logger.error("acme 2");
+        assertEquals(Arrays.asList(new String[]{"no tenant", "unknown tenant"}), messages(await(receiver, 2)));
+        final List acmeTraps = await(acme, 2);
+        assertEquals(Arrays.asList(new String[]{"acme 1", "acme 2"}), messages(acmeTraps));
+        assertEquals("acmeC", ((ReceivedTrap) acmeTraps.get(0)).getCommunity());
+        final List globexTraps = await(globex, 1);
+        assertEquals(Arrays.asList(new String[]{"globex 1"}), messages(globexTraps));
+        assertEquals(1, ((ReceivedTrap) globexTraps.get(0)).getVersion());
+        assertEquals(1, appender.getTenantSenders().size());
+        assertEquals(3, appender.getTenantSenders().getCreatedCount());
+    }
+
+    @Test
+    public void routesTenantsWithTheSendExecutor() throws Exception {
+        final TrapReceiver acme = newReceiver();
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setTenantMDCKey("tenant");
+        appender.setTenantDestinations("acme=" + acme.getManagementHost() + "/2");
+        appender.setSendExecutor("platform");
+        attach(appender);
+        MDC.put("tenant", "acme");
+        for (int i = 0; i < 20; i++) {
+            logger.error("acme " + i);
+        }
+        assertEquals(20, messages(await(acme, 20)).size());
+        assertEquals(0, receiver.getReceivedCount());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: TrapBatcherTest<br>
+ * Description: Batches logging events into multi-VarBind traps, and numbers them so that the receiver can tell if
+ * any went missing.<br>
+ * @version 1.0<br>
+ */
+public class TrapBatcherTest extends AbstractTrapTest {
+
+    private static final String SEQUENCE_OID = "1.3.6.1.4.1.24.12.10.22.65";
+
+    @Test
+    public void sendsTheEventsOfAWindowInOneTrap() throws InterruptedException {
+        receiver.setSequenceOID(SEQUENCE_OID);
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setBatchWindowMillis(200);
+        appender.setBatchSequenceOID(SEQUENCE_OID);
+        attach(appender);
+        logger.error("one");
+        logger.error("two");
+        logger.error("three");
+        final List traps = await(receiver, 1);
+        assertEquals(1, traps.size());
+        assertEquals(Arrays.asList(new String[]{"one", "two", "three"}), messages(traps));
+        assertEquals(0, receiver.getLostCount());
+    }
+
+    @Test
+    public void countsTheValuesInUtf8Bytes() {
+        final int ascii = TrapBatcher.estimateSize(SEQUENCE_OID, "abcd");
+        assertEquals(ascii + 4, TrapBatcher.estimateSize(SEQUENCE_OID, "\u00e4\u00f6\u00fc\u00df"));
+        assertEquals(ascii + 8, TrapBatcher.estimateSize(SEQUENCE_OID, "\u65e5\u672c\u8a9e\u6587"));
+    }
+
+    @Test
+    public void sendsAFullBatchAtOnce() throws InterruptedException {
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setBatchWindowMillis(60000);
+        appender.setBatchMaxBytes(100);
+        appender.setBatchSequenceOID(SEQUENCE_OID);
+        attach(appender);
+        for (int i = 0; i < 20; i++) {
+            logger.error("a message of some length, number " + i);
+        }
+        final List full = await(receiver, 2);
+        assertTrue(messages(full.subList(0, 1)).size() < 20);
+        appender.close();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (20 > messages(receiver.getTraps()).size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, messages(receiver.getTraps()).size());
+    }
+
+    @Test
+    public void flushesWhenClosed() throws InterruptedException {
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setBatchWindowMillis(60000);
+        appender.setBatchSequenceOID(SEQUENCE_OID);
+        attach(appender);
+        logger.error("pending");
+        appender.close();
+        assertEquals(Arrays.asList(new String[]{"pending"}), messages(await(receiver, 1)));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Title: TrapDeduplicatorTest<br>
+ * Description: Sends the first of a run of repeated events at once, and the number of repeats when the window
+ * closes.<br>
+ * @version 1.0<br>
+ */
+public class TrapDeduplicatorTest extends AbstractTrapTest {
+
+    private static final String COUNT_OID = "1.3.6.1.4.1.24.12.10.22.67";
+
+    @Test
+    public void countsTheRepeatsWithinTheWindow() throws InterruptedException {
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setDedupWindowMillis(200);
+        appender.setDedupCountOID(COUNT_OID);
+        attach(appender);
+        for (int i = 0; i < 5; i++) {
+            logger.error("timeout after " + (3000 + i) + " ms");
+        }
+        logger.warn("something else");
+        final List traps = await(receiver, 3);
+        assertEquals(Arrays.asList(new String[]{"timeout after 3000 ms", "something else", "timeout after 3001 ms"}),
+                     messages(traps));
+        assertEquals(null, ((ReceivedTrap) traps.get(0)).getValue(COUNT_OID));
+        assertEquals("5", ((ReceivedTrap) traps.get(2)).getValue(COUNT_OID));
+        assertEquals(4, appender.getDedupSuppressedCount());
+    }
+
+    @Test
+    public void sendsTheRepeatsOffTheLoggingThread() throws InterruptedException {
+        final AtomicReference repeatedOn = new AtomicReference();
+        final ExecutorService sweepExecutor = Executors.newSingleThreadExecutor();
+        final TrapDeduplicator deduplicator = new TrapDeduplicator(50, 100, new TrapDeduplicator.RepeatHandler() {
+            public void retain(final LoggingEvent event) {
+            }
+
+            public void repeated(final LoggingEvent event, final long occurrences) {
+                repeatedOn.set(Thread.currentThread());
+            }
+        }, sweepExecutor);
+        try {
+            assertEquals(true, deduplicator.admit(newEvent()));
+            assertEquals(false, deduplicator.admit(newEvent()));
+            Thread.sleep(60);
+            //the window has expired: whether this or the sweep closes it, the repeat is sent by the executor
+            deduplicator.admit(newEvent());
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (null == repeatedOn.get() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertNotNull(repeatedOn.get());
+            assertNotSame(Thread.currentThread(), repeatedOn.get());
+        } finally {
+            deduplicator.close();
+            sweepExecutor.shutdown();
+            sweepExecutor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private LoggingEvent newEvent() {
+        return new LoggingEvent(getClass().getName(), logger, Level.ERROR, "timeout after 10 ms", null);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: TrapRateLimiterTest<br>
+ * Description: Suppresses the events over the rate limit, and reports how many were suppressed in a summary
+ * trap.<br>
+ * @version 1.0<br>
+ */
+public class TrapRateLimiterTest extends AbstractTrapTest {
+
+    private static final String SUMMARY_OID = "1.3.6.1.4.1.24.12.10.22.66";
+
+    @Test
+    public void suppressesTheEventsOverTheBurst() throws InterruptedException {
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setRateLimitPerSecond(1);
+        appender.setRateLimitBurst(3);
+        appender.setRateLimitSummarySeconds(1);
+        appender.setRateLimitSummaryOID(SUMMARY_OID);
+        attach(appender);
+        for (int i = 0; i < 50; i++) {
+            logger.error("flood " + i);
+        }
+        final long suppressed = appender.getRateLimitSuppressedCount();
+        assertTrue(47 <= suppressed);
+        final List traps = await(receiver, (int) (50 - suppressed) + 1);
+        final List sent = messages(traps);
+        assertEquals(50 - suppressed, sent.size());
+        assertEquals("flood 0", sent.get(0));
+        String summary = null;
+        for (int i = 0; i < traps.size(); i++) {
+            final String value = ((ReceivedTrap) traps.get(i)).getValue(SUMMARY_OID);
+            if (null != value) summary = value;
+        }
+        assertTrue(summary, summary.startsWith(suppressed + " traps suppressed"));
+    }
+
+    @Test
+    public void doesNotLimitFatalByDefault() throws InterruptedException {
+        final SNMPTrapAppender appender = newAppender(BER_SENDER);
+        appender.setRateLimitPerSecond(1);
+        appender.setRateLimitBurst(1);
+        attach(appender);
+        for (int i = 0; i < 5; i++) {
+            logger.fatal("fatal " + i);
+        }
+        assertEquals(5, messages(await(receiver, 5)).size());
+        assertEquals(0, appender.getRateLimitSuppressedCount());
+    }
+}
@@ -0,0 +1,769 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Title: TrapReceiver<br>
+ * Description: A lightweight SNMPv1/v2c/v3 trap receiver, to embed in load tests and integration tests in place of
+ * a real management station.<p>
+ * It binds a UDP port (by default an ephemeral one on the loopback address), with a socket buffer of 4 MB to ride
+ * out bursts, and decodes every datagram on a single daemon thread, from a reused buffer.  Each trap is counted,
+ * passed to the {@link TrapListener}, if there is one, and kept, up to "MaxRecorded" traps, for
+ * {@link #getTraps()}.  InformRequest-PDUs are acknowledged with a Response-PDU, unless that is turned off.
+ * SNMPv3 messages are authenticated and decrypted (authPriv, as sent by the {@link UsmSNMPTrapSender}) for the user
+ * given by {@link #setUsmUser}; malformed datagrams, and SNMPv3 messages that fail the checks, are only counted.<p>
+ * If "SequenceOID" is set, the VarBinds of that name are read as "<i>sequence</i>[,<i>timestamp</i>]", as sent by
+ * the appender's batching (see its BatchSequenceOID).  A sequence number more than one past the highest seen from
+ * the same source counts the numbers skipped as lost; a late one is counted as reordered, and no longer as lost,
+ * and one seen before (e.g. a retransmitted inform) as a duplicate.  The
+ * time from the time stamp to the arrival of the trap is recorded as its end-to-end latency, in a
+ * {@link LatencyHistogram}; sender and receiver must share a clock, so this is meant for a single host.<br>
+ * @version 1.0<br>
+ */
+public final class TrapReceiver {
+
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+    private static final int MAX_MISSING = 65536;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int COUNTER32 = 0x41;
+    private static final int GAUGE32 = 0x42;
+    private static final int COUNTER64 = 0x46;
+    private static final String SYS_UP_TIME_OID = "1.3.6.1.2.1.1.3.0";
+    private static final String SNMP_TRAP_OID_OID = "1.3.6.1.6.3.1.1.4.1.0";
+
+    private final DatagramChannel channel;
+    private volatile TrapListener listener;
+    private volatile String sequenceOID;
+    private volatile int maxRecorded = 10000;
+    private volatile boolean respondToInforms = true;
+    private volatile UsmUser usmUser;
+    private final ArrayDeque recorded = new ArrayDeque();
+    private final Map sequences = new HashMap();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong informCount = new AtomicLong();
+    private final AtomicLong malformedCount = new AtomicLong();
+    private final AtomicLong lostCount = new AtomicLong();
+    private final AtomicLong reorderedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private volatile int largestDatagramSize;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private Thread reader;
+    private volatile boolean isClosed;
+
+    /**
+     * Receives the traps called for by a test.
+     */
+    public interface TrapListener {
+
+        /**
+         * Called on the receiver thread for each trap; must not block.
+         *
+         * @param trap the trap
+         */
+        void trapReceived(ReceivedTrap trap);
+    }
+
+    /**
+     * Binds an ephemeral port on the loopback address.
+     *
+     * @throws IOException if it cannot be bound
+     */
+    public TrapReceiver() throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     * Binds the given address.
+     *
+     * @param address where to receive the traps
+     * @throws IOException if it cannot be bound
+     */
+    public TrapReceiver(final InetSocketAddress address) throws IOException {
+        channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, Integer.valueOf(RECEIVE_BUFFER_SIZE));
+        } catch (IOException e) {
+            LogLog.warn("Could not enlarge the receive buffer of the trap receiver", e);
+        }
+        channel.bind(address);
+    }
+
+    /**
+     * Starts receiving.
+     */
+    public synchronized void start() {
+        if (null != reader) return;
+        reader = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "SNMPTrapAppender-trap-receiver");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Stops receiving, and releases the port.
+     */
+    public void close() {
+        isClosed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LogLog.warn("Error closing the trap receiver", e);
+        }
+    }
+
+    /**
+     * @return the port the traps are received on
+     */
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * @return the ManagementHosts value that sends to this receiver
+     */
+    public String getManagementHost() {
+        final InetAddress address = channel.socket().getLocalAddress();
+        final String host = address.getHostAddress();
+        return new StringBuffer().append(-1 == host.indexOf(':') ? host : '[' + host + ']').append(':')
+                .append(getPort()).toString();
+    }
+
+    public void setListener(final TrapListener listenerValue) {
+        listener = listenerValue;
+    }
+
+    public void setSequenceOID(final String sequenceOIDValue) {
+        sequenceOID = sequenceOIDValue;
+    }
+
+    public String getSequenceOID() {
+        return sequenceOID;
+    }
+
+    public void setMaxRecorded(final int maxRecordedValue) {
+        maxRecorded = maxRecordedValue;
+    }
+
+    public int getMaxRecorded() {
+        return maxRecorded;
+    }
+
+    public void setRespondToInforms(final boolean respondToInformsValue) {
+        respondToInforms = respondToInformsValue;
+    }
+
+    public boolean getRespondToInforms() {
+        return respondToInforms;
+    }
+
+    /**
+     * Sets the user whose SNMPv3 traps are received; those of other users are counted as malformed.
+     *
+     * @param securityName the name of the user
+     * @param authProtocol "SHA" or "SHA256"
+     * @param authPassword the authentication password
+     * @param privPassword the privacy password
+     */
+    public void setUsmUser(final String securityName,
+                           final String authProtocol,
+                           final String authPassword,
+                           final String privPassword) {
+        usmUser = new UsmUser(securityName, UsmSNMPTrapSender.AUTH_SHA256.equalsIgnoreCase(authProtocol),
+                              authPassword, privPassword);
+    }
+
+    /**
+     * @return the number of traps and informs decoded
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * @return the number of informs decoded
+     */
+    public long getInformCount() {
+        return informCount.get();
+    }
+
+    /**
+     * @return the number of datagrams that were not traps or informs, or failed the SNMPv3 checks
+     */
+    public long getMalformedCount() {
+        return malformedCount.get();
+    }
+
+    /**
+     * @return the number of sequence numbers skipped and not yet seen
+     */
+    public long getLostCount() {
+        return lostCount.get();
+    }
+
+    /**
+     * @return the number of traps that arrived after a later sequence number
+     */
+    public long getReorderedCount() {
+        return reorderedCount.get();
+    }
+
+    /**
+     * @return the number of traps with a sequence number that had already been seen
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return the size, in bytes, of the largest datagram received
+     */
+    public int getLargestDatagramSize() {
+        return largestDatagramSize;
+    }
+
+    /**
+     * @return the end-to-end latencies of the traps with a time stamp
+     */
+    public LatencySnapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    /**
+     * @return a copy of the traps kept so far, oldest first
+     */
+    public List getTraps() {
+        synchronized (recorded) {
+            return new ArrayList(recorded);
+        }
+    }
+
+    /**
+     * Forgets the traps kept so far.  The counts are not reset.
+     */
+    public void clear() {
+        synchronized (recorded) {
+            recorded.clear();
+        }
+    }
+
+    /**
+     * Waits until the given number of traps has been received in all.
+     *
+     * @param count the number of traps
+     * @param timeoutMillis the longest time to wait
+     * @return true if they were received in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitReceivedCount(final long count, final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (receivedCount.get() < count) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    private void receive() {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        final Decoder decoder = new Decoder(buffer.array(), this);
+        while (!isClosed) {
+            final SocketAddress source;
+            try {
+                buffer.clear();
+                source = channel.receive(buffer);
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                if (!isClosed) LogLog.error("There was an unexpected error while receiving a trap", e);
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            if (buffer.position() > largestDatagramSize) largestDatagramSize = buffer.position();
+            final ReceivedTrap trap;
+            try {
+                trap = decoder.decode(buffer.position(), (InetSocketAddress) source, now);
+            } catch (IllegalArgumentException e) {
+                malformedCount.incrementAndGet();
+                continue;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                malformedCount.incrementAndGet();
+                continue;
+            }
+            receivedCount.incrementAndGet();
+            if (trap.isInform()) {
+                informCount.incrementAndGet();
+                if (respondToInforms) respond(buffer, decoder.pduTypeOffset, source);
+            }
+            track(trap, now);
+            final int max = maxRecorded;
+            if (0 < max) {
+                synchronized (recorded) {
+                    while (recorded.size() >= max) recorded.removeFirst();
+                    recorded.add(trap);
+                }
+            }
+            final TrapListener currentListener = listener;
+            if (null != currentListener) {
+                try {
+                    currentListener.trapReceived(trap);
+                } catch (RuntimeException e) {
+                    LogLog.error("Unexpected error in a trap listener", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Acknowledges an inform with the same message, as a Response-PDU.
+     */
+    private void respond(final ByteBuffer message, final int pduTypeOffset, final SocketAddress source) {
+        message.put(pduTypeOffset, (byte) BerEncoder.RESPONSE_PDU);
+        message.flip();
+        try {
+            channel.send(message, source);
+        } catch (IOException e) {
+            LogLog.warn("Could not acknowledge an inform", e);
+        }
+    }
+
+    /**
+     * Counts the gaps in the sequence numbers from each source, and records the latency.
+     */
+    private void track(final ReceivedTrap trap, final long now) {
+        final String oid = sequenceOID;
+        if (null == oid) return;
+        for (int i = 0; i < trap.getVarBindCount(); i++) {
+            if (!oid.equals(trap.getOID(i))) continue;
+            final String value = trap.getValue(i);
+            final int comma = value.indexOf(',');
+            final long sequence;
+            try {
+                sequence = Long.parseLong(-1 == comma ? value.trim() : value.substring(0, comma).trim());
+                if (-1 != comma) latency.record(1000000L * (now - Long.parseLong(value.substring(comma + 1).trim())));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            getSequence(trap.getSource()).track(sequence);
+        }
+    }
+
+    private Sequence getSequence(final InetSocketAddress source) {
+        Sequence sequence = (Sequence) sequences.get(source);
+        if (null == sequence) {
+            sequence = new Sequence();
+            sequences.put(source, sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * The sequence numbers seen from one source: the highest, and the most recent of those skipped.  Only the
+     * receiver thread uses it.
+     */
+    private final class Sequence {
+
+        private long highest;
+        private boolean isStarted;
+        private final LinkedHashSet missing = new LinkedHashSet();
+
+        void track(final long sequence) {
+            if (!isStarted) {
+                isStarted = true;
+            } else if (sequence > highest + 1) {
+                lostCount.addAndGet(sequence - highest - 1);
+                for (long skipped = Math.max(highest + 1, sequence - MAX_MISSING); skipped < sequence; skipped++) {
+                    missing.add(Long.valueOf(skipped));
+                }
+                //forget the oldest, so that a burst of loss cannot use up the memory
+                for (final Iterator i = missing.iterator(); missing.size() > MAX_MISSING;) {
+                    i.next();
+                    i.remove();
+                }
+            } else if (sequence <= highest) {
+                if (missing.remove(Long.valueOf(sequence))) {
+                    reorderedCount.incrementAndGet();
+                    lostCount.decrementAndGet();
+                } else {
+                    duplicateCount.incrementAndGet();
+                }
+                return;
+            }
+            highest = sequence;
+        }
+    }
+
+    /**
+     * The keys of the SNMPv3 user, localized for each engine ID they are used with.
+     */
+    private static final class UsmUser {
+
+        private final String securityName;
+        private final boolean isSha256;
+        private final String authPassword;
+        private final String privPassword;
+
+        UsmUser(final String securityNameValue,
+                final boolean isSha256Value,
+                final String authPasswordValue,
+                final String privPasswordValue) {
+            securityName = securityNameValue;
+            isSha256 = isSha256Value;
+            authPassword = authPasswordValue;
+            privPassword = privPasswordValue;
+        }
+
+        /**
+         * Checks the digest of the whole message, in which the authentication parameters are zeroed.
+         */
+        void authenticate(final byte[] message,
+                          final int length,
+                          final int authOffset,
+                          final int authLength,
+                          final byte[] engineID) throws GeneralSecurityException {
+            final String algorithm = isSha256 ? "HmacSHA256" : "HmacSHA1";
+            if ((isSha256 ? 24 : 12) != authLength) throw new IllegalArgumentException("Wrong digest length");
+            final byte[] received = new byte[authLength];
+            System.arraycopy(message, authOffset, received, 0, authLength);
+            for (int i = 0; i < authLength; i++) {
+                message[authOffset + i] = 0;
+            }
+            final Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(localize(authPassword, engineID), algorithm));
+            mac.update(message, 0, length);
+            final byte[] digest = mac.doFinal();
+            final byte[] expected = new byte[authLength];
+            System.arraycopy(digest, 0, expected, 0, authLength);
+            if (!MessageDigest.isEqual(expected, received)) throw new IllegalArgumentException("Wrong digest");
+        }
+
+        /**
+         * Decrypts the scoped PDU in place, with AES-128 in CFB mode (RFC 3826).
+         */
+        void decrypt(final byte[] message,
+                     final int offset,
+                     final int length,
+                     final byte[] engineID,
+                     final long boots,
+                     final long time,
+                     final byte[] salt) throws GeneralSecurityException {
+            if (8 != salt.length) throw new IllegalArgumentException("Wrong salt length");
+            final byte[] iv = new byte[16];
+            for (int i = 0; i < 4; i++) {
+                iv[i] = (byte) (boots >>> (24 - 8 * i));
+                iv[4 + i] = (byte) (time >>> (24 - 8 * i));
+            }
+            System.arraycopy(salt, 0, iv, 8, 8);
+            final Cipher cipher = Cipher.getInstance("AES/CFB/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE,
+                        new SecretKeySpec(localize(privPassword, engineID), 0, 16, "AES"),
+                        new IvParameterSpec(iv));
+            final byte[] plain = cipher.doFinal(message, offset, length);
+            System.arraycopy(plain, 0, message, offset, length);
+        }
+
+        private byte[] localize(final String password, final byte[] engineID) throws GeneralSecurityException {
+            return UsmKeyLocalizer.localize(isSha256 ? "SHA-256" : "SHA-1", password, engineID);
+        }
+    }
+
+    /**
+     * Decodes one datagram at a time, from the receive buffer.
+     */
+    private static final class Decoder {
+
+        private final byte[] bytes;
+        private final TrapReceiver receiver;
+        private int position;
+        private int limit;
+        int pduTypeOffset;
+
+        Decoder(final byte[] bytesValue, final TrapReceiver receiverValue) {
+            bytes = bytesValue;
+            receiver = receiverValue;
+        }
+
+        ReceivedTrap decode(final int length, final InetSocketAddress source, final long now) {
+            position = 0;
+            limit = length;
+            limit = enter(BerEncoder.SEQUENCE);
+            final int version = (int) readInteger(BerEncoder.INTEGER);
+            if (3 == version) return decodeUsm(length, source, now);
+            if (0 != version && 1 != version) throw new IllegalArgumentException("Not SNMPv1, SNMPv2c or SNMPv3");
+            final String community = readString(BerEncoder.OCTET_STRING);
+            pduTypeOffset = position;
+            return decodePdu(0 == version ? 1 : 2, community, source, now);
+        }
+
+        /**
+         * Authenticates and decrypts an SNMPv3 message, then decodes its scoped PDU.
+         */
+        private ReceivedTrap decodeUsm(final int length, final InetSocketAddress source, final long now) {
+            final UsmUser user = receiver.usmUser;
+            if (null == user) throw new IllegalArgumentException("No SNMPv3 user");
+            skip(BerEncoder.SEQUENCE);
+            final int securityEnd = enter(BerEncoder.OCTET_STRING);
+            enter(BerEncoder.SEQUENCE);
+            final byte[] engineID = readBytes(BerEncoder.OCTET_STRING);
+            final long boots = readInteger(BerEncoder.INTEGER);
+            final long time = readInteger(BerEncoder.INTEGER);
+            final String userName = readString(BerEncoder.OCTET_STRING);
+            final int authEnd = enter(BerEncoder.OCTET_STRING);
+            final int authOffset = position;
+            position = authEnd;
+            final byte[] salt = readBytes(BerEncoder.OCTET_STRING);
+            position = securityEnd;
+            final int encryptedEnd = enter(BerEncoder.OCTET_STRING);
+            final int encryptedOffset = position;
+            if (!user.securityName.equals(userName)) throw new IllegalArgumentException("Unknown user " + userName);
+            try {
+                user.authenticate(bytes, length, authOffset, authEnd - authOffset, engineID);
+                user.decrypt(bytes, encryptedOffset, encryptedEnd - encryptedOffset, engineID, boots, time, salt);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException(e.toString());
+            }
+            limit = encryptedEnd;
+            limit = enter(BerEncoder.SEQUENCE);
+            skip(BerEncoder.OCTET_STRING);
+            skip(BerEncoder.OCTET_STRING);
+            pduTypeOffset = position;
+            return decodePdu(3, userName, source, now);
+        }
+
+        /**
+         * Decodes the PDU at the current position.
+         *
+         * @param version 1 for SNMPv1, 2 for SNMPv2c, 3 for SNMPv3
+         */
+        private ReceivedTrap decodePdu(final int version,
+                                       final String community,
+                                       final InetSocketAddress source,
+                                       final long now) {
+            final int pduType = bytes[position] & 0xFF;
+            limit = enter(pduType);
+            String enterprise;
+            int generic = -1;
+            int specific = -1;
+            long timeTicks = 0;
+            if (BerEncoder.TRAP_PDU == pduType && 1 == version) {
+                enterprise = readOID();
+                skip(BerEncoder.IP_ADDRESS);
+                generic = (int) readInteger(BerEncoder.INTEGER);
+                specific = (int) readInteger(BerEncoder.INTEGER);
+                timeTicks = readInteger(BerEncoder.TIME_TICKS);
+            } else if ((BerEncoder.SNMPV2_TRAP_PDU == pduType || BerEncoder.INFORM_PDU == pduType) && 1 < version) {
+                enterprise = null;
+                readInteger(BerEncoder.INTEGER);
+                readInteger(BerEncoder.INTEGER);
+                readInteger(BerEncoder.INTEGER);
+            } else {
+                throw new IllegalArgumentException("Not a trap or an inform");
+            }
+            final int varBindsEnd = enter(BerEncoder.SEQUENCE);
+            final List oids = new ArrayList();
+            final List values = new ArrayList();
+            while (position < varBindsEnd) {
+                final int varBindEnd = enter(BerEncoder.SEQUENCE);
+                final String oid = readOID();
+                if (1 < version && SYS_UP_TIME_OID.equals(oid) && 0 == oids.size() && null == enterprise) {
+                    timeTicks = readInteger(BerEncoder.TIME_TICKS);
+                } else if (1 < version && SNMP_TRAP_OID_OID.equals(oid) && null == enterprise) {
+                    enterprise = readOID();
+                } else {
+                    oids.add(oid);
+                    values.add(readValue());
+                }
+                position = varBindEnd;
+            }
+            return new ReceivedTrap(source, now, version, community, pduType, enterprise, generic,
+                                    specific, timeTicks, (String[]) oids.toArray(new String[oids.size()]),
+                                    (String[]) values.toArray(new String[values.size()]));
+        }
+
+        /**
+         * Reads the header of a value with the given tag, and returns the end of its contents.
+         */
+        private int enter(final int tag) {
+            if (position >= limit || tag != (bytes[position] & 0xFF)) {
+                throw new IllegalArgumentException("Expected the tag " + Integer.toHexString(tag));
+            }
+            position++;
+            final int length = readLength();
+            final int end = position + length;
+            if (end > limit) throw new IllegalArgumentException("Truncated");
+            return end;
+        }
+
+        private int readLength() {
+            final int first = bytes[position++] & 0xFF;
+            if (0x80 > first) return first;
+            final int octets = first & 0x7F;
+            if (1 > octets || 3 < octets) throw new IllegalArgumentException("Unsupported length");
+            int length = 0;
+            for (int i = 0; i < octets; i++) {
+                length = (length << 8) | (bytes[position++] & 0xFF);
+            }
+            return length;
+        }
+
+        private void skip(final int tag) {
+            position = enter(tag);
+        }
+
+        private long readInteger(final int tag) {
+            final int end = enter(tag);
+            if (end == position || 9 < end - position) throw new IllegalArgumentException("Bad integer");
+            long value = BerEncoder.INTEGER == tag ? bytes[position] : bytes[position] & 0xFF;
+            for (position++; position < end; position++) {
+                value = (value << 8) | (bytes[position] & 0xFF);
+            }
+            return value;
+        }
+
+        private byte[] readBytes(final int tag) {
+            final int end = enter(tag);
+            final byte[] value = new byte[end - position];
+            System.arraycopy(bytes, position, value, 0, value.length);
+            position = end;
+            return value;
+        }
+
+        private String readString(final int tag) {
+            final int end = enter(tag);
+            final int start = position;
+            position = end;
+            try {
+                return new String(bytes, start, end - start, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 is not supported");
+            }
+        }
+
+        private String readOID() {
+            final int end = enter(BerEncoder.OBJECT_IDENTIFIER);
+            final StringBuffer oid = new StringBuffer(3 * (end - position));
+            boolean isFirst = true;
+            while (position < end) {
+                long subIdentifier = 0;
+                int b;
+                do {
+                    if (position >= end) throw new IllegalArgumentException("Truncated OID");
+                    b = bytes[position++] & 0xFF;
+                    subIdentifier = (subIdentifier << 7) | (b & 0x7F);
+                } while (0 != (b & 0x80));
+                if (isFirst) {
+                    final long first = Math.min(2, subIdentifier / 40);
+                    oid.append(first).append('.').append(subIdentifier - 40 * first);
+                    isFirst = false;
+                } else {
+                    oid.append('.').append(subIdentifier);
+                }
+            }
+            return oid.toString();
+        }
+
+        private String readValue() {
+            final int tag = bytes[position] & 0xFF;
+            switch (tag) {
+                case BerEncoder.OCTET_STRING:
+                    return readString(tag);
+                case BerEncoder.OBJECT_IDENTIFIER:
+                    return readOID();
+                case BerEncoder.INTEGER:
+                case COUNTER32:
+                case GAUGE32:
+                case BerEncoder.TIME_TICKS:
+                case COUNTER64:
+                    return Long.toString(readInteger(tag));
+                case BerEncoder.IP_ADDRESS:
+                    final int end = enter(tag);
+                    final StringBuffer address = new StringBuffer(15);
+                    for (; position < end; position++) {
+                        if (0 < address.length()) address.append('.');
+                        address.append(bytes[position] & 0xFF);
+                    }
+                    return address.toString();
+                default:
+                    //NULL, noSuchObject, noSuchInstance, endOfMibView, Opaque
+                    position++;
+                    position += readLength();
+                    return "";
+            }
+        }
+    }
+}
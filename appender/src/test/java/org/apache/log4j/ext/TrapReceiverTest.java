@@ -0,0 +1,103 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: TrapReceiverTest<br>
+ * Description: Counts the sequence numbers that are skipped, that arrive late and that arrive twice, and records the
+ * end-to-end latency of the traps with a time stamp.<br>
+ * @version 1.0<br>
+ */
+public class TrapReceiverTest extends AbstractTrapTest {
+
+    @Test
+    public void countsLostReorderedAndDuplicateTraps() throws InterruptedException {
+        receiver.setSequenceOID(MESSAGE_OID);
+        attach(newAppender(BER_SENDER));
+        final String[] sequence = {"1", "2", "5", "3", "3", "6"};
+        for (int i = 0; i < sequence.length; i++) {
+            logger.error(sequence[i]);
+        }
+        await(receiver, sequence.length);
+        assertEquals(1, receiver.getLostCount());
+        assertEquals(1, receiver.getReorderedCount());
+        assertEquals(1, receiver.getDuplicateCount());
+    }
+
+    @Test
+    public void recordsTheLatencyOfTimeStampedTraps() throws InterruptedException {
+        receiver.setSequenceOID(MESSAGE_OID);
+        attach(newAppender(BER_SENDER));
+        for (int i = 1; i <= 10; i++) {
+            logger.error(i + "," + System.currentTimeMillis());
+        }
+        await(receiver, 10);
+        assertEquals(0, receiver.getLostCount());
+        assertEquals(10, receiver.getLatency().getCount());
+        assertTrue(TIMEOUT_MILLIS * 1000 > receiver.getLatency().getMaxMicros());
+    }
+
+    @Test
+    public void keepsOnlyTheLatestTraps() throws InterruptedException {
+        receiver.setMaxRecorded(3);
+        attach(newAppender(BER_SENDER));
+        for (int i = 0; i < 5; i++) {
+            logger.error("trap " + i);
+        }
+        await(receiver, 5);
+        assertEquals(3, receiver.getTraps().size());
+        assertEquals("trap 4", messages(receiver.getTraps()).get(2));
+    }
+}
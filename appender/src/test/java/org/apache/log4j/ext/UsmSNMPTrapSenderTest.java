@@ -0,0 +1,157 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Title: UsmSNMPTrapSenderTest<br>
+ * Description: Sends authenticated and encrypted SNMPv3 traps through the {@link UsmSNMPTrapSender}, which the
+ * {@link TrapReceiver} checks and decrypts with the keys of the same user.<br>
+ * @version 1.0<br>
+ */
+public class UsmSNMPTrapSenderTest extends AbstractTrapTest {
+
+    @Test
+    public void sendsSHATraps() throws InterruptedException {
+        sendsTraps(UsmSNMPTrapSender.AUTH_SHA);
+    }
+
+    @Test
+    public void sendsSHA256Traps() throws InterruptedException {
+        sendsTraps(UsmSNMPTrapSender.AUTH_SHA256);
+    }
+
+    @Test
+    public void rejectedWithTheWrongKeys() throws InterruptedException {
+        receiver.setUsmUser("loguser", UsmSNMPTrapSender.AUTH_SHA, "authpass123", "another-password");
+        final SNMPTrapAppender appender = newUsmAppender(UsmSNMPTrapSender.AUTH_SHA);
+        attach(appender);
+        logger.error("unreadable");
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (0 == receiver.getMalformedCount() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, receiver.getMalformedCount());
+        assertEquals(0, receiver.getReceivedCount());
+    }
+
+    @Test
+    public void keepsTheEngineBootsAndTimeWhenReconfigured() throws InterruptedException {
+        receiver.setUsmUser("loguser", UsmSNMPTrapSender.AUTH_SHA, "authpass123", "privpass456");
+        final SNMPTrapAppender appender = newUsmAppender(UsmSNMPTrapSender.AUTH_SHA);
+        appender.setEngineID("0x80001F8804636C6F636B");
+        attach(appender);
+        logger.error("before");
+        final long[] clock = UsmSNMPTrapSender.getEngineClock(UsmKeyLocalizer.parseHex(appender.getEngineID()),
+                                                             appender);
+        final long boots = clock[0];
+        final long startMillis = clock[1];
+        //without an EngineBootsFile, the boots go up with the clock, so that a restart does not reuse them
+        assertTrue(appender.getEngineBoots() + 100000000L < boots);
+        appender.activateOptions();
+        logger.error("after");
+        assertEquals(2, messages(await(receiver, 2)).size());
+        final long[] again = UsmSNMPTrapSender.getEngineClock(UsmKeyLocalizer.parseHex(appender.getEngineID()),
+                                                             appender);
+        assertEquals(boots, again[0]);
+        assertEquals(startMillis, again[1]);
+    }
+
+    @Test
+    public void keepsTrapsWithinTheMaxDatagramSize() throws InterruptedException {
+        receiver.setUsmUser("a-rather-long-security-name", UsmSNMPTrapSender.AUTH_SHA256, "authpass123",
+                            "privpass456");
+        final SNMPTrapAppender appender = newUsmAppender(UsmSNMPTrapSender.AUTH_SHA256);
+        appender.setSecurityName("a-rather-long-security-name");
+        appender.setEngineID("0x80001F88046C6F6E672D656E67696E652D69642D627564676574");
+        appender.setMaxDatagramSize(508);
+        attach(appender);
+        final StringBuffer message = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            message.append("0123456789");
+        }
+        logger.error(message.toString());
+        final String received = (String) messages(await(receiver, 1)).get(0);
+        assertTrue(message.toString().startsWith(received));
+        assertTrue(String.valueOf(receiver.getLargestDatagramSize()), 508 >= receiver.getLargestDatagramSize());
+    }
+
+    private void sendsTraps(final String authProtocol) throws InterruptedException {
+        receiver.setUsmUser("loguser", authProtocol, "authpass123", "privpass456");
+        final SNMPTrapAppender appender = newUsmAppender(authProtocol);
+        attach(appender);
+        logger.error("first");
+        logger.warn("second, with more than one block of text to encrypt");
+        final List traps = await(receiver, 2);
+        assertEquals(Arrays.asList(new String[]{"first", "second, with more than one block of text to encrypt"}),
+                     messages(traps));
+        final ReceivedTrap trap = (ReceivedTrap) traps.get(0);
+        assertEquals(3, trap.getVersion());
+        assertEquals("loguser", trap.getCommunity());
+        assertEquals(0, receiver.getMalformedCount());
+    }
+
+    private SNMPTrapAppender newUsmAppender(final String authProtocol) {
+        final SNMPTrapAppender appender = newAppender(USM_SENDER);
+        appender.setSecurityName("loguser");
+        appender.setAuthProtocol(authProtocol);
+        appender.setAuthPassword("authpass123");
+        appender.setPrivPassword("privpass456");
+        appender.setEngineID("0x80001F8804617070");
+        return appender;
+    }
+}
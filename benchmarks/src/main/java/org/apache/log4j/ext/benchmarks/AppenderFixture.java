@@ -0,0 +1,122 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext.benchmarks;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.ext.SNMPTrapAppender;
+import org.apache.log4j.ext.SnmpDelimitedConversionPatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Title: AppenderFixture<br>
+ * Description: Builds the appenders and events shared by the benchmarks.<br>
+ * @version 1.0<br>
+ */
+final class AppenderFixture {
+
+    static final String PATTERN_LAYOUT = "pattern";
+    static final String DELIMITED_LAYOUT = "delimited";
+    static final String DELIMITED_PATTERN =
+            "%p;1.3.6.1.4.1.24.100.1/%c;1.3.6.1.4.1.24.100.2/%m;1.3.6.1.4.1.24.100.3";
+    static final String BER_SENDER = "org.apache.log4j.ext.BerSNMPTrapSender";
+
+    private static final Logger LOGGER = Logger.getLogger("org.apache.log4j.ext.benchmarks.Benchmark");
+
+    private AppenderFixture() {
+    }
+
+    /**
+     * @param layoutName "pattern" or "delimited"
+     * @return a new layout of that kind
+     */
+    static Layout createLayout(final String layoutName) {
+        if (DELIMITED_LAYOUT.equals(layoutName)) {
+            final SnmpDelimitedConversionPatternLayout layout = new SnmpDelimitedConversionPatternLayout();
+            layout.setConversionPattern(DELIMITED_PATTERN);
+            layout.activateOptions();
+            return layout;
+        }
+        return new PatternLayout("%p %c - %m");
+    }
+
+    /**
+     * Creates an appender that sends to the sink, with the SNMPv3 properties set, in case the sender needs them.
+     *
+     * @param layout the layout
+     * @param implementationClassName the sender
+     * @param sink where to send the traps
+     * @return the appender, not yet activated
+     */
+    static SNMPTrapAppender createAppender(final Layout layout,
+                                           final String implementationClassName,
+                                           final UdpSink sink) {
+        final SNMPTrapAppender appender = new SNMPTrapAppender(layout);
+        appender.setName("benchmark");
+        appender.setImplementationClassName(implementationClassName);
+        appender.setManagementHosts(sink.getManagementHosts());
+        appender.setSecurityName("benchmark");
+        appender.setAuthPassword("benchmark-auth");
+        appender.setPrivPassword("benchmark-priv");
+        appender.setEngineID("0x80001F880462656E6368");
+        return appender;
+    }
+
+    /**
+     * @param throwable to attach to the event, or null
+     * @return an ERROR event
+     */
+    static LoggingEvent createEvent(final Throwable throwable) {
+        return new LoggingEvent(Logger.class.getName(), LOGGER, Level.ERROR,
+                                "Connection to the order database lost after 3 retries", throwable);
+    }
+}
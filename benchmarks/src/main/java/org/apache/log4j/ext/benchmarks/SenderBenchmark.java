@@ -0,0 +1,155 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext.benchmarks;
+
+import org.apache.log4j.ext.ReusableSnmpTrapSender;
+import org.apache.log4j.ext.SNMPTrapAppender;
+import org.apache.log4j.ext.SnmpTrapBuilder;
+import org.apache.log4j.ext.SnmpTrapSenderFacade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Title: SenderBenchmark<br>
+ * Description: Sends a trap of three VarBinds straight through a SnmpTrapSenderFacade implementation, to a local
+ * UDP sink, without the appender or a layout; each operation is one trap.<p>
+ * The senders built by default are measured.  The NetSnmpCommandLineTrapSender needs the net-snmp snmptrap command
+ * on the path.  The JoeSNMP and Wengsoft senders are only built with their profiles, and can then be measured with
+ * e.g. "-p sender=org.apache.log4j.ext.JoeSNMPTrapSender".  A transportQueueSize other than 0 has the
+ * BerSNMPTrapSender queue its traps for its DatagramTransport thread; the other senders ignore it.<br>
+ * @version 1.0<br>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SenderBenchmark {
+
+    @Param({"org.apache.log4j.ext.BerSNMPTrapSender",
+            "org.apache.log4j.ext.UsmSNMPTrapSender",
+            "org.apache.log4j.ext.NetSnmpCommandLineTrapSender"})
+    public String sender;
+
+    @Param({"0", "4096"})
+    public int transportQueueSize;
+
+    private UdpSink sink;
+    private SNMPTrapAppender appender;
+    private SnmpTrapSenderFacade facade;
+
+    @Setup
+    public void setUp() throws Exception {
+        sink = new UdpSink();
+        appender = AppenderFixture.createAppender(AppenderFixture.createLayout(AppenderFixture.PATTERN_LAYOUT),
+                                                  sender,
+                                                  sink);
+        appender.setTransportQueueSize(transportQueueSize);
+        facade = (SnmpTrapSenderFacade) Class.forName(sender).getDeclaredConstructor().newInstance();
+        facade.initialize(appender);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (facade instanceof ReusableSnmpTrapSender) ((ReusableSnmpTrapSender) facade).close();
+        appender.close();
+        sink.close();
+    }
+
+    private void sendTrap() {
+        if (facade instanceof ReusableSnmpTrapSender) {
+            final SnmpTrapBuilder trap = ((ReusableSnmpTrapSender) facade).createTrap();
+            trap.setSysUpTime(appender.getSysUpTime());
+            trap.addTrapMessageVariable("1.3.6.1.4.1.24.100.1", "ERROR");
+            trap.addTrapMessageVariable("1.3.6.1.4.1.24.100.2", "org.apache.log4j.ext.benchmarks.Benchmark");
+            trap.addTrapMessageVariable("1.3.6.1.4.1.24.100.3", "Connection to the order database lost");
+            trap.sendTrap();
+        } else {
+            //the other senders hold one trap at a time
+            synchronized (facade) {
+                facade.initialize(appender);
+                facade.addTrapMessageVariable("1.3.6.1.4.1.24.100.1", "ERROR");
+                facade.addTrapMessageVariable("1.3.6.1.4.1.24.100.2", "org.apache.log4j.ext.benchmarks.Benchmark");
+                facade.addTrapMessageVariable("1.3.6.1.4.1.24.100.3", "Connection to the order database lost");
+                facade.sendTrap();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void send() {
+        sendTrap();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void send8() {
+        sendTrap();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void send32() {
+        sendTrap();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext.benchmarks;
+
+import org.apache.log4j.ext.SNMPTrapAppender;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Title: ThrowableBenchmark<br>
+ * Description: Appends an event with a throwable, a 40 frame exception with a cause, to an appender that forwards
+ * the stack trace with the trap; each operation is one trap.  Compares the full and the compact StackTraceMode.<br>
+ * @version 1.0<br>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThrowableBenchmark {
+
+    @Param({"full", "compact"})
+    public String stackTraceMode;
+
+    private UdpSink sink;
+    private SNMPTrapAppender appender;
+    private LoggingEvent event;
+
+    @Setup
+    public void setUp() throws IOException {
+        sink = new UdpSink();
+        appender = AppenderFixture.createAppender(AppenderFixture.createLayout(AppenderFixture.PATTERN_LAYOUT),
+                                                  AppenderFixture.BER_SENDER,
+                                                  sink);
+        appender.setForwardStackTraceWithTrap("true");
+        appender.setStackTraceMode(stackTraceMode);
+        appender.activateOptions();
+        event = AppenderFixture.createEvent(createThrowable(40));
+    }
+
+    private static Throwable createThrowable(final int depth) {
+        if (0 == depth) {
+            return new IllegalStateException("Order 4711 could not be saved", new IOException("Connection reset"));
+        }
+        return createThrowable(depth - 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        appender.close();
+        sink.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append() {
+        appender.doAppend(event);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void append8() {
+        appender.doAppend(event);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void append32() {
+        appender.doAppend(event);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: AsyncTrapDispatcher<br>
+ * Description: Moves the formatting and sending of traps off the logging thread.<p>
+ * Logging threads publish events into a {@link TrapEventRingBuffer}; one or more daemon consumer threads take them
+ * out again and hand them to an {@link EventHandler} (the appender), which formats and sends the trap.  What happens
+ * when the ring is full is decided by the overflow policy:<br>
+ * <b>block</b> -- the logging thread waits for a free slot.  This is the default.<br>
+ * <b>dropNewest</b> -- the new event is discarded.<br>
+ * <b>dropOldest</b> -- the oldest waiting event is discarded to make room for the new one.<br>
+ * <b>dropBelowLevel</b> -- events below the overflow level are discarded; events at or above it block.<br>
+ * @version 1.0<br>
+ */
+public final class AsyncTrapDispatcher {
+
+    public static final String BLOCK = "block";
+    public static final String DROP_NEWEST = "dropNewest";
+    public static final String DROP_OLDEST = "dropOldest";
+    public static final String DROP_BELOW_LEVEL = "dropBelowLevel";
+
+    private static final long STOP_TIMEOUT = 5000L;
+
+    /**
+     * Receives the events taken from the ring, on a consumer thread.
+     */
+    public interface EventHandler {
+        void onEvent(LoggingEvent event);
+    }
+
+    private final TrapEventRingBuffer ringBuffer;
+    private final TrapWaitStrategy waitStrategy;
+    private final String overflowPolicy;
+    private final Level overflowLevel;
+    private final EventHandler handler;
+    private final Thread[] consumers;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean halted;
+
+    private final TrapWaitStrategy.Ready readableOrHalted = new TrapWaitStrategy.Ready() {
+        public boolean isReady() {
+            return halted || ringBuffer.isReadable();
+        }
+    };
+
+    private final TrapWaitStrategy.Ready writableOrHalted = new TrapWaitStrategy.Ready() {
+        public boolean isReady() {
+            return halted || ringBuffer.isWritable();
+        }
+    };
+
+    /**
+     * Creates the ring buffer and starts the consumer threads.
+     *
+     * @param name used to name the consumer threads
+     * @param bufferSize the minimum number of slots in the ring
+     * @param consumerCount the number of consumer threads
+     * @param waitStrategyName see {@link TrapWaitStrategy}
+     * @param overflowPolicyValue one of the overflow policy constants of this class
+     * @param overflowLevelValue the level used by the "dropBelowLevel" policy
+     * @param handlerValue receives the events
+     */
+    public AsyncTrapDispatcher(final String name,
+                               final int bufferSize,
+                               final int consumerCount,
+                               final String waitStrategyName,
+                               final String overflowPolicyValue,
+                               final Level overflowLevelValue,
+                               final EventHandler handlerValue) {
+        ringBuffer = new TrapEventRingBuffer(bufferSize);
+        waitStrategy = TrapWaitStrategy.forName(waitStrategyName);
+        overflowPolicy = overflowPolicyValue;
+        overflowLevel = overflowLevelValue;
+        handler = handlerValue;
+        consumers = new Thread[Math.max(1, consumerCount)];
+        for (int i = 0; i < consumers.length; i++) {
+            consumers[i] = new Thread(new Consumer(), new StringBuffer().append("SNMPTrapAppender-")
+                    .append(name).append('-').append(i).toString());
+            consumers[i].setDaemon(true);
+            consumers[i].start();
+        }
+    }
+
+    /**
+     * Tests if the value is one of the overflow policy constants of this class (case insensitive).
+     *
+     * @param value to be tested
+     * @return true if the policy is known
+     */
+    public static boolean isKnownOverflowPolicy(final String value) {
+        return BLOCK.equalsIgnoreCase(value) || DROP_NEWEST.equalsIgnoreCase(value)
+               || DROP_OLDEST.equalsIgnoreCase(value) || DROP_BELOW_LEVEL.equalsIgnoreCase(value);
+    }
+
+    /**
+     * Hands the event to the consumer threads, applying the overflow policy if the ring is full.  The caller must
+     * already have captured any thread-dependent state of the event (NDC, MDC, thread name...).
+     *
+     * @param event to be sent as a trap
+     */
+    public void publish(final LoggingEvent event) {
+        if (!ringBuffer.tryPublish(event)) {
+            if (DROP_NEWEST.equalsIgnoreCase(overflowPolicy)) {
+                droppedCount.incrementAndGet();
+                return;
+            } else if (DROP_OLDEST.equalsIgnoreCase(overflowPolicy)) {
+                do {
+                    if (null != ringBuffer.tryTake()) droppedCount.incrementAndGet();
+                } while (!ringBuffer.tryPublish(event));
+            } else if (DROP_BELOW_LEVEL.equalsIgnoreCase(overflowPolicy)
+                       && !event.getLevel().isGreaterOrEqual(overflowLevel)) {
+                droppedCount.incrementAndGet();
+                return;
+            } else if (!publishBlocking(event)) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        }
+        waitStrategy.signalAll();
+    }
+
+    private boolean publishBlocking(final LoggingEvent event) {
+        try {
+            do {
+                waitStrategy.waitUntil(writableOrHalted);
+                if (halted) return false;
+            } while (!ringBuffer.tryPublish(event));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops the consumer threads, once they have sent whatever is left in the ring (waiting no more than a few
+     * seconds for that to happen).
+     */
+    public void stop() {
+        halted = true;
+        waitStrategy.signalAll();
+        for (int i = 0; i < consumers.length; i++) {
+            try {
+                consumers[i].join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of events waiting in the ring
+     */
+    public int getQueueDepth() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * @return the number of slots in the ring
+     */
+    public int getCapacity() {
+        return ringBuffer.getCapacity();
+    }
+
+    /**
+     * @return the number of events discarded by the overflow policy
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private final class Consumer implements Runnable {
+
+        public void run() {
+            while (true) {
+                final LoggingEvent event = ringBuffer.tryTake();
+                if (null != event) {
+                    waitStrategy.signalAll();
+                    try {
+                        handler.onEvent(event);
+                    } catch (RuntimeException e) {
+                        LogLog.error("Unexpected error while sending a trap", e);
+                    }
+                } else if (halted) {
+                    return;
+                } else {
+                    try {
+                        waitStrategy.waitUntil(readableOrHalted);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
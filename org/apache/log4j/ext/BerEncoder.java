@@ -0,0 +1,430 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Title: BerEncoder<br>
+ * Description: A minimal, allocation-free encoder for the ASN.1 Basic Encoding Rules, as used by SNMP.<p>
+ * The encoder writes <b>backwards</b>, from the end of its buffer towards the start.  Since BER puts the length of
+ * a constructed value before its contents, writing the contents first means that every length is known by the
+ * time it has to be written, and nothing has to be measured twice or moved.  So, to encode a SEQUENCE, note the
+ * {@link #position()}, write the elements in reverse order, and then call {@link #writeHeader(int, int)} with the
+ * difference between the noted and the current position.<p>
+ * An encoder is not thread-safe.  If the buffer fills up, a BufferOverflowException is thrown, and the caller may
+ * retry with a larger buffer.<br>
+ * @version 1.0<br>
+ */
+public final class BerEncoder {
+
+    public static final int INTEGER = 0x02;
+    public static final int OCTET_STRING = 0x04;
+    public static final int NULL = 0x05;
+    public static final int OBJECT_IDENTIFIER = 0x06;
+    public static final int SEQUENCE = 0x30;
+    public static final int IP_ADDRESS = 0x40;
+    public static final int COUNTER32 = 0x41;
+    public static final int TIME_TICKS = 0x43;
+    public static final int RESPONSE_PDU = 0xA2;
+    public static final int TRAP_PDU = 0xA4;
+    public static final int INFORM_PDU = 0xA6;
+    public static final int SNMPV2_TRAP_PDU = 0xA7;
+
+    private ByteBuffer buffer;
+    private int position;
+
+    /**
+     * @param bufferValue the buffer to encode into; its capacity is the largest message that can be encoded
+     */
+    public BerEncoder(final ByteBuffer bufferValue) {
+        setBuffer(bufferValue);
+    }
+
+    /**
+     * Replaces the buffer, and resets the encoder.
+     *
+     * @param bufferValue the buffer to encode into
+     */
+    public void setBuffer(final ByteBuffer bufferValue) {
+        buffer = bufferValue;
+        reset();
+    }
+
+    /**
+     * @return the buffer being encoded into
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Discards everything written so far.
+     */
+    public void reset() {
+        position = buffer.capacity();
+    }
+
+    /**
+     * @return the index of the first encoded byte; decreases as more is written
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public int length() {
+        return buffer.capacity() - position;
+    }
+
+    /**
+     * Sets the position and limit of the buffer to the encoded bytes, ready to be written to a channel.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer flip() {
+        buffer.limit(buffer.capacity());
+        buffer.position(position);
+        return buffer;
+    }
+
+    private void ensure(final int count) {
+        if (position < count) throw new BufferOverflowException();
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param value the byte
+     */
+    public void writeByte(final int value) {
+        ensure(1);
+        buffer.put(--position, (byte) value);
+    }
+
+    /**
+     * Writes raw bytes.
+     *
+     * @param bytes the bytes
+     * @param offset of the first byte to write
+     * @param count of bytes to write
+     */
+    public void writeBytes(final byte[] bytes, final int offset, final int count) {
+        ensure(count);
+        position -= count;
+        //a bulk copy; the position of the buffer itself is only meaningful after flip()
+        buffer.limit(buffer.capacity());
+        buffer.position(position);
+        buffer.put(bytes, offset, count);
+    }
+
+    /**
+     * Writes the bytes between the position and the limit of another buffer, which are not consumed.
+     *
+     * @param bytes the buffer to copy from
+     */
+    public void writeBytes(final ByteBuffer bytes) {
+        final int count = bytes.remaining();
+        ensure(count);
+        position -= count;
+        final ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(bytes.duplicate());
+    }
+
+    /**
+     * Writes a definite length.
+     *
+     * @param length the length of the contents
+     */
+    public void writeLength(final int length) {
+        if (0x80 > length) {
+            writeByte(length);
+        } else {
+            int count = 0;
+            for (int remaining = length; 0 != remaining; remaining >>>= 8) {
+                writeByte(remaining);
+                count++;
+            }
+            writeByte(0x80 | count);
+        }
+    }
+
+    /**
+     * Writes the tag and the length of a value whose contents have already been written.
+     *
+     * @param tag the BER tag
+     * @param length the length of the contents
+     */
+    public void writeHeader(final int tag, final int length) {
+        writeLength(length);
+        writeByte(tag);
+    }
+
+    /**
+     * Writes a signed integer, in the fewest bytes possible.
+     *
+     * @param tag the BER tag, normally {@link #INTEGER}
+     * @param value the value
+     */
+    public void writeInteger(final int tag, final long value) {
+        final int end = position;
+        long remaining = value;
+        do {
+            writeByte((int) remaining);
+            remaining >>= 8;
+        } while (!((0 == remaining && 0 == (buffer.get(position) & 0x80))
+                   || (-1 == remaining && 0 != (buffer.get(position) & 0x80))));
+        writeHeader(tag, end - position);
+    }
+
+    /**
+     * Writes an unsigned 32 bit value, such as a TimeTicks, Counter32 or Gauge32.
+     *
+     * @param tag the BER tag
+     * @param value the value; only the low 32 bits are used
+     */
+    public void writeUnsigned32(final int tag, final long value) {
+        writeInteger(tag, value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes the string as an OCTET STRING, encoded as UTF-8.
+     *
+     * @param value the string; null is written as an empty string
+     */
+    public void writeOctetString(final String value) {
+        final int end = position;
+        if (null != value) {
+            for (int i = value.length() - 1; i >= 0; i--) {
+                final char c = value.charAt(i);
+                if (0x80 > c) {
+                    writeByte(c);
+                } else if (0x800 > c) {
+                    writeByte(0x80 | (c & 0x3F));
+                    writeByte(0xC0 | (c >> 6));
+                } else if (Character.isLowSurrogate(c) && 0 < i && Character.isHighSurrogate(value.charAt(i - 1))) {
+                    final int codePoint = Character.toCodePoint(value.charAt(--i), c);
+                    writeByte(0x80 | (codePoint & 0x3F));
+                    writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    writeByte(0xF0 | (codePoint >> 18));
+                } else if (Character.isSurrogate(c)) {
+                    writeByte('?');
+                } else {
+                    writeByte(0x80 | (c & 0x3F));
+                    writeByte(0x80 | ((c >> 6) & 0x3F));
+                    writeByte(0xE0 | (c >> 12));
+                }
+            }
+        }
+        writeHeader(OCTET_STRING, end - position);
+    }
+
+    /**
+     * Writes raw bytes as an OCTET STRING (or as any other type that is encoded as one, such as an IpAddress).
+     *
+     * @param tag the BER tag
+     * @param bytes the contents
+     */
+    public void writeOctets(final int tag, final byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+        writeHeader(tag, bytes.length);
+    }
+
+    /**
+     * Writes an OBJECT IDENTIFIER given in dotted decimal notation, with or without a leading dot.  The OID is parsed
+     * and encoded only the first time, see {@link OIDRegistry}.
+     *
+     * @param oid e.g. "1.3.6.1.2.1.1.3.0"
+     * @throws IllegalArgumentException if the OID has fewer than two arcs, or is otherwise malformed
+     */
+    public void writeOID(final String oid) {
+        OIDRegistry.lookup(oid).writeTo(this);
+    }
+
+    /**
+     * Writes an OBJECT IDENTIFIER already encoded.
+     *
+     * @param oid the OID
+     */
+    public void writeOID(final ObjectIdentifier oid) {
+        oid.writeTo(this);
+    }
+
+    /**
+     * Parses and writes an OBJECT IDENTIFIER, for the {@link ObjectIdentifier} to keep.
+     */
+    void writeParsedOID(final String oid) {
+        final int end = position;
+        final int start = null != oid && oid.startsWith(".") ? 1 : 0;
+        final int firstDot = null == oid ? -1 : oid.indexOf('.', start);
+        if (0 > firstDot) throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ")
+                .append(oid).toString());
+        final int secondDot = oid.indexOf('.', firstDot + 1);
+        final int secondEnd = 0 > secondDot ? oid.length() : secondDot;
+        //the arcs after the second are written one by one, last first
+        if (0 < secondDot) {
+            int arcEnd = oid.length();
+            for (int i = oid.length() - 1; i >= secondDot; i--) {
+                if ('.' == oid.charAt(i)) {
+                    writeSubIdentifier(parseArc(oid, i + 1, arcEnd));
+                    arcEnd = i;
+                }
+            }
+        }
+        //the first two arcs share a single sub-identifier, which is only unambiguous for a first arc of 0, 1 or 2,
+        //and, below 2, a second arc below 40
+        final long firstArc = parseArc(oid, start, firstDot);
+        final long secondArc = parseArc(oid, firstDot + 1, secondEnd);
+        if (2 < firstArc || (2 > firstArc && 40 <= secondArc)) {
+            throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ").append(oid).toString());
+        }
+        writeSubIdentifier(40 * firstArc + secondArc);
+        writeHeader(OBJECT_IDENTIFIER, end - position);
+    }
+
+    /**
+     * Computes the number of bytes taken by a definite length.
+     *
+     * @param length the length of the contents
+     * @return the size of the encoded length
+     */
+    public static int sizeOfLength(final int length) {
+        int size = 1;
+        if (0x80 <= length) {
+            for (int remaining = length; 0 != remaining; remaining >>>= 8) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Computes the number of bytes the string takes in UTF-8, as written by {@link #writeOctetString(String)}.
+     *
+     * @param value the string; null counts as an empty string
+     * @return the number of bytes
+     */
+    public static int utf8Length(final String value) {
+        if (null == value) return 0;
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (0x80 > c) {
+                length++;
+            } else if (0x800 > c) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Computes the size of a VarBind with an OCTET STRING value, as written by the senders of this package.
+     *
+     * @param oid the name of the VarBind, in dotted decimal notation
+     * @param value the value of the VarBind
+     * @return the size of the encoded VarBind, tag and length included
+     */
+    public static int sizeOfVarBind(final String oid, final String value) {
+        final int valueLength = utf8Length(value);
+        final int oidLength = sizeOfOIDContents(oid);
+        final int contents = 1 + sizeOfLength(oidLength) + oidLength + 1 + sizeOfLength(valueLength) + valueLength;
+        return 1 + sizeOfLength(contents) + contents;
+    }
+
+    /**
+     * Computes the size of the contents of an OBJECT IDENTIFIER.  A malformed OID is counted as if each of its
+     * characters took a byte.
+     *
+     * @param oid in dotted decimal notation
+     * @return the number of bytes of the contents
+     */
+    static int sizeOfOIDContents(final String oid) {
+        if (null == oid) return 0;
+        try {
+            return OIDRegistry.lookup(oid).getContentsLength();
+        } catch (IllegalArgumentException e) {
+            return oid.length();
+        }
+    }
+
+    private void writeSubIdentifier(final long value) {
+        writeByte((int) (value & 0x7F));
+        for (long remaining = value >>> 7; 0 != remaining; remaining >>>= 7) {
+            writeByte(0x80 | (int) (remaining & 0x7F));
+        }
+    }
+
+    private static long parseArc(final String oid, final int from, final int to) {
+        if (from >= to) throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ")
+                .append(oid).toString());
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final char c = oid.charAt(i);
+            if ('0' > c || '9' < c) throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ")
+                    .append(oid).toString());
+            value = 10 * value + (c - '0');
+        }
+        return value;
+    }
+}
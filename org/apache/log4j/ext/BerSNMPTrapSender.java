@@ -0,0 +1,688 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Title: BerSNMPTrapSender<br>
+ * Description: A self-contained sender, with no dependency on any SNMP library, that encodes SNMPv1 Trap-PDUs
+ * (TrapVersion 1) or SNMPv2c SNMPv2-Trap-PDUs (TrapVersion 2) itself, and sends them over an NIO DatagramChannel.<p>
+ * Each sending thread has its own trap builder, with its own direct ByteBuffer and {@link BerEncoder}, which are
+ * reused from one trap to the next -- once they have grown to the size of the largest trap, sending a trap does not
+ * allocate anything on the heap.  As a consequence, a thread must send (or abandon) one trap before creating the
+ * next.<p>
+ * An SNMPv2c trap carries the standard sysUpTime.0 and snmpTrapOID.0 VarBinds first, and snmpTrapEnterprise.0 last,
+ * as described by RFC 3584 for translating an SNMPv1 trap.  The time stamp is sent in TimeTicks (hundredths of a
+ * second).<p>
+ * The parts of the message that do not change from one trap to the next are encoded once, into a
+ * {@link TrapHeaderTemplate} per specific trap type -- the one configured, and any other that is set on a trap, e.g.
+ * by the appender's LevelSpecificTrapTypes.  Only the VarBinds, the time stamp, the request-id and the lengths that
+ * enclose them are encoded for each trap.<p>
+ * The trap is sent to every one of the appender's {@link TrapDestination}s.  Its VarBinds are encoded only once;
+ * each distinct version and community among the destinations gets a message of its own, built from its template
+ * and a copy of the encoded VarBinds, and every destination of that version and community is sent the same bytes.
+ * The channel is non-blocking, so a destination that cannot take a trap loses it (and the loss is logged) without
+ * holding up the others.<p>
+ * With the appender's NotificationType set to "inform", the SNMPv2c destinations are sent InformRequest-PDUs
+ * instead, each with a request-id of its own, and an {@link InformTracker} waits for their responses on the same
+ * channel, retransmitting those that time out.  SNMPv1 has no informs, so the SNMPv1 destinations are still sent
+ * traps.<p>
+ * The channel is bound to an ephemeral local port -- the LocalTrapSendPort property is not used, since a trap does
+ * not need a fixed source port.  The addresses are taken from the appender's {@link CachedInetAddress} records, so
+ * the send path never waits for the name service.<p>
+ * With the appender's TransportQueueSize set, the traps are not sent by the thread that encodes them, but copied into
+ * the pooled buffers of a {@link DatagramTransport}, whose own thread sends them in batches, retrying for up to
+ * TransportRetryMillis while the socket send buffer is full.  SocketSendBufferSize sets the size of that buffer
+ * (SO_SNDBUF).<p>
+ * With the appender's SpoolDirectory set, the messages that cannot be sent -- the management host is not resolved,
+ * the channel cannot take them, or sending fails -- and the informs that are never acknowledged are kept in a
+ * {@link TrapSpool} instead of being dropped, and sent again once the management host can be reached.<p>
+ * The messages, datagrams, bytes and failures are counted, and the encoding timed, in the appender's
+ * {@link TrapMetrics}.<br>
+ * @version 1.0<br>
+ */
+public class BerSNMPTrapSender implements ReusableSnmpTrapSender {
+
+    static final String SYS_UP_TIME_OID = "1.3.6.1.2.1.1.3.0";
+    static final String SNMP_TRAP_OID_OID = "1.3.6.1.6.3.1.1.4.1.0";
+    static final String SNMP_TRAP_ENTERPRISE_OID = "1.3.6.1.6.3.1.1.4.3.0";
+    static final String SNMP_TRAPS_OID = "1.3.6.1.6.3.1.1.5.";
+    private static final int INITIAL_BUFFER_SIZE = 2048;
+    //the builders kept for the virtual threads of the SendExecutor: its default SendMaxConcurrency
+    private static final int BUILDER_POOL_SIZE = 64;
+    private static final int MAX_BUFFER_SIZE = 65536;
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private String enterpriseOID = "1.3.6.1.2.1.1.2.0";
+    private int genericTrapType;
+    private int specificTrapType = 6;
+    private String applicationTrapOID = "1.3.6.1.2.1.1.2.0.0.0.0";
+    private long sysUpTime;
+    private volatile TrapHeaderTemplate[] templates = new TrapHeaderTemplate[0];
+    private static final byte[] NO_AGENT_ADDRESS = new byte[4];
+    private CachedInetAddress localAddress;
+    private TrapDestination[] destinations = new TrapDestination[0];
+    private int[] variantOf = new int[0];
+    private boolean isSingleVariant = true;
+    private DatagramChannel channel;
+    private boolean isInform;
+    private volatile InformTracker informTracker;
+    private volatile TrapSpool spool;
+    private volatile DatagramTransport transport;
+    private TrapMetrics metrics;
+    private volatile boolean isInitialized;
+    private SnmpTrapBuilder legacyTrap;
+    private final AtomicInteger requestId = new AtomicInteger();
+
+    private final TrapBuilderPool builders = new TrapBuilderPool(BUILDER_POOL_SIZE) {
+        protected Object newBuilder() {
+            return new BerTrap();
+        }
+    };
+
+    /**
+     * Default constructor.
+     */
+    public BerSNMPTrapSender() {
+    }
+
+    public void initialize(final SNMPTrapAppender appender) {
+        metrics = appender.getMetrics();
+        enterpriseOID = appender.getEnterpriseOID();
+        sysUpTime = appender.getSysUpTime();
+        genericTrapType = appender.getGenericTrapType();
+        specificTrapType = appender.getSpecificTrapType();
+        isInform = SNMPTrapAppender.NOTIFICATION_INFORM.equalsIgnoreCase(appender.getNotificationType());
+        localAddress = appender.getLocalAddress();
+        destinations = appender.getDestinations();
+        //the destinations that share a version and community are sent the same message
+        variantOf = new int[destinations.length];
+        isSingleVariant = true;
+        for (int i = 0; i < destinations.length; i++) {
+            variantOf[i] = i;
+            for (int j = 0; j < i; j++) {
+                if (destinations[j].isSameVariant(destinations[i])) {
+                    variantOf[i] = j;
+                    break;
+                }
+            }
+            if (0 != variantOf[i]) isSingleVariant = false;
+        }
+        boolean hasInformDestination = false;
+        for (int i = 0; isInform && i < destinations.length; i++) {
+            if (2 == destinations[i].getTrapVersion()) {
+                hasInformDestination = true;
+            } else {
+                LogLog.warn(new StringBuffer().append("SNMPv1 has no informs -- ").append(destinations[i])
+                        .append(" will be sent traps.").toString());
+            }
+        }
+        templates = new TrapHeaderTemplate[0];
+        try {
+            for (int i = 0; i < destinations.length; i++) {
+                if (variantOf[i] == i) getTemplate(destinations[i], specificTrapType);
+            }
+        } catch (IllegalArgumentException e) {
+            LogLog.error("There were problems with the SNMP parameters -- could not encode the trap header", e);
+        }
+        try {
+            closeChannel();
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(null);
+            if (0 < appender.getSocketSendBufferSize()) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, Integer.valueOf(appender.getSocketSendBufferSize()));
+            }
+            if (0 < appender.getTransportQueueSize()) {
+                transport = new DatagramTransport(channel,
+                                                  appender.getTransportQueueSize(),
+                                                  appender.getTransportRetryMillis(),
+                                                  metrics);
+            }
+            if (hasInformDestination) {
+                informTracker = new InformTracker(channel,
+                                                  appender.getInformTimeoutMillis(),
+                                                  appender.getInformRetries(),
+                                                  appender.getInformMaxOutstanding());
+            }
+            if (null != appender.getSpoolDirectory()) {
+                final SpoolBridge bridge = new SpoolBridge(channel, destinations);
+                try {
+                    spool = new TrapSpool(new File(appender.getSpoolDirectory()),
+                                          appender.getSpoolSegmentSize(),
+                                          appender.getSpoolMaxSegments(),
+                                          appender.getSpoolReplayPerSecond(),
+                                          bridge);
+                    if (null != informTracker) informTracker.setDeliveryHandler(bridge);
+                    if (null != transport) transport.setDropHandler(bridge);
+                } catch (IOException e) {
+                    LogLog.error("Could not open the trap spool -- the traps that cannot be sent will be dropped", e);
+                }
+            }
+            isInitialized = true;
+        } catch (IOException e) {
+            LogLog.error("Could not open a channel to send the traps on", e);
+        }
+        legacyTrap = new BerTrap();
+    }
+
+    public SnmpTrapBuilder createTrap() {
+        final BerTrap trap = (BerTrap) builders.take();
+        trap.reset(sysUpTime);
+        return trap;
+    }
+
+    public void close() {
+        isInitialized = false;
+        closeChannel();
+    }
+
+    /**
+     * Gets the tracker of the informs in flight.
+     *
+     * @return the tracker, or null if no informs are sent
+     */
+    public InformTracker getInformTracker() {
+        return informTracker;
+    }
+
+    /**
+     * Gets the spool of the traps that could not be sent.
+     *
+     * @return the spool, or null if there is no SpoolDirectory
+     */
+    public TrapSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * Gets the transport the traps are queued on.
+     *
+     * @return the transport, or null if the traps are sent by the threads that encode them
+     */
+    public DatagramTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the IPv4 address of the local host, or 0.0.0.0 if it is unknown or not an IPv4 address
+     */
+    private byte[] getAgentAddress() {
+        final byte[] address = localAddress.getAddressBytes();
+        return null != address && 4 == address.length ? address : NO_AGENT_ADDRESS;
+    }
+
+    /**
+     * Gets the template for the version and community of the destination and the given specific trap type, encoding
+     * it on first use.  Templates are also re-encoded if the agent address changes.
+     *
+     * @param destination the destination of the trap
+     * @param trapSpecificTrapType the specific trap type
+     * @return the template
+     * @throws IllegalArgumentException if the enterprise OID cannot be encoded
+     */
+    private TrapHeaderTemplate getTemplate(final TrapDestination destination, final int trapSpecificTrapType) {
+        final byte[] agentAddress = getAgentAddress();
+        final int trapVersion = destination.getTrapVersion();
+        final String communityString = destination.getCommunityString();
+        TrapHeaderTemplate[] current = templates;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].matches(trapVersion, communityString, trapSpecificTrapType, agentAddress)) {
+                return current[i];
+            }
+        }
+        synchronized (this) {
+            current = templates;
+            int kept = 0;
+            final TrapHeaderTemplate[] updated = new TrapHeaderTemplate[current.length + 1];
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].matches(trapVersion, communityString, trapSpecificTrapType, agentAddress)) {
+                    return current[i];
+                }
+                //drop the templates that were encoded with a previous agent address
+                if (current[i].isCurrent(agentAddress)) updated[kept++] = current[i];
+            }
+            final TrapHeaderTemplate template = new TrapHeaderTemplate(trapVersion, communityString, enterpriseOID,
+                    agentAddress, genericTrapType, trapSpecificTrapType, isInform);
+            updated[kept++] = template;
+            final TrapHeaderTemplate[] trimmed = new TrapHeaderTemplate[kept];
+            System.arraycopy(updated, 0, trimmed, 0, kept);
+            templates = trimmed;
+            return template;
+        }
+    }
+
+    private void closeChannel() {
+        //the tracker spools the informs still waiting, before the spool is closed
+        final InformTracker oldTracker = informTracker;
+        informTracker = null;
+        if (null != oldTracker) oldTracker.close();
+        final DatagramTransport oldTransport = transport;
+        transport = null;
+        if (null != oldTransport) oldTransport.close();
+        final TrapSpool oldSpool = spool;
+        spool = null;
+        if (null != oldSpool) oldSpool.close();
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LogLog.warn("Error closing the trap channel", e);
+            }
+            channel = null;
+        }
+    }
+
+    public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                       final String value) {
+        //check pre-condition
+        if (!isInitialized) {
+            LogLog.error("The initialize() method must be called before calling addTrapMessageVariable()");
+            return;
+        }
+        legacyTrap.addTrapMessageVariable(applicationTrapOIDValue, value);
+    }
+
+    public void sendTrap() {
+        //check pre-condition
+        if (!isInitialized) {
+            LogLog.error("The initialize() method must be called before calling sendTrap()");
+            return;
+        }
+        legacyTrap.sendTrap();
+        legacyTrap = new BerTrap();
+    }
+
+    private int nextRequestId() {
+        return requestId.incrementAndGet() & 0x7FFFFFFF;
+    }
+
+    /**
+     * Encodes the VarBinds of a trap, last first.
+     *
+     * @param encoder to encode into
+     * @param oids the names of the VarBinds
+     * @param values the values of the VarBinds
+     * @param count the number of VarBinds
+     */
+    void encodeVarBinds(final BerEncoder encoder,
+                        final String[] oids,
+                        final String[] values,
+                        final int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            final int end = encoder.position();
+            encoder.writeOctetString(values[i]);
+            encoder.writeOID(null != oids[i] ? oids[i] : applicationTrapOID);
+            encoder.writeHeader(BerEncoder.SEQUENCE, end - encoder.position());
+        }
+    }
+
+    /**
+     * A single trap, held as the list of its VarBinds until it is encoded and sent.  One instance per thread is
+     * reused for every trap that the thread sends.
+     */
+    private final class BerTrap implements SnmpTrapBuilder {
+
+        private final BerEncoder encoder = new BerEncoder(ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE));
+        private BerEncoder varBindEncoder;
+        private String[] oids = new String[8];
+        private String[] values = new String[8];
+        private int count;
+        private long trapSysUpTime;
+        private int trapSpecificTrapType;
+
+        BerTrap() {
+            reset(sysUpTime);
+        }
+
+        void reset(final long sysUpTimeValue) {
+            for (int i = 0; i < count; i++) {
+                oids[i] = null;
+                values[i] = null;
+            }
+            count = 0;
+            trapSysUpTime = sysUpTimeValue;
+            trapSpecificTrapType = specificTrapType;
+        }
+
+        public void setSysUpTime(final long sysUpTimeValue) {
+            trapSysUpTime = sysUpTimeValue;
+        }
+
+        public void setSpecificTrapType(final int specificTrapTypeValue) {
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                           final String value) {
+            if (count == oids.length) {
+                final String[] newOids = new String[2 * count];
+                final String[] newValues = new String[2 * count];
+                System.arraycopy(oids, 0, newOids, 0, count);
+                System.arraycopy(values, 0, newValues, 0, count);
+                oids = newOids;
+                values = newValues;
+            }
+            oids[count] = applicationTrapOIDValue;
+            values[count] = value;
+            count++;
+        }
+
+        public void sendTrap() {
+            //check pre-condition
+            if (!isInitialized) {
+                LogLog.error("The initialize() method must be called before calling sendTrap()");
+                return;
+            }
+            final TrapDestination[] targets = destinations;
+            final int[] variants = variantOf;
+            final InformTracker tracker = informTracker;
+            try {
+                final long timeTicks = trapSysUpTime / 10;
+                final int trapRequestId = nextRequestId();
+                final ByteBuffer varBinds = isSingleVariant && (null == tracker || 1 == targets.length)
+                                            ? null : encodeVarBinds();
+                for (int i = 0; i < targets.length; i++) {
+                    if (variants[i] != i) continue;
+                    final TrapHeaderTemplate template = getTemplate(targets[i], trapSpecificTrapType);
+                    if (null != tracker && 2 == targets[i].getTrapVersion()) {
+                        //each inform needs a request-id of its own, to match its response
+                        for (int j = i; j < targets.length; j++) {
+                            if (variants[j] == i) inform(template, varBinds, timeTicks, targets[j], tracker);
+                        }
+                        continue;
+                    }
+                    encodeMessage(template, varBinds, timeTicks, trapRequestId);
+                    for (int j = i; j < targets.length; j++) {
+                        if (variants[j] == i) send(targets[j]);
+                    }
+                }
+            } catch (BufferOverflowException e) {
+                metrics.sendFailed(TrapMetrics.FAILURE_OVERSIZE);
+                LogLog.error("The trap is too large to be sent in a single datagram -- it has been dropped.");
+            } catch (IllegalArgumentException e) {
+                metrics.sendFailed(TrapMetrics.FAILURE_ENCODING);
+                LogLog.error("There were problems with the SNMP parameters -- could not create and send trap", e);
+            } finally {
+                reset(trapSysUpTime);
+                if (this != legacyTrap) builders.give(this);
+            }
+        }
+
+        /**
+         * Encodes the VarBinds on their own, to be copied into the message for each version and community.
+         */
+        private ByteBuffer encodeVarBinds() {
+            if (null == varBindEncoder) varBindEncoder = new BerEncoder(ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE));
+            while (true) {
+                try {
+                    varBindEncoder.reset();
+                    BerSNMPTrapSender.this.encodeVarBinds(varBindEncoder, oids, values, count);
+                    return varBindEncoder.flip();
+                } catch (BufferOverflowException e) {
+                    grow(varBindEncoder);
+                }
+            }
+        }
+
+        /**
+         * Encodes the complete message into the encoder, from the template and either the VarBinds already encoded,
+         * or, if there are none, the VarBinds of the trap.
+         */
+        private void encodeMessage(final TrapHeaderTemplate template,
+                                   final ByteBuffer varBinds,
+                                   final long timeTicks,
+                                   final int trapRequestId) {
+            final long start = System.nanoTime();
+            while (true) {
+                try {
+                    encoder.reset();
+                    final int messageEnd = encoder.position();
+                    template.writeTrailer(encoder);
+                    if (null == varBinds) {
+                        BerSNMPTrapSender.this.encodeVarBinds(encoder, oids, values, count);
+                    } else {
+                        encoder.writeBytes(varBinds);
+                    }
+                    template.writeHeader(encoder, messageEnd, timeTicks, trapRequestId);
+                    metrics.trapEncoded(System.nanoTime() - start);
+                    return;
+                } catch (BufferOverflowException e) {
+                    grow(encoder);
+                }
+            }
+        }
+
+        private void grow(final BerEncoder overflowed) {
+            final int capacity = overflowed.getBuffer().capacity();
+            if (MAX_BUFFER_SIZE <= capacity) throw new BufferOverflowException();
+            overflowed.setBuffer(ByteBuffer.allocateDirect(2 * capacity));
+        }
+
+        /**
+         * Encodes the message as an inform to one destination, and sends it once the tracker has a slot for it.
+         */
+        private void inform(final TrapHeaderTemplate template,
+                            final ByteBuffer varBinds,
+                            final long timeTicks,
+                            final TrapDestination target,
+                            final InformTracker tracker) {
+            final int informRequestId = nextRequestId();
+            encodeMessage(template, varBinds, timeTicks, informRequestId);
+            final InetSocketAddress address = getSendableAddress(target);
+            if (null == address) return;
+            if (!tracker.acquire()) {
+                spoolMessage(target);
+                return;
+            }
+            //tracked before it is sent, in case the response arrives first
+            tracker.track(informRequestId, encoder.flip(), address, target);
+            try {
+                if (0 == channel.send(encoder.flip(), address)) {
+                    metrics.sendFailed(TrapMetrics.FAILURE_WOULD_BLOCK);
+                    LogLog.warn(new StringBuffer().append("The inform to ").append(target)
+                            .append(" could not be sent without waiting -- it will be resent.").toString());
+                } else {
+                    metrics.trapSent(encoder.length());
+                }
+            } catch (IOException e) {
+                metrics.sendFailed(TrapMetrics.FAILURE_IO);
+                tracker.untrack(informRequestId);
+                LogLog.error(new StringBuffer().append("There was an unexpected error while sending the inform to ")
+                        .append(target).append(spoolMessage(target)).toString(), e);
+            }
+        }
+
+        /**
+         * @return the address to send the encoded message to, or null (and the reason logged) if it cannot be sent
+         */
+        private InetSocketAddress getSendableAddress(final TrapDestination target) {
+            if (MAX_DATAGRAM_SIZE < encoder.length()) {
+                metrics.sendFailed(TrapMetrics.FAILURE_OVERSIZE);
+                LogLog.error("The trap is too large to be sent in a single datagram -- it has been dropped.");
+                return null;
+            }
+            final InetSocketAddress address = target.getSocketAddress();
+            if (null == address) {
+                metrics.sendFailed(TrapMetrics.FAILURE_UNRESOLVED);
+                LogLog.error(new StringBuffer().append("The management host ").append(target.getHost())
+                        .append(" has not been resolved").append(spoolMessage(target)).toString());
+                return null;
+            }
+            return address;
+        }
+
+        /**
+         * Keeps the encoded message in the spool, if there is one.
+         *
+         * @return the end of the log message, telling what became of the message
+         */
+        private String spoolMessage(final TrapDestination target) {
+            final TrapSpool trapSpool = spool;
+            return null != trapSpool && trapSpool.append(encoder.flip(), target.getHost(), target.getPort())
+                   ? " -- it has been spooled." : " -- it has been dropped.";
+        }
+
+        /**
+         * Sends the encoded message to one destination.  Failures are logged, and do not affect the other
+         * destinations.
+         */
+        private void send(final TrapDestination target) {
+            final InetSocketAddress address = getSendableAddress(target);
+            final DatagramTransport queue = transport;
+            if (null != address && null != queue) {
+                if (!queue.send(encoder.flip(), address, target)) {
+                    metrics.sendFailed(TrapMetrics.FAILURE_WOULD_BLOCK);
+                    LogLog.warn(new StringBuffer().append("The trap to ").append(target)
+                            .append(" could not be queued, all of the transport buffers are taken")
+                            .append(spoolMessage(target)).toString());
+                }
+            } else if (null != address) {
+                try {
+                    if (0 == channel.send(encoder.flip(), address)) {
+                        metrics.sendFailed(TrapMetrics.FAILURE_WOULD_BLOCK);
+                        LogLog.warn(new StringBuffer().append("The trap to ").append(target)
+                                .append(" could not be sent without waiting").append(spoolMessage(target))
+                                .toString());
+                    } else {
+                        metrics.trapSent(encoder.length());
+                    }
+                } catch (IOException e) {
+                    metrics.sendFailed(TrapMetrics.FAILURE_IO);
+                    LogLog.error(new StringBuffer().append("There was an unexpected error while sending the trap to ")
+                            .append(target).append(spoolMessage(target)).toString(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the spooled messages on the channel they were first sent on, and spools the informs and queued traps
+     * that fail.
+     */
+    private final class SpoolBridge implements TrapSpool.ReplayHandler,
+                                               InformTracker.DeliveryHandler,
+                                               DatagramTransport.DropHandler {
+
+        private final DatagramChannel replayChannel;
+        private final TrapDestination[] replayDestinations;
+
+        SpoolBridge(final DatagramChannel channelValue, final TrapDestination[] destinationsValue) {
+            replayChannel = channelValue;
+            replayDestinations = destinationsValue;
+        }
+
+        public boolean replay(final ByteBuffer message, final String host, final int port) {
+            TrapDestination target = null;
+            for (int i = 0; null == target && i < replayDestinations.length; i++) {
+                if (replayDestinations[i].getPort() == port && replayDestinations[i].getHost().equals(host)) {
+                    target = replayDestinations[i];
+                }
+            }
+            if (null == target) {
+                LogLog.warn(new StringBuffer().append("The spooled trap to ").append(host).append(':').append(port)
+                        .append(" is not for one of the ManagementHosts any more -- it has been dropped.").toString());
+                return true;
+            }
+            final InetSocketAddress address = target.getSocketAddress();
+            if (null == address) return false;
+            //an inform is tracked again under its own request-id
+            final InformTracker tracker = informTracker;
+            final int informRequestId = null == tracker ? -1
+                                        : InformTracker.getRequestId(message.duplicate(), BerEncoder.INFORM_PDU);
+            if (0 <= informRequestId) {
+                if (!tracker.acquire()) return false;
+                tracker.track(informRequestId, message, address, target);
+            }
+            try {
+                final int length = message.remaining();
+                if (0 == replayChannel.send(message, address)) {
+                    if (0 <= informRequestId) tracker.untrack(informRequestId);
+                    return false;
+                }
+                metrics.trapSent(length);
+                return true;
+            } catch (IOException e) {
+                if (0 <= informRequestId) tracker.untrack(informRequestId);
+                return false;
+            }
+        }
+
+        public void acknowledged(final TrapDestination target) {
+            final TrapSpool trapSpool = spool;
+            if (null != trapSpool) trapSpool.resume();
+        }
+
+        public void dropped(final ByteBuffer message, final TrapDestination target) {
+            final TrapSpool trapSpool = spool;
+            final boolean isSpooled = null != trapSpool && trapSpool.append(message, target.getHost(), target.getPort());
+            LogLog.warn(new StringBuffer().append("The trap to ").append(target)
+                    .append(" could not be sent before the socket buffer filled up")
+                    .append(isSpooled ? " -- it has been spooled." : " -- it has been dropped.").toString());
+        }
+
+        public void failed(final ByteBuffer message, final TrapDestination target) {
+            final TrapSpool trapSpool = spool;
+            final boolean isSpooled = null != trapSpool && trapSpool.append(message, target.getHost(), target.getPort());
+            LogLog.warn(new StringBuffer().append("The inform to ").append(target).append(" was not acknowledged")
+                    .append(isSpooled ? " -- it has been spooled." : " -- it has been dropped.").toString());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Title: CachedInetAddress<br>
+ * Description: The resolved address of a host name, kept up to date in the background.<p>
+ * The name is resolved once when the record is created, and then again every time the TTL expires, on a background
+ * thread.  If a refresh fails, the last address that was resolved successfully continues to be served, so the send
+ * path never waits for the name service, and is not affected if it becomes unavailable.  If there is no TTL, and
+ * the first resolution fails, it is retried every 30 seconds until it succeeds.<br>
+ * @version 1.0<br>
+ */
+public final class CachedInetAddress {
+
+    private static final long RETRY_MILLIS = 30000L;
+
+    private static final ExecutorService RESOLVER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "SNMPTrapAppender-resolver");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final String host;
+    private volatile Resolved resolved;
+    private ScheduledFuture refreshTask;
+
+    /**
+     * Resolves the host name, and schedules the refreshes.
+     *
+     * @param hostValue a host name or a numeric address
+     * @param ttlMillis the time between refreshes; 0 or less to resolve only once
+     */
+    public CachedInetAddress(final String hostValue, final long ttlMillis) {
+        host = hostValue;
+        resolve();
+        if (0 < ttlMillis || null == resolved) {
+            final Runnable resolveTask = new Runnable() {
+                public void run() {
+                    resolve();
+                }
+            };
+            refreshTask = TrapTimer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    if (0 < ttlMillis || null == resolved) RESOLVER.execute(resolveTask);
+                }
+            }, 0 < ttlMillis ? ttlMillis : RETRY_MILLIS);
+        }
+    }
+
+    private void resolve() {
+        try {
+            final InetAddress address = InetAddress.getByName(host);
+            final Resolved current = resolved;
+            if (null == current || !current.address.equals(address)) {
+                resolved = new Resolved(address);
+            }
+        } catch (UnknownHostException e) {
+            if (null == resolved) {
+                LogLog.error(new StringBuffer().append("Could not resolve the host ").append(host).toString(), e);
+            } else {
+                LogLog.warn(new StringBuffer().append("Could not refresh the address of ").append(host)
+                        .append(", still using ").append(resolved.hostAddress).toString());
+            }
+        }
+    }
+
+    /**
+     * @return the host name this record resolves
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the last address that was resolved.  The same instance is returned until the address changes, so callers
+     * may cache anything derived from it, and compare by identity to see if it has changed.
+     *
+     * @return the address, or null if the host has never been resolved
+     */
+    public InetAddress getAddress() {
+        final Resolved current = resolved;
+        return null == current ? null : current.address;
+    }
+
+    /**
+     * @return the numeric form of the last address that was resolved, or null if the host has never been resolved
+     */
+    public String getHostAddress() {
+        final Resolved current = resolved;
+        return null == current ? null : current.hostAddress;
+    }
+
+    /**
+     * Gets the raw bytes of the last address that was resolved.  The array is shared, and must not be modified.
+     *
+     * @return the address bytes, or null if the host has never been resolved
+     */
+    byte[] getAddressBytes() {
+        final Resolved current = resolved;
+        return null == current ? null : current.bytes;
+    }
+
+    /**
+     * Stops the refreshes.
+     */
+    public void close() {
+        if (null != refreshTask) refreshTask.cancel(false);
+    }
+
+    private static final class Resolved {
+
+        private final InetAddress address;
+        private final String hostAddress;
+        private final byte[] bytes;
+
+        Resolved(final InetAddress addressValue) {
+            address = addressValue;
+            hostAddress = addressValue.getHostAddress();
+            bytes = addressValue.getAddress();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Title: DatagramTransport<br>
+ * Description: Sends the encoded traps from a thread of its own, so that the threads that encode them never touch
+ * the socket.<p>
+ * The transport owns a ring of "queueSize" slots (rounded up to a power of two), each with a direct ByteBuffer of
+ * SLOT_SIZE bytes, claimed and published the same way as the slots of the {@link TrapEventRingBuffer}.  A sending
+ * thread copies its message into the next free slot, without waiting and without taking a lock: if every slot is
+ * taken, the message is handed back to the caller as not sent.  The transport thread is only woken up when it has
+ * gone to sleep on an empty ring, and then sends everything there is back-to-back on the non-blocking channel,
+ * freeing each slot as it goes.  Nothing is allocated per message.
+ * Messages larger than a slot are copied into a buffer of their own.<p>
+ * When the socket send buffer is full, the send is retried, waiting from 10 microseconds up to a millisecond between
+ * tries, for up to "retryMillis" in all; after that the message is dropped and counted.  Raising the socket send
+ * buffer (SO_SNDBUF) makes that rarer, for bursts of traps.<br>
+ * @version 1.0<br>
+ */
+public final class DatagramTransport {
+
+    /** The size of the pooled buffers -- a trap kept within an Ethernet MTU fits in one. */
+    public static final int SLOT_SIZE = 2048;
+    private static final long MIN_BACKOFF_NANOS = 10000;
+    private static final long MAX_BACKOFF_NANOS = 1000000;
+    private static final long WAIT_NANOS = 100000000;
+
+    /**
+     * Told of the messages that could not be sent.
+     */
+    public interface DropHandler {
+
+        /**
+         * A queued message has been dropped, because the socket send buffer stayed full.  Called on the transport
+         * thread.
+         *
+         * @param message the encoded message
+         * @param target its destination
+         */
+        void dropped(ByteBuffer message, TrapDestination target);
+    }
+
+    private final DatagramChannel channel;
+    private final long retryNanos;
+    private final TrapMetrics metrics;
+    private final Datagram[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final Thread sender;
+    private volatile boolean isWaiting;
+    private volatile DropHandler dropHandler;
+    private volatile boolean isClosed;
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Allocates the slots, and starts the transport thread.
+     *
+     * @param channelValue the non-blocking channel to send on
+     * @param queueSize the minimum number of slots, and so of messages that may be waiting to be sent
+     * @param retryMillis how long to retry a message while the socket send buffer is full
+     * @param metricsValue where the messages sent and dropped are counted
+     */
+    public DatagramTransport(final DatagramChannel channelValue,
+                             final int queueSize,
+                             final long retryMillis,
+                             final TrapMetrics metricsValue) {
+        channel = channelValue;
+        retryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, retryMillis));
+        metrics = metricsValue;
+        int capacity = 2;
+        while (capacity < queueSize) capacity <<= 1;
+        slots = new Datagram[capacity];
+        mask = capacity - 1;
+        //one block of memory, sliced into the slots
+        final ByteBuffer pool = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        for (int i = 0; i < capacity; i++) {
+            pool.limit((i + 1) * SLOT_SIZE).position(i * SLOT_SIZE);
+            slots[i] = new Datagram(pool.slice(), i);
+        }
+        sender = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "SNMPTrapAppender-transport");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Sets the handler told of the messages dropped after they were queued.
+     *
+     * @param handler the handler, or null
+     */
+    void setDropHandler(final DropHandler handler) {
+        dropHandler = handler;
+    }
+
+    /**
+     * Queues a message to be sent.  Never waits.
+     *
+     * @param message the message, from its position to its limit; it is copied
+     * @param address where to send it
+     * @param target its destination, for the log and the DropHandler
+     * @return true if it was queued, false if every slot is taken
+     */
+    public boolean send(final ByteBuffer message, final InetSocketAddress address, final TrapDestination target) {
+        if (isClosed) return false;
+        long position = tail.get();
+        while (true) {
+            final Datagram datagram = slots[(int) position & mask];
+            final long difference = datagram.sequence - position;
+            if (0 == difference) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    datagram.fill(message, address, target);
+                    datagram.sequence = position + 1;
+                    queuedCount.incrementAndGet();
+                    if (isWaiting) LockSupport.unpark(sender);
+                    return true;
+                }
+                position = tail.get();
+            } else if (0 > difference) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Sends what is queued, and stops the transport thread.
+     */
+    public void close() {
+        isClosed = true;
+        LockSupport.unpark(sender);
+        try {
+            sender.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of messages queued so far
+     */
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return the number of times a send was retried, because the socket send buffer was full
+     */
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    /**
+     * @return the number of queued messages dropped, because the socket send buffer stayed full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of messages waiting to be sent
+     */
+    public int getQueueDepth() {
+        final long depth = tail.get() - head;
+        return 0 > depth ? 0 : (int) depth;
+    }
+
+    private void drain() {
+        //the only consumer, so the head needs no compare-and-set
+        long position = head;
+        while (true) {
+            final Datagram datagram = slots[(int) position & mask];
+            if (datagram.sequence != position + 1) {
+                if (isClosed && tail.get() == position) return;
+                //announced before the last look, so that a message published after it unparks this thread
+                isWaiting = true;
+                if (datagram.sequence != position + 1 && !isClosed) LockSupport.parkNanos(WAIT_NANOS);
+                isWaiting = false;
+                continue;
+            }
+            sendWithRetry(datagram);
+            datagram.clear();
+            datagram.sequence = position + slots.length;
+            head = ++position;
+        }
+    }
+
+    private void sendWithRetry(final Datagram datagram) {
+        final ByteBuffer message = datagram.message;
+        final int length = message.remaining();
+        final long deadline = System.nanoTime() + retryNanos;
+        long backoff = MIN_BACKOFF_NANOS;
+        try {
+            while (0 == channel.send(message, datagram.address)) {
+                if (System.nanoTime() - deadline >= 0) {
+                    droppedCount.incrementAndGet();
+                    metrics.sendFailed(TrapMetrics.FAILURE_WOULD_BLOCK);
+                    final DropHandler handler = dropHandler;
+                    if (null != handler) {
+                        handler.dropped(message, datagram.target);
+                    } else {
+                        LogLog.warn(new StringBuffer().append("The trap to ").append(datagram.target)
+                                .append(" could not be sent before the socket buffer filled up -- it has been dropped.")
+                                .toString());
+                    }
+                    return;
+                }
+                retriedCount.incrementAndGet();
+                LockSupport.parkNanos(backoff);
+                backoff = Math.min(MAX_BACKOFF_NANOS, 2 * backoff);
+            }
+            metrics.trapSent(length);
+        } catch (IOException e) {
+            metrics.sendFailed(TrapMetrics.FAILURE_IO);
+            LogLog.error(new StringBuffer().append("There was an unexpected error while sending the trap to ")
+                    .append(datagram.target).toString(), e);
+        }
+    }
+
+    /**
+     * A slot of the ring: its buffer, and the destination of the message in it.
+     */
+    private static final class Datagram {
+
+        private final ByteBuffer slot;
+        volatile long sequence;
+        ByteBuffer message;
+        InetSocketAddress address;
+        TrapDestination target;
+
+        Datagram(final ByteBuffer slotValue, final long initialSequence) {
+            slot = slotValue;
+            sequence = initialSequence;
+        }
+
+        void fill(final ByteBuffer source, final InetSocketAddress addressValue, final TrapDestination targetValue) {
+            if (source.remaining() <= slot.capacity()) {
+                slot.clear();
+                message = slot;
+            } else {
+                message = ByteBuffer.allocate(source.remaining());
+            }
+            message.put(source.duplicate());
+            message.flip();
+            address = addressValue;
+            target = targetValue;
+        }
+
+        void clear() {
+            message = null;
+            address = null;
+            target = null;
+        }
+    }
+}
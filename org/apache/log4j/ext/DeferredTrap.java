@@ -0,0 +1,120 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Title: DeferredTrap<br>
+ * Description: Holds the contents of a trap, formatted on the logging thread, until a {@link TrapSendExecutor}
+ * thread sends it.<p>
+ * Layouts, and the event itself, are not safe to use once append has returned, so the VarBinds are formatted into
+ * Strings first, and only replayed into the sender's own trap on the sending thread.  It is only a
+ * {@link SnmpVarBindSink}, not a {@link SnmpTrapBuilder}, since it cannot send itself.<br>
+ * @version 1.0<br>
+ */
+final class DeferredTrap implements SnmpVarBindSink {
+
+    private final List oids = new ArrayList();
+    private final List values = new ArrayList();
+    private long sysUpTime;
+    private int specificTrapType;
+    private boolean hasSpecificTrapType;
+
+    /**
+     * Sets the time stamp to replay into the trap.
+     *
+     * @param sysUpTimeValue milliseconds since the application (or host) was started
+     */
+    void setSysUpTime(final long sysUpTimeValue) {
+        sysUpTime = sysUpTimeValue;
+    }
+
+    /**
+     * Sets the specific trap type to replay into the trap, in place of the one the sender was initialized with.
+     *
+     * @param specificTrapTypeValue the specific trap type of the trap
+     */
+    void setSpecificTrapType(final int specificTrapTypeValue) {
+        specificTrapType = specificTrapTypeValue;
+        hasSpecificTrapType = true;
+    }
+
+    public void addTrapMessageVariable(final String applicationTrapOIDValue, final String value) {
+        oids.add(applicationTrapOIDValue);
+        values.add(value);
+    }
+
+    /**
+     * Copies the time stamp, specific trap type and VarBinds into the trap of a {@link ReusableSnmpTrapSender}.
+     *
+     * @param trap the trap to fill in
+     */
+    void replay(final SnmpTrapBuilder trap) {
+        trap.setSysUpTime(sysUpTime);
+        if (hasSpecificTrapType) {
+            trap.setSpecificTrapType(specificTrapType);
+        }
+        replay((SnmpVarBindSink) trap);
+    }
+
+    /**
+     * Copies only the VarBinds, for the senders that take the rest from the appender when initialized.
+     *
+     * @param out the sender to fill in
+     */
+    void replay(final SnmpVarBindSink out) {
+        final int count = oids.size();
+        for (int i = 0; i < count; i++) {
+            out.addTrapMessageVariable((String) oids.get(i), (String) values.get(i));
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: InformTracker<br>
+ * Description: Tracks the SNMPv2c InformRequest-PDUs in flight, until each one is acknowledged by a Response-PDU
+ * or given up on.<p>
+ * Informs are pipelined: any number of them, up to the maximum outstanding, may be waiting for their responses at
+ * once, each one kept in a concurrent table under its request-id, together with a copy of its message.  A single
+ * daemon thread reads the responses from the sender's channel and removes the informs that they acknowledge --
+ * a response only counts if it comes from the address and port its inform was sent to -- and retransmits the
+ * informs that have timed out.  The timeout doubles with each retransmission; once the retries are used up, the
+ * inform is counted as failed and dropped.<p>
+ * Before an inform is sent, the sending thread takes one of the outstanding slots, waiting up to one timeout for a
+ * slot to become free.  When the manager is slow or down, this holds up the sending threads, so that with the
+ * appender's AsyncDispatch its queue fills up and its overflow policy applies, rather than the table growing
+ * without bound.  An inform that cannot get a slot is counted as dropped.<br>
+ * @version 1.0<br>
+ */
+public final class InformTracker {
+
+    private static final int MAX_RESPONSE_SIZE = 65536;
+    private static final long MAX_TICK_MILLIS = 50;
+
+    /**
+     * Told what became of each inform.  Called on the receiver thread, or the thread that closes the tracker.
+     */
+    public interface DeliveryHandler {
+
+        /**
+         * An inform has been acknowledged.
+         *
+         * @param target its destination
+         */
+        void acknowledged(TrapDestination target);
+
+        /**
+         * An inform has been given up on, or was still waiting for its response when the tracker was closed.
+         *
+         * @param message the encoded inform
+         * @param target its destination
+         */
+        void failed(ByteBuffer message, TrapDestination target);
+    }
+
+    private final DatagramChannel channel;
+    private final long timeoutMillis;
+    private final int retries;
+    private final int maxOutstanding;
+    private final Semaphore slots;
+    private final Map pending = new ConcurrentHashMap();
+    private final Selector selector;
+    private final Thread receiver;
+    private volatile boolean isClosed;
+    private volatile DeliveryHandler deliveryHandler;
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong acknowledgedCount = new AtomicLong();
+    private final AtomicLong retransmittedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Starts reading the responses from the channel.
+     *
+     * @param channelValue the non-blocking channel the informs are sent on
+     * @param timeoutMillisValue the time to wait for the first response, in milliseconds
+     * @param retriesValue the number of times an inform is retransmitted
+     * @param maxOutstandingValue the number of informs that may be waiting for their responses at once
+     * @throws IOException if the channel cannot be watched
+     */
+    public InformTracker(final DatagramChannel channelValue,
+                         final long timeoutMillisValue,
+                         final int retriesValue,
+                         final int maxOutstandingValue) throws IOException {
+        channel = channelValue;
+        timeoutMillis = Math.max(1, timeoutMillisValue);
+        retries = Math.max(0, retriesValue);
+        maxOutstanding = Math.max(1, maxOutstandingValue);
+        slots = new Semaphore(maxOutstanding);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        receiver = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "SNMPTrapAppender-inform-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Takes an outstanding slot for an inform, waiting up to one timeout for one to become free.
+     *
+     * @return true if the inform may be sent, false if it has been dropped
+     */
+    boolean acquire() {
+        try {
+            if (!isClosed && slots.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                if (!isClosed) return true;
+                slots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedCount.incrementAndGet();
+        LogLog.warn("There are too many informs waiting for their responses -- the inform has been dropped.");
+        return false;
+    }
+
+    /**
+     * Starts tracking an inform, before it is sent for the first time.  The caller must hold a slot.
+     *
+     * @param requestId the request-id of the inform
+     * @param message the encoded message, from its position to its limit; it is copied
+     * @param address where the inform is sent
+     * @param target the destination, for the log
+     */
+    void track(final int requestId,
+               final ByteBuffer message,
+               final InetSocketAddress address,
+               final TrapDestination target) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes);
+        pending.put(Integer.valueOf(requestId), new PendingInform(bytes, address, target,
+                                                                  System.currentTimeMillis() + timeoutMillis));
+        sentCount.incrementAndGet();
+    }
+
+    /**
+     * Stops tracking an inform that could not be sent, and frees its slot.
+     *
+     * @param requestId the request-id of the inform
+     */
+    void untrack(final int requestId) {
+        if (null != pending.remove(Integer.valueOf(requestId))) {
+            sentCount.decrementAndGet();
+            slots.release();
+        }
+    }
+
+    /**
+     * Sets the handler told of the acknowledged and failed informs.
+     *
+     * @param handler the handler, or null
+     */
+    void setDeliveryHandler(final DeliveryHandler handler) {
+        deliveryHandler = handler;
+    }
+
+    /**
+     * Frees a slot that was taken for an inform that was not tracked after all.
+     */
+    void release() {
+        slots.release();
+    }
+
+    /**
+     * Stops reading the responses.  The informs still waiting are counted as failed, and the threads waiting for a
+     * slot give up.
+     */
+    public void close() {
+        isClosed = true;
+        selector.wakeup();
+        try {
+            receiver.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LogLog.warn("Error closing the inform selector", e);
+        }
+        final int unacknowledged = pending.size();
+        final DeliveryHandler handler = deliveryHandler;
+        for (final Iterator i = pending.values().iterator(); null != handler && i.hasNext();) {
+            final PendingInform inform = (PendingInform) i.next();
+            handler.failed(ByteBuffer.wrap(inform.message), inform.target);
+        }
+        pending.clear();
+        if (0 < unacknowledged) {
+            failedCount.addAndGet(unacknowledged);
+            LogLog.warn(new StringBuffer().append(unacknowledged)
+                    .append(" informs were still waiting for their responses when the sender was closed.").toString());
+        }
+        slots.release(maxOutstanding);
+    }
+
+    /**
+     * @return the number of informs sent, not counting retransmissions
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of informs acknowledged by a response
+     */
+    public long getAcknowledgedCount() {
+        return acknowledgedCount.get();
+    }
+
+    /**
+     * @return the number of retransmissions
+     */
+    public long getRetransmittedCount() {
+        return retransmittedCount.get();
+    }
+
+    /**
+     * @return the number of informs given up on, after their last retransmission timed out
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the number of informs dropped because there were too many waiting for their responses
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of informs waiting for their responses
+     */
+    public int getOutstandingCount() {
+        return pending.size();
+    }
+
+    private void receive() {
+        final ByteBuffer response = ByteBuffer.allocate(MAX_RESPONSE_SIZE);
+        final long tickMillis = Math.max(1, Math.min(MAX_TICK_MILLIS, timeoutMillis / 4));
+        long nextScan = System.currentTimeMillis() + tickMillis;
+        while (!isClosed) {
+            try {
+                selector.select(tickMillis);
+                selector.selectedKeys().clear();
+                while (!isClosed) {
+                    response.clear();
+                    final SocketAddress source = channel.receive(response);
+                    if (null == source) break;
+                    response.flip();
+                    acknowledge(getResponseRequestId(response), source);
+                }
+            } catch (IOException e) {
+                if (!isClosed) LogLog.error("There was an unexpected error while reading the inform responses", e);
+            } catch (RuntimeException e) {
+                //the channel was closed under us
+                if (!isClosed) LogLog.error("There was an unexpected error while reading the inform responses", e);
+            }
+            final long now = System.currentTimeMillis();
+            if (now >= nextScan) {
+                retransmit(now);
+                nextScan = now + tickMillis;
+            }
+        }
+    }
+
+    /**
+     * Removes the inform that a response acknowledges -- only if the response came from the address and port that
+     * the inform was sent to, so that no other host can cancel its retries.
+     */
+    private void acknowledge(final int requestId, final SocketAddress source) {
+        if (0 > requestId) return;
+        final Integer key = Integer.valueOf(requestId);
+        final PendingInform inform = (PendingInform) pending.get(key);
+        if (null != inform && inform.address.equals(source) && pending.remove(key, inform)) {
+            acknowledgedCount.incrementAndGet();
+            slots.release();
+            final DeliveryHandler handler = deliveryHandler;
+            if (null != handler) handler.acknowledged(inform.target);
+        }
+    }
+
+    /**
+     * Retransmits the informs that have timed out, and gives up on those that have no retries left.
+     */
+    private void retransmit(final long now) {
+        for (final Iterator i = pending.entrySet().iterator(); i.hasNext() && !isClosed;) {
+            final Map.Entry entry = (Map.Entry) i.next();
+            final PendingInform inform = (PendingInform) entry.getValue();
+            if (now < inform.deadline) continue;
+            if (retries <= inform.retransmissions) {
+                if (pending.remove(entry.getKey(), inform)) {
+                    failedCount.incrementAndGet();
+                    slots.release();
+                    final DeliveryHandler handler = deliveryHandler;
+                    if (null != handler) {
+                        handler.failed(ByteBuffer.wrap(inform.message), inform.target);
+                    } else {
+                        LogLog.warn(new StringBuffer().append("The inform to ").append(inform.target)
+                                .append(" was not acknowledged -- it has been dropped.").toString());
+                    }
+                }
+                continue;
+            }
+            inform.retransmissions++;
+            inform.deadline = now + (timeoutMillis << Math.min(inform.retransmissions, 16));
+            try {
+                channel.send(ByteBuffer.wrap(inform.message), inform.address);
+                retransmittedCount.incrementAndGet();
+            } catch (IOException e) {
+                LogLog.error(new StringBuffer().append("There was an unexpected error while resending the inform to ")
+                        .append(inform.target).toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Decodes the request-id of an SNMPv1/v2c Response-PDU.
+     *
+     * @param message the message
+     * @return the request-id, or -1 if the message is not a well-formed response
+     */
+    static int getResponseRequestId(final ByteBuffer message) {
+        return getRequestId(message, BerEncoder.RESPONSE_PDU);
+    }
+
+    /**
+     * Decodes the request-id of an SNMPv2c PDU of the given type.
+     *
+     * @param message the message
+     * @param pduType the tag of the PDU, e.g. BerEncoder.INFORM_PDU
+     * @return the request-id, or -1 if the message is not a well-formed PDU of that type
+     */
+    static int getRequestId(final ByteBuffer message, final int pduType) {
+        try {
+            if (BerEncoder.SEQUENCE != (message.get() & 0xFF)) return -1;
+            readLength(message);
+            if (BerEncoder.INTEGER != (message.get() & 0xFF)) return -1;
+            skip(message, readLength(message));
+            if (BerEncoder.OCTET_STRING != (message.get() & 0xFF)) return -1;
+            skip(message, readLength(message));
+            if (pduType != (message.get() & 0xFF)) return -1;
+            readLength(message);
+            if (BerEncoder.INTEGER != (message.get() & 0xFF)) return -1;
+            final int length = readLength(message);
+            if (1 > length || 4 < length) return -1;
+            int requestId = message.get();
+            for (int i = 1; i < length; i++) {
+                requestId = (requestId << 8) | (message.get() & 0xFF);
+            }
+            return Math.max(-1, requestId);
+        } catch (BufferUnderflowException e) {
+            return -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static int readLength(final ByteBuffer message) {
+        final int first = message.get() & 0xFF;
+        if (0x80 > first) return first;
+        final int octets = first & 0x7F;
+        if (1 > octets || 3 < octets) throw new IllegalArgumentException("Unsupported length");
+        int length = 0;
+        for (int i = 0; i < octets; i++) {
+            length = (length << 8) | (message.get() & 0xFF);
+        }
+        return length;
+    }
+
+    private static void skip(final ByteBuffer message, final int length) {
+        message.position(message.position() + length);
+    }
+
+    /**
+     * An inform waiting for its response.  Only the receiver thread changes it, once it is in the table.
+     */
+    private static final class PendingInform {
+
+        final byte[] message;
+        final InetSocketAddress address;
+        final TrapDestination target;
+        long deadline;
+        int retransmissions;
+
+        PendingInform(final byte[] messageValue,
+                      final InetSocketAddress addressValue,
+                      final TrapDestination targetValue,
+                      final long deadlineValue) {
+            message = messageValue;
+            address = addressValue;
+            target = targetValue;
+            deadline = deadlineValue;
+        }
+    }
+}
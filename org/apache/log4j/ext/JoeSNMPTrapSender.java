@@ -53,6 +53,7 @@ import org.apache.log4j.helpers.LogLog;
 import org.opennms.protocols.snmp.*;
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 /**
  * This class makes use of the JoeSNMP library to implement the underlying SNMP
@@ -108,9 +109,22 @@ import java.net.InetAddress;
  *
  * 2003-05-24: mwm : minor changes to accomodate the changes in the SnmpTrapSenderFacade interface.<br>
  *
+ * 2026-10-17: now a ReusableSnmpTrapSender -- the PDU lives in a per-trap builder, so one instance can be shared by
+ * all events of an appender.<br>
+ *
+ * 2026-10-17: the session, peer and agent address are now built once and kept for the life of the sender, instead of
+ * being rebuilt for every trap.  They are only rebuilt after a re-initialization or a session error.<br>
+ *
+ * 2026-10-17: the addresses are now taken from the appender's CachedInetAddress records, instead of being resolved
+ * here.<br>
+ *
+ * 2026-10-17: the enterprise OID is now parsed once per initialization; the specific trap type can be set per trap.<br>
+ *
+ * 2026-10-17: each trap is sent, over the one session, to every destination of the appender.<br>
+ *
  * @author Mark Masterson (<a href="mailto:m.masterson@computer.org">m.masterson@computer.org</a>)<br>
  */
-public class JoeSNMPTrapSender implements SnmpTrapHandler, SnmpTrapSenderFacade {
+public class JoeSNMPTrapSender implements SnmpTrapHandler, ReusableSnmpTrapSender {
 
     private String managementHost = "127.0.0.1";
     private int managementHostTrapListenPort = 162;
@@ -122,10 +136,18 @@ public class JoeSNMPTrapSender implements SnmpTrapHandler, SnmpTrapSenderFacade
     private String applicationTrapOID = "1.3.6.1.2.1.1.2.0.0.0.0";
     private String communityString = "public";
     private long sysUpTime;
-    private SnmpPduTrap pdu;
-    private SnmpTrapSession session;
-    private boolean isInitialized;
+    private volatile boolean isInitialized;
     private int trapVersion = 1;
+    private SnmpTrapBuilder legacyTrap;
+    private SnmpObjectId enterprise;
+    private final Object sessionLock = new Object();
+    private SnmpTrapSession session;
+    private TrapDestination[] destinations = new TrapDestination[0];
+    private SnmpPeer[] peers = new SnmpPeer[0];
+    private InetAddress[] peerAddresses = new InetAddress[0];
+    private SnmpIPAddress agentAddress;
+    private byte[] agentAddressBytes;
+    private CachedInetAddress localAddress;
 
     /**
      * Default constructor.
@@ -167,6 +189,9 @@ public class JoeSNMPTrapSender implements SnmpTrapHandler, SnmpTrapSenderFacade
                                      final int parm2,
                                      final Object parm3) {
         LogLog.error("There was a fatal error at the SNMP session layer.");
+        synchronized (sessionLock) {
+            if (parm1 == session) closeSession();
+        }
     }
 
     public void initialize(final SNMPTrapAppender appender) {
@@ -180,8 +205,104 @@ public class JoeSNMPTrapSender implements SnmpTrapHandler, SnmpTrapSenderFacade
         genericTrapType = appender.getGenericTrapType();
         specificTrapType = appender.getSpecificTrapType();
         trapVersion = appender.getTrapVersion();
-        pdu = new SnmpPduTrap();
+        localAddress = appender.getLocalAddress();
+        //parsed once, and shared by the PDU of every trap
+        enterprise = toSnmpObjectId(enterpriseOID);
+        //the configuration may have changed, so the next trap opens a new session
+        synchronized (sessionLock) {
+            closeSession();
+            destinations = appender.getDestinations();
+            peers = new SnmpPeer[destinations.length];
+            peerAddresses = new InetAddress[destinations.length];
+        }
         isInitialized = true;
+        legacyTrap = createTrap();
+    }
+
+    public SnmpTrapBuilder createTrap() {
+        return new JoeSnmpTrap(sysUpTime, specificTrapType);
+    }
+
+    /**
+     * Closes the session, if one is open.
+     */
+    public void close() {
+        synchronized (sessionLock) {
+            closeSession();
+        }
+    }
+
+    /**
+     * Makes sure the session and agent address are ready, creating them on first use or after an error.  Must be
+     * called with the session lock held.
+     *
+     * @throws Exception if the session could not be opened
+     */
+    private void openSession() throws Exception {
+        final byte[] localAddressBytes = localAddress.getAddressBytes();
+        if (null == localAddressBytes) throw new UnknownHostException(localIPAddress);
+        if (localAddressBytes != agentAddressBytes) {
+            final SnmpOctetString addr = new SnmpOctetString();
+            addr.setString(localAddressBytes);
+            agentAddress = new SnmpIPAddress(addr);
+            agentAddressBytes = localAddressBytes;
+        }
+        if (null == session || session.isClosed()) {
+            session = new SnmpTrapSession(this, localTrapSendPort);
+        }
+    }
+
+    /**
+     * Gets the peer for a destination, rebuilding it if the address of the destination has changed.  Must be called
+     * with the session lock held.
+     *
+     * @param index of the destination
+     * @return the peer
+     * @throws UnknownHostException if the destination has never been resolved
+     */
+    private SnmpPeer getPeer(final int index) throws UnknownHostException {
+        final TrapDestination destination = destinations[index];
+        final InetAddress hostAddress = destination.getAddress().getAddress();
+        if (null == hostAddress) throw new UnknownHostException(destination.getHost());
+        if (null == peers[index] || peerAddresses[index] != hostAddress) {
+            final SnmpPeer newPeer = new SnmpPeer(hostAddress);
+            newPeer.setPort(destination.getPort());
+            final SnmpParameters snmpParms = new SnmpParameters();
+            snmpParms.setReadCommunity(destination.getCommunityString());
+            if (2 == destination.getTrapVersion()) {
+                snmpParms.setVersion(SnmpSMI.SNMPV2);
+            } else {
+                snmpParms.setVersion(SnmpSMI.SNMPV1);
+            }
+            newPeer.setParameters(snmpParms);
+            peers[index] = newPeer;
+            peerAddresses[index] = hostAddress;
+        }
+        return peers[index];
+    }
+
+    /**
+     * Closes the session, so that the next trap opens a new one.  Must be called while holding the session lock.
+     */
+    private void closeSession() {
+        if (null != session && !session.isClosed()) session.close();
+        session = null;
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = null;
+        }
+        agentAddressBytes = null;
+    }
+
+    /**
+     * Builds the JoeSNMP OID from the arcs held by the {@link OIDRegistry}, rather than by parsing the string again.
+     * A malformed OID is left for JoeSNMP to deal with, as before.
+     */
+    private static SnmpObjectId toSnmpObjectId(final String oid) {
+        try {
+            return new SnmpObjectId(OIDRegistry.lookup(oid).getArcs());
+        } catch (IllegalArgumentException e) {
+            return new SnmpObjectId(oid);
+        }
     }
 
     public void addTrapMessageVariable(final String applicationTrapOIDValue,
@@ -191,26 +312,7 @@ public class JoeSNMPTrapSender implements SnmpTrapHandler, SnmpTrapSenderFacade
             LogLog.error("The initialize() method must be called before calling addTrapMessageVariable()");
             return;
         }
-        // add OID
-        if (applicationTrapOIDValue != null) {
-            applicationTrapOID = applicationTrapOIDValue;
-        }
-        final SnmpObjectId oid = new SnmpObjectId(applicationTrapOID);
-        // set the type
-        final SnmpOctetString msg = new SnmpOctetString();
-        msg.setString(value);
-        // create SnmpVar instance for the value and the type
-        try {
-            //create varbind
-            final SnmpVarBind varbind = new SnmpVarBind(oid, msg);
-            // add variable binding
-            pdu.addVarBind(varbind);
-        } catch (Exception e) {
-            LogLog.error(new StringBuffer().append("Unexpected error creating SNMP bind variable: ")
-                    .append(oid)
-                    .append(" with value: ")
-                    .append(value).toString(), e);
-        }
+        legacyTrap.addTrapMessageVariable(applicationTrapOIDValue, value);
     }
 
     public void sendTrap() {
@@ -219,40 +321,96 @@ public class JoeSNMPTrapSender implements SnmpTrapHandler, SnmpTrapSenderFacade
             LogLog.error("The initialize() method must be called before calling sendTrap()");
             return;
         }
-        //open the session, set the PDU's values and send the packet
-        try {
-            session = new SnmpTrapSession(this, localTrapSendPort);
-            final SnmpPeer peer = new SnmpPeer(InetAddress.getByName(managementHost));
-            peer.setPort(managementHostTrapListenPort);
-            final SnmpParameters snmpParms = new SnmpParameters();
-            snmpParms.setReadCommunity(communityString);
-            if (2 == trapVersion) {
-                snmpParms.setVersion(SnmpSMI.SNMPV2);
-            } else {
-                snmpParms.setVersion(SnmpSMI.SNMPV1);
+        legacyTrap.sendTrap();
+        legacyTrap = createTrap();
+    }
+
+    /**
+     * A single trap PDU, sent using the configuration of the enclosing sender.
+     */
+    private final class JoeSnmpTrap implements SnmpTrapBuilder {
+
+        private final SnmpPduTrap pdu = new SnmpPduTrap();
+        private long trapSysUpTime;
+        private int trapSpecificTrapType;
+
+        JoeSnmpTrap(final long sysUpTimeValue, final int specificTrapTypeValue) {
+            trapSysUpTime = sysUpTimeValue;
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void setSysUpTime(final long sysUpTimeValue) {
+            trapSysUpTime = sysUpTimeValue;
+        }
+
+        public void setSpecificTrapType(final int specificTrapTypeValue) {
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                           final String value) {
+            // add OID
+            final SnmpObjectId oid = toSnmpObjectId(null != applicationTrapOIDValue
+                                                    ? applicationTrapOIDValue
+                                                    : applicationTrapOID);
+            // set the type
+            final SnmpOctetString msg = new SnmpOctetString();
+            msg.setString(value);
+            // create SnmpVar instance for the value and the type
+            try {
+                //create varbind
+                final SnmpVarBind varbind = new SnmpVarBind(oid, msg);
+                // add variable binding
+                pdu.addVarBind(varbind);
+            } catch (Exception e) {
+                LogLog.error(new StringBuffer().append("Unexpected error creating SNMP bind variable: ")
+                        .append(oid)
+                        .append(" with value: ")
+                        .append(value).toString(), e);
             }
-            peer.setParameters(snmpParms);
-            if (null != pdu) {
-                pdu.setEnterprise(enterpriseOID);
-                final SnmpOctetString addr = new SnmpOctetString();
-                addr.setString(InetAddress.getByName(localIPAddress).getAddress());
-                final SnmpIPAddress ipAddr = new SnmpIPAddress(addr);
-                pdu.setAgentAddress(ipAddr);
-                pdu.setGeneric(genericTrapType);
-                pdu.setSpecific(specificTrapType);
-                pdu.setTimeStamp(sysUpTime);
-                if (0 < pdu.getLength()) {
-                    session.send(peer, pdu);
+        }
+
+        public void sendTrap() {
+            //check pre-condition
+            if (!isInitialized) {
+                LogLog.error("The initialize() method must be called before calling sendTrap()");
+                return;
+            }
+            //set the PDU's values and send the packet over the shared session
+            pdu.setEnterprise(enterprise);
+            pdu.setGeneric(genericTrapType);
+            pdu.setSpecific(trapSpecificTrapType);
+            pdu.setTimeStamp(trapSysUpTime);
+            if (0 >= pdu.getLength()) return;
+            synchronized (sessionLock) {
+                try {
+                    openSession();
+                } catch (Exception e) {
+                    LogLog.error("There was an unexpected error", e);
+                    closeSession();
+                    return;
+                }
+                pdu.setAgentAddress(agentAddress);
+                boolean isSessionBroken = false;
+                //a failure to send to one destination does not stop the trap from going to the others
+                for (int i = 0; i < destinations.length; i++) {
+                    try {
+                        session.send(getPeer(i), pdu);
+                    } catch (SnmpPduEncodingException ex) {
+                        LogLog.error("There were problems with the SNMP parameters -- could not create and send trap",
+                                     ex);
+                    } catch (UnknownHostException e) {
+                        LogLog.error(new StringBuffer().append("The management host ").append(e.getMessage())
+                                .append(" has not been resolved -- the trap has been dropped.").toString());
+                    } catch (Exception e) {
+                        LogLog.error(new StringBuffer().append("There was an unexpected error sending the trap to ")
+                                .append(destinations[i]).toString(), e);
+                        isSessionBroken = true;
+                    }
                 }
+                //the session may be unusable, so start again with the next trap
+                if (isSessionBroken) closeSession();
             }
-        } catch (SnmpPduEncodingException ex) {
-            LogLog.error("There were problems with the SNMP parameters -- could not create and send trap", ex);
-        } catch (Exception e) {
-            LogLog.error("There was an unexpected error", e);
-        } finally {
-            //this is running on a seperate thread, so make sure it gets
-            //cleaned up...
-            if (null != session && !session.isClosed()) session.close();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+/**
+ * Title: LatencySnapshot<br>
+ * Description: The counts and statistics of a {@link LatencyHistogram} at one point in time, as shown by JMX.<br>
+ * @version 1.0<br>
+ */
+public final class LatencySnapshot {
+
+    private final long count;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+    private final long[] buckets;
+
+    LatencySnapshot(final long countValue,
+                    final long meanMicrosValue,
+                    final long p50MicrosValue,
+                    final long p99MicrosValue,
+                    final long maxMicrosValue,
+                    final long[] bucketsValue) {
+        count = countValue;
+        meanMicros = meanMicrosValue;
+        p50Micros = p50MicrosValue;
+        p99Micros = p99MicrosValue;
+        maxMicros = maxMicrosValue;
+        buckets = bucketsValue;
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean latency, in microseconds
+     */
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * @return the median latency, in microseconds, rounded up to a power of two
+     */
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * @return the 99th percentile latency, in microseconds, rounded up to a power of two
+     */
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * @return the longest latency, in microseconds
+     */
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @return the counts of the buckets; bucket <i>i</i> counts the latencies below 2<sup><i>i</i></sup> microseconds
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    public String toString() {
+        return new StringBuffer().append("count=").append(count).append(", mean=").append(meanMicros)
+                .append("us, p50<").append(p50Micros).append("us, p99<").append(p99Micros).append("us, max=")
+                .append(maxMicros).append("us").toString();
+    }
+}
@@ -1,237 +1,406 @@
-/*
- *
- *
-============================================================================
- *     This license is based on the Apache Software License, Version 1.1
- *
-============================================================================
- *
- *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
- *
- * Redistribution and use in source and binary forms, with or without modifica-
- * tion, are permitted provided that the following conditions are met:
- *
- * 1. Redistributions of  source code must  retain the above copyright  notice,
- *    this list of conditions and the following disclaimer.
- *
- * 2. Redistributions in binary form must reproduce the above copyright notice,
- *    this list of conditions and the following disclaimer in the documentation
- *    and/or other materials provided with the distribution.
- *
- * 3. The end-user documentation included with the redistribution, if any, must
- *    include  the following  acknowledgment:  "This product includes  software
- *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
- *    Alternately, this  acknowledgment may  appear in the software itself,  if
- *    and wherever such third-party acknowledgments normally appear.
- *
- * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
- *    not be used to endorse or promote products derived  from this  software
- *    without  prior written permission. For written permission, please contact
- *    m.masterson@computer.org.
- *
- * 5. Products  derived from this software may not  be called "Apache", nor may
- *    "Apache" appear  in their name,  without prior written permission  of the
- *    Apache Software Foundation.
- *
- * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
- * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
- * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
- * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
- * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
- * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
- * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
- * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
- * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
- * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
- *
- *
- */
-package org.apache.log4j.ext;
-
-import org.apache.log4j.helpers.LogLog;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
-
-/**
- * Title: NetSnmpCommandLineTrapSender<br>
- * <br>
- * Description: This class makes use of the NetSNMP <b>snmptrap</b> utility to
- * send traps that implement the underlying SNMP protocol(s).<br>
- * <br>
- * NOTE: this class is intended primarily as a "proof-of-concept", and to serve
- * as an example of a possible usage of a command line trap sending utility with
- * the appender.  This class is not intended for production-grade environments!<br>
- * <br>
- * You can get a copy of NetSNMP <a href="http://net-snmp.sourceforge.net/">here</a>.<br>
- * <br>
- * You will need a copy of the library (e.g. "snmptrap.exe" and "libsnmp.dll" on Win32
- * platforms, at a minimum) to use this class.<br>
- * <br>
- * This sender launches a separate process, calling the NetSnmp utility "snmptrap" to
- * send a trap.  Because this sender's job is to start an operating system process,
- * it needs to know things that are not readily available to it via the normal avenues
- * open to a Log4J Appender.  In particular, it needs to know the location of
- * the NetSnmp binaries (the file system path), and the path to the MIB files used
- * by NetSnmp.  You communicate this information to the sender using Java System
- * Properties.<br>
- * <br>
- * The path to the NetSnmp binaries is set via the property
- * "log4j.ext.snmpTrapAppender.netSnmp.binPath".   If not set, the sender defaults to a value
- * of "/usr/local/bin/".<br>
- * <br>
- * The path to the NetSnmp MIBs is set via the property
- * "log4j.ext.snmpTrapAppender.netSnmp.mibsPath".   If not set, the sender defaults to a value
- * of "/usr/local/share/mibs".<br>
- * <br>
- * You can also get the sender to emit some diagnostic/debugging information by setting the
- * value of the "log4j.ext.snmpTrapAppender.netSnmp.diagnostic" property to "true".<br>
- * <br>
- * Thus, as an example, the following options to the "java" command line set the binary path,
- * the MIB path and the diagnostic flag for this sender:<br>
- * <br>
- * <code>-Dlog4j.ext.snmpTrapAppender.netSnmp.binPath="D:\\apps\\ucd-snmp-4.2.3-win32\\usr\\bin\\"
- * -Dlog4j.ext.snmpTrapAppender.netSnmp.mibsPath="D:\\apps\\ucd-snmp-4.2.3-win32\\usr\\mibs"
- * -Dlog4j.ext.snmpTrapAppender.netSnmp.diagnostic="true"</code><br>
- * <p>
- * @author Mark Masterson (<a href="mailto:m.masterson@computer.org">m.masterson@computer.org</a>)<br>
- * @version 1.0.1<br>
- * 2002-11-01<br>
- * changes ---<br>
- *
- * 2002-12-10: mwm : minor tweaks and prettying up of code.<br>
- *
- * 2003-05-24: mwm : minor changes to accomodate the changes in the SnmpTrapSenderFacade interface.<br>
- */
-public class NetSnmpCommandLineTrapSender implements SnmpTrapSenderFacade {
-
-    private static final String NET_SNMP_CMD_LINE_TRAP_SENDER_DIAGNOSTIC_PROPERTY
-            = "log4j.ext.snmpTrapAppender.netSnmp.diagnostic";
-    private static final String NET_SNMP_BIN_PATH_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.binPath";
-    private static final String NET_SNMP_MIBS_PATH_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.mibsPath";
-    private static final String NET_SNMP_BIN_PATH_DEFAULT = "/usr/local/bin/";
-    private static final String NET_SNMP_MIBS_PATH_DEFAULT = "/usr/local/share/mibs";
-    private String managementHost = "127.0.0.1";
-    private String enterpriseOID = "1.3.6.1.2.1.1.2.0";
-    private String localIPAddress = "127.0.0.1";
-    private int genericTrapType;
-    private int specificTrapType = 6;
-    private String communityString = "public";
-    private long sysUpTime;
-    private boolean isInitialized;
-    private List bindVariables;
-
-    public void initialize(final SNMPTrapAppender appender) {
-        managementHost = appender.getManagementHost();
-        enterpriseOID = appender.getEnterpriseOID();
-        localIPAddress = appender.getLocalIPAddress();
-        communityString = appender.getCommunityString();
-        sysUpTime = appender.getSysUpTime();
-        genericTrapType = appender.getGenericTrapType();
-        specificTrapType = appender.getSpecificTrapType();
-        bindVariables = new ArrayList();
-        isInitialized = true;
-    }
-
-    public void addTrapMessageVariable(final String applicationTrapOIDValue,
-                                       final String value) {
-        //check pre-condition
-        if (!isInitialized) {
-            LogLog.error("The initialize() method must be called before calling addTrapMessageVariable()");
-            return;
-        }
-        bindVariables.add(new BindVariable(applicationTrapOIDValue, value));
-    }
-
-    public void sendTrap() {
-        final String binPath = System.getProperty(NET_SNMP_BIN_PATH_PROPERTY, NET_SNMP_BIN_PATH_DEFAULT);
-        final String mibsPath = System.getProperty(NET_SNMP_MIBS_PATH_PROPERTY, NET_SNMP_MIBS_PATH_DEFAULT);
-        final boolean diagnosticFlag = Boolean.getBoolean(NET_SNMP_CMD_LINE_TRAP_SENDER_DIAGNOSTIC_PROPERTY);
-        if (diagnosticFlag) {
-            LogLog.error(binPath);
-            LogLog.error(mibsPath);
-        }
-        final int index = 0;
-        final String[] paramsX = sizeParameterArray();
-        try {
-            paramsX[index] = new StringBuffer().append(binPath).append("snmptrap").toString();
-            fillParamsArray(paramsX, index, mibsPath);
-            if (diagnosticFlag) LogLog.error(new StringBuffer().append("Command line array contains: ")
-                    .append(Arrays.asList(paramsX)).toString());
-            final Process einProcess = Runtime.getRuntime().exec(paramsX, null, new File(binPath));
-            handleProcessStream(new BufferedReader(new InputStreamReader(einProcess.getInputStream())), diagnosticFlag);
-            handleProcessStream(new BufferedReader(new InputStreamReader(einProcess.getErrorStream())), diagnosticFlag);
-            final int rc = einProcess.waitFor();
-            if (0 != rc) {
-                LogLog.error("Error executing snmptrap!");
-            }
-        } catch (Exception e) {
-            LogLog.error("Error executing snmptrap!", e);
-        }
-    }
-
-    private String[] sizeParameterArray() {
-        final int mandatoryParameterCount = 9;
-        final int variableParameterCount = 3 * bindVariables.size();
-        return new String[mandatoryParameterCount + variableParameterCount];
-    }
-
-    private static void handleProcessStream(final BufferedReader bufferedInputStreamReader,
-                                            final boolean diagnosticFlag)
-            throws IOException, InterruptedException {
-        for (int i = 0; 99 > i; i++) {
-            if (bufferedInputStreamReader.ready()) break;
-            else Thread.sleep(100);
-        }
-        while (bufferedInputStreamReader.ready()) {
-            if (diagnosticFlag) {
-                LogLog.error(bufferedInputStreamReader.readLine());
-            } else {
-                bufferedInputStreamReader.readLine();
-            }
-        }
-        bufferedInputStreamReader.close();
-    }
-
-    private void fillParamsArray(final String[] paramsX, int index, final String mibsPath) {
-        paramsX[++index] = new StringBuffer().append("-M ").append(mibsPath).toString();
-        paramsX[++index] = managementHost;
-        paramsX[++index] = communityString;
-        paramsX[++index] = new StringBuffer().append('.').append(enterpriseOID).toString();
-        paramsX[++index] = localIPAddress;
-        paramsX[++index] = Integer.toString(genericTrapType);
-        paramsX[++index] = Integer.toString(specificTrapType);
-        paramsX[++index] = Long.toString(sysUpTime);
-        for (Iterator varsIt = bindVariables.iterator(); varsIt.hasNext();) {
-            final BindVariable tmpVar = (BindVariable) varsIt.next();
-            paramsX[++index] = new StringBuffer().append('.').append(tmpVar.getOid()).toString();
-            paramsX[++index] = "s";
-            paramsX[++index] = new StringBuffer().append('\"').append(tmpVar.getValue()).append('\"').toString();
-        }
-    }
-
-    private static class BindVariable {
-
-        private final String oid;
-        private final String value;
-
-        BindVariable(final String oidValue, final String variableValue) {
-            oid = oidValue;
-            value = variableValue;
-        }
-
-        public String getOid() {
-            return oid;
-        }
-
-        public String getValue() {
-            return value;
-        }
-    }
-}
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Title: NetSnmpCommandLineTrapSender<br>
+ * <br>
+ * Description: This class makes use of the NetSNMP <b>snmptrap</b> utility to
+ * send traps that implement the underlying SNMP protocol(s).<br>
+ * <br>
+ * NOTE: this class is intended primarily as a "proof-of-concept", and to serve
+ * as an example of a possible usage of a command line trap sending utility with
+ * the appender.  This class is not intended for production-grade environments!<br>
+ * <br>
+ * You can get a copy of NetSNMP <a href="http://net-snmp.sourceforge.net/">here</a>.<br>
+ * <br>
+ * You will need a copy of the library (e.g. "snmptrap.exe" and "libsnmp.dll" on Win32
+ * platforms, at a minimum) to use this class.<br>
+ * <br>
+ * This sender launches a separate process, calling the NetSnmp utility "snmptrap" to
+ * send a trap.  Because this sender's job is to start an operating system process,
+ * it needs to know things that are not readily available to it via the normal avenues
+ * open to a Log4J Appender.  In particular, it needs to know the location of
+ * the NetSnmp binaries (the file system path), and the path to the MIB files used
+ * by NetSnmp.  You communicate this information to the sender using Java System
+ * Properties.<br>
+ * <br>
+ * The path to the NetSnmp binaries is set via the property
+ * "log4j.ext.snmpTrapAppender.netSnmp.binPath".   If not set, the sender defaults to a value
+ * of "/usr/local/bin/".<br>
+ * <br>
+ * The path to the NetSnmp MIBs is set via the property
+ * "log4j.ext.snmpTrapAppender.netSnmp.mibsPath".   If not set, the sender defaults to a value
+ * of "/usr/local/share/mibs".<br>
+ * <br>
+ * You can also get the sender to emit some diagnostic/debugging information by setting the
+ * value of the "log4j.ext.snmpTrapAppender.netSnmp.diagnostic" property to "true".<br>
+ * <br>
+ * Thus, as an example, the following options to the "java" command line set the binary path,
+ * the MIB path and the diagnostic flag for this sender:<br>
+ * <br>
+ * <code>-Dlog4j.ext.snmpTrapAppender.netSnmp.binPath="D:\\apps\\ucd-snmp-4.2.3-win32\\usr\\bin\\"
+ * -Dlog4j.ext.snmpTrapAppender.netSnmp.mibsPath="D:\\apps\\ucd-snmp-4.2.3-win32\\usr\\mibs"
+ * -Dlog4j.ext.snmpTrapAppender.netSnmp.diagnostic="true"</code><br>
+ * <br>
+ * The processes are started by a small pool of daemon threads, never by the thread that logs the event.  At most
+ * "log4j.ext.snmpTrapAppender.netSnmp.maxProcesses" (default 4) snmptrap processes run at once; up to
+ * "log4j.ext.snmpTrapAppender.netSnmp.queueSize" (default 256) more traps wait for a free slot, and any beyond that
+ * are dropped.  A process that has not exited after "log4j.ext.snmpTrapAppender.netSnmp.timeoutMillis" (default
+ * 10000) milliseconds is killed.  The output of snmptrap is discarded, or passed on to the console of the JVM when
+ * the diagnostic flag is set.  The time taken to fork and exec snmptrap, and the processes killed and the traps
+ * dropped, are recorded in the appender's {@link TrapMetrics}.<br>
+ * <p>
+ * @author Mark Masterson (<a href="mailto:m.masterson@computer.org">m.masterson@computer.org</a>)<br>
+ * @version 1.0.1<br>
+ * 2002-11-01<br>
+ * changes ---<br>
+ *
+ * 2002-12-10: mwm : minor tweaks and prettying up of code.<br>
+ *
+ * 2003-05-24: mwm : minor changes to accomodate the changes in the SnmpTrapSenderFacade interface.<br>
+ *
+ * 2026-10-17: now a ReusableSnmpTrapSender -- the bind variables live in a per-trap builder, so one instance can
+ * be shared by all events of an appender.<br>
+ *
+ * 2026-10-17: the addresses are now taken from the appender's CachedInetAddress records, so snmptrap is given numeric
+ * addresses and does not have to resolve them.<br>
+ *
+ * 2026-10-17: the fixed parameters are now formatted once per initialization; the specific trap type can be set per
+ * trap.<br>
+ *
+ * 2026-10-17: snmptrap is now run by a bounded pool, with its output redirected instead of polled for, and a timeout
+ * after which it is killed.<br>
+ *
+ * 2026-10-17: each trap is sent to every destination of the appender, by a process per destination, with the port
+ * and community of that destination.  As before, the version is left to the NetSnmp configuration.<br>
+ */
+public class NetSnmpCommandLineTrapSender implements ReusableSnmpTrapSender {
+
+    private static final String NET_SNMP_CMD_LINE_TRAP_SENDER_DIAGNOSTIC_PROPERTY
+            = "log4j.ext.snmpTrapAppender.netSnmp.diagnostic";
+    private static final String NET_SNMP_BIN_PATH_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.binPath";
+    private static final String NET_SNMP_MIBS_PATH_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.mibsPath";
+    private static final String NET_SNMP_BIN_PATH_DEFAULT = "/usr/local/bin/";
+    private static final String NET_SNMP_MIBS_PATH_DEFAULT = "/usr/local/share/mibs";
+    private static final String NET_SNMP_MAX_PROCESSES_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.maxProcesses";
+    private static final String NET_SNMP_QUEUE_SIZE_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.queueSize";
+    private static final String NET_SNMP_TIMEOUT_MILLIS_PROPERTY = "log4j.ext.snmpTrapAppender.netSnmp.timeoutMillis";
+    private static final int NET_SNMP_MAX_PROCESSES_DEFAULT = 4;
+    private static final int NET_SNMP_QUEUE_SIZE_DEFAULT = 256;
+    private static final long NET_SNMP_TIMEOUT_MILLIS_DEFAULT = 10000L;
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+    private String managementHost = "127.0.0.1";
+    private String enterpriseOID = "1.3.6.1.2.1.1.2.0";
+    private String localIPAddress = "127.0.0.1";
+    private int genericTrapType;
+    private int specificTrapType = 6;
+    private String communityString = "public";
+    private long sysUpTime;
+    private volatile boolean isInitialized;
+    private TrapDestination[] destinations = new TrapDestination[0];
+    private CachedInetAddress localAddress;
+    private SnmpTrapBuilder legacyTrap;
+    private String enterpriseParameter;
+    private String genericTrapTypeParameter;
+    private ThreadPoolExecutor processPool;
+    private long timeoutMillis = NET_SNMP_TIMEOUT_MILLIS_DEFAULT;
+    private TrapMetrics metrics;
+
+    public void initialize(final SNMPTrapAppender appender) {
+        managementHost = appender.getManagementHost();
+        enterpriseOID = appender.getEnterpriseOID();
+        localIPAddress = appender.getLocalIPAddress();
+        communityString = appender.getCommunityString();
+        sysUpTime = appender.getSysUpTime();
+        genericTrapType = appender.getGenericTrapType();
+        specificTrapType = appender.getSpecificTrapType();
+        destinations = appender.getDestinations();
+        localAddress = appender.getLocalAddress();
+        metrics = appender.getMetrics();
+        //the parameters that are the same for every trap
+        enterpriseParameter = toParameter(enterpriseOID);
+        genericTrapTypeParameter = Integer.toString(genericTrapType);
+        timeoutMillis = Long.getLong(NET_SNMP_TIMEOUT_MILLIS_PROPERTY, NET_SNMP_TIMEOUT_MILLIS_DEFAULT).longValue();
+        if (null == processPool) processPool = createProcessPool();
+        isInitialized = true;
+        legacyTrap = createTrap();
+    }
+
+    public SnmpTrapBuilder createTrap() {
+        return new CommandLineTrap(sysUpTime, specificTrapType);
+    }
+
+    /**
+     * Stops the process pool.  The traps already queued are still sent, but are not waited for.
+     */
+    public void close() {
+        isInitialized = false;
+        if (null != processPool) {
+            processPool.shutdown();
+            processPool = null;
+        }
+    }
+
+    private static ThreadPoolExecutor createProcessPool() {
+        final int maxProcesses = Math.max(1, Integer.getInteger(NET_SNMP_MAX_PROCESSES_PROPERTY,
+                                                                NET_SNMP_MAX_PROCESSES_DEFAULT).intValue());
+        final int queueSize = Math.max(1, Integer.getInteger(NET_SNMP_QUEUE_SIZE_PROPERTY,
+                                                             NET_SNMP_QUEUE_SIZE_DEFAULT).intValue());
+        final String namePrefix = new StringBuffer().append("SNMPTrapAppender-snmptrap-")
+                .append(POOL_COUNT.incrementAndGet()).append('-').toString();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxProcesses, maxProcesses, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(queueSize), new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, namePrefix + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                       final String value) {
+        //check pre-condition
+        if (!isInitialized) {
+            LogLog.error("The initialize() method must be called before calling addTrapMessageVariable()");
+            return;
+        }
+        legacyTrap.addTrapMessageVariable(applicationTrapOIDValue, value);
+    }
+
+    public void sendTrap() {
+        //check pre-condition
+        if (!isInitialized) {
+            LogLog.error("The initialize() method must be called before calling sendTrap()");
+            return;
+        }
+        legacyTrap.sendTrap();
+        legacyTrap = createTrap();
+    }
+
+    private void sendTrap(final List bindVariables, final long trapSysUpTime, final int trapSpecificTrapType) {
+        final ThreadPoolExecutor pool = processPool;
+        if (!isInitialized || null == pool) {
+            LogLog.error("The initialize() method must be called before calling sendTrap()");
+            return;
+        }
+        final String binPath = System.getProperty(NET_SNMP_BIN_PATH_PROPERTY, NET_SNMP_BIN_PATH_DEFAULT);
+        final String mibsPath = System.getProperty(NET_SNMP_MIBS_PATH_PROPERTY, NET_SNMP_MIBS_PATH_DEFAULT);
+        final boolean diagnosticFlag = Boolean.getBoolean(NET_SNMP_CMD_LINE_TRAP_SENDER_DIAGNOSTIC_PROPERTY);
+        if (diagnosticFlag) {
+            LogLog.error(binPath);
+            LogLog.error(mibsPath);
+        }
+        final TrapDestination[] targets = destinations;
+        //one process per destination, so that a slow destination does not hold up the others
+        for (int i = 0; i < targets.length; i++) {
+            final int index = 0;
+            final String[] paramsX = sizeParameterArray(bindVariables);
+            paramsX[index] = new StringBuffer().append(binPath).append("snmptrap").toString();
+            fillParamsArray(paramsX, index, mibsPath, targets[i], bindVariables, trapSysUpTime,
+                            trapSpecificTrapType);
+            if (diagnosticFlag) LogLog.error(new StringBuffer().append("Command line array contains: ")
+                    .append(Arrays.asList(paramsX)).toString());
+            try {
+                pool.execute(new Runnable() {
+                    public void run() {
+                        runSnmpTrap(paramsX, binPath, diagnosticFlag);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                metrics.processDropped();
+                LogLog.error("Too many snmptrap processes are waiting to run -- the trap has been dropped.");
+            }
+        }
+    }
+
+    /**
+     * Runs snmptrap, on a thread of the process pool, and waits for it to exit.
+     */
+    private void runSnmpTrap(final String[] paramsX, final String binPath, final boolean diagnosticFlag) {
+        final ProcessBuilder.Redirect output = diagnosticFlag
+                                               ? ProcessBuilder.Redirect.INHERIT
+                                               : ProcessBuilder.Redirect.DISCARD;
+        final ProcessBuilder builder = new ProcessBuilder(paramsX).directory(new File(binPath))
+                .redirectOutput(output).redirectError(output);
+        try {
+            final long start = System.nanoTime();
+            final Process einProcess = builder.start();
+            metrics.processForked(System.nanoTime() - start);
+            if (!einProcess.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                einProcess.destroyForcibly();
+                metrics.processTimedOut();
+                LogLog.error(new StringBuffer().append("snmptrap did not exit within ").append(timeoutMillis)
+                        .append(" ms, and has been killed.").toString());
+            } else if (0 != einProcess.exitValue()) {
+                LogLog.error("Error executing snmptrap!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LogLog.error("Error executing snmptrap!", e);
+        }
+    }
+
+    private static String[] sizeParameterArray(final List bindVariables) {
+        final int mandatoryParameterCount = 9;
+        final int variableParameterCount = 3 * bindVariables.size();
+        return new String[mandatoryParameterCount + variableParameterCount];
+    }
+
+    private void fillParamsArray(final String[] paramsX, int index, final String mibsPath,
+                                 final TrapDestination destination, final List bindVariables, final long trapSysUpTime,
+                                 final int trapSpecificTrapType) {
+        paramsX[++index] = new StringBuffer().append("-M ").append(mibsPath).toString();
+        final String hostAddress = destination.getAddress().getHostAddress();
+        final String host = null != hostAddress ? hostAddress : destination.getHost();
+        if (162 == destination.getPort()) {
+            paramsX[++index] = host;
+        } else if (-1 == host.indexOf(':')) {
+            paramsX[++index] = new StringBuffer().append(host).append(':').append(destination.getPort()).toString();
+        } else {
+            paramsX[++index] = new StringBuffer().append("udp6:[").append(host).append("]:")
+                    .append(destination.getPort()).toString();
+        }
+        paramsX[++index] = destination.getCommunityString();
+        paramsX[++index] = enterpriseParameter;
+        paramsX[++index] = null != localAddress.getHostAddress() ? localAddress.getHostAddress() : localIPAddress;
+        paramsX[++index] = genericTrapTypeParameter;
+        paramsX[++index] = Integer.toString(trapSpecificTrapType);
+        paramsX[++index] = Long.toString(trapSysUpTime);
+        for (Iterator varsIt = bindVariables.iterator(); varsIt.hasNext();) {
+            final BindVariable tmpVar = (BindVariable) varsIt.next();
+            paramsX[++index] = toParameter(tmpVar.getOid());
+            paramsX[++index] = "s";
+            paramsX[++index] = new StringBuffer().append('\"').append(tmpVar.getValue()).append('\"').toString();
+        }
+    }
+
+    /**
+     * @return the OID with a leading dot, as held by the {@link OIDRegistry}; a malformed OID is passed on as before,
+     * for snmptrap to report
+     */
+    private static String toParameter(final String oid) {
+        try {
+            return OIDRegistry.lookup(oid).getAbsoluteName();
+        } catch (IllegalArgumentException e) {
+            return new StringBuffer().append('.').append(oid).toString();
+        }
+    }
+
+    /**
+     * The bind variables of a single trap, sent using the configuration of the enclosing sender.
+     */
+    private final class CommandLineTrap implements SnmpTrapBuilder {
+
+        private final List bindVariables = new ArrayList();
+        private long trapSysUpTime;
+        private int trapSpecificTrapType;
+
+        CommandLineTrap(final long sysUpTimeValue, final int specificTrapTypeValue) {
+            trapSysUpTime = sysUpTimeValue;
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void setSysUpTime(final long sysUpTimeValue) {
+            trapSysUpTime = sysUpTimeValue;
+        }
+
+        public void setSpecificTrapType(final int specificTrapTypeValue) {
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                           final String value) {
+            bindVariables.add(new BindVariable(applicationTrapOIDValue, value));
+        }
+
+        public void sendTrap() {
+            NetSnmpCommandLineTrapSender.this.sendTrap(bindVariables, trapSysUpTime, trapSpecificTrapType);
+        }
+    }
+
+    private static class BindVariable {
+
+        private final String oid;
+        private final String value;
+
+        BindVariable(final String oidValue, final String variableValue) {
+            oid = oidValue;
+            value = variableValue;
+        }
+
+        public String getOid() {
+            return oid;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
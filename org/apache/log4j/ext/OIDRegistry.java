@@ -0,0 +1,146 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: OIDRegistry<br>
+ * Description: The OIDs used by the appenders, senders and layouts of this package, each parsed and encoded once,
+ * into an {@link ObjectIdentifier}, and shared by all of them.<p>
+ * The same few OIDs -- the ApplicationTrapOID, the EnterpriseOID, those of a SnmpDelimitedConversionPatternLayout
+ * -- are named by every trap, so looking one up is a single get from a ConcurrentHashMap, keyed by the string as
+ * given.  Each OID is interned: "1.3.6.1" and ".1.3.6.1" map to the same instance.  Malformed OIDs are remembered
+ * as well, with the reason they were rejected, so that they are not parsed again on each lookup.<p>
+ * The registry holds at most MAX_SIZE strings.  Once it is full, the OIDs not yet in it are parsed on each lookup,
+ * and counted; with OIDs taken from the configuration, that does not happen.<br>
+ * @version 1.0<br>
+ */
+public final class OIDRegistry {
+
+    /** The number of strings the registry holds. */
+    public static final int MAX_SIZE = 4096;
+
+    private static final ConcurrentHashMap REGISTRY = new ConcurrentHashMap();
+    private static final AtomicLong UNCACHED_COUNT = new AtomicLong();
+
+    private OIDRegistry() {
+    }
+
+    /**
+     * Gets the parsed form of an OID.
+     *
+     * @param oid in dotted decimal notation, with or without a leading dot
+     * @return the OID
+     * @throws IllegalArgumentException if the OID is malformed, see {@link ObjectIdentifier}
+     */
+    public static ObjectIdentifier lookup(final String oid) {
+        final Object found = null == oid ? null : REGISTRY.get(oid);
+        if (found instanceof ObjectIdentifier) return (ObjectIdentifier) found;
+        //a malformed OID, with the reason it was rejected
+        if (null != found) throw new IllegalArgumentException((String) found);
+        return register(oid);
+    }
+
+    /**
+     * Gets the dotted decimal name of an OID, as held by the registry, without a leading dot.  Malformed OIDs are
+     * returned as they are, for the caller to report.
+     *
+     * @param oid in dotted decimal notation, with or without a leading dot
+     * @return the interned name
+     */
+    public static String intern(final String oid) {
+        try {
+            return lookup(oid).getName();
+        } catch (IllegalArgumentException e) {
+            return oid;
+        }
+    }
+
+    private static ObjectIdentifier register(final String oid) {
+        final ObjectIdentifier parsed;
+        try {
+            parsed = new ObjectIdentifier(oid);
+        } catch (IllegalArgumentException e) {
+            if (null != oid && MAX_SIZE <= REGISTRY.size()) {
+                UNCACHED_COUNT.incrementAndGet();
+            } else if (null != oid) {
+                REGISTRY.putIfAbsent(oid, e.getMessage());
+            }
+            throw e;
+        }
+        ObjectIdentifier canonical = (ObjectIdentifier) REGISTRY.get(parsed.getName());
+        if (MAX_SIZE <= REGISTRY.size()) {
+            UNCACHED_COUNT.incrementAndGet();
+            return null != canonical ? canonical : parsed;
+        }
+        if (null == canonical) {
+            final ObjectIdentifier raced = (ObjectIdentifier) REGISTRY.putIfAbsent(parsed.getName(), parsed);
+            canonical = null != raced ? raced : parsed;
+        }
+        if (!oid.equals(canonical.getName())) REGISTRY.put(oid, canonical);
+        return canonical;
+    }
+
+    /**
+     * @return the number of strings in the registry
+     */
+    public static int size() {
+        return REGISTRY.size();
+    }
+
+    /**
+     * @return the number of lookups that parsed their OID, because the registry was full
+     */
+    public static long getUncachedCount() {
+        return UNCACHED_COUNT.get();
+    }
+}
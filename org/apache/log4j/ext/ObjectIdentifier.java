@@ -0,0 +1,185 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Title: ObjectIdentifier<br>
+ * Description: An OID, parsed once: its dotted decimal name, its arcs, and its BER encoding.<p>
+ * Instances are immutable, and are obtained from the {@link OIDRegistry}, which hands out the same instance for the
+ * same OID.<br>
+ * @version 1.0<br>
+ */
+public final class ObjectIdentifier {
+
+    private static final long MAX_ARC = 0xFFFFFFFFL;
+
+    private final String name;
+    private final String absoluteName;
+    private final int[] arcs;
+    private final byte[] encoded;
+    private final int contentsLength;
+
+    /**
+     * Parses and encodes an OID.
+     *
+     * @param oid in dotted decimal notation, with or without a leading dot, e.g. "1.3.6.1.2.1.1.3.0"
+     * @throws IllegalArgumentException if the OID has fewer than two arcs, an arc above 2^32-1, a first arc above 2,
+     * a second arc of 40 or more under a first arc of 0 or 1, or is otherwise malformed
+     */
+    ObjectIdentifier(final String oid) {
+        if (null == oid) throw new IllegalArgumentException("Not an OID: null");
+        name = oid.startsWith(".") ? oid.substring(1) : oid;
+        absoluteName = new StringBuffer().append('.').append(name).toString();
+        int count = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if ('.' == name.charAt(i)) count++;
+        }
+        if (2 > count) throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ")
+                .append(oid).toString());
+        arcs = new int[count];
+        int arcStart = 0;
+        for (int i = 0; i < count; i++) {
+            int arcEnd = name.indexOf('.', arcStart);
+            if (0 > arcEnd) arcEnd = name.length();
+            arcs[i] = (int) parseArc(name, arcStart, arcEnd);
+            arcStart = arcEnd + 1;
+        }
+        //each arc takes at most as many bytes as it has digits, and the header at most 6
+        final BerEncoder encoder = new BerEncoder(ByteBuffer.allocate(name.length() + 8));
+        encoder.writeParsedOID(name);
+        encoded = new byte[encoder.length()];
+        encoder.flip().get(encoded);
+        contentsLength = encoded.length - 1 - BerEncoder.sizeOfLength(encoded.length - 1);
+    }
+
+    private static long parseArc(final String oid, final int from, final int to) {
+        if (from >= to || 10 < to - from) throw new IllegalArgumentException(new StringBuffer()
+                .append("Not an OID: ").append(oid).toString());
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final char c = oid.charAt(i);
+            if ('0' > c || '9' < c) throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ")
+                    .append(oid).toString());
+            value = 10 * value + (c - '0');
+        }
+        if (MAX_ARC < value) throw new IllegalArgumentException(new StringBuffer().append("Not an OID: ")
+                .append(oid).toString());
+        return value;
+    }
+
+    /**
+     * @return the dotted decimal name, without a leading dot
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the dotted decimal name, with a leading dot, as taken by the net-snmp commands
+     */
+    public String getAbsoluteName() {
+        return absoluteName;
+    }
+
+    /**
+     * @return a copy of the arcs; those above Integer.MAX_VALUE are negative, to be read as unsigned
+     */
+    public int[] getArcs() {
+        final int[] copy = new int[arcs.length];
+        System.arraycopy(arcs, 0, copy, 0, arcs.length);
+        return copy;
+    }
+
+    /**
+     * @return the number of arcs
+     */
+    public int size() {
+        return arcs.length;
+    }
+
+    /**
+     * @return a copy of the BER encoding, tag and length included
+     */
+    public byte[] getEncoded() {
+        final byte[] copy = new byte[encoded.length];
+        System.arraycopy(encoded, 0, copy, 0, encoded.length);
+        return copy;
+    }
+
+    /**
+     * @return the number of bytes of the contents of the BER encoding, without the tag and length
+     */
+    public int getContentsLength() {
+        return contentsLength;
+    }
+
+    /**
+     * Writes the BER encoding, tag and length included, into an encoder.
+     *
+     * @param encoder to write into
+     */
+    void writeTo(final BerEncoder encoder) {
+        encoder.writeBytes(encoded, 0, encoded.length);
+    }
+
+    public boolean equals(final Object other) {
+        return this == other || other instanceof ObjectIdentifier && name.equals(((ObjectIdentifier) other).name);
+    }
+
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -51,11 +51,22 @@ package org.apache.log4j.ext;
 
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
 import org.apache.log4j.PatternLayout;
+import org.apache.log4j.Priority;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.spi.ErrorCode;
 import org.apache.log4j.spi.LoggingEvent;
 
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * An appender to send formatted logging event strings to a specified managment
  * host (typically, a MLM of some sort, but could also be an SNMP management
@@ -73,12 +84,127 @@ import org.apache.log4j.spi.LoggingEvent;
  * parameterless constructor -- this is the constructor that Log4J will use to
  * instantiate the class using the class name in the properties file.<br>
  * <br>
- * There are three implementation classes provided with this appender; the JoeSNMPTrapSender,
- * the WengsoftSNMPTrapSender and the NetSnmpCommandLineTrapSender classes.
+ * There are four implementation classes provided with this appender; the JoeSNMPTrapSender,
+ * the WengsoftSNMPTrapSender, the NetSnmpCommandLineTrapSender and the BerSNMPTrapSender classes.
+ * The last of these encodes the traps itself, and so does not need any other library.
  * If you fail to specify an implementation in your properties file, or if there
  * is a problem finding, loading or instantiating the implementation that you do specify,
  * the appender will fall back to using the JoeSNMPTrapSender implementation as a default.<p>
  *
+ * The implementation is loaded once, when the appender is activated.  If it also implements
+ * {@link ReusableSnmpTrapSender}, the one instance is initialized once and shared by all events; otherwise, it is
+ * re-initialized for each event.<p>
+ *
+ * By default, traps are formatted and sent on the thread that does the logging.  Setting "AsyncDispatch" to true
+ * hands each event to a bounded ring buffer instead, from which one or more background threads format and send the
+ * traps, so that a slow management host or trap sender does not stall the application.  The ring is tuned with:<br>
+ * <b>AsyncBufferSize</b> -- number of preallocated slots (rounded up to a power of two, default 256)<br>
+ * <b>AsyncConsumerThreads</b> -- number of sending threads (default 1)<br>
+ * <b>AsyncWaitStrategy</b> -- blocking, sleeping, yielding or busyspin (default blocking), see {@link TrapWaitStrategy}<br>
+ * <b>AsyncOverflowPolicy</b> -- block, dropNewest, dropOldest or dropBelowLevel (default block), see
+ * {@link AsyncTrapDispatcher}<br>
+ * <b>AsyncOverflowLevel</b> -- the level below which events are dropped by the dropBelowLevel policy (default ERROR)<br>
+ * <b>AsyncLocationInfo</b> -- capture the caller location on the logging thread, needed if the layout uses %C, %F,
+ * %L, %l or %M (default false)<p>
+ *
+ * Setting "BatchWindowMillis" to a positive value coalesces the events that arrive within that many milliseconds
+ * of each other into a single trap, see {@link TrapBatcher}.  The batch is sent early if its estimated size would
+ * exceed "BatchMaxBytes" (default 1024).  Each event in the batch is preceded by a VarBind, named by
+ * "BatchSequenceOID" (default: the ApplicationTrapOID), holding the sequence number and time stamp of the event.<p>
+ *
+ * The ManagementHost and LocalIPAddress are resolved when the appender is activated, and then re-resolved in the
+ * background every "AddressCacheTtlSeconds" seconds (default 300, 0 to never re-resolve).  If a refresh fails, the
+ * last known address continues to be used.<p>
+ *
+ * "ManagementHosts" sends every trap to several management hosts, given as a comma separated list of
+ * <code>host[:port][/version[/community]]</code>, e.g. "nms1,nms2:1162/2/private", see {@link TrapDestination}.
+ * Anything a destination leaves out is taken from ManagementHostTrapListenPort, TrapVersion and CommunityString; when
+ * the list is set, ManagementHost is not used.  The event is formatted only once; the BerSNMPTrapSender also encodes
+ * it only once, and the other senders send it to each destination in turn.<p>
+ *
+ * Setting "RateLimitPerSecond" to a positive value limits the number of traps sent for the events of each level,
+ * with a token bucket per level that holds up to "RateLimitBurst" (default 10) events, see {@link TrapRateLimiter}.
+ * "LevelRateLimits" gives some levels a rate of their own, e.g. "ERROR=10,WARN=1"; FATAL is not limited unless it is
+ * listed there.  Every "RateLimitSummarySeconds" (default 60) seconds, if any events were suppressed, a summary trap
+ * is sent with their number, in a VarBind named by "RateLimitSummaryOID" (default: the ApplicationTrapOID).<p>
+ *
+ * Setting "DedupWindowMillis" to a positive value suppresses repeats of the same event within that many
+ * milliseconds of its first occurrence, see {@link TrapDeduplicator}.  Events are the same if they have the same
+ * logger, level and throwable class, and messages that differ only in numbers, hexadecimal strings and UUIDs.  When
+ * the window closes, if the event was repeated, the first repeat is sent with an extra VarBind, named by
+ * "DedupCountOID" (default: the ApplicationTrapOID), holding the number of times the event occurred in the window.
+ * At most "DedupMaxEntries" (default 1024) distinct events are tracked at once.  Repeats are suppressed before the
+ * rate limit is applied, so they do not use up its tokens.<p>
+ *
+ * With ForwardStackTraceWithTrap, setting "StackTraceMode" to "compact" (default "full") sends each distinct stack
+ * trace in full only the first time it is seen; after that, only a stable hash of the trace, its first line, the
+ * first "StackTraceFrames" (default 5) frames and the root cause are sent, see {@link StackTraceCompactor}.  The
+ * hashes of the last "StackTraceCacheSize" (default 256) traces sent in full are remembered, each for
+ * "StackTraceCacheSeconds" (default 3600, 0 for ever) seconds.<p>
+ *
+ * Setting "MaxDatagramSize" (default 0, no limit) to the largest datagram the network carries without
+ * fragmentation, e.g. 1472 for an Ethernet MTU of 1500, keeps each trap within it, see {@link TrapSizeBudget}.  A
+ * value too long to fit is truncated, and VarBinds that do not fit in one trap are split across several, each
+ * starting with a VarBind named by "CorrelationOID" (default: the ApplicationTrapOID) that holds
+ * "<i>id</i> <i>part</i>/<i>parts</i>".  It is honoured by the implementations of {@link ReusableSnmpTrapSender}.<p>
+ *
+ * Setting "NotificationType" to "inform" (default "trap") has the BerSNMPTrapSender send SNMPv2c InformRequest-PDUs,
+ * which the management host acknowledges, see {@link InformTracker}.  Up to "InformMaxOutstanding" (default 1024)
+ * informs may be waiting for their responses at once; an inform that is not acknowledged within
+ * "InformTimeoutMillis" (default 1500) is resent, up to "InformRetries" (default 3) times, waiting twice as long
+ * each time.  When all the slots are taken, sending waits, which holds up the AsyncDispatch queue.  The counts are
+ * available from {@link #getInformTracker()}.<p>
+ *
+ * The {@link UsmSNMPTrapSender} sends SNMPv3 traps, authenticated and encrypted (authPriv) for the user
+ * "SecurityName", with the keys made from "AuthPassword" and "PrivPassword" (at least 8 characters each).
+ * "AuthProtocol" is SHA (default) or SHA256; privacy is always AES-128.  The traps carry the engine ID
+ * "EngineID" (hexadecimal, default made from the local IPv4 address), and the engine boots kept in
+ * "EngineBootsFile", if it is set, or otherwise "EngineBoots" (default 1) plus the seconds since 2020, so that a
+ * restart never reuses the boots; the boots and engine time of an engine ID are kept when the appender is
+ * reconfigured.<p>
+ *
+ * Each appender registers a {@link TrapMetricsMXBean} with the platform MBean server, unless "JmxEnabled" is false,
+ * with the counts of its events, traps, bytes and failures, its queue and drops, and histograms of the time taken to
+ * format, encode and send its traps, see {@link TrapMetrics}.<p>
+ *
+ * Setting "TransportQueueSize" has the BerSNMPTrapSender queue its traps in that many pooled direct buffers, for a
+ * thread of its own to send in batches, see {@link DatagramTransport}; while the socket send buffer is full, a trap
+ * is retried for up to "TransportRetryMillis" (default 5) and then dropped.  "SocketSendBufferSize" sets the size of
+ * the socket send buffer (SO_SNDBUF), whether or not the traps are queued.<p>
+ *
+ * Setting "SpoolDirectory" has the BerSNMPTrapSender keep the traps it cannot send, and the informs that are not
+ * acknowledged, in a journal of memory-mapped segment files of "SpoolSegmentSize" bytes (default 1048576) in that
+ * directory, at most "SpoolMaxSegments" (default 16) of them, and send them again, at up to "SpoolReplayPerSecond"
+ * (default 100) a second, once the management host can be reached.  The journal is kept across restarts; each
+ * appender needs a directory of its own, see {@link TrapSpool}.<p>
+ *
+ * Setting "TenantMDCKey" sends the traps of each tenant -- the value of that key in the MDC of the event -- to
+ * management hosts of its own, with its own SNMP version and community, chosen by the "TenantResolver", the FQN of
+ * an implementation of {@link TenantResolver}.  By default, they are taken from "TenantDestinations", e.g.
+ * "acme=nms.acme.com/2/acme; globex=10.1.1.1:1162/1/globex", see {@link TenantDestinationMap}; the traps of other
+ * tenants, and of events without the key, are sent to the ManagementHost.  The sender of a tenant, and its socket,
+ * are created when its first trap is sent, and kept for at most "TenantCacheSize" (default 64) recently used
+ * tenants, until they have been idle for "TenantIdleSeconds" (default 300), see {@link TenantSenderCache}.  It needs
+ * an implementation of {@link ReusableSnmpTrapSender}; batched traps are sent to the ManagementHost.<p>
+ *
+ * "TrapRules" chooses the trap OID, the specific trap type and extra VarBinds from the MDC for each event, by its
+ * logger, level and MDC keys, e.g. "logger=com.acme.db, levels=ERROR+, oid=1.3.6.1.4.1.99999.3, type=10;
+ * logger=com.acme.billing, mdc=tenant, varbinds=tenant:1.3.6.1.4.1.99999.4".  The OID of a rule replaces the
+ * ApplicationTrapOID, unless the Layout is a SnmpDelimitedConversionPatternLayout; its type takes precedence over the
+ * LevelSpecificTrapTypes, and, like them, is only honoured by the implementations of {@link ReusableSnmpTrapSender}.
+ * The rules are compiled once, and matched by walking the logger name of the event, see {@link TrapRuleSet}.<p>
+ *
+ * Setting "SendExecutor" to "virtual" or "platform" (default "caller") moves the sending of each formatted trap off
+ * the logging (or AsyncDispatch) thread, for the senders that block, such as the NetSnmpCommandLineTrapSender or
+ * the JoeSNMPTrapSender.  "virtual" sends each trap on a virtual thread of its own on JDK 21 and later, and falls
+ * back to "platform", a pool of "SendThreads" (default 16) threads, on older JDKs.  At most "SendMaxConcurrency"
+ * (default 64) traps are sent at once; beyond that, the logging thread waits, see {@link TrapSendExecutor}.<p>
+ *
+ * "LevelSpecificTrapTypes" gives the events of some levels their own specific trap type, e.g.
+ * "FATAL=1,ERROR=2,WARN=3"; the events of any other level use the SpecificTrapType.  It is honoured by the
+ * implementations of {@link ReusableSnmpTrapSender}, for events that are not batched.  The BerSNMPTrapSender encodes
+ * the fixed part of the trap once for each of these types, see {@link TrapHeaderTemplate}.<p>
+ *
  * You can and should, as your needs dictate, write your own implementation of
  * SnmpTrapSenderFacade, using the underlying SNMP library of your choice.  In this
  * case, the implementations provided with the appender should serve as adequate
@@ -232,6 +358,48 @@ import org.apache.log4j.spi.LoggingEvent;
  *
  * 2003-07-05: mwm : some improvement in the exception handling of #loadImplementationClass<br>
  *
+ * 2026-10-17: the SnmpTrapSenderFacade implementation is now loaded and initialized once, in #activateOptions,
+ * instead of once per event.  Implementations of ReusableSnmpTrapSender are shared across events, with a new
+ * SnmpTrapBuilder per trap.  The sysUpTime is now resolved per trap, rather than being frozen at the first event.<br>
+ *
+ * 2026-10-17: added the asynchronous dispatch mode (see the "AsyncDispatch" family of properties).<br>
+ *
+ * 2026-10-17: added the batching mode (see the "BatchWindowMillis" family of properties).<br>
+ *
+ * 2026-10-17: added the BerSNMPTrapSender.<br>
+ *
+ * 2026-10-17: the management host and local IP address are now resolved once, and refreshed in the background, see
+ * {@link CachedInetAddress}.<br>
+ *
+ * 2026-10-17: added the LevelSpecificTrapTypes property.<br>
+ *
+ * 2026-10-17: added the ManagementHosts property, to send each trap to several destinations.<br>
+ *
+ * 2026-10-17: added the rate limit (see the "RateLimitPerSecond" family of properties).<br>
+ *
+ * 2026-10-17: added the suppression of repeated events (see the "DedupWindowMillis" family of properties).<br>
+ *
+ * 2026-10-17: added the compact stack trace mode (see the "StackTraceMode" family of properties).<br>
+ *
+ * 2026-10-17: added the MaxDatagramSize property, to split traps that would be fragmented.<br>
+ *
+ * 2026-10-17: added the inform mode (see the "NotificationType" family of properties).<br>
+ *
+ * 2026-10-17: added the SNMPv3 properties, for the UsmSNMPTrapSender.<br>
+ *
+ * 2026-10-17: added the JMX metrics (see TrapMetrics).<br>
+ *
+ * 2026-10-17: added the virtual-thread send mode (see the "SendExecutor" family of properties).<br>
+ *
+ * 2026-10-17: added the trap spool (see the "SpoolDirectory" family of properties).<br>
+ *
+ * 2026-10-17: added the queued datagram transport (see the "TransportQueueSize" family of properties).<br>
+ *
+ * 2026-10-17: added the TrapRules property, to choose the trap of each event by its logger, level and MDC.<br>
+ *
+ * 2026-10-17: added the routing of traps to the destinations of each tenant (see the "TenantMDCKey" family of
+ * properties).<br>
+ *
  * @author Mark Masterson (<a href="mailto:m.masterson@computer.org">m.masterson@computer.org</a>),
  * @author <br>Thomas Muller (<a href="mailto:ttm@online.no">ttm@online.no</a>)
  * @author <br>Matt Monks (<a href="mailto:Matthew.Monks@netdecisions.com">Matthew.Monks@netdecisions.com</a>)
@@ -241,6 +409,13 @@ public class SNMPTrapAppender extends AppenderSkeleton {
 
     private static final String TRUE = "true";
     private static final String FALSE = "false";
+    private static final String STACK_TRACE_FULL = "full";
+    private static final String STACK_TRACE_COMPACT = "compact";
+    static final String NOTIFICATION_TRAP = "trap";
+    static final String NOTIFICATION_INFORM = "inform";
+    private static final String SEND_EXECUTOR_CALLER = "caller";
+    private static final long SEND_EXECUTOR_CLOSE_MILLIS = 5000;
+    private static final String DEFAULT_IMPLEMENTATION_CLASS_NAME = "org.apache.log4j.ext.JoeSNMPTrapSender";
     private static final SysUpTimeResolver DEFAULT_SYSUP_TIME_RESOLVER = new SysUpTimeResolver() {
         private final long appenderLoadedTime = System.currentTimeMillis();
 
@@ -263,6 +438,83 @@ public class SNMPTrapAppender extends AppenderSkeleton {
     private SysUpTimeResolver sysUpTimeResolver = DEFAULT_SYSUP_TIME_RESOLVER;
     private String forwardStackTraceWithTrap = FALSE;
     private int trapVersion = 1;
+    private volatile SnmpTrapSenderFacade sender;
+    private volatile boolean activated;
+    private boolean asyncDispatch;
+    private int asyncBufferSize = 256;
+    private int asyncConsumerThreads = 1;
+    private String asyncWaitStrategy = TrapWaitStrategy.BLOCKING;
+    private String asyncOverflowPolicy = AsyncTrapDispatcher.BLOCK;
+    private Level asyncOverflowLevel = Level.ERROR;
+    private boolean asyncLocationInfo;
+    private volatile AsyncTrapDispatcher dispatcher;
+    private long batchWindowMillis;
+    private int batchMaxBytes = 1024;
+    private String batchSequenceOID;
+    private volatile TrapBatcher batcher;
+    private final AtomicLong eventSequence = new AtomicLong();
+    private long addressCacheTtlSeconds = 300;
+    private final Object addressLock = new Object();
+    private CachedInetAddress managementHostAddress;
+    private CachedInetAddress localAddress;
+    private String levelSpecificTrapTypes;
+    private String managementHosts;
+    private TrapDestination[] destinations;
+    private int rateLimitPerSecond;
+    private String levelRateLimits;
+    private int rateLimitBurst = 10;
+    private long rateLimitSummarySeconds = 60;
+    private String rateLimitSummaryOID;
+    private volatile TrapRateLimiter limiter;
+    private long dedupWindowMillis;
+    private int dedupMaxEntries = 1024;
+    private String dedupCountOID;
+    private volatile TrapDeduplicator deduplicator;
+    private String stackTraceMode = STACK_TRACE_FULL;
+    private int stackTraceFrames = 5;
+    private int stackTraceCacheSize = 256;
+    private long stackTraceCacheSeconds = 3600;
+    private volatile StackTraceCompactor stackTraceCompactor;
+    private int maxDatagramSize;
+    private String correlationOID;
+    private volatile TrapSizeBudget sizeBudget;
+    private String notificationType = NOTIFICATION_TRAP;
+    private long informTimeoutMillis = 1500;
+    private int informRetries = 3;
+    private int informMaxOutstanding = 1024;
+    private String securityName;
+    private String authProtocol = UsmSNMPTrapSender.AUTH_SHA;
+    private String authPassword;
+    private String privPassword;
+    private String engineID;
+    private int engineBoots = 1;
+    private String engineBootsFile;
+    private boolean jmxEnabled = true;
+    private int transportQueueSize;
+    private long transportRetryMillis = 5;
+    private int socketSendBufferSize;
+    private String spoolDirectory;
+    private int spoolSegmentSize = 1048576;
+    private int spoolMaxSegments = 16;
+    private int spoolReplayPerSecond = 100;
+    private String sendExecutorMode = SEND_EXECUTOR_CALLER;
+    private int sendThreads = 16;
+    private int sendMaxConcurrency = 64;
+    private volatile TrapSendExecutor sendExecutor;
+    private volatile ExecutorService timedSender;
+    private final TrapMetrics metrics = new TrapMetrics(this);
+    private volatile int[] levelTrapTypes = new int[0];
+    private String trapRules;
+    private volatile TrapRuleSet trapRuleSet;
+    private String tenantMDCKey;
+    private TenantResolver tenantResolver;
+    private String tenantDestinations;
+    private TenantDestinationMap tenantDestinationMap;
+    private int tenantCacheSize = 64;
+    private int tenantIdleSeconds = 300;
+    private volatile TenantSenderCache tenantSenders;
+    //the tenant whose sender is being initialized on this thread, if any
+    private final ThreadLocal tenantScope = new ThreadLocal();
 
     /**
      * Default constructor.
@@ -279,6 +531,15 @@ public class SNMPTrapAppender extends AppenderSkeleton {
         super.layout = layoutValue;
     }
 
+    /**
+     * Counts each event passed to the appender, and those below its threshold, in the {@link TrapMetrics}.
+     */
+    public boolean isAsSevereAsThreshold(final Priority priority) {
+        final boolean isAsSevere = super.isAsSevereAsThreshold(priority);
+        metrics.eventSeen(!isAsSevere);
+        return isAsSevere;
+    }
+
     /**
      * Implemented to return "true" .
      */
@@ -286,13 +547,156 @@ public class SNMPTrapAppender extends AppenderSkeleton {
         return true;
     }
 
+    /**
+     * Loads the concrete SnmpTrapSenderFacade implementation and, if it is a {@link ReusableSnmpTrapSender},
+     * initializes it with the current values of the properties of this appender.  Called by the Log4J configurators
+     * once all of the properties have been set.
+     */
+    public void activateOptions() {
+        activated = true;
+        closeDispatcher();
+        closeBatcher();
+        closeDeduplicator();
+        closeLimiter();
+        closeTimedSender();
+        closeSendExecutor();
+        closeTenantSenders();
+        closeSender();
+        closeAddresses();
+        final SnmpTrapSenderFacade newSender = loadImplementationClass();
+        if (null == newSender) {
+            errorHandler.error(new StringBuffer().append("No SnmpTrapSenderFacade could be loaded for the Appender ")
+                    .append("named [").append(getName()).append("] -- its traps will be dropped.").toString(),
+                               null,
+                               ErrorCode.GENERIC_FAILURE);
+        }
+        if (newSender instanceof ReusableSnmpTrapSender) {
+            newSender.initialize(this);
+        }
+        sender = newSender;
+        if (null != tenantMDCKey && newSender instanceof ReusableSnmpTrapSender) {
+            tenantSenders = new TenantSenderCache(null == tenantResolver
+                                                  ? new TenantDestinationMap(tenantDestinations)
+                                                  : tenantResolver,
+                                                  this,
+                                                  new TenantSenderCache.SenderFactory() {
+                                                      public ReusableSnmpTrapSender createSender(
+                                                              final String tenant,
+                                                              final TrapDestination[] destinations) {
+                                                          return createTenantSender(tenant, destinations);
+                                                      }
+                                                  },
+                                                  tenantCacheSize,
+                                                  1000L * tenantIdleSeconds,
+                                                  1000L * addressCacheTtlSeconds);
+        } else if (null != tenantMDCKey) {
+            LogLog.warn(new StringBuffer().append("TenantMDCKey needs an implementation of ReusableSnmpTrapSender -- ")
+                    .append(implementationClassName)
+                    .append(" is not one, so all traps will be sent to the ManagementHost.")
+                    .toString());
+        }
+        if (null != newSender && !(newSender instanceof ReusableSnmpTrapSender)
+            && (0 < levelTrapTypes.length || null != trapRuleSet)) {
+            LogLog.warn(new StringBuffer().append("LevelSpecificTrapTypes and the type of TrapRules need an ")
+                    .append("implementation of ReusableSnmpTrapSender -- ")
+                    .append(implementationClassName)
+                    .append(" is not one, so all traps will use the SpecificTrapType.")
+                    .toString());
+        }
+        stackTraceCompactor = STACK_TRACE_COMPACT.equalsIgnoreCase(stackTraceMode)
+                              ? new StackTraceCompactor(stackTraceFrames,
+                                                        stackTraceCacheSize,
+                                                        1000L * stackTraceCacheSeconds)
+                              : null;
+        sizeBudget = 0 < maxDatagramSize
+                     ? new TrapSizeBudget(maxDatagramSize,
+                                          enterpriseOID,
+                                          getDestinations(),
+                                          null == correlationOID ? applicationTrapOID : correlationOID,
+                                          newSender instanceof UsmSNMPTrapSender
+                                          ? UsmSNMPTrapSender.getHeaderOverhead(this)
+                                          : 0)
+                     : null;
+        sendExecutor = SEND_EXECUTOR_CALLER.equalsIgnoreCase(sendExecutorMode)
+                       ? null
+                       : new TrapSendExecutor(sendExecutorMode, sendThreads, sendMaxConcurrency, getName());
+        timedSender = newTimedSender();
+        if (0 < batchWindowMillis && null != tenantSenders) {
+            LogLog.warn(new StringBuffer().append("BatchWindowMillis cannot be used with TenantMDCKey -- batching is ")
+                    .append("off for the Appender named [").append(getName()).append("].").toString());
+        } else if (0 < batchWindowMillis) {
+            batcher = new TrapBatcher(batchWindowMillis,
+                                      batchMaxBytes,
+                                      null == batchSequenceOID ? applicationTrapOID : batchSequenceOID,
+                                      eventSequence,
+                                      new TrapBatcher.EventFormatter() {
+                                          public void format(final LoggingEvent event, final SnmpVarBindSink out) {
+                                              formatEvent(event, out);
+                                          }
+                                      },
+                                      new TrapBatcher.BatchHandler() {
+                                          public void sendBatch(final String[] oids,
+                                                                final String[] values,
+                                                                final int count) {
+                                              SNMPTrapAppender.this.sendBatch(oids, values, count);
+                                          }
+                                      },
+                                      timedSender);
+        }
+        if (0 < dedupWindowMillis) {
+            deduplicator = new TrapDeduplicator(dedupWindowMillis,
+                                                dedupMaxEntries,
+                                                new TrapDeduplicator.RepeatHandler() {
+                                                    public void retain(final LoggingEvent event) {
+                                                        captureEventState(event);
+                                                    }
+
+                                                    public void repeated(final LoggingEvent event,
+                                                                         final long occurrences) {
+                                                        sendEventTrap(event, occurrences);
+                                                    }
+                                                },
+                                                timedSender);
+        }
+        if (0 < rateLimitPerSecond || null != levelRateLimits) {
+            limiter = new TrapRateLimiter(rateLimitPerSecond,
+                                          levelRateLimits,
+                                          rateLimitBurst,
+                                          1000L * rateLimitSummarySeconds,
+                                          new TrapRateLimiter.SummaryHandler() {
+                                              public void suppressed(final long count, final String detail) {
+                                                  sendSuppressedSummary(count, detail);
+                                              }
+                                          },
+                                          timedSender);
+        }
+        if (asyncDispatch) {
+            dispatcher = new AsyncTrapDispatcher(getName(),
+                                                 asyncBufferSize,
+                                                 asyncConsumerThreads,
+                                                 asyncWaitStrategy,
+                                                 asyncOverflowPolicy,
+                                                 asyncOverflowLevel,
+                                                 new AsyncTrapDispatcher.EventHandler() {
+                                                     public void onEvent(final LoggingEvent event) {
+                                                         sendEvent(event);
+                                                     }
+                                                 });
+        }
+        if (jmxEnabled) {
+            metrics.register();
+        } else {
+            metrics.unregister();
+        }
+    }
+
     /**
      * Uses an instance of {@link SnmpTrapSenderFacade} to send the String returned by Layout.format() as the message(s)
      * of an SNMP trap. If the various properties have not been intialized, the defaults will be used.
      */
     protected void append(final LoggingEvent event) {
         //check pre-conditions
-        if (!isAsSevereAsThreshold(event.getLevel())) return;
+        if (!super.isAsSevereAsThreshold(event.getLevel())) return;
         if (null == getLayout()) {
             errorHandler.error(new StringBuffer().append("No layout set for the Appender named [")
                     .append(getName())
@@ -301,22 +705,266 @@ public class SNMPTrapAppender extends AppenderSkeleton {
                                ErrorCode.MISSING_LAYOUT);
             return;
         }
-        //Create and intialize the interface to SNMP -- will
-        //use default values if none have been provided, which will,
-        //in most cases, result in the trap being sent to dev(null)...
-        final SnmpTrapSenderFacade out = loadImplementationClass();
-        if (null != out) {
-            if (0 == sysUpTime) sysUpTime = sysUpTimeResolver.getSysUpTime();
-            out.initialize(this);
-            parseLoggingEventAndAddToTrap(event, out);
-            //fire it off
-            out.sendTrap();
+        //the interface to SNMP will use default values if none have been
+        //provided, which will, in most cases, result in the trap being
+        //sent to dev(null)...
+        //only once: if no sender could be loaded, there is no point in trying again for every event
+        if (!activated) activateOptions();
+        if (null == sender) return;
+        final TrapDeduplicator eventDeduplicator = deduplicator;
+        if (null != eventDeduplicator && !eventDeduplicator.admit(event)) return;
+        final TrapRateLimiter eventLimiter = limiter;
+        if (null != eventLimiter && !eventLimiter.tryAcquire(event.getLevel())) return;
+        final AsyncTrapDispatcher asyncDispatcher = dispatcher;
+        if (null != asyncDispatcher) {
+            captureEventState(event);
+            asyncDispatcher.publish(event);
+        } else {
+            sendEvent(event);
+        }
+    }
+
+    /**
+     * Fixes the values of the event that depend on the logging thread, before the event is handed to another thread
+     * (in the same way as the AsyncAppender).
+     *
+     * @param event to be dispatched asynchronously
+     */
+    private void captureEventState(final LoggingEvent event) {
+        event.getNDC();
+        event.getThreadName();
+        event.getMDCCopy();
+        event.getRenderedMessage();
+        event.getThrowableStrRep();
+        if (asyncLocationInfo) event.getLocationInformation();
+    }
+
+    /**
+     * Formats the event as a trap and sends it.  Called on the logging thread, or on one of the consumer threads of
+     * the asynchronous dispatcher.
+     *
+     * @param event to log
+     */
+    private void sendEvent(final LoggingEvent event) {
+        final TrapBatcher eventBatcher = batcher;
+        if (null != eventBatcher) {
+            eventBatcher.add(event);
+            return;
+        }
+        sendEventTrap(event, 0);
+    }
+
+    /**
+     * Formats the event as a trap of its own and sends it.
+     *
+     * @param event to log
+     * @param occurrences if positive, the number of times the event occurred, sent as an extra VarBind
+     */
+    private void sendEventTrap(final LoggingEvent event, final long occurrences) {
+        final TenantSenderCache.Tenant tenant = acquireTenant(event);
+        final SnmpTrapSenderFacade out = null == tenant ? sender : tenant.getSender();
+        final TrapSendExecutor executor = sendExecutor;
+        final TrapRuleSet.Rule rule = matchRule(event);
+        boolean isHandedOver = false;
+        try {
+            if (null != executor && null != out) {
+                final DeferredTrap trap = new DeferredTrap();
+                trap.setSysUpTime(getSysUpTime());
+                trap.setSpecificTrapType(getSpecificTrapType(event.getLevel(), rule));
+                formatEvent(event, rule, trap);
+                if (0 < occurrences) addOccurrences(trap, occurrences);
+                isHandedOver = sendLater(executor, out, trap, tenant);
+            } else if (out instanceof ReusableSnmpTrapSender) {
+                final SnmpTrapBuilder trap = createTrap((ReusableSnmpTrapSender) out);
+                trap.setSysUpTime(getSysUpTime());
+                trap.setSpecificTrapType(getSpecificTrapType(event.getLevel(), rule));
+                formatEvent(event, rule, trap);
+                if (0 < occurrences) addOccurrences(trap, occurrences);
+                //fire it off
+                sendTrap(trap);
+            } else if (null != out) {
+                synchronized (out) {
+                    out.initialize(this);
+                    formatEvent(event, rule, out);
+                    if (0 < occurrences) addOccurrences(out, occurrences);
+                    //fire it off
+                    sendTrap(out);
+                }
+            }
+        } finally {
+            if (null != tenant && !isHandedOver) tenant.release();
+        }
+    }
+
+    /**
+     * Acquires the sender of the tenant of the event, if it has one of its own.
+     *
+     * @return the tenant, to be released once the trap has been sent, or null to use the appender's own sender
+     */
+    private TenantSenderCache.Tenant acquireTenant(final LoggingEvent event) {
+        final TenantSenderCache cache = tenantSenders;
+        if (null == cache) return null;
+        final Object tenant = event.getMDC(tenantMDCKey);
+        return null == tenant ? null : cache.acquire(tenant.toString());
+    }
+
+    /**
+     * Creates and initializes the sender of a tenant.  While it is initialized, the destinations and the spool
+     * directory it is given by this appender are those of the tenant.
+     */
+    private ReusableSnmpTrapSender createTenantSender(final String tenant, final TrapDestination[] tenantDestinations) {
+        final SnmpTrapSenderFacade tenantSender = loadImplementationClass();
+        if (!(tenantSender instanceof ReusableSnmpTrapSender)) return null;
+        final String tenantSpoolDirectory = null == spoolDirectory
+                                            ? null
+                                            : new File(spoolDirectory, getSpoolDirectoryName(tenant)).getPath();
+        tenantScope.set(new TenantScope(tenantDestinations, tenantSpoolDirectory));
+        try {
+            tenantSender.initialize(this);
+        } finally {
+            tenantScope.remove();
+        }
+        return (ReusableSnmpTrapSender) tenantSender;
+    }
+
+    /**
+     * Gets the name of the subdirectory of the SpoolDirectory for the spool of a tenant: the name of the tenant, with
+     * anything but letters, digits, '.', '-' and '_' replaced, and its hash, to tell apart those that only differ in
+     * what was replaced.
+     */
+    private static String getSpoolDirectoryName(final String tenant) {
+        final StringBuffer name = new StringBuffer(tenant.length() + 16).append("tenant-");
+        for (int i = 0; i < tenant.length(); i++) {
+            final char c = tenant.charAt(i);
+            name.append(c < 128 && (Character.isLetterOrDigit(c) || '.' == c || '-' == c || '_' == c) ? c : '_');
+        }
+        return name.append('-').append(Integer.toHexString(tenant.hashCode())).toString();
+    }
+
+    /**
+     * Formats the event into VarBinds, timing it for the metrics.
+     */
+    private void formatEvent(final LoggingEvent event, final SnmpVarBindSink out) {
+        formatEvent(event, matchRule(event), out);
+    }
+
+    /**
+     * Formats the event into VarBinds, as chosen by its TrapRules rule, timing it for the metrics.
+     */
+    private void formatEvent(final LoggingEvent event, final TrapRuleSet.Rule rule, final SnmpVarBindSink out) {
+        final long start = System.nanoTime();
+        parseLoggingEventAndAddToTrap(event, rule, out);
+        metrics.formatted(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the TrapRules rule for the event.
+     *
+     * @return the rule, or null if there is none
+     */
+    private TrapRuleSet.Rule matchRule(final LoggingEvent event) {
+        final TrapRuleSet rules = trapRuleSet;
+        return null == rules ? null : rules.match(event);
+    }
+
+    /**
+     * Sends the trap, timing it for the metrics.
+     */
+    private void sendTrap(final SnmpTrapBuilder trap) {
+        final long start = System.nanoTime();
+        trap.sendTrap();
+        metrics.sent(System.nanoTime() - start);
+    }
+
+    private void sendTrap(final SnmpTrapSenderFacade out) {
+        final long start = System.nanoTime();
+        out.sendTrap();
+        metrics.sent(System.nanoTime() - start);
+    }
+
+    /**
+     * Hands a formatted trap over to the TrapSendExecutor, to be sent from one of its threads.  The tenant, if any,
+     * is released once the trap has been sent.
+     *
+     * @return whether the executor took the trap; if not, the caller still holds the tenant
+     */
+    private boolean sendLater(final TrapSendExecutor executor,
+                              final SnmpTrapSenderFacade out,
+                              final DeferredTrap deferred,
+                              final TenantSenderCache.Tenant tenant) {
+        return executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (out instanceof ReusableSnmpTrapSender) {
+                        final SnmpTrapBuilder trap = createTrap((ReusableSnmpTrapSender) out);
+                        deferred.replay(trap);
+                        sendTrap(trap);
+                    } else {
+                        synchronized (out) {
+                            out.initialize(SNMPTrapAppender.this);
+                            deferred.replay(out);
+                            sendTrap(out);
+                        }
+                    }
+                } finally {
+                    if (null != tenant) tenant.release();
+                }
+            }
+        });
+    }
+
+    private void addOccurrences(final SnmpVarBindSink out, final long occurrences) {
+        out.addTrapMessageVariable(null == dedupCountOID ? applicationTrapOID : dedupCountOID,
+                                   Long.toString(occurrences));
+    }
+
+    /**
+     * Creates a trap, kept within the MaxDatagramSize if there is one.
+     */
+    private SnmpTrapBuilder createTrap(final ReusableSnmpTrapSender out) {
+        final TrapSizeBudget budget = sizeBudget;
+        return null == budget ? out.createTrap() : budget.createTrap(out);
+    }
+
+    /**
+     * Sends the VarBinds of a batch of events as a single trap.
+     *
+     * @param oids the names of the VarBinds
+     * @param values the values of the VarBinds
+     * @param count the number of VarBinds
+     */
+    private void sendBatch(final String[] oids, final String[] values, final int count) {
+        final SnmpTrapSenderFacade out = sender;
+        final TrapSendExecutor executor = sendExecutor;
+        if (null != executor && null != out) {
+            final DeferredTrap trap = new DeferredTrap();
+            trap.setSysUpTime(getSysUpTime());
+            for (int i = 0; i < count; i++) {
+                trap.addTrapMessageVariable(oids[i], values[i]);
+            }
+            sendLater(executor, out, trap, null);
+        } else if (out instanceof ReusableSnmpTrapSender) {
+            final SnmpTrapBuilder trap = createTrap((ReusableSnmpTrapSender) out);
+            trap.setSysUpTime(getSysUpTime());
+            for (int i = 0; i < count; i++) {
+                trap.addTrapMessageVariable(oids[i], values[i]);
+            }
+            sendTrap(trap);
+        } else if (null != out) {
+            synchronized (out) {
+                out.initialize(this);
+                for (int i = 0; i < count; i++) {
+                    out.addTrapMessageVariable(oids[i], values[i]);
+                }
+                sendTrap(out);
+            }
         }
     }
 
     /**
      * Load the concrete class specifed in the properties/config file that implements the SnmpTrapSenderFacade
-     * interface.  Logs an error using the ErrorHandler if there are problems, and returns null.
+     * interface.  Logs an error using the ErrorHandler if there are problems, and falls back to the default
+     * implementation, returning null only if that fails as well.
      *
      * @return an instance of an implementation of SnmpTrapSenderFacade or null if there was an Exception
      */
@@ -326,7 +974,7 @@ public class SNMPTrapAppender extends AppenderSkeleton {
             result = (SnmpTrapSenderFacade)
                     OptionConverter.instantiateByClassName(
                             implementationClassName,
-                            Class.forName(implementationClassName),
+                            SnmpTrapSenderFacade.class,
                             null);
         } catch (Exception ex) {
             errorHandler.error(new StringBuffer().append("Could not locate the implementation class - ")
@@ -334,44 +982,216 @@ public class SNMPTrapAppender extends AppenderSkeleton {
                                ex,
                                ErrorCode.GENERIC_FAILURE);
         }
+        if (null == result) {
+            LogLog.warn(new StringBuffer().append("Falling back to the default implementation class - ")
+                    .append(DEFAULT_IMPLEMENTATION_CLASS_NAME).toString());
+            result = (SnmpTrapSenderFacade)
+                    OptionConverter.instantiateByClassName(
+                            DEFAULT_IMPLEMENTATION_CLASS_NAME,
+                            SnmpTrapSenderFacade.class,
+                            null);
+        }
         return result;
     }
 
+    /**
+     * Stops the asynchronous dispatcher, if there is one, once it has sent the events it is holding.
+     */
+    private void closeDispatcher() {
+        final AsyncTrapDispatcher oldDispatcher = dispatcher;
+        dispatcher = null;
+        if (null != oldDispatcher) {
+            oldDispatcher.stop();
+        }
+    }
+
+    /**
+     * Sends the open batch, if there is one, and stops batching.
+     */
+    private void closeBatcher() {
+        final TrapBatcher oldBatcher = batcher;
+        batcher = null;
+        if (null != oldBatcher) {
+            oldBatcher.close();
+        }
+    }
+
+    /**
+     * Stops the suppression of repeated events, sending the repeats counted so far.
+     */
+    private void closeDeduplicator() {
+        final TrapDeduplicator oldDeduplicator = deduplicator;
+        deduplicator = null;
+        if (null != oldDeduplicator) {
+            oldDeduplicator.close();
+        }
+    }
+
+    /**
+     * Stops the rate limit, sending the summary of the events it has suppressed so far.
+     */
+    private void closeLimiter() {
+        final TrapRateLimiter oldLimiter = limiter;
+        limiter = null;
+        if (null != oldLimiter) {
+            oldLimiter.close();
+        }
+    }
+
+    /**
+     * Sends the summary trap for the events suppressed by the rate limit.
+     *
+     * @param count the number of events suppressed
+     * @param detail the number suppressed for each level that has a rate of its own, if any
+     */
+    private void sendSuppressedSummary(final long count, final String detail) {
+        final StringBuffer summary = new StringBuffer().append(count).append(" traps suppressed");
+        if (0 < detail.length()) summary.append(" (").append(detail).append(')');
+        sendBatch(new String[]{null == rateLimitSummaryOID ? applicationTrapOID : rateLimitSummaryOID},
+                  new String[]{summary.toString()},
+                  1);
+    }
+
+    /**
+     * Stops the background refreshes of the cached addresses.
+     */
+    private void closeAddresses() {
+        synchronized (addressLock) {
+            if (null != destinations) {
+                for (int i = 0; i < destinations.length; i++) {
+                    destinations[i].close();
+                }
+            }
+            if (null != managementHostAddress) managementHostAddress.close();
+            if (null != localAddress) localAddress.close();
+            destinations = null;
+            managementHostAddress = null;
+            localAddress = null;
+        }
+    }
+
+    /**
+     * Creates the thread that sends the traps that fall due on the {@link TrapTimer} -- the timed flushes of the
+     * batches, the repeat counts and the rate limit summaries -- which must not be sent on the timer thread itself.
+     * The thread is only started when it is first needed.
+     */
+    private ExecutorService newTimedSender() {
+        final String threadName = new StringBuffer().append("SNMPTrapAppender-").append(getName())
+                .append("-timed-sender").toString();
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                                      new ThreadFactory() {
+                                          public Thread newThread(final Runnable r) {
+                                              final Thread thread = new Thread(r, threadName);
+                                              thread.setDaemon(true);
+                                              return thread;
+                                          }
+                                      });
+    }
+
+    /**
+     * Stops the thread that sends the traps that fall due on the TrapTimer, waiting a while for those already
+     * handed over to it.
+     */
+    private void closeTimedSender() {
+        final ExecutorService oldTimedSender = timedSender;
+        timedSender = null;
+        if (null != oldTimedSender) {
+            oldTimedSender.shutdown();
+            try {
+                if (!oldTimedSender.awaitTermination(SEND_EXECUTOR_CLOSE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LogLog.warn("Some timed traps were still being sent when the appender was closed.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the current TrapSendExecutor, if any, waiting a while for the traps already handed over to it.
+     */
+    private void closeSendExecutor() {
+        final TrapSendExecutor oldExecutor = sendExecutor;
+        sendExecutor = null;
+        if (null != oldExecutor) {
+            oldExecutor.close(SEND_EXECUTOR_CLOSE_MILLIS);
+        }
+    }
+
+    /**
+     * Closes the senders of the tenants, if any.
+     */
+    private void closeTenantSenders() {
+        final TenantSenderCache oldTenantSenders = tenantSenders;
+        tenantSenders = null;
+        if (null != oldTenantSenders) {
+            oldTenantSenders.close();
+        }
+    }
+
+    /**
+     * Releases the resources held by the current sender, if it is a {@link ReusableSnmpTrapSender}.
+     */
+    private void closeSender() {
+        final SnmpTrapSenderFacade oldSender = sender;
+        sender = null;
+        if (oldSender instanceof ReusableSnmpTrapSender) {
+            ((ReusableSnmpTrapSender) oldSender).close();
+        }
+    }
+
     /**
      * Get the formatted logging event, and bind it to the SNMP PDU as a Varbind, with the applicationTrapOID as the
      * name, and the logging event string as the value...
      *
+     * The trap OID and extra VarBinds of the TrapRules rule for the event, if any, are used instead.
+     *
      * @param event to log
+     * @param rule the TrapRules rule for the event, or null
      * @param out logging target
      */
     private void parseLoggingEventAndAddToTrap(final LoggingEvent event,
-                                               final SnmpTrapSenderFacade out) {
+                                               final TrapRuleSet.Rule rule,
+                                               final SnmpVarBindSink out) {
+        final String trapOID = null == rule || null == rule.getTrapOID() ? applicationTrapOID : rule.getTrapOID();
         final PatternLayout pl = (PatternLayout) getLayout();
         if (pl instanceof SnmpDelimitedConversionPatternLayout)
             ((SnmpDelimitedConversionPatternLayout) pl).formatMultipleVarBinds(
                     event, out);
-        else
-            out.addTrapMessageVariable(applicationTrapOID,
-                                       pl.format(event));
-        handleThrowable(event, out);
+        else {
+            final String formatted;
+            //PatternLayout formats into a shared buffer, and so must not be used by two consumer threads at once
+            synchronized (pl) {
+                formatted = pl.format(event);
+            }
+            out.addTrapMessageVariable(trapOID, formatted);
+        }
+        if (null != rule) rule.addVarBinds(event, out);
+        handleThrowable(event, trapOID, out);
     }
 
     /**
      * If the Layout associated with this appender does not parse Throwables, then this appender may do so.  If the
      * parameter "ForwardStackTraceWithTrap" is set to "true" in the configuration script, each element of the stack
-     * trace of the Throwable will be added as a separate VarBind to the trap PDU.
+     * trace of the Throwable will be added as a separate VarBind to the trap PDU -- or, if the "StackTraceMode" is
+     * "compact", only the parts chosen by the {@link StackTraceCompactor}.
      *
      * @param event to log
+     * @param trapOID the OID of the VarBinds
      * @param out logging target
      */
     private void handleThrowable(final LoggingEvent event,
-                                 final SnmpTrapSenderFacade out) {
+                                 final String trapOID,
+                                 final SnmpVarBindSink out) {
         if (getLayout().ignoresThrowable()
             && TRUE.equals(getForwardStackTraceWithTrap())) {
             final String[] stackTrace = event.getThrowableStrRep();
-            if (null != stackTrace) {
+            final StackTraceCompactor compactor = stackTraceCompactor;
+            if (null != stackTrace && null != compactor) {
+                compactor.addStackTrace(stackTrace, trapOID, out);
+            } else if (null != stackTrace) {
                 for (int i = 0; i < stackTrace.length; i++) {
-                    out.addTrapMessageVariable(applicationTrapOID,
+                    out.addTrapMessageVariable(trapOID,
                                                stackTrace[i]);
                 }
             }
@@ -390,10 +1210,22 @@ public class SNMPTrapAppender extends AppenderSkeleton {
     }
 
     /**
-     * Sets the state of the Appender to "closed".
+     * Sets the state of the Appender to "closed", and releases the resources held by the sender.
      */
     public void close() {
-        if (!closed) closed = true;
+        if (!closed) {
+            closed = true;
+            closeDispatcher();
+            closeBatcher();
+            closeDeduplicator();
+            closeLimiter();
+            closeTimedSender();
+            closeSendExecutor();
+            closeTenantSenders();
+            closeSender();
+            closeAddresses();
+            metrics.unregister();
+        }
     }
 
     /**
@@ -414,6 +1246,55 @@ public class SNMPTrapAppender extends AppenderSkeleton {
         managementHost = managementHostValue;
     }
 
+    /**
+     * Gets the cached, periodically refreshed, address of the management host.  Senders should use this, rather than
+     * resolving {@link #getManagementHost()} themselves.
+     * @return the address record of the trap target
+     */
+    public CachedInetAddress getManagementHostAddress() {
+        synchronized (addressLock) {
+            if (null == managementHostAddress) {
+                managementHostAddress = new CachedInetAddress(managementHost, 1000L * addressCacheTtlSeconds);
+            }
+            return managementHostAddress;
+        }
+    }
+
+    /**
+     * Get the management hosts that traps are sent to: those of the ManagementHosts property if it is set, otherwise
+     * the ManagementHost.  The addresses are looked up when this is first called after the appender is activated.
+     * While the sender of a tenant is initialized, these are the destinations of the tenant instead.
+     * @return the destinations of the traps
+     */
+    public TrapDestination[] getDestinations() {
+        final TenantScope scope = (TenantScope) tenantScope.get();
+        return null != scope ? scope.destinations.clone() : getOwnDestinations();
+    }
+
+    private TrapDestination[] getOwnDestinations() {
+        synchronized (addressLock) {
+            if (null == destinations) {
+                if (null == managementHosts) {
+                    destinations = new TrapDestination[]{new TrapDestination(managementHost,
+                                                                             managementHostTrapListenPort,
+                                                                             trapVersion,
+                                                                             communityString,
+                                                                             getManagementHostAddress())};
+                } else {
+                    final TrapDestination[] parsed = TrapDestination.parse(managementHosts,
+                                                                           managementHostTrapListenPort,
+                                                                           trapVersion,
+                                                                           communityString);
+                    for (int i = 0; i < parsed.length; i++) {
+                        parsed[i] = parsed[i].resolve(1000L * addressCacheTtlSeconds);
+                    }
+                    destinations = parsed;
+                }
+            }
+            return destinations.clone();
+        }
+    }
+
     /**
      * Get the port used on the remote host to listen for SNMP traps.  The standard is 162.
      * @return target trap port
@@ -478,6 +1359,20 @@ public class SNMPTrapAppender extends AppenderSkeleton {
         localIPAddress = localIPAddressValue;
     }
 
+    /**
+     * Gets the cached, periodically refreshed, address of the local host.  Senders should use this, rather than
+     * resolving {@link #getLocalIPAddress()} themselves.
+     * @return the address record of the local host
+     */
+    public CachedInetAddress getLocalAddress() {
+        synchronized (addressLock) {
+            if (null == localAddress) {
+                localAddress = new CachedInetAddress(localIPAddress, 1000L * addressCacheTtlSeconds);
+            }
+            return localAddress;
+        }
+    }
+
     /**
      * Get the generic trap type set for this SNMP PDU.
      * @return the trap type currently set
@@ -519,6 +1414,31 @@ public class SNMPTrapAppender extends AppenderSkeleton {
         specificTrapType = specificTrapTypeValue;
     }
 
+    /**
+     * Get the specific trap type for events of the given level: the one set for the level by the
+     * LevelSpecificTrapTypes property, if any, otherwise the SpecificTrapType.
+     *
+     * @param level the level of an event
+     * @return the specific trap type for that level
+     */
+    public int getSpecificTrapType(final Level level) {
+        //pairs of level and trap type
+        final int[] pairs = levelTrapTypes;
+        final int levelValue = level.toInt();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i] == levelValue) return pairs[i + 1];
+        }
+        return specificTrapType;
+    }
+
+    /**
+     * Get the specific trap type for an event: the one set by its TrapRules rule, if any, otherwise the one for its
+     * level.
+     */
+    private int getSpecificTrapType(final Level level, final TrapRuleSet.Rule rule) {
+        return null != rule && rule.hasSpecificTrapType() ? rule.getSpecificTrapType() : getSpecificTrapType(level);
+    }
+
     /**
      * Get the trap OID that will be sent in the SNMP PDU for this app.
      * @return application OID currently set
@@ -562,11 +1482,12 @@ public class SNMPTrapAppender extends AppenderSkeleton {
     }
 
     /**
-     * Get the value of the system up time that will be used for the SNMP PDU.
+     * Get the value of the system up time that will be used for the SNMP PDU.  Unless a value has been set explicitly,
+     * via the deprecated {@link #setSysUpTime(long)}, this is the current value returned by the SysUpTimeResolver.
      * @return current system up time
      */
     public long getSysUpTime() {
-        return sysUpTime;
+        return 0 != sysUpTime ? sysUpTime : sysUpTimeResolver.getSysUpTime();
     }
 
     /**
@@ -676,4 +1597,1240 @@ public class SNMPTrapAppender extends AppenderSkeleton {
     public void setTrapVersion(final int trapVersion) {
         this.trapVersion = trapVersion;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the flag that determines if traps are formatted and sent on background threads, rather than on the
+     * logging thread.<br> Default is false.
+     *
+     * @return the current value of this flag.
+     */
+    public boolean getAsyncDispatch() {
+        return asyncDispatch;
+    }
+
+    /**
+     * Sets the flag that determines if traps are formatted and sent on background threads, rather than on the
+     * logging thread.<br> Default is false.
+     *
+     * @param asyncDispatch true or false
+     */
+    public void setAsyncDispatch(final boolean asyncDispatch) {
+        this.asyncDispatch = asyncDispatch;
+    }
+
+    /**
+     * Gets the number of slots in the ring buffer used by the asynchronous dispatch mode.
+     *
+     * @return the requested number of slots
+     */
+    public int getAsyncBufferSize() {
+        return asyncBufferSize;
+    }
+
+    /**
+     * Sets the number of slots in the ring buffer used by the asynchronous dispatch mode.  The value is rounded up to
+     * the next power of two.<br> Default is 256.
+     *
+     * @param asyncBufferSize any positive value
+     */
+    public void setAsyncBufferSize(final int asyncBufferSize) {
+        this.asyncBufferSize = asyncBufferSize;
+    }
+
+    /**
+     * Gets the number of threads used to send traps in the asynchronous dispatch mode.
+     *
+     * @return the number of consumer threads
+     */
+    public int getAsyncConsumerThreads() {
+        return asyncConsumerThreads;
+    }
+
+    /**
+     * Sets the number of threads used to send traps in the asynchronous dispatch mode.<br> Default is 1.
+     *
+     * @param asyncConsumerThreads any positive value
+     */
+    public void setAsyncConsumerThreads(final int asyncConsumerThreads) {
+        this.asyncConsumerThreads = asyncConsumerThreads;
+    }
+
+    /**
+     * Gets the name of the strategy used by the threads of the asynchronous dispatch mode to wait for each other.
+     *
+     * @return the name of the wait strategy
+     */
+    public String getAsyncWaitStrategy() {
+        return asyncWaitStrategy;
+    }
+
+    /**
+     * Sets the name of the strategy used by the threads of the asynchronous dispatch mode to wait for each other.
+     * Allowed values are blocking, sleeping, yielding and busyspin.<br> Default is blocking.
+     *
+     * @param asyncWaitStrategy name of the strategy, see {@link TrapWaitStrategy}
+     */
+    public void setAsyncWaitStrategy(final String asyncWaitStrategy) {
+        if (TrapWaitStrategy.isKnown(asyncWaitStrategy))
+            this.asyncWaitStrategy = asyncWaitStrategy;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of asyncWaitStrategy must be set to ")
+                            .append("blocking, sleeping, yielding or busyspin! Illegal value was:")
+                            .append(asyncWaitStrategy).toString());
+    }
+
+    /**
+     * Gets the policy applied when the ring buffer of the asynchronous dispatch mode is full.
+     *
+     * @return the name of the overflow policy
+     */
+    public String getAsyncOverflowPolicy() {
+        return asyncOverflowPolicy;
+    }
+
+    /**
+     * Sets the policy applied when the ring buffer of the asynchronous dispatch mode is full.  Allowed values are
+     * block, dropNewest, dropOldest and dropBelowLevel.<br> Default is block.
+     *
+     * @param asyncOverflowPolicy name of the policy, see {@link AsyncTrapDispatcher}
+     */
+    public void setAsyncOverflowPolicy(final String asyncOverflowPolicy) {
+        if (AsyncTrapDispatcher.isKnownOverflowPolicy(asyncOverflowPolicy))
+            this.asyncOverflowPolicy = asyncOverflowPolicy;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of asyncOverflowPolicy must be set to ")
+                            .append("block, dropNewest, dropOldest or dropBelowLevel! Illegal value was:")
+                            .append(asyncOverflowPolicy).toString());
+    }
+
+    /**
+     * Gets the level below which events are dropped when the ring buffer is full, with the dropBelowLevel policy.
+     *
+     * @return the overflow level
+     */
+    public String getAsyncOverflowLevel() {
+        return asyncOverflowLevel.toString();
+    }
+
+    /**
+     * Sets the level below which events are dropped when the ring buffer is full, with the dropBelowLevel policy.
+     * Events at or above this level wait for a free slot.<br> Default is ERROR.
+     *
+     * @param asyncOverflowLevel the name of a Level, e.g. "WARN"
+     */
+    public void setAsyncOverflowLevel(final String asyncOverflowLevel) {
+        this.asyncOverflowLevel = Level.toLevel(asyncOverflowLevel, Level.ERROR);
+    }
+
+    /**
+     * Gets the flag that determines if the caller location of an event is captured before it is handed to a
+     * background thread.<br> Default is false.
+     *
+     * @return the current value of this flag.
+     */
+    public boolean getAsyncLocationInfo() {
+        return asyncLocationInfo;
+    }
+
+    /**
+     * Sets the flag that determines if the caller location of an event is captured before it is handed to a
+     * background thread.  Must be set to true if the layout uses any of the location conversion characters.<br>
+     * Default is false.
+     *
+     * @param asyncLocationInfo true or false
+     */
+    public void setAsyncLocationInfo(final boolean asyncLocationInfo) {
+        this.asyncLocationInfo = asyncLocationInfo;
+    }
+
+    /**
+     * Gets the number of events waiting to be sent by the asynchronous dispatcher.
+     *
+     * @return the queue depth, or 0 if the asynchronous dispatch mode is not active
+     */
+    public int getAsyncQueueDepth() {
+        final AsyncTrapDispatcher asyncDispatcher = dispatcher;
+        return null == asyncDispatcher ? 0 : asyncDispatcher.getQueueDepth();
+    }
+
+    /**
+     * Gets the number of events discarded by the overflow policy of the asynchronous dispatcher.
+     *
+     * @return the drop count, or 0 if the asynchronous dispatch mode is not active
+     */
+    public long getAsyncDroppedCount() {
+        final AsyncTrapDispatcher asyncDispatcher = dispatcher;
+        return null == asyncDispatcher ? 0 : asyncDispatcher.getDroppedCount();
+    }
+
+    /**
+     * Gets the time, in milliseconds, that an event may wait for others to share its trap.
+     *
+     * @return the batch window, or 0 if batching is off
+     */
+    public long getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    /**
+     * Sets the time, in milliseconds, that an event may wait for others to share its trap.<br> Default is 0, which
+     * turns batching off.  Batching is also off when the TenantMDCKey is set, as a batch may hold the events of
+     * several tenants.
+     *
+     * @param batchWindowMillis the batch window
+     */
+    public void setBatchWindowMillis(final long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * Gets the estimated size of the VarBinds of a batch, above which the batch is sent without waiting for the end of
+     * the batch window.
+     *
+     * @return the byte budget of a batch
+     */
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * Sets the estimated size of the VarBinds of a batch, above which the batch is sent without waiting for the end of
+     * the batch window.<br> Default is 1024.
+     *
+     * @param batchMaxBytes the byte budget of a batch
+     */
+    public void setBatchMaxBytes(final int batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    /**
+     * Gets the OID of the VarBind that carries the sequence number and time stamp of each event in a batch.
+     *
+     * @return the OID, or null if the ApplicationTrapOID is used
+     */
+    public String getBatchSequenceOID() {
+        return batchSequenceOID;
+    }
+
+    /**
+     * Sets the OID of the VarBind that carries the sequence number and time stamp of each event in a batch.<br>
+     * Default is the value of the ApplicationTrapOID.
+     *
+     * @param batchSequenceOID formatted as an OID E.g. "1.3.6.1.4.1.24.12.10.22.65"
+     */
+    public void setBatchSequenceOID(final String batchSequenceOID) {
+        this.batchSequenceOID = batchSequenceOID;
+    }
+
+    /**
+     * Gets the time, in seconds, between background refreshes of the addresses of the management host and the local
+     * host.
+     *
+     * @return the TTL of the cached addresses
+     */
+    public long getAddressCacheTtlSeconds() {
+        return addressCacheTtlSeconds;
+    }
+
+    /**
+     * Sets the time, in seconds, between background refreshes of the addresses of the management host and the local
+     * host.<br> Default is 300.  A value of 0 resolves the addresses only once.
+     *
+     * @param addressCacheTtlSeconds the TTL of the cached addresses
+     */
+    public void setAddressCacheTtlSeconds(final long addressCacheTtlSeconds) {
+        this.addressCacheTtlSeconds = addressCacheTtlSeconds;
+    }
+
+    /**
+     * Gets the specific trap types that override the SpecificTrapType for the events of some levels.
+     *
+     * @return the overrides, as set, or null if there are none
+     */
+    public String getLevelSpecificTrapTypes() {
+        return levelSpecificTrapTypes;
+    }
+
+    /**
+     * Sets the specific trap types that override the SpecificTrapType for the events of some levels, as a comma
+     * separated list of LEVEL=type pairs, e.g. "FATAL=1,ERROR=2,WARN=3".<br> Default is none.  Only the
+     * implementations of {@link ReusableSnmpTrapSender} honour it; the plain SnmpTrapSenderFacade implementations
+     * send every trap with the SpecificTrapType.
+     *
+     * @param levelSpecificTrapTypes the overrides
+     */
+    public void setLevelSpecificTrapTypes(final String levelSpecificTrapTypes) {
+        final String[] pairs = null == levelSpecificTrapTypes || 0 == levelSpecificTrapTypes.trim().length()
+                               ? new String[0]
+                               : levelSpecificTrapTypes.split(",");
+        final int[] levelTrapTypePairs = new int[2 * pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            final int separator = pairs[i].indexOf('=');
+            final Level level = -1 == separator ? null : Level.toLevel(pairs[i].substring(0, separator).trim(), null);
+            if (null == level) {
+                throw new IllegalArgumentException(new StringBuffer()
+                        .append("LevelSpecificTrapTypes must be a list of LEVEL=type pairs! Illegal value was:")
+                        .append(levelSpecificTrapTypes).toString());
+            }
+            try {
+                levelTrapTypePairs[2 * i] = level.toInt();
+                levelTrapTypePairs[2 * i + 1] = Integer.parseInt(pairs[i].substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(new StringBuffer()
+                        .append("LevelSpecificTrapTypes must be a list of LEVEL=type pairs! Illegal value was:")
+                        .append(levelSpecificTrapTypes).toString());
+            }
+        }
+        this.levelSpecificTrapTypes = levelSpecificTrapTypes;
+        this.levelTrapTypes = levelTrapTypePairs;
+    }
+
+    /**
+     * Gets the list of management hosts that traps are sent to.
+     *
+     * @return the list, as set, or null if the ManagementHost is used
+     */
+    public String getManagementHosts() {
+        return managementHosts;
+    }
+
+    /**
+     * Sets the list of management hosts that traps are sent to, as a comma separated list of
+     * host[:port][/version[/community]], e.g. "nms1,nms2:1162/2/private".<br> Default is none, i.e. only the
+     * ManagementHost.
+     *
+     * @param managementHosts the destinations of the traps
+     */
+    public void setManagementHosts(final String managementHosts) {
+        final boolean isEmpty = null == managementHosts || 0 == managementHosts.trim().length();
+        if (!isEmpty && 0 == TrapDestination.parse(managementHosts, managementHostTrapListenPort, trapVersion,
+                                                   communityString).length) {
+            throw new IllegalArgumentException(new StringBuffer()
+                    .append("ManagementHosts must name at least one host! Illegal value was:")
+                    .append(managementHosts).toString());
+        }
+        this.managementHosts = isEmpty ? null : managementHosts;
+    }
+
+    /**
+     * Gets the rate, in events per second, at which events of the levels with no rate of their own are sent.
+     *
+     * @return the rate, or 0 if they are not limited
+     */
+    public int getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    /**
+     * Sets the rate, in events per second, at which events of the levels with no rate of their own (other than FATAL)
+     * are sent; the LevelRateLimits can give a level a fractional rate.<br> Default is 0, i.e. no limit.
+     *
+     * @param rateLimitPerSecond the rate
+     */
+    public void setRateLimitPerSecond(final int rateLimitPerSecond) {
+        this.rateLimitPerSecond = rateLimitPerSecond;
+    }
+
+    /**
+     * Gets the rates of the levels that have a rate of their own.
+     *
+     * @return the rates, as set, or null if there are none
+     */
+    public String getLevelRateLimits() {
+        return levelRateLimits;
+    }
+
+    /**
+     * Sets the rates, in events per second, of the levels that have a rate of their own, as a comma separated list of
+     * LEVEL=rate pairs, e.g. "ERROR=10,WARN=1".  A rate of 0 means no limit.<br> Default is none.
+     *
+     * @param levelRateLimits the rates
+     */
+    public void setLevelRateLimits(final String levelRateLimits) {
+        final boolean isEmpty = 0 == TrapRateLimiter.parseLevelRates(levelRateLimits).length;
+        this.levelRateLimits = isEmpty ? null : levelRateLimits;
+    }
+
+    /**
+     * Gets the number of events of a level that may be sent at once, after a quiet period.
+     *
+     * @return the burst size
+     */
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * Sets the number of events of a level that may be sent at once, after a quiet period.<br> Default is 10.
+     *
+     * @param rateLimitBurst the burst size
+     */
+    public void setRateLimitBurst(final int rateLimitBurst) {
+        this.rateLimitBurst = rateLimitBurst;
+    }
+
+    /**
+     * Gets the period, in seconds, of the summary of the events suppressed by the rate limit.
+     *
+     * @return the period of the summary
+     */
+    public long getRateLimitSummarySeconds() {
+        return rateLimitSummarySeconds;
+    }
+
+    /**
+     * Sets the period, in seconds, of the summary of the events suppressed by the rate limit.<br> Default is 60.
+     *
+     * @param rateLimitSummarySeconds the period of the summary
+     */
+    public void setRateLimitSummarySeconds(final long rateLimitSummarySeconds) {
+        this.rateLimitSummarySeconds = rateLimitSummarySeconds;
+    }
+
+    /**
+     * Gets the OID of the VarBind of the summary trap.
+     *
+     * @return the OID, or null if the ApplicationTrapOID is used
+     */
+    public String getRateLimitSummaryOID() {
+        return rateLimitSummaryOID;
+    }
+
+    /**
+     * Sets the OID of the VarBind of the summary trap.<br> Default is the ApplicationTrapOID.
+     *
+     * @param rateLimitSummaryOID the OID
+     */
+    public void setRateLimitSummaryOID(final String rateLimitSummaryOID) {
+        this.rateLimitSummaryOID = rateLimitSummaryOID;
+    }
+
+    /**
+     * Gets the number of events suppressed by the rate limit since the last summary.
+     *
+     * @return the number of events, or 0 if there is no rate limit
+     */
+    public long getRateLimitSuppressedCount() {
+        final TrapRateLimiter currentLimiter = limiter;
+        return null == currentLimiter ? 0 : currentLimiter.getSuppressedCount();
+    }
+
+    /**
+     * Gets the time, in milliseconds, within which repeats of an event are suppressed.
+     *
+     * @return the length of the window, or 0 if repeats are not suppressed
+     */
+    public long getDedupWindowMillis() {
+        return dedupWindowMillis;
+    }
+
+    /**
+     * Sets the time, in milliseconds, within which repeats of an event are suppressed.<br> Default is 0, i.e. repeats
+     * are not suppressed.
+     *
+     * @param dedupWindowMillis the length of the window
+     */
+    public void setDedupWindowMillis(final long dedupWindowMillis) {
+        this.dedupWindowMillis = dedupWindowMillis;
+    }
+
+    /**
+     * Gets the most distinct events that are tracked at once for the suppression of repeats.
+     *
+     * @return the size of the table
+     */
+    public int getDedupMaxEntries() {
+        return dedupMaxEntries;
+    }
+
+    /**
+     * Sets the most distinct events that are tracked at once for the suppression of repeats.<br> Default is 1024.
+     *
+     * @param dedupMaxEntries the size of the table
+     */
+    public void setDedupMaxEntries(final int dedupMaxEntries) {
+        this.dedupMaxEntries = dedupMaxEntries;
+    }
+
+    /**
+     * Gets the OID of the VarBind holding the number of times a repeated event occurred.
+     *
+     * @return the OID, or null if the ApplicationTrapOID is used
+     */
+    public String getDedupCountOID() {
+        return dedupCountOID;
+    }
+
+    /**
+     * Sets the OID of the VarBind holding the number of times a repeated event occurred.<br> Default is the
+     * ApplicationTrapOID.
+     *
+     * @param dedupCountOID the OID
+     */
+    public void setDedupCountOID(final String dedupCountOID) {
+        this.dedupCountOID = dedupCountOID;
+    }
+
+    /**
+     * Gets the number of repeated events suppressed so far.
+     *
+     * @return the number of events, or 0 if repeats are not suppressed
+     */
+    public long getDedupSuppressedCount() {
+        final TrapDeduplicator currentDeduplicator = deduplicator;
+        return null == currentDeduplicator ? 0 : currentDeduplicator.getSuppressedCount();
+    }
+
+    /**
+     * Gets the way stack traces are forwarded, when ForwardStackTraceWithTrap is set.
+     *
+     * @return "full" or "compact"
+     */
+    public String getStackTraceMode() {
+        return stackTraceMode;
+    }
+
+    /**
+     * Sets the way stack traces are forwarded, when ForwardStackTraceWithTrap is set: "full", one VarBind per line of
+     * every trace, or "compact", see {@link StackTraceCompactor}.<br> Default is "full".
+     *
+     * @param stackTraceMode "full" or "compact"
+     */
+    public void setStackTraceMode(final String stackTraceMode) {
+        if (STACK_TRACE_FULL.equalsIgnoreCase(stackTraceMode) || STACK_TRACE_COMPACT.equalsIgnoreCase(stackTraceMode))
+            this.stackTraceMode = stackTraceMode;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of stackTraceMode must be set to ")
+                            .append("full or compact! Illegal value was:")
+                            .append(stackTraceMode).toString());
+    }
+
+    /**
+     * Gets the number of frames sent in the compact form of a stack trace.
+     *
+     * @return the number of frames
+     */
+    public int getStackTraceFrames() {
+        return stackTraceFrames;
+    }
+
+    /**
+     * Sets the number of frames sent in the compact form of a stack trace.<br> Default is 5.
+     *
+     * @param stackTraceFrames the number of frames
+     */
+    public void setStackTraceFrames(final int stackTraceFrames) {
+        this.stackTraceFrames = stackTraceFrames;
+    }
+
+    /**
+     * Gets the number of stack traces sent in full that are remembered, in the compact mode.
+     *
+     * @return the number of traces
+     */
+    public int getStackTraceCacheSize() {
+        return stackTraceCacheSize;
+    }
+
+    /**
+     * Sets the number of stack traces sent in full that are remembered, in the compact mode.<br> Default is 256.
+     *
+     * @param stackTraceCacheSize the number of traces
+     */
+    public void setStackTraceCacheSize(final int stackTraceCacheSize) {
+        this.stackTraceCacheSize = stackTraceCacheSize;
+    }
+
+    /**
+     * Gets the time, in seconds, after which a stack trace is sent in full again, in the compact mode.
+     *
+     * @return the time, or 0 if a trace is only ever sent in full once
+     */
+    public long getStackTraceCacheSeconds() {
+        return stackTraceCacheSeconds;
+    }
+
+    /**
+     * Sets the time, in seconds, after which a stack trace is sent in full again, in the compact mode.<br> Default is
+     * 3600.  A value of 0 sends each trace in full only once, for as long as it is remembered.
+     *
+     * @param stackTraceCacheSeconds the time
+     */
+    public void setStackTraceCacheSeconds(final long stackTraceCacheSeconds) {
+        this.stackTraceCacheSeconds = stackTraceCacheSeconds;
+    }
+
+    /**
+     * Gets the largest datagram sent, in bytes.
+     *
+     * @return the size, or 0 if there is no limit
+     */
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    /**
+     * Sets the largest datagram sent, in bytes, see {@link TrapSizeBudget}.<br> Default is 0, for no limit; 1472 suits
+     * an Ethernet MTU of 1500.  Otherwise, it must be at least 484, the size that every SNMP entity must accept.
+     *
+     * @param maxDatagramSize the size
+     */
+    public void setMaxDatagramSize(final int maxDatagramSize) {
+        if (0 == maxDatagramSize || 484 <= maxDatagramSize)
+            this.maxDatagramSize = maxDatagramSize;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of maxDatagramSize must be set to ")
+                            .append("0 or at least 484! Illegal value was:")
+                            .append(maxDatagramSize).toString());
+    }
+
+    /**
+     * Gets the name of the VarBind that links the parts of a trap that was split.
+     *
+     * @return the OID, or null for the ApplicationTrapOID
+     */
+    public String getCorrelationOID() {
+        return correlationOID;
+    }
+
+    /**
+     * Sets the name of the VarBind that links the parts of a trap that was split.<br> Default is the
+     * ApplicationTrapOID.
+     *
+     * @param correlationOID the OID
+     */
+    public void setCorrelationOID(final String correlationOID) {
+        this.correlationOID = correlationOID;
+    }
+
+    /**
+     * Gets the kind of notification sent to the SNMPv2c destinations.
+     *
+     * @return "trap" or "inform"
+     */
+    public String getNotificationType() {
+        return notificationType;
+    }
+
+    /**
+     * Sets the kind of notification sent to the SNMPv2c destinations, "trap" or "inform".  Informs are acknowledged
+     * by the management host, and resent until they are; they are only sent by the BerSNMPTrapSender.<br> Default is
+     * "trap".
+     *
+     * @param notificationType "trap" or "inform"
+     */
+    public void setNotificationType(final String notificationType) {
+        if (NOTIFICATION_TRAP.equalsIgnoreCase(notificationType)
+            || NOTIFICATION_INFORM.equalsIgnoreCase(notificationType))
+            this.notificationType = notificationType;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of notificationType must be set to ")
+                            .append("trap or inform! Illegal value was:")
+                            .append(notificationType).toString());
+    }
+
+    /**
+     * Gets the time to wait for the response to an inform before it is first resent.
+     *
+     * @return the time, in milliseconds
+     */
+    public long getInformTimeoutMillis() {
+        return informTimeoutMillis;
+    }
+
+    /**
+     * Sets the time to wait for the response to an inform before it is first resent; the time doubles with each
+     * retry.<br> Default is 1500.
+     *
+     * @param informTimeoutMillis the time, in milliseconds
+     */
+    public void setInformTimeoutMillis(final long informTimeoutMillis) {
+        this.informTimeoutMillis = informTimeoutMillis;
+    }
+
+    /**
+     * Gets the number of times an inform is resent, before it is given up on.
+     *
+     * @return the number of retries
+     */
+    public int getInformRetries() {
+        return informRetries;
+    }
+
+    /**
+     * Sets the number of times an inform is resent, before it is given up on.<br> Default is 3.
+     *
+     * @param informRetries the number of retries
+     */
+    public void setInformRetries(final int informRetries) {
+        this.informRetries = informRetries;
+    }
+
+    /**
+     * Gets the number of informs that may be waiting for their responses at once.
+     *
+     * @return the number of informs
+     */
+    public int getInformMaxOutstanding() {
+        return informMaxOutstanding;
+    }
+
+    /**
+     * Sets the number of informs that may be waiting for their responses at once.  Once they are all taken, sending
+     * waits for one to be acknowledged or given up on.<br> Default is 1024.
+     *
+     * @param informMaxOutstanding the number of informs
+     */
+    public void setInformMaxOutstanding(final int informMaxOutstanding) {
+        this.informMaxOutstanding = informMaxOutstanding;
+    }
+
+    /**
+     * Gets the tracker of the informs in flight, for its counts.
+     *
+     * @return the tracker, or null if no informs are sent
+     */
+    public InformTracker getInformTracker() {
+        final SnmpTrapSenderFacade out = sender;
+        return out instanceof BerSNMPTrapSender ? ((BerSNMPTrapSender) out).getInformTracker() : null;
+    }
+
+    /**
+     * Gets the spool of the traps that could not be sent, for its counts.
+     *
+     * @return the spool, or null if there is none
+     */
+    public TrapSpool getSpool() {
+        final SnmpTrapSenderFacade out = sender;
+        return out instanceof BerSNMPTrapSender ? ((BerSNMPTrapSender) out).getSpool() : null;
+    }
+
+    /**
+     * Gets the SNMPv3 user the traps are sent as.
+     *
+     * @return the user name
+     */
+    public String getSecurityName() {
+        return securityName;
+    }
+
+    /**
+     * Sets the SNMPv3 user the traps are sent as, by the UsmSNMPTrapSender.<br> There is no default.
+     *
+     * @param securityName the user name
+     */
+    public void setSecurityName(final String securityName) {
+        this.securityName = securityName;
+    }
+
+    /**
+     * Gets the SNMPv3 authentication protocol.
+     *
+     * @return "SHA" or "SHA256"
+     */
+    public String getAuthProtocol() {
+        return authProtocol;
+    }
+
+    /**
+     * Sets the SNMPv3 authentication protocol, "SHA" for HMAC-SHA-96 or "SHA256" for HMAC-SHA-256-192.<br> Default
+     * is "SHA".
+     *
+     * @param authProtocol "SHA" or "SHA256"
+     */
+    public void setAuthProtocol(final String authProtocol) {
+        if (UsmSNMPTrapSender.AUTH_SHA.equalsIgnoreCase(authProtocol)
+            || UsmSNMPTrapSender.AUTH_SHA256.equalsIgnoreCase(authProtocol))
+            this.authProtocol = authProtocol;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of authProtocol must be set to ")
+                            .append("SHA or SHA256! Illegal value was:")
+                            .append(authProtocol).toString());
+    }
+
+    /**
+     * Gets the SNMPv3 authentication password.
+     *
+     * @return the password
+     */
+    public String getAuthPassword() {
+        return authPassword;
+    }
+
+    /**
+     * Sets the SNMPv3 authentication password, at least 8 characters long.<br> There is no default.
+     *
+     * @param authPassword the password
+     */
+    public void setAuthPassword(final String authPassword) {
+        this.authPassword = authPassword;
+    }
+
+    /**
+     * Gets the SNMPv3 privacy password.
+     *
+     * @return the password
+     */
+    public String getPrivPassword() {
+        return privPassword;
+    }
+
+    /**
+     * Sets the SNMPv3 privacy password, at least 8 characters long.<br> There is no default.
+     *
+     * @param privPassword the password
+     */
+    public void setPrivPassword(final String privPassword) {
+        this.privPassword = privPassword;
+    }
+
+    /**
+     * Gets the SNMPv3 engine ID of the sender.
+     *
+     * @return the engine ID, in hexadecimal, or null for one made from the local address
+     */
+    public String getEngineID() {
+        return engineID;
+    }
+
+    /**
+     * Sets the SNMPv3 engine ID of the sender, in hexadecimal, e.g. "0x80001F8804617070".  The management host must
+     * know the user under this engine ID.<br> Default is one made from the net-snmp enterprise number and the local
+     * IPv4 address.
+     *
+     * @param engineID the engine ID
+     */
+    public void setEngineID(final String engineID) {
+        this.engineID = engineID;
+    }
+
+    /**
+     * Gets the base of the SNMPv3 engine boots of the sender, used if there is no EngineBootsFile.
+     *
+     * @return the engine boots
+     */
+    public int getEngineBoots() {
+        return engineBoots;
+    }
+
+    /**
+     * Sets the base of the SNMPv3 engine boots of the sender, or the first value of a new EngineBootsFile.  Without
+     * an EngineBootsFile, the seconds since 2020 are added to it, so that the boots go up each time the JVM is
+     * restarted.<br> Default is 1.
+     *
+     * @param engineBoots the engine boots
+     */
+    public void setEngineBoots(final int engineBoots) {
+        this.engineBoots = engineBoots;
+    }
+
+    /**
+     * Gets the file the SNMPv3 engine boots are kept in.
+     *
+     * @return the file name, or null
+     */
+    public String getEngineBootsFile() {
+        return engineBootsFile;
+    }
+
+    /**
+     * Sets the file the SNMPv3 engine boots are kept in; the count in it is incremented the first time the engine
+     * ID is used in the JVM.<br> Default is null, for the EngineBoots plus the seconds since 2020.
+     *
+     * @param engineBootsFile the file name
+     */
+    public void setEngineBootsFile(final String engineBootsFile) {
+        this.engineBootsFile = engineBootsFile;
+    }
+
+    /**
+     * Gets the flag that determines if the appender registers its MBean.
+     *
+     * @return the current value of this flag.
+     */
+    public boolean getJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Sets the flag that determines if the appender registers its {@link TrapMetricsMXBean} with the platform MBean
+     * server, when it is activated.<br> Default is true.
+     *
+     * @param jmxEnabled true or false
+     */
+    public void setJmxEnabled(final boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * Gets the counters and latency histograms of the appender.  They are kept whether or not the MBean is
+     * registered.
+     *
+     * @return the metrics
+     */
+    public TrapMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the thread the formatted traps are sent from.
+     *
+     * @return "caller", "virtual" or "platform"
+     */
+    public String getSendExecutor() {
+        return sendExecutorMode;
+    }
+
+    /**
+     * Sets the thread the formatted traps are sent from: "caller", the thread that formatted them, "virtual", a
+     * virtual thread per trap (on JDK 21 and later, otherwise as "platform"), or "platform", a pool of SendThreads
+     * threads.<br> Default is "caller".
+     *
+     * @param sendExecutor "caller", "virtual" or "platform"
+     */
+    public void setSendExecutor(final String sendExecutor) {
+        if (SEND_EXECUTOR_CALLER.equalsIgnoreCase(sendExecutor)
+            || TrapSendExecutor.VIRTUAL.equalsIgnoreCase(sendExecutor)
+            || TrapSendExecutor.PLATFORM.equalsIgnoreCase(sendExecutor))
+            this.sendExecutorMode = sendExecutor;
+        else
+            throw new IllegalArgumentException(
+                    new StringBuffer().append("Value of sendExecutor must be set to ")
+                            .append("caller, virtual or platform! Illegal value was:")
+                            .append(sendExecutor).toString());
+    }
+
+    /**
+     * Gets the number of threads of the platform send pool.
+     *
+     * @return the number of threads
+     */
+    public int getSendThreads() {
+        return sendThreads;
+    }
+
+    /**
+     * Sets the number of threads of the platform send pool, used by the "platform" SendExecutor, and by "virtual"
+     * on JDKs without virtual threads.<br> Default is 16.
+     *
+     * @param sendThreads the number of threads
+     */
+    public void setSendThreads(final int sendThreads) {
+        this.sendThreads = sendThreads;
+    }
+
+    /**
+     * Gets the number of traps that may be sent at once by the SendExecutor.
+     *
+     * @return the number of traps
+     */
+    public int getSendMaxConcurrency() {
+        return sendMaxConcurrency;
+    }
+
+    /**
+     * Sets the number of traps that may be sent at once by the SendExecutor; the logging thread waits for one of
+     * them to be sent before handing over another.<br> Default is 64.
+     *
+     * @param sendMaxConcurrency the number of traps
+     */
+    public void setSendMaxConcurrency(final int sendMaxConcurrency) {
+        this.sendMaxConcurrency = sendMaxConcurrency;
+    }
+
+    /**
+     * Gets the directory of the spool of the traps that could not be sent.
+     *
+     * While the sender of a tenant is initialized, this is the subdirectory of the tenant instead.
+     *
+     * @return the directory, or null
+     */
+    public String getSpoolDirectory() {
+        final TenantScope scope = (TenantScope) tenantScope.get();
+        return null != scope ? scope.spoolDirectory : spoolDirectory;
+    }
+
+    /**
+     * Sets the directory of the spool of the traps that could not be sent, by the BerSNMPTrapSender.  It must not
+     * be shared with another appender.<br> Default is null, for no spool: those traps are dropped.
+     *
+     * @param spoolDirectory the directory; it is created if need be
+     */
+    public void setSpoolDirectory(final String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Gets the size of each file of the spool.
+     *
+     * @return the size, in bytes
+     */
+    public int getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+
+    /**
+     * Sets the size of each file of the spool; it is at least large enough for the largest datagram.<br> Default is
+     * 1048576.
+     *
+     * @param spoolSegmentSize the size, in bytes
+     */
+    public void setSpoolSegmentSize(final int spoolSegmentSize) {
+        this.spoolSegmentSize = spoolSegmentSize;
+    }
+
+    /**
+     * Gets the number of files the spool is kept in.
+     *
+     * @return the number of files
+     */
+    public int getSpoolMaxSegments() {
+        return spoolMaxSegments;
+    }
+
+    /**
+     * Sets the number of files the spool is kept in; when they are full, the oldest is deleted, with its traps.<br>
+     * Default is 16.
+     *
+     * @param spoolMaxSegments the number of files
+     */
+    public void setSpoolMaxSegments(final int spoolMaxSegments) {
+        this.spoolMaxSegments = spoolMaxSegments;
+    }
+
+    /**
+     * Gets the rate the spooled traps are sent again at.
+     *
+     * @return the number of traps a second
+     */
+    public int getSpoolReplayPerSecond() {
+        return spoolReplayPerSecond;
+    }
+
+    /**
+     * Sets the rate the spooled traps are sent again at, once the management host can be reached; 0 for as fast as
+     * possible.<br> Default is 100.
+     *
+     * @param spoolReplayPerSecond the number of traps a second
+     */
+    public void setSpoolReplayPerSecond(final int spoolReplayPerSecond) {
+        this.spoolReplayPerSecond = spoolReplayPerSecond;
+    }
+
+    /**
+     * Gets the number of traps that may be queued for the transport thread.
+     *
+     * @return the number of traps, or 0 if they are sent by the threads that encode them
+     */
+    public int getTransportQueueSize() {
+        return transportQueueSize;
+    }
+
+    /**
+     * Sets the number of traps that may be queued for the transport thread of the BerSNMPTrapSender, each in a
+     * pooled direct buffer; a trap that finds them all taken is dropped.<br> Default is 0, for the traps to be sent
+     * by the threads that encode them.
+     *
+     * @param transportQueueSize the number of traps
+     */
+    public void setTransportQueueSize(final int transportQueueSize) {
+        this.transportQueueSize = transportQueueSize;
+    }
+
+    /**
+     * Gets how long the transport thread retries a trap while the socket send buffer is full.
+     *
+     * @return the time, in milliseconds
+     */
+    public long getTransportRetryMillis() {
+        return transportRetryMillis;
+    }
+
+    /**
+     * Sets how long the transport thread retries a trap while the socket send buffer is full, before it drops it.
+     * <br> Default is 5.
+     *
+     * @param transportRetryMillis the time, in milliseconds
+     */
+    public void setTransportRetryMillis(final long transportRetryMillis) {
+        this.transportRetryMillis = transportRetryMillis;
+    }
+
+    /**
+     * Gets the size of the socket send buffer of the BerSNMPTrapSender.
+     *
+     * @return the size, in bytes, or 0 for the default of the operating system
+     */
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    /**
+     * Sets the size of the socket send buffer (SO_SNDBUF) of the BerSNMPTrapSender; the operating system may cap it.
+     * <br> Default is 0, for the default of the operating system.
+     *
+     * @param socketSendBufferSize the size, in bytes
+     */
+    public void setSocketSendBufferSize(final int socketSendBufferSize) {
+        this.socketSendBufferSize = socketSendBufferSize;
+    }
+
+    /**
+     * Gets the rules that choose the trap of each event.
+     *
+     * @return the rules, as set, or null if there are none
+     */
+    public String getTrapRules() {
+        return trapRules;
+    }
+
+    /**
+     * Sets the rules that choose the trap OID, the specific trap type and extra VarBinds of each event, by its logger,
+     * level and MDC keys, separated by ';', e.g. "logger=com.acme.db, levels=ERROR+, oid=1.3.6.1.4.1.99999.3,
+     * type=10", see {@link TrapRuleSet}.<br> Default is none.  The type of a rule is only honoured by the
+     * implementations of {@link ReusableSnmpTrapSender}; the plain SnmpTrapSenderFacade implementations send every
+     * trap with the SpecificTrapType.
+     *
+     * @param trapRules the rules
+     */
+    public void setTrapRules(final String trapRules) {
+        final TrapRuleSet ruleSet = null == trapRules || 0 == trapRules.trim().length()
+                                    ? null
+                                    : new TrapRuleSet(trapRules);
+        this.trapRules = trapRules;
+        this.trapRuleSet = ruleSet;
+    }
+
+    /**
+     * Gets the MDC key that selects the tenant of each event.
+     *
+     * @return the key, or null if the traps of all events are sent to the ManagementHost
+     */
+    public String getTenantMDCKey() {
+        return tenantMDCKey;
+    }
+
+    /**
+     * Sets the MDC key that selects the tenant of each event, whose traps are sent to the destinations chosen for
+     * the tenant by the TenantResolver.  The BatchWindowMillis is ignored when this is set.<br> Default is null, for
+     * none.
+     *
+     * @param tenantMDCKey the key
+     */
+    public void setTenantMDCKey(final String tenantMDCKey) {
+        this.tenantMDCKey = tenantMDCKey;
+    }
+
+    /**
+     * Gets the concrete instance of an implementation of the TenantResolver interface that chooses the destinations
+     * of each tenant.
+     *
+     * @return the resolver, or null if the TenantDestinations are used
+     */
+    public TenantResolver getTenantResolver() {
+        return tenantResolver;
+    }
+
+    /**
+     * See {@link TenantResolver}.  This method sets the resolver by passing the FQN of the class that implements the
+     * TenantResolver interface, as a String.<br> Default is none, for the TenantDestinations.
+     *
+     * @param value the FQN of the class implementing the TenantResolver interface, e.g.
+     *              "org.apache.log4j.ext.MyTenantResolver".
+     */
+    public void setTenantResolver(final String value) {
+        tenantResolver = (TenantResolver) OptionConverter.instantiateByClassName(
+                value,
+                TenantResolver.class,
+                null);
+    }
+
+    /**
+     * Gets the destinations of each tenant, used if there is no TenantResolver.
+     *
+     * @return the destinations, as set, or null if there are none
+     */
+    public String getTenantDestinations() {
+        return tenantDestinations;
+    }
+
+    /**
+     * Sets the destinations of each tenant, used if there is no TenantResolver, as a list of tenant=destinations
+     * entries separated by ';', e.g. "acme=nms.acme.com/2/acme; globex=10.1.1.1:1162/1/globex", see
+     * {@link TenantDestinationMap}.<br> Default is none.
+     *
+     * @param tenantDestinations the destinations
+     */
+    public void setTenantDestinations(final String tenantDestinations) {
+        //check the syntax now
+        new TenantDestinationMap(tenantDestinations);
+        this.tenantDestinations = tenantDestinations;
+    }
+
+    /**
+     * Gets the most tenants whose senders are kept at once.
+     *
+     * @return the number of tenants
+     */
+    public int getTenantCacheSize() {
+        return tenantCacheSize;
+    }
+
+    /**
+     * Sets the most tenants whose senders are kept at once; the least recently used one is closed to make room for
+     * another.<br> Default is 64.
+     *
+     * @param tenantCacheSize the number of tenants
+     */
+    public void setTenantCacheSize(final int tenantCacheSize) {
+        this.tenantCacheSize = tenantCacheSize;
+    }
+
+    /**
+     * Gets the time after which the sender of a tenant that has not been used is closed.
+     *
+     * @return the time, in seconds
+     */
+    public int getTenantIdleSeconds() {
+        return tenantIdleSeconds;
+    }
+
+    /**
+     * Sets the time after which the sender of a tenant that has not been used is closed.<br> Default is 300; 0 keeps
+     * them until they are evicted by other tenants.
+     *
+     * @param tenantIdleSeconds the time, in seconds
+     */
+    public void setTenantIdleSeconds(final int tenantIdleSeconds) {
+        this.tenantIdleSeconds = tenantIdleSeconds;
+    }
+
+    /**
+     * Gets the senders of the tenants.
+     *
+     * @return the cache of senders, or null if there is no TenantMDCKey, or the appender is not active
+     */
+    public TenantSenderCache getTenantSenders() {
+        return tenantSenders;
+    }
+
+    /**
+     * The destinations and spool directory of the tenant whose sender is being initialized.
+     */
+    private static final class TenantScope {
+
+        private final TrapDestination[] destinations;
+        private final String spoolDirectory;
+
+        TenantScope(final TrapDestination[] destinationsValue, final String spoolDirectoryValue) {
+            destinations = destinationsValue;
+            spoolDirectory = spoolDirectoryValue;
+        }
+    }
+}
@@ -50,8 +50,12 @@
 package org.apache.log4j.ext;
 
 import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.PatternConverter;
 import org.apache.log4j.spi.LoggingEvent;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 
 /**
@@ -88,6 +92,10 @@ import java.util.StringTokenizer;
  * discrete VarBind, the "m" element of the LoggingEvent (the message) is mapped with the OID
  * "1.3.6.1.4.1.24.100.2" to another discrete VarBind, and so on.
  * <p>
+ * The conversion pattern is split up and compiled once, whenever it or one of the delimiters is set, and again by
+ * #activateOptions, into a chain of converters for each VarBind.  Formatting an event then only runs the converters,
+ * into a buffer that belongs to the formatting thread, so this layout may be used by several threads at once.
+ * <p>
  * Version 1.0.1<br>
  * 2001-09-29<br>
  * changes ---
@@ -96,6 +104,9 @@ import java.util.StringTokenizer;
  * to belong, to this class.  Given the details of the task that this method resolves, and the means
  * that it uses to do so, it seems a better fit as a responsibility of this class.<br>
  *
+ * 2026-10-17: the conversion pattern is now compiled once, instead of being split up and parsed again into a new
+ * PatternLayout for each VarBind of each event.<br>
+ *
  * @author Mark Masterson (<a href="mailto:m.masterson@computer.org">m.masterson@computer.org</a>),
  * @author <br>Matt Monks (<a href="mailto:Matthew.Monks@netdecisions.com">Matthew.Monks@netdecisions.com</a>)
  */
@@ -103,6 +114,48 @@ public class SnmpDelimitedConversionPatternLayout extends PatternLayout {
 
     private String valuePairDelim = "/";
     private String varDelim = ";";
+    private volatile VarBindPattern[] varBindPatterns;
+
+    private static final int MAX_BUFFER_CAPACITY = 1024;
+
+    private static final ThreadLocal buffers = new ThreadLocal() {
+        protected Object initialValue() {
+            return new StringBuffer(256);
+        }
+    };
+
+    /**
+     * Default constructor.
+     */
+    public SnmpDelimitedConversionPatternLayout() {
+    }
+
+    /**
+     * Constructs the layout with the given conversion pattern.
+     *
+     * @param pattern the delimited conversion pattern
+     */
+    public SnmpDelimitedConversionPatternLayout(final String pattern) {
+        super(pattern);
+    }
+
+    /**
+     * Sets the conversion pattern, and compiles it.
+     *
+     * @param conversionPattern the delimited conversion pattern
+     */
+    public void setConversionPattern(final String conversionPattern) {
+        super.setConversionPattern(conversionPattern);
+        varBindPatterns = compile(false);
+    }
+
+    /**
+     * Compiles the conversion pattern, reporting any value pair that does not name an OID.
+     */
+    public void activateOptions() {
+        super.activateOptions();
+        varBindPatterns = compile(true);
+    }
 
     /**
      * Gets the value of the delimiter used in the conversion pattern string to delimit value pairs that should be added
@@ -122,6 +175,7 @@ public class SnmpDelimitedConversionPatternLayout extends PatternLayout {
      */
     public void setValuePairDelim(final String valuePairDelim) {
         this.valuePairDelim = valuePairDelim;
+        this.varBindPatterns = compile(false);
     }
 
     /**
@@ -142,6 +196,7 @@ public class SnmpDelimitedConversionPatternLayout extends PatternLayout {
      */
     public void setVarDelim(final String varDelim) {
         this.varDelim = varDelim;
+        this.varBindPatterns = compile(false);
     }
 
     /**
@@ -154,21 +209,88 @@ public class SnmpDelimitedConversionPatternLayout extends PatternLayout {
     }
 
     /**
-     * Breaks the conversion pattern string itself up and, using the tokens thus found, builds distinct VarBinds out of
-     * the OID's <b>embedded</b> in the conversion pattern string and the escaped elements of the LoggingEvent.
+     * Breaks the conversion pattern string itself up and compiles each of the elements of the LoggingEvent thus found
+     * into a chain of converters, paired with the OID <b>embedded</b> in the conversion pattern string for it.
      *
-     * @param event to log
-     * @param out   logging target
+     * @param report true to log the value pairs that have no OID
+     * @return the compiled value pairs
      */
-    public void formatMultipleVarBinds(final LoggingEvent event, final SnmpTrapSenderFacade out) {
+    private VarBindPattern[] compile(final boolean report) {
         final String pattern = this.getConversionPattern();
-        final StringTokenizer splitter = new StringTokenizer(pattern, this.getValuePairDelim());
-        while (splitter.hasMoreTokens()) {
-            final String variable = splitter.nextToken();
-            final StringTokenizer varSplitter = new StringTokenizer(variable, this.getVarDelim());
-            final PatternLayout layout = new PatternLayout(varSplitter.nextToken());
-            final String parsedResult = layout.format(event);
-            out.addTrapMessageVariable(varSplitter.nextToken(), parsedResult);
+        final List compiled = new ArrayList();
+        if (null != pattern && null != this.valuePairDelim && null != this.varDelim) {
+            final StringTokenizer splitter = new StringTokenizer(pattern, this.valuePairDelim);
+            while (splitter.hasMoreTokens()) {
+                final String variable = splitter.nextToken();
+                final StringTokenizer varSplitter = new StringTokenizer(variable, this.varDelim);
+                final String element = varSplitter.hasMoreTokens() ? varSplitter.nextToken() : null;
+                if (null == element || !varSplitter.hasMoreTokens()) {
+                    if (report) LogLog.error(new StringBuffer().append("No OID for the value pair \"")
+                            .append(variable).append("\" of the conversion pattern -- it will not be sent.")
+                            .toString());
+                    continue;
+                }
+                //looked up in the OIDRegistry now, so that the senders find it there, already parsed
+                final String oid = varSplitter.nextToken();
+                try {
+                    OIDRegistry.lookup(oid);
+                } catch (IllegalArgumentException e) {
+                    if (report) LogLog.warn(new StringBuffer().append("The OID \"").append(oid)
+                            .append("\" of the conversion pattern is malformed.").toString());
+                }
+                compiled.add(new VarBindPattern(OIDRegistry.intern(oid), createPatternParser(element).parse()));
+            }
+        }
+        return (VarBindPattern[]) compiled.toArray(new VarBindPattern[compiled.size()]);
+    }
+
+    /**
+     * Builds distinct VarBinds out of the OID's <b>embedded</b> in the conversion pattern string and the escaped
+     * elements of the LoggingEvent, using the compiled conversion pattern.
+     *
+     * @param event to log
+     * @param out   logging target -- either a legacy SnmpTrapSenderFacade, or a per-trap SnmpTrapBuilder
+     */
+    public void formatMultipleVarBinds(final LoggingEvent event, final SnmpVarBindSink out) {
+        VarBindPattern[] patterns = this.varBindPatterns;
+        if (null == patterns) {
+            patterns = compile(false);
+            this.varBindPatterns = patterns;
+        }
+        StringBuffer buffer = (StringBuffer) buffers.get();
+        if (MAX_BUFFER_CAPACITY < buffer.capacity()) {
+            buffer = new StringBuffer(256);
+            buffers.set(buffer);
+        }
+        for (int i = 0; i < patterns.length; i++) {
+            buffer.setLength(0);
+            patterns[i].format(buffer, event);
+            out.addTrapMessageVariable(patterns[i].oid, buffer.toString());
+        }
+    }
+
+    /**
+     * One compiled value pair of the conversion pattern: the OID, and the converters for its element of the
+     * LoggingEvent.
+     */
+    private static final class VarBindPattern {
+
+        private final String oid;
+        private final PatternConverter head;
+
+        VarBindPattern(final String oidValue, final PatternConverter headValue) {
+            oid = oidValue;
+            head = headValue;
+        }
+
+        /**
+         * Runs the converters.  Some converters (the date converters, for one) keep state of their own, so a chain
+         * is only run by one thread at a time.
+         */
+        synchronized void format(final StringBuffer buffer, final LoggingEvent event) {
+            for (PatternConverter c = head; null != c; c = c.next) {
+                c.format(buffer, event);
+            }
         }
     }
 }
@@ -0,0 +1,82 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+/**
+ * Title: SnmpTrapBuilder<br>
+ * Description: A single trap under construction, obtained from {@link ReusableSnmpTrapSender#createTrap()}.<p>
+ * A builder holds all of the per-trap state (the VarBinds, the time stamp and the specific trap type), so that the
+ * sender that created it can be shared by any number of threads.  A builder itself is <b>not</b> thread-safe, and
+ * must not be reused once {@link #sendTrap()} has been called.<br>
+ * @version 1.0<br>
+ */
+public interface SnmpTrapBuilder extends SnmpVarBindSink {
+
+    /**
+     * Sets the system up time, in milliseconds, that will be used as the time stamp of this trap.  If not called, the
+     * value known to the sender when it was initialized is used.
+     *
+     * @param sysUpTime milliseconds since the application (or host) was started
+     */
+    void setSysUpTime(long sysUpTime);
+
+    /**
+     * Sets the specific trap type of this trap.  If not called, the value known to the sender when it was initialized
+     * is used.  Senders that have no notion of a specific trap type ignore it.
+     *
+     * @param specificTrapType the specific trap type
+     */
+    void setSpecificTrapType(int specificTrapType);
+
+    /**
+     * Sends the trap, with all of the VarBinds added so far.
+     */
+    void sendTrap();
+}
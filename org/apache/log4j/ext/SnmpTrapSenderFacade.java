@@ -64,14 +64,20 @@ package org.apache.log4j.ext;
  * 2003-05-24: mwm : changed the method signature of the SnmpTrapSenderFacade interface to use the Appender
  * as a single parameter object -- this makes the method more flexible against changes to the set of
  * parameters or interest in the future.<br>
+ *
+ * 2026-10-17: the appender now resolves its sender once, in activateOptions.  Senders that can be shared across
+ * events should implement {@link ReusableSnmpTrapSender}; plain implementations of this interface are still
+ * initialized once per trap.<br>
  */
 
-public interface SnmpTrapSenderFacade {
+public interface SnmpTrapSenderFacade extends SnmpVarBindSink {
 
     /**
      * This method is called to set the values of all of the class fields used
      * as parameters to the underlying SNMP API.  This method <b>must</b> be
      * called prior to calling either of the other methods in this class.
+     * For a {@link ReusableSnmpTrapSender}, it is called only once, when the
+     * appender is activated.
      *
      * @param appender - An instance of the SNMPTrapAppender class.  All of the
      * values needed to configure the trap sender will be extracted from the
@@ -0,0 +1,178 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Title: StackTraceCompactor<br>
+ * Description: Forwards stack traces in a compact form, sending the full trace only the first time it is seen.<p>
+ * Each trace is identified by a stable hash of the exception classes and the frames, leaving out the exception
+ * messages, which often vary from one occurrence to the next.  The first time a trace is seen, or once it has
+ * expired, it is sent in full, one VarBind per line, as before.  Otherwise, only the hash, the first line, the first
+ * few frames and the root cause are sent -- the receiver can find the rest in the full trace sent earlier under the
+ * same hash.<p>
+ * The hashes already sent in full are kept in a small LRU table.<br>
+ * @version 1.0<br>
+ */
+public final class StackTraceCompactor {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final String CAUSED_BY = "Caused by: ";
+
+    private final int frames;
+    private final long expiryMillis;
+    private final Map sentInFull;
+
+    /**
+     * @param frames the number of frames sent in the compact form
+     * @param cacheSize the number of hashes remembered
+     * @param expiryMillis the time after which a trace is sent in full again; 0 for never
+     */
+    public StackTraceCompactor(final int frames, final int cacheSize, final long expiryMillis) {
+        this.frames = frames;
+        this.expiryMillis = expiryMillis;
+        final int maxEntries = Math.max(1, cacheSize);
+        this.sentInFull = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(final Map.Entry eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Computes the stable hash of a stack trace: a 64 bit FNV-1a hash of the exception class names and the frames.
+     *
+     * @param stackTrace the lines of the stack trace, as given by LoggingEvent#getThrowableStrRep
+     * @return the hash, in hexadecimal
+     */
+    static String hash(final String[] stackTrace) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < stackTrace.length; i++) {
+            final String line = stackTrace[i];
+            final int start = line.startsWith(CAUSED_BY) ? CAUSED_BY.length() : 0;
+            int end = line.length();
+            if (0 == i || 0 < start) {
+                //the exception class, without its message
+                final int colon = line.indexOf(':', start);
+                if (-1 != colon) end = colon;
+            } else if (line.trim().startsWith("...")) {
+                //"... 12 more" depends on the depth of the enclosing trace, which is hashed already
+                continue;
+            }
+            for (int j = start; j < end; j++) {
+                hash ^= line.charAt(j);
+                hash *= FNV_PRIME;
+            }
+            hash ^= '\n';
+            hash *= FNV_PRIME;
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Adds the VarBinds for a stack trace to the trap.
+     *
+     * @param stackTrace the lines of the stack trace
+     * @param oid the name of the VarBinds
+     * @param out the trap
+     */
+    public void addStackTrace(final String[] stackTrace, final String oid, final SnmpVarBindSink out) {
+        if (0 == stackTrace.length) return;
+        final String hash = hash(stackTrace);
+        out.addTrapMessageVariable(oid, new StringBuffer().append("stack trace ").append(hash).toString());
+        if (isFirstSight(hash)) {
+            for (int i = 0; i < stackTrace.length; i++) {
+                out.addTrapMessageVariable(oid, stackTrace[i]);
+            }
+            return;
+        }
+        out.addTrapMessageVariable(oid, stackTrace[0]);
+        int sent = 0;
+        for (int i = 1; i < stackTrace.length && sent < frames; i++) {
+            if (stackTrace[i].startsWith(CAUSED_BY)) break;
+            out.addTrapMessageVariable(oid, stackTrace[i]);
+            sent++;
+        }
+        for (int i = stackTrace.length - 1; i > 0; i--) {
+            if (stackTrace[i].startsWith(CAUSED_BY)) {
+                out.addTrapMessageVariable(oid, stackTrace[i]);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records that the trace is being sent in full, unless it already was, and has not expired since.
+     *
+     * @param hash the hash of the trace
+     * @return true if the trace should be sent in full
+     */
+    private boolean isFirstSight(final String hash) {
+        final long now = System.currentTimeMillis();
+        synchronized (sentInFull) {
+            final Long sentAt = (Long) sentInFull.get(hash);
+            if (null != sentAt && (0 >= expiryMillis || now - sentAt.longValue() < expiryMillis)) return false;
+            sentInFull.put(hash, Long.valueOf(now));
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of hashes remembered
+     */
+    public int size() {
+        synchronized (sentInFull) {
+            return sentInFull.size();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Title: TenantDestinationMap<br>
+ * Description: The default {@link TenantResolver}, which takes the destinations of each tenant from a fixed list.<p>
+ * The list is written as <code>tenant=destinations;tenant=destinations</code>, where the destinations are those of
+ * the ManagementHosts property, e.g. "acme=nms.acme.com/2/acme, nms2.acme.com/2/acme; globex=10.1.1.1:1162/1/globex".
+ * Anything left out of a destination is taken from the appender's ManagementHostTrapListenPort, TrapVersion and
+ * CommunityString.  The traps of tenants that are not in the list are sent to the appender's own management hosts.<br>
+ * @version 1.0<br>
+ */
+public final class TenantDestinationMap implements TenantResolver {
+
+    private final Map destinationsByTenant = new HashMap();
+
+    /**
+     * @param tenantDestinations the list of tenants and their destinations
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    public TenantDestinationMap(final String tenantDestinations) {
+        final String[] entries = null == tenantDestinations ? new String[0] : tenantDestinations.split(";");
+        for (int i = 0; i < entries.length; i++) {
+            if (0 == entries[i].trim().length()) continue;
+            final int separator = entries[i].indexOf('=');
+            if (-1 == separator || 0 == entries[i].substring(0, separator).trim().length()) {
+                throw new IllegalArgumentException(new StringBuffer()
+                        .append("TenantDestinations must be a list of tenant=destinations entries! Illegal value was:")
+                        .append(tenantDestinations).toString());
+            }
+            final String destinations = entries[i].substring(separator + 1).trim();
+            //check the syntax now, rather than when the first trap of the tenant is sent
+            TrapDestination.parse(destinations, 162, 1, "public");
+            destinationsByTenant.put(entries[i].substring(0, separator).trim(), destinations);
+        }
+    }
+
+    public TrapDestination[] resolve(final String tenant, final SNMPTrapAppender appender) {
+        final String destinations = (String) destinationsByTenant.get(tenant);
+        if (null == destinations) return null;
+        return TrapDestination.parse(destinations,
+                                     appender.getManagementHostTrapListenPort(),
+                                     appender.getTrapVersion(),
+                                     appender.getCommunityString());
+    }
+
+    /**
+     * @return the number of tenants in the list
+     */
+    public int size() {
+        return destinationsByTenant.size();
+    }
+}
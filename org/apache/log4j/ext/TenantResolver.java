@@ -0,0 +1,74 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+/**
+ * Title: TenantResolver<br>
+ * Description: A class implementing this interface chooses the management hosts, and the SNMP version and community
+ * to use for each of them, for the traps of a tenant -- the value of the appender's TenantMDCKey in the MDC of the
+ * event.  For example, you might look the tenant up in a directory or a database.  You would specify the FQN of your
+ * implementing class in your properties file.  The SNMPTrapAppender includes a default implementation,
+ * {@link TenantDestinationMap}, that takes the destinations of each tenant from the TenantDestinations property.<p>
+ * The appender calls {@link #resolve(String, SNMPTrapAppender)} once for each tenant, when its first trap is sent,
+ * and again once the tenant has been evicted from its cache of senders.  It may be called from several threads at
+ * once.<br>
+ * @version 1.0<br>
+ */
+public interface TenantResolver {
+    /**
+     * Chooses the destinations of the traps of a tenant.
+     *
+     * @param tenant the value of the TenantMDCKey
+     * @param appender the appender, for the default port, version and community
+     * @return the destinations, e.g. from {@link TrapDestination#parse(String, int, int, String)}, or null if the
+     *         traps of the tenant should be sent to the appender's own management hosts
+     */
+    TrapDestination[] resolve(String tenant, SNMPTrapAppender appender);
+}
@@ -0,0 +1,366 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: TenantSenderCache<br>
+ * Description: Keeps a sender for each of the tenants that traps have recently been sent for.<p>
+ * The sender of a tenant, and its socket, are only created when the first trap of the tenant is sent, from the
+ * destinations chosen by the {@link TenantResolver}.  The senders are kept in an LRU table of at most a maximum
+ * number of tenants; the least recently used one is evicted to make room for a new one, and a background sweep
+ * evicts those that have not been used for a while, so that thousands of tenants do not keep thousands of sockets
+ * open.  The tenants that the resolver sends to the appender's own management hosts are remembered as well, so
+ * that the resolver is not asked about them for every trap.<p>
+ * A sender is acquired for each trap, and released once the trap has been sent; an evicted sender is closed, on a
+ * thread of its own, once it is no longer in use.<br>
+ * @version 1.0<br>
+ */
+public final class TenantSenderCache {
+
+    private static final long MIN_SWEEP_MILLIS = 1000L;
+
+    /**
+     * Creates the sender of a tenant.
+     */
+    public interface SenderFactory {
+
+        /**
+         * @param tenant the tenant
+         * @param destinations the destinations of its traps, with their addresses looked up
+         * @return the sender, initialized, or null if it could not be created
+         */
+        ReusableSnmpTrapSender createSender(String tenant, TrapDestination[] destinations);
+    }
+
+    private final TenantResolver resolver;
+    private final SNMPTrapAppender appender;
+    private final SenderFactory factory;
+    private final int maxSize;
+    private final long idleMillis;
+    private final long addressTtlMillis;
+    private final Map tenants;
+    private final List evicted = new ArrayList();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final ScheduledFuture sweepTask;
+    private boolean closed;
+    private boolean isClosing;
+
+    /**
+     * @param resolver chooses the destinations of each tenant
+     * @param appender the appender, passed to the resolver
+     * @param factory creates the sender of each tenant
+     * @param maxSize the most tenants kept at once
+     * @param idleMillis the time after which a tenant that has not been used is evicted; 0 for never
+     * @param addressTtlMillis the time between background refreshes of the addresses, see {@link CachedInetAddress}
+     */
+    public TenantSenderCache(final TenantResolver resolver,
+                             final SNMPTrapAppender appender,
+                             final SenderFactory factory,
+                             final int maxSize,
+                             final long idleMillis,
+                             final long addressTtlMillis) {
+        this.resolver = resolver;
+        this.appender = appender;
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.idleMillis = idleMillis;
+        this.addressTtlMillis = addressTtlMillis;
+        tenants = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(final Map.Entry eldest) {
+                if (size() <= TenantSenderCache.this.maxSize) return false;
+                evict((Tenant) eldest.getValue());
+                return true;
+            }
+        };
+        sweepTask = 0 < idleMillis
+                    ? TrapTimer.scheduleWithFixedDelay(new Runnable() {
+                        public void run() {
+                            sweep();
+                        }
+                    }, Math.max(MIN_SWEEP_MILLIS, idleMillis / 4))
+                    : null;
+    }
+
+    /**
+     * Acquires the sender of a tenant, creating it if need be.  Unless the result is null, it must be passed to
+     * {@link Tenant#release()} once the trap has been sent.
+     *
+     * @param tenant the tenant
+     * @return the tenant, or null if its traps should be sent to the appender's own management hosts
+     */
+    public Tenant acquire(final String tenant) {
+        synchronized (this) {
+            if (closed) return null;
+            final Tenant existing = (Tenant) tenants.get(tenant);
+            if (null != existing) return existing.acquire();
+        }
+        //resolving the tenant and opening its socket may take a while, so it is not done holding the lock
+        final Tenant created = create(tenant);
+        final Tenant result;
+        synchronized (this) {
+            Tenant current = closed ? null : (Tenant) tenants.get(tenant);
+            if (closed || null != current) {
+                //closed meanwhile, or another thread created it first
+                evict(created);
+            } else {
+                tenants.put(tenant, created);
+                current = created;
+            }
+            result = null == current ? null : current.acquire();
+        }
+        closeEvicted();
+        return result;
+    }
+
+    private Tenant create(final String tenant) {
+        TrapDestination[] destinations = null;
+        try {
+            destinations = resolver.resolve(tenant, appender);
+        } catch (RuntimeException e) {
+            LogLog.error(new StringBuffer().append("Could not resolve the destinations of the tenant ").append(tenant)
+                    .append(" -- its traps will be sent to the ManagementHost.").toString(), e);
+        }
+        if (null == destinations || 0 == destinations.length) return new Tenant(tenant, null, null);
+        for (int i = 0; i < destinations.length; i++) {
+            if (null == destinations[i].getAddress()) destinations[i] = destinations[i].resolve(addressTtlMillis);
+        }
+        final ReusableSnmpTrapSender sender = factory.createSender(tenant, destinations);
+        if (null == sender) {
+            closeDestinations(destinations);
+            return new Tenant(tenant, null, null);
+        }
+        createdCount.incrementAndGet();
+        return new Tenant(tenant, sender, destinations);
+    }
+
+    /**
+     * Evicts the tenants that have not been used for the idle time.
+     */
+    void sweep() {
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Iterator it = tenants.values().iterator(); it.hasNext();) {
+                final Tenant tenant = (Tenant) it.next();
+                if (now - tenant.lastUsedMillis >= idleMillis) {
+                    it.remove();
+                    evict(tenant);
+                }
+            }
+        }
+        closeEvicted();
+    }
+
+    /**
+     * Marks a tenant as evicted, queuing its sender to be closed if it is not in use.  Must hold the lock.
+     */
+    private void evict(final Tenant tenant) {
+        tenant.isEvicted = true;
+        if (null != tenant.sender) evictedCount.incrementAndGet();
+        if (0 == tenant.users && null != tenant.sender) evicted.add(tenant);
+    }
+
+    /**
+     * Closes the senders of the evicted tenants that are no longer in use, on a thread of their own, as closing a
+     * sender may wait for its queued traps to be sent.  The thread runs until there are none left.
+     */
+    private void closeEvicted() {
+        synchronized (this) {
+            if (evicted.isEmpty() || isClosing) return;
+            isClosing = true;
+        }
+        final Thread closer = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    final Tenant[] toClose;
+                    synchronized (TenantSenderCache.this) {
+                        if (evicted.isEmpty()) {
+                            isClosing = false;
+                            return;
+                        }
+                        toClose = (Tenant[]) evicted.toArray(new Tenant[evicted.size()]);
+                        evicted.clear();
+                    }
+                    for (int i = 0; i < toClose.length; i++) {
+                        toClose[i].close();
+                    }
+                }
+            }
+        }, "SNMPTrapAppender-tenant-closer");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    private static void closeDestinations(final TrapDestination[] destinations) {
+        for (int i = 0; i < destinations.length; i++) {
+            destinations[i].close();
+        }
+    }
+
+    /**
+     * @return the number of tenants kept
+     */
+    public synchronized int size() {
+        return tenants.size();
+    }
+
+    /**
+     * @return the number of senders created so far
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return the number of senders evicted so far
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Stops the sweep, and closes the sender of every tenant, whether or not it is in use.
+     */
+    public void close() {
+        if (null != sweepTask) sweepTask.cancel(false);
+        final Tenant[] toClose;
+        synchronized (this) {
+            closed = true;
+            final List all = new ArrayList(evicted);
+            for (Iterator it = tenants.values().iterator(); it.hasNext();) {
+                final Tenant tenant = (Tenant) it.next();
+                tenant.isEvicted = true;
+                if (null != tenant.sender) all.add(tenant);
+            }
+            tenants.clear();
+            evicted.clear();
+            toClose = (Tenant[]) all.toArray(new Tenant[all.size()]);
+        }
+        for (int i = 0; i < toClose.length; i++) {
+            toClose[i].close();
+        }
+    }
+
+    /**
+     * A tenant, with its sender and the number of traps being sent with it.
+     */
+    public final class Tenant {
+
+        private final String name;
+        private final ReusableSnmpTrapSender sender;
+        private final TrapDestination[] destinations;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+        private int users;
+        private boolean isEvicted;
+        private boolean isClosed;
+
+        Tenant(final String nameValue,
+               final ReusableSnmpTrapSender senderValue,
+               final TrapDestination[] destinationsValue) {
+            name = nameValue;
+            sender = senderValue;
+            destinations = destinationsValue;
+        }
+
+        /**
+         * Must hold the lock of the cache.
+         */
+        Tenant acquire() {
+            lastUsedMillis = System.currentTimeMillis();
+            if (null == sender) return null;
+            users++;
+            return this;
+        }
+
+        /**
+         * Releases the sender, once the trap has been sent with it.
+         */
+        public void release() {
+            synchronized (TenantSenderCache.this) {
+                users--;
+                if (0 == users && isEvicted && !isClosed) evicted.add(this);
+            }
+            closeEvicted();
+        }
+
+        /**
+         * @return the tenant
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the sender of the tenant
+         */
+        public ReusableSnmpTrapSender getSender() {
+            return sender;
+        }
+
+        void close() {
+            synchronized (TenantSenderCache.this) {
+                if (isClosed) return;
+                isClosed = true;
+            }
+            sender.close();
+            closeDestinations(destinations);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: TrapBatcher<br>
+ * Description: Coalesces the VarBinds of several logging events into a single trap.<p>
+ * Events are added to an open batch until either the batch window has elapsed since its first event, or the next
+ * event would take the estimated size of the batch over the byte budget; the batch is then sent as one trap.  Each
+ * event is preceded in the batch by a VarBind holding its sequence number and time stamp
+ * ("<i>sequence</i>,<i>timestamp</i>"), so that the receiver can tell the events apart and detect gaps.<p>
+ * The byte budget is an estimate of the encoded size of the VarBinds only, and does not include the trap header.<p>
+ * The flush at the end of the window is only scheduled on the {@link TrapTimer}, which hands it to the flush
+ * executor, as sending the batch may block.<br>
+ * @version 1.0<br>
+ */
+public final class TrapBatcher implements SnmpVarBindSink {
+
+    private static final int VARBIND_OVERHEAD = 8;
+
+    /**
+     * Receives each batch, to be sent as a single trap.
+     */
+    public interface BatchHandler {
+        void sendBatch(String[] oids, String[] values, int count);
+    }
+
+    /**
+     * Adds the VarBinds of a single event to a sink.
+     */
+    public interface EventFormatter {
+        void format(LoggingEvent event, SnmpVarBindSink out);
+    }
+
+    private final long windowMillis;
+    private final int maxBytes;
+    private final String sequenceOID;
+    private final EventFormatter formatter;
+    private final BatchHandler handler;
+    private final Executor flushExecutor;
+    private final AtomicLong sequence;
+    private final Object lock = new Object();
+    private String[] oids = new String[16];
+    private String[] values = new String[16];
+    private int count;
+    private int bytes;
+    private long generation;
+    private ScheduledFuture pendingFlush;
+
+    /**
+     * @param windowMillis the longest time an event waits in an open batch
+     * @param maxBytes the estimated size of the VarBinds of a batch, above which it is sent without waiting
+     * @param sequenceOID the OID of the per-event sequence/time stamp VarBind
+     * @param sequence the source of the event sequence numbers
+     * @param formatter adds the VarBinds of an event to the batch
+     * @param handler sends each batch
+     * @param flushExecutor runs the flushes at the end of the window, off the timer thread
+     */
+    public TrapBatcher(final long windowMillis,
+                       final int maxBytes,
+                       final String sequenceOID,
+                       final AtomicLong sequence,
+                       final EventFormatter formatter,
+                       final BatchHandler handler,
+                       final Executor flushExecutor) {
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.sequenceOID = sequenceOID;
+        this.sequence = sequence;
+        this.formatter = formatter;
+        this.handler = handler;
+        this.flushExecutor = flushExecutor;
+    }
+
+    /**
+     * Estimates the encoded size of a VarBind with an OCTET STRING value, which is written in UTF-8.
+     *
+     * @param oid the name of the VarBind
+     * @param value the value of the VarBind
+     * @return an estimate, in bytes
+     */
+    static int estimateSize(final String oid, final String value) {
+        return (null == oid ? 0 : oid.length()) + BerEncoder.utf8Length(value) + VARBIND_OVERHEAD;
+    }
+
+    /**
+     * Formats the event into the open batch, sending the batch first if the event would not fit in it.
+     *
+     * @param event to add
+     */
+    public void add(final LoggingEvent event) {
+        Batch previous = null;
+        Batch oversized = null;
+        synchronized (lock) {
+            final int start = count;
+            final int startBytes = bytes;
+            addTrapMessageVariable(sequenceOID, new StringBuffer().append(sequence.incrementAndGet())
+                    .append(',').append(event.timeStamp).toString());
+            formatter.format(event, this);
+            if (bytes > maxBytes && 0 < start) {
+                //send what was there before this event, and start the next batch with it
+                previous = takeBatch(start);
+                System.arraycopy(oids, start, oids, 0, count - start);
+                System.arraycopy(values, start, values, 0, count - start);
+                clear(count - start, count);
+                count -= start;
+                bytes -= startBytes;
+            }
+            if (bytes > maxBytes) {
+                //this event is too big to share a trap with anything else
+                oversized = takeBatch(count);
+                clear(0, count);
+                count = 0;
+                bytes = 0;
+            } else if (0 == start || null != previous) {
+                scheduleFlush();
+            }
+        }
+        if (null != previous) handler.sendBatch(previous.oids, previous.values, previous.count);
+        if (null != oversized) handler.sendBatch(oversized.oids, oversized.values, oversized.count);
+    }
+
+    /**
+     * Records a VarBind in the open batch.  Only to be called by the formatter, from within {@link #add}.
+     */
+    public void addTrapMessageVariable(final String applicationTrapOIDValue, final String value) {
+        if (count == oids.length) {
+            final String[] newOids = new String[2 * count];
+            final String[] newValues = new String[2 * count];
+            System.arraycopy(oids, 0, newOids, 0, count);
+            System.arraycopy(values, 0, newValues, 0, count);
+            oids = newOids;
+            values = newValues;
+        }
+        oids[count] = applicationTrapOIDValue;
+        values[count] = value;
+        count++;
+        bytes += estimateSize(applicationTrapOIDValue, value);
+    }
+
+    /**
+     * Sends the open batch, if it holds anything.
+     */
+    public void flush() {
+        final Batch batch;
+        synchronized (lock) {
+            if (0 == count) return;
+            batch = takeBatch(count);
+            clear(0, count);
+            count = 0;
+            bytes = 0;
+        }
+        handler.sendBatch(batch.oids, batch.values, batch.count);
+    }
+
+    /**
+     * Sends the open batch, and cancels the pending timed flush.
+     */
+    public void close() {
+        synchronized (lock) {
+            if (null != pendingFlush) pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        flush();
+    }
+
+    private void scheduleFlush() {
+        if (null != pendingFlush) pendingFlush.cancel(false);
+        final long scheduledGeneration = ++generation;
+        pendingFlush = TrapTimer.schedule(new Runnable() {
+            public void run() {
+                try {
+                    flushExecutor.execute(new Runnable() {
+                        public void run() {
+                            flushIfCurrent(scheduledGeneration);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    //the appender is being closed, and close() sends the open batch
+                }
+            }
+        }, windowMillis);
+    }
+
+    private void flushIfCurrent(final long scheduledGeneration) {
+        synchronized (lock) {
+            if (scheduledGeneration != generation) return;
+            pendingFlush = null;
+        }
+        flush();
+    }
+
+    private Batch takeBatch(final int batchCount) {
+        final String[] batchOids = new String[batchCount];
+        final String[] batchValues = new String[batchCount];
+        System.arraycopy(oids, 0, batchOids, 0, batchCount);
+        System.arraycopy(values, 0, batchValues, 0, batchCount);
+        return new Batch(batchOids, batchValues, batchCount);
+    }
+
+    private void clear(final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            oids[i] = null;
+            values[i] = null;
+        }
+    }
+
+    private static final class Batch {
+
+        private final String[] oids;
+        private final String[] values;
+        private final int count;
+
+        Batch(final String[] oidsValue, final String[] valuesValue, final int countValue) {
+            oids = oidsValue;
+            values = valuesValue;
+            count = countValue;
+        }
+    }
+}
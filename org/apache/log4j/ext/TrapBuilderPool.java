@@ -0,0 +1,114 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Title: TrapBuilderPool<br>
+ * Description: Keeps the reusable trap builders of a sender, with their encode buffers.<p>
+ * Each platform thread has a builder of its own, as before.  A virtual thread, though, sends a single trap and ends,
+ * so a builder of its own would be allocated for every trap; virtual threads take a builder from a small shared
+ * pool instead, and give it back once the trap has been sent.  When the pool is empty, a new builder is made; when
+ * it is full, the builder given back is dropped.<br>
+ * @version 1.0<br>
+ */
+abstract class TrapBuilderPool {
+
+    private final ThreadLocal perThread = new ThreadLocal() {
+        protected Object initialValue() {
+            return newBuilder();
+        }
+    };
+    private final AtomicReferenceArray pooled;
+
+    /**
+     * @param size the most builders kept for the virtual threads
+     */
+    TrapBuilderPool(final int size) {
+        pooled = new AtomicReferenceArray(Math.max(1, size));
+    }
+
+    /**
+     * @return a new builder
+     */
+    protected abstract Object newBuilder();
+
+    /**
+     * Takes the builder of the current thread.  On a virtual thread, it must be given back by {@link #give(Object)}.
+     */
+    Object take() {
+        if (!TrapSendExecutor.isVirtualThread()) return perThread.get();
+        final int start = startSlot();
+        for (int i = 0; i < pooled.length(); i++) {
+            final Object builder = pooled.getAndSet((start + i) % pooled.length(), null);
+            if (null != builder) return builder;
+        }
+        return newBuilder();
+    }
+
+    /**
+     * Gives back a builder taken by {@link #take()}, once its trap has been sent.
+     */
+    void give(final Object builder) {
+        if (!TrapSendExecutor.isVirtualThread()) return;
+        final int start = startSlot();
+        for (int i = 0; i < pooled.length(); i++) {
+            if (pooled.compareAndSet((start + i) % pooled.length(), null, builder)) return;
+        }
+    }
+
+    /**
+     * Spreads the threads over the slots, so that they do not all contend for the first ones.
+     */
+    private int startSlot() {
+        return (System.identityHashCode(Thread.currentThread()) & 0x7FFFFFFF) % pooled.length();
+    }
+}
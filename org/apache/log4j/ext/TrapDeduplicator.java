@@ -0,0 +1,308 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Title: TrapDeduplicator<br>
+ * Description: Suppresses repeats of the same logging event within a time window.<p>
+ * Each event is reduced to a fingerprint: its logger, its level, the class of its throwable, if any, and its message
+ * with UUIDs, hexadecimal strings and numbers masked out, so that "timeout after 3012 ms" and "timeout after 3020 ms"
+ * are the same.  The first event with a given fingerprint is sent, and opens a window; repeats within the window are
+ * only counted.  When the window closes, if there were repeats, the first of them is sent once more, together with
+ * the number of times the event occurred in the window.<p>
+ * The table of open windows is a ConcurrentHashMap, bounded to a maximum number of fingerprints -- when it is full,
+ * events with new fingerprints are sent without being tracked.  Windows are closed by a background sweep, which the
+ * {@link TrapTimer} hands to the sweep executor, as sending the repeats may block; an expired window that a new
+ * event comes across before the sweep does is also closed on the sweep executor, not on the logging thread.<br>
+ * @version 1.0<br>
+ */
+public final class TrapDeduplicator {
+
+    private static final Pattern VARIABLE_PARTS = Pattern.compile(
+            "([0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})"
+            + "|(\\b(?:0[xX])?[0-9a-fA-F]*[0-9][0-9a-fA-F]*[a-fA-F][0-9a-fA-F]*\\b|\\b0[xX][0-9a-fA-F]+\\b)"
+            + "|([0-9]+)");
+    private static final long MIN_SWEEP_MILLIS = 50L;
+
+    /**
+     * Receives an event that was repeated within its window.
+     */
+    public interface RepeatHandler {
+
+        /**
+         * Called on the logging thread when an event is kept to be sent later, so that the values that depend on the
+         * logging thread can be fixed.
+         */
+        void retain(LoggingEvent event);
+
+        /**
+         * Called when the window closes, with the first repeat and the number of times the event occurred.
+         */
+        void repeated(LoggingEvent event, long occurrences);
+    }
+
+    private final long windowMillis;
+    private final int maxEntries;
+    private final RepeatHandler handler;
+    private final Executor sweepExecutor;
+    private final AtomicBoolean isSweepPending = new AtomicBoolean();
+    private final Map windows = new ConcurrentHashMap();
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final ScheduledFuture sweepTask;
+
+    /**
+     * @param windowMillis the length of the window opened by the first event with a given fingerprint
+     * @param maxEntries the most fingerprints tracked at once
+     * @param handler told about each event that was repeated, when its window closes
+     * @param sweepExecutor runs the background sweeps, off the timer thread
+     */
+    public TrapDeduplicator(final long windowMillis,
+                            final int maxEntries,
+                            final RepeatHandler handler,
+                            final Executor sweepExecutor) {
+        this.windowMillis = windowMillis;
+        this.maxEntries = maxEntries;
+        this.handler = handler;
+        this.sweepExecutor = sweepExecutor;
+        sweepTask = TrapTimer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                scheduleSweep();
+            }
+        }, Math.max(MIN_SWEEP_MILLIS, windowMillis / 4));
+    }
+
+    /**
+     * Hands a sweep to the sweep executor, unless one is already waiting there.
+     */
+    private void scheduleSweep() {
+        if (!isSweepPending.compareAndSet(false, true)) return;
+        try {
+            sweepExecutor.execute(new Runnable() {
+                public void run() {
+                    isSweepPending.set(false);
+                    sweep(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //the appender is being closed, and close() sweeps every window
+            isSweepPending.set(false);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of an event.
+     *
+     * @param event the event
+     * @return the fingerprint
+     */
+    static String fingerprint(final LoggingEvent event) {
+        final StringBuffer fingerprint = new StringBuffer(128).append(event.getLoggerName()).append('|')
+                .append(event.getLevel()).append('|');
+        final ThrowableInformation throwableInformation = event.getThrowableInformation();
+        if (null != throwableInformation && null != throwableInformation.getThrowable()) {
+            fingerprint.append(throwableInformation.getThrowable().getClass().getName());
+        }
+        fingerprint.append('|');
+        final String message = event.getRenderedMessage();
+        if (null != message) {
+            final Matcher matcher = VARIABLE_PARTS.matcher(message);
+            while (matcher.find()) {
+                matcher.appendReplacement(fingerprint, null != matcher.group(1)
+                                                       ? "<uuid>"
+                                                       : null != matcher.group(2) ? "<hex>" : "#");
+            }
+            matcher.appendTail(fingerprint);
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Decides if an event is sent now, or only counted as a repeat.
+     *
+     * @param event the event
+     * @return true if the event should be sent
+     */
+    public boolean admit(final LoggingEvent event) {
+        final String key = fingerprint(event);
+        final long now = System.currentTimeMillis();
+        while (true) {
+            final Window window = (Window) windows.get(key);
+            if (null == window) {
+                if (windows.size() >= maxEntries) return true;
+                if (null == ((ConcurrentHashMap) windows).putIfAbsent(key, new Window(now + windowMillis))) {
+                    return true;
+                }
+            } else if (now >= window.closesAt) {
+                //the sweep has not got to it yet; its repeats are sent by the sweep executor, not the logging thread
+                if (windows.remove(key, window)) closeLater(window);
+            } else if (window.repeat(event, handler)) {
+                suppressedCount.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Hands the closing of a window that has been removed from the table to the sweep executor.
+     */
+    private void closeLater(final Window window) {
+        try {
+            sweepExecutor.execute(new Runnable() {
+                public void run() {
+                    close(window);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //the appender is being closed, and its sweep may already have passed: send the repeats here
+            close(window);
+        }
+    }
+
+    private void close(final Window window) {
+        final long repeats = window.close();
+        if (0 < repeats) handler.repeated(window.firstRepeat, repeats + 1);
+    }
+
+    /**
+     * Closes the windows that have expired, or all of them.
+     *
+     * @param all true to close every window
+     */
+    void sweep(final boolean all) {
+        final long now = System.currentTimeMillis();
+        for (Iterator it = windows.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry entry = (Map.Entry) it.next();
+            final Window window = (Window) entry.getValue();
+            if ((all || now >= window.closesAt) && windows.remove(entry.getKey(), window)) close(window);
+        }
+    }
+
+    /**
+     * @return the number of repeats suppressed so far
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * @return the number of fingerprints being tracked
+     */
+    public int size() {
+        return windows.size();
+    }
+
+    /**
+     * Stops the sweep, after closing every open window.
+     */
+    public void close() {
+        sweepTask.cancel(false);
+        sweep(true);
+    }
+
+    /**
+     * The window opened by the first event with a fingerprint, and the repeats seen in it.
+     */
+    private static final class Window {
+
+        private static final long CLOSED = -1;
+
+        private final long closesAt;
+        private final AtomicLong repeats = new AtomicLong();
+        private volatile LoggingEvent firstRepeat;
+
+        Window(final long closesAtValue) {
+            closesAt = closesAtValue;
+        }
+
+        /**
+         * Counts a repeat.
+         *
+         * @return false if the window has already been closed
+         */
+        boolean repeat(final LoggingEvent event, final RepeatHandler handler) {
+            while (true) {
+                final long current = repeats.get();
+                if (CLOSED == current) return false;
+                if (0 == current) {
+                    //only the first repeat is kept, and it is set before it is counted, so that close() sees it
+                    synchronized (this) {
+                        if (null == firstRepeat) {
+                            handler.retain(event);
+                            firstRepeat = event;
+                        }
+                    }
+                }
+                if (repeats.compareAndSet(current, current + 1)) return true;
+            }
+        }
+
+        /**
+         * @return the number of repeats, or 0 if the window was already closed
+         */
+        long close() {
+            final long count = repeats.getAndSet(CLOSED);
+            return CLOSED == count ? 0 : count;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Title: TrapDestination<br>
+ * Description: One management host that traps are sent to, with the SNMP version and community to use for it.<p>
+ * Destinations are written as <code>host[:port][/version[/community]]</code>, e.g. "nms1", "nms2:1162/2" or
+ * "[::1]:162/1/private"; anything left out is taken from the appender's ManagementHostTrapListenPort, TrapVersion
+ * and CommunityString.  See {@link #parse(String, int, int, String)}.<br>
+ * @version 1.0<br>
+ */
+public final class TrapDestination {
+
+    private final String host;
+    private final int port;
+    private final int trapVersion;
+    private final String communityString;
+    private final CachedInetAddress address;
+    private volatile InetSocketAddress socketAddress;
+
+    /**
+     * @param hostValue the name or address of the management host
+     * @param portValue the port the management host listens for traps on
+     * @param trapVersionValue 1 for SNMPv1, 2 for SNMPv2c
+     * @param communityStringValue the community
+     * @param addressValue the resolved address of the host, or null if it has not been looked up
+     */
+    public TrapDestination(final String hostValue,
+                           final int portValue,
+                           final int trapVersionValue,
+                           final String communityStringValue,
+                           final CachedInetAddress addressValue) {
+        host = hostValue;
+        port = portValue;
+        trapVersion = trapVersionValue;
+        communityString = communityStringValue;
+        address = addressValue;
+    }
+
+    /**
+     * Parses a comma separated list of destinations.
+     *
+     * @param destinations the list, e.g. "nms1, nms2:1162/2/private"
+     * @param defaultPort the port of the destinations that do not name one
+     * @param defaultTrapVersion the version of the destinations that do not name one
+     * @param defaultCommunityString the community of the destinations that do not name one
+     * @return the destinations, with no resolved addresses
+     * @throws IllegalArgumentException if one of the destinations is malformed
+     */
+    public static TrapDestination[] parse(final String destinations,
+                                          final int defaultPort,
+                                          final int defaultTrapVersion,
+                                          final String defaultCommunityString) {
+        final List parsed = new ArrayList();
+        final StringTokenizer splitter = new StringTokenizer(null == destinations ? "" : destinations, ",");
+        while (splitter.hasMoreTokens()) {
+            final String destination = splitter.nextToken().trim();
+            if (0 == destination.length()) continue;
+            try {
+                parsed.add(parseOne(destination, defaultPort, defaultTrapVersion, defaultCommunityString));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(new StringBuffer()
+                        .append("A destination must be host[:port][/version[/community]]! Illegal value was:")
+                        .append(destination).toString());
+            }
+        }
+        return (TrapDestination[]) parsed.toArray(new TrapDestination[parsed.size()]);
+    }
+
+    private static TrapDestination parseOne(final String destination,
+                                            final int defaultPort,
+                                            final int defaultTrapVersion,
+                                            final String defaultCommunityString) {
+        final int slash = destination.indexOf('/');
+        final String hostAndPort = -1 == slash ? destination : destination.substring(0, slash);
+        String parsedHost = hostAndPort;
+        int parsedPort = defaultPort;
+        //an IPv6 literal must be in brackets if it is followed by a port
+        final int colon = hostAndPort.startsWith("[")
+                          ? hostAndPort.indexOf(':', hostAndPort.indexOf(']'))
+                          : (hostAndPort.indexOf(':') == hostAndPort.lastIndexOf(':') ? hostAndPort.indexOf(':') : -1);
+        if (-1 != colon) {
+            parsedHost = hostAndPort.substring(0, colon);
+            parsedPort = Integer.parseInt(hostAndPort.substring(colon + 1).trim());
+        }
+        if (parsedHost.startsWith("[")) parsedHost = parsedHost.substring(1, parsedHost.indexOf(']'));
+        int parsedTrapVersion = defaultTrapVersion;
+        String parsedCommunityString = defaultCommunityString;
+        if (-1 != slash) {
+            final String options = destination.substring(slash + 1);
+            final int communitySlash = options.indexOf('/');
+            parsedTrapVersion = Integer.parseInt(
+                    (-1 == communitySlash ? options : options.substring(0, communitySlash)).trim());
+            if (-1 != communitySlash) parsedCommunityString = options.substring(communitySlash + 1);
+        }
+        if (0 == parsedHost.trim().length() || 0 >= parsedPort || 65535 < parsedPort
+            || (1 != parsedTrapVersion && 2 != parsedTrapVersion)) {
+            throw new IllegalArgumentException(destination);
+        }
+        return new TrapDestination(parsedHost.trim(), parsedPort, parsedTrapVersion, parsedCommunityString, null);
+    }
+
+    /**
+     * Looks up the address of the host.
+     *
+     * @param ttlMillis the time between background refreshes of the address, see {@link CachedInetAddress}
+     * @return a copy of this destination, with a resolved address
+     */
+    public TrapDestination resolve(final long ttlMillis) {
+        return new TrapDestination(host, port, trapVersion, communityString, new CachedInetAddress(host, ttlMillis));
+    }
+
+    /**
+     * @return the name or address of the management host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the port the management host listens for traps on
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return 1 for SNMPv1, 2 for SNMPv2c
+     */
+    public int getTrapVersion() {
+        return trapVersion;
+    }
+
+    /**
+     * @return the community
+     */
+    public String getCommunityString() {
+        return communityString;
+    }
+
+    /**
+     * @return the resolved address of the host, or null if it has not been looked up
+     */
+    public CachedInetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets the socket address of the management host, rebuilding it only if the cached address has changed.
+     *
+     * @return the socket address, or null if the host has never been resolved
+     */
+    public InetSocketAddress getSocketAddress() {
+        final InetAddress resolved = null == address ? null : address.getAddress();
+        if (null == resolved) return null;
+        InetSocketAddress current = socketAddress;
+        if (null == current || current.getAddress() != resolved) {
+            current = new InetSocketAddress(resolved, port);
+            socketAddress = current;
+        }
+        return current;
+    }
+
+    /**
+     * Tests if traps to this destination and the other are encoded the same way, i.e. have the same version and
+     * community.
+     *
+     * @param other the other destination
+     * @return true if they do
+     */
+    public boolean isSameVariant(final TrapDestination other) {
+        return trapVersion == other.trapVersion
+               && (null == communityString ? null == other.communityString
+                                           : communityString.equals(other.communityString));
+    }
+
+    /**
+     * Stops the background refresh of the address, if any.
+     */
+    public void close() {
+        if (null != address) address.close();
+    }
+
+    public String toString() {
+        return new StringBuffer().append(host).append(':').append(port).append('/').append(trapVersion).toString();
+    }
+}
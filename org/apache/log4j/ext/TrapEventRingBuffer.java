@@ -0,0 +1,179 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: TrapEventRingBuffer<br>
+ * Description: A bounded, lock-free, multi-producer/multi-consumer ring of preallocated slots, used to hand logging
+ * events from the logging threads to the trap sending threads.<p>
+ * Each slot carries its own sequence number, which tells a producer whether the slot is free for the lap it wants to
+ * write, and a consumer whether the slot has been published for the lap it wants to read.  No objects are allocated
+ * once the ring has been created.<br>
+ * @version 1.0<br>
+ */
+public final class TrapEventRingBuffer {
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates the ring, with all of its slots.
+     *
+     * @param requestedCapacity the minimum number of slots; rounded up to the next power of two
+     */
+    public TrapEventRingBuffer(final int requestedCapacity) {
+        int capacity = 2;
+        while (capacity < requestedCapacity) capacity <<= 1;
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the number of slots in the ring
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return the approximate number of events waiting to be taken
+     */
+    public int size() {
+        final long size = tail.get() - head.get();
+        return 0 > size ? 0 : (int) size;
+    }
+
+    /**
+     * @return true if there is at least one published event
+     */
+    public boolean isReadable() {
+        final long position = head.get();
+        return slots[(int) position & mask].sequence == position + 1;
+    }
+
+    /**
+     * @return true if there is at least one free slot
+     */
+    public boolean isWritable() {
+        final long position = tail.get();
+        return slots[(int) position & mask].sequence == position;
+    }
+
+    /**
+     * Publishes the event into the next free slot.
+     *
+     * @param event to publish
+     * @return false if the ring is full
+     */
+    public boolean tryPublish(final LoggingEvent event) {
+        long position = tail.get();
+        while (true) {
+            final Slot slot = slots[(int) position & mask];
+            final long difference = slot.sequence - position;
+            if (0 == difference) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slot.event = event;
+                    slot.sequence = position + 1;
+                    return true;
+                }
+                position = tail.get();
+            } else if (0 > difference) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest published event, and frees its slot.
+     *
+     * @return the event, or null if the ring is empty
+     */
+    public LoggingEvent tryTake() {
+        long position = head.get();
+        while (true) {
+            final Slot slot = slots[(int) position & mask];
+            final long difference = slot.sequence - (position + 1);
+            if (0 == difference) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final LoggingEvent event = slot.event;
+                    slot.event = null;
+                    slot.sequence = position + slots.length;
+                    return event;
+                }
+                position = head.get();
+            } else if (0 > difference) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private volatile long sequence;
+        private LoggingEvent event;
+
+        Slot(final long initialSequence) {
+            sequence = initialSequence;
+        }
+    }
+}
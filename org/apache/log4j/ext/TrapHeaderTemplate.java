@@ -0,0 +1,222 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Title: TrapHeaderTemplate<br>
+ * Description: The parts of an SNMPv1 or SNMPv2c trap message that are fixed for a given configuration, encoded
+ * once.  An SNMPv2c template can also be built for InformRequest-PDUs, which have the same layout.<p>
+ * For a given version, community, enterprise OID, agent address and generic/specific trap type, everything in the
+ * trap except the VarBinds, the time stamp, the request-id (SNMPv2c) and the BER lengths that enclose them is
+ * always the same.  A template holds those fixed parts as ready-encoded bytes, so that encoding a trap only means
+ * encoding its VarBinds and splicing them together with the template.<p>
+ * Use with a {@link BerEncoder}: {@link #writeTrailer(BerEncoder)}, then the VarBinds (last first), then
+ * {@link #writeHeader(BerEncoder, int, long, int)}.<br>
+ * @version 1.0<br>
+ */
+final class TrapHeaderTemplate {
+
+    private static final byte[] ZERO_ERROR_FIELDS = {BerEncoder.INTEGER, 1, 0, BerEncoder.INTEGER, 1, 0};
+
+    private final int trapVersion;
+    private final String communityString;
+    private final int specificTrapType;
+    private final byte[] agentAddress;
+    private final int pduType;
+    private final byte[] messagePrefix;
+    private final byte[] pduFields;
+    private final byte[] trapOIDVarBind;
+    private final byte[] enterpriseVarBind;
+
+    /**
+     * Encodes the fixed parts of the message.
+     *
+     * @param trapVersionValue 1 for SNMPv1, 2 for SNMPv2c
+     * @param communityStringValue the community
+     * @param enterpriseOID the enterprise OID
+     * @param agentAddressValue the 4 bytes of the agent address (SNMPv1 only)
+     * @param genericTrapType the generic trap type
+     * @param specificTrapTypeValue the specific trap type
+     * @param isInform true for an SNMPv2c InformRequest-PDU rather than an SNMPv2-Trap-PDU
+     */
+    TrapHeaderTemplate(final int trapVersionValue,
+                       final String communityStringValue,
+                       final String enterpriseOID,
+                       final byte[] agentAddressValue,
+                       final int genericTrapType,
+                       final int specificTrapTypeValue,
+                       final boolean isInform) {
+        trapVersion = trapVersionValue;
+        communityString = communityStringValue;
+        specificTrapType = specificTrapTypeValue;
+        agentAddress = agentAddressValue;
+        pduType = 2 != trapVersion ? BerEncoder.TRAP_PDU
+                  : isInform ? BerEncoder.INFORM_PDU : BerEncoder.SNMPV2_TRAP_PDU;
+        final BerEncoder encoder = new BerEncoder(ByteBuffer.allocate(1024));
+        encoder.writeOctetString(communityStringValue);
+        encoder.writeInteger(BerEncoder.INTEGER, 2 == trapVersion ? 1 : 0);
+        messagePrefix = toBytes(encoder);
+        if (2 == trapVersion) {
+            pduFields = null;
+            encodeOIDVarBind(encoder, BerSNMPTrapSender.SNMP_TRAP_OID_OID, 6 == genericTrapType
+                    ? new StringBuffer().append(enterpriseOID).append(".0.").append(specificTrapType).toString()
+                    : new StringBuffer().append(BerSNMPTrapSender.SNMP_TRAPS_OID).append(genericTrapType + 1)
+                    .toString());
+            trapOIDVarBind = toBytes(encoder);
+            encodeOIDVarBind(encoder, BerSNMPTrapSender.SNMP_TRAP_ENTERPRISE_OID, enterpriseOID);
+            enterpriseVarBind = toBytes(encoder);
+        } else {
+            encoder.writeInteger(BerEncoder.INTEGER, specificTrapType);
+            encoder.writeInteger(BerEncoder.INTEGER, genericTrapType);
+            encoder.writeOctets(BerEncoder.IP_ADDRESS, agentAddress);
+            encoder.writeOID(enterpriseOID);
+            pduFields = toBytes(encoder);
+            trapOIDVarBind = null;
+            enterpriseVarBind = null;
+        }
+    }
+
+    private static void encodeOIDVarBind(final BerEncoder encoder, final String oid, final String value) {
+        encoder.writeOID(value);
+        encoder.writeOID(oid);
+        encoder.writeHeader(BerEncoder.SEQUENCE, encoder.length());
+    }
+
+    private static byte[] toBytes(final BerEncoder encoder) {
+        final ByteBuffer encoded = encoder.flip();
+        final byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        encoder.reset();
+        return bytes;
+    }
+
+    /**
+     * Tests if this template was built for the given variable parts of the configuration.
+     *
+     * @param trapVersionValue the version
+     * @param communityStringValue the community
+     * @param specificTrapTypeValue the specific trap type
+     * @param agentAddressValue the agent address; compared by identity
+     * @return true if it was
+     */
+    boolean matches(final int trapVersionValue,
+                    final String communityStringValue,
+                    final int specificTrapTypeValue,
+                    final byte[] agentAddressValue) {
+        return specificTrapType == specificTrapTypeValue
+               && trapVersion == trapVersionValue
+               && (communityString == communityStringValue
+                   || (null != communityString && communityString.equals(communityStringValue)))
+               && isCurrent(agentAddressValue);
+    }
+
+    /**
+     * Tests if this template is still valid for the given agent address.
+     *
+     * @param agentAddressValue the agent address; compared by identity
+     * @return true if it is
+     */
+    boolean isCurrent(final byte[] agentAddressValue) {
+        return 2 == trapVersion || agentAddress == agentAddressValue;
+    }
+
+    /**
+     * Writes whatever must follow the VarBinds of the trap.  Must be called before the VarBinds are written.
+     *
+     * @param encoder positioned at the end of the message
+     */
+    void writeTrailer(final BerEncoder encoder) {
+        if (null != enterpriseVarBind) encoder.writeBytes(enterpriseVarBind, 0, enterpriseVarBind.length);
+    }
+
+    /**
+     * Writes the rest of the message, once the trailer and the VarBinds have been written.
+     *
+     * @param encoder positioned before the first VarBind
+     * @param messageEnd the position of the encoder before the trailer was written
+     * @param timeTicks the time stamp, in hundredths of a second
+     * @param requestId the request-id of an SNMPv2c trap or inform
+     */
+    void writeHeader(final BerEncoder encoder, final int messageEnd, final long timeTicks, final int requestId) {
+        writePdu(encoder, messageEnd, timeTicks, requestId);
+        encoder.writeBytes(messagePrefix, 0, messagePrefix.length);
+        encoder.writeHeader(BerEncoder.SEQUENCE, messageEnd - encoder.position());
+    }
+
+    /**
+     * Writes the rest of the PDU, once the trailer and the VarBinds have been written, but not the version and
+     * community that precede it in an SNMPv1 or SNMPv2c message.
+     *
+     * @param encoder positioned before the first VarBind
+     * @param messageEnd the position of the encoder before the trailer was written
+     * @param timeTicks the time stamp, in hundredths of a second
+     * @param requestId the request-id of an SNMPv2c trap or inform
+     */
+    void writePdu(final BerEncoder encoder, final int messageEnd, final long timeTicks, final int requestId) {
+        if (2 == trapVersion) {
+            encoder.writeBytes(trapOIDVarBind, 0, trapOIDVarBind.length);
+            final int end = encoder.position();
+            encoder.writeUnsigned32(BerEncoder.TIME_TICKS, timeTicks);
+            encoder.writeOID(BerSNMPTrapSender.SYS_UP_TIME_OID);
+            encoder.writeHeader(BerEncoder.SEQUENCE, end - encoder.position());
+            encoder.writeHeader(BerEncoder.SEQUENCE, messageEnd - encoder.position());
+            encoder.writeBytes(ZERO_ERROR_FIELDS, 0, ZERO_ERROR_FIELDS.length);
+            encoder.writeInteger(BerEncoder.INTEGER, requestId);
+            encoder.writeHeader(pduType, messageEnd - encoder.position());
+        } else {
+            encoder.writeHeader(BerEncoder.SEQUENCE, messageEnd - encoder.position());
+            encoder.writeUnsigned32(BerEncoder.TIME_TICKS, timeTicks);
+            encoder.writeBytes(pduFields, 0, pduFields.length);
+            encoder.writeHeader(pduType, messageEnd - encoder.position());
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Title: TrapMetrics<br>
+ * Description: The counters and latency histograms of one SNMPTrapAppender, and its MBean.<p>
+ * Every counter is a LongAdder, and every histogram a {@link LatencyHistogram}, so the threads that log and send
+ * never contend for them; they are only summed when read.  The appender counts the events and times the formatting
+ * and the hand-off to the sender; the self-contained senders (BerSNMPTrapSender and UsmSNMPTrapSender) count the
+ * messages, datagrams, bytes and failures, and time the encoding; the NetSnmpCommandLineTrapSender times the fork
+ * and exec of snmptrap, and counts the processes it kills and the traps its pool drops.  The queue and the drops are
+ * read from the appender when asked for.<br>
+ * @version 1.0<br>
+ */
+public final class TrapMetrics implements TrapMetricsMXBean {
+
+    /** The management host has not been resolved. */
+    public static final int FAILURE_UNRESOLVED = 0;
+    /** The trap is too large for a datagram. */
+    public static final int FAILURE_OVERSIZE = 1;
+    /** The channel could not take the trap without waiting. */
+    public static final int FAILURE_WOULD_BLOCK = 2;
+    /** An I/O error. */
+    public static final int FAILURE_IO = 3;
+    /** The trap could not be encoded, encrypted or authenticated. */
+    public static final int FAILURE_ENCODING = 4;
+
+    private static final String DOMAIN = "org.apache.log4j.ext";
+
+    private final SNMPTrapAppender appender;
+    private final LongAdder eventsSeen = new LongAdder();
+    private final LongAdder eventsFiltered = new LongAdder();
+    private final LongAdder trapsEncoded = new LongAdder();
+    private final LongAdder trapsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder[] failures = new LongAdder[FAILURE_ENCODING + 1];
+    private final LatencyHistogram formatLatency = new LatencyHistogram();
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final LatencyHistogram forkLatency = new LatencyHistogram();
+    private final LongAdder processTimeouts = new LongAdder();
+    private final LongAdder processQueueDrops = new LongAdder();
+    private ObjectName registeredName;
+
+    /**
+     * @param appenderValue the appender the metrics are for
+     */
+    TrapMetrics(final SNMPTrapAppender appenderValue) {
+        appender = appenderValue;
+        for (int i = 0; i < failures.length; i++) {
+            failures[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts an event passed to the appender.
+     *
+     * @param isFiltered true if it is below the threshold
+     */
+    public void eventSeen(final boolean isFiltered) {
+        eventsSeen.increment();
+        if (isFiltered) eventsFiltered.increment();
+    }
+
+    /**
+     * Counts an encoded message, and records the time taken to encode it.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    public void trapEncoded(final long nanos) {
+        trapsEncoded.increment();
+        encodeLatency.record(nanos);
+    }
+
+    /**
+     * Counts a datagram sent.
+     *
+     * @param bytes the size of the datagram
+     */
+    public void trapSent(final int bytes) {
+        trapsSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * Counts a trap not sent.
+     *
+     * @param cause one of the FAILURE_ constants
+     */
+    public void sendFailed(final int cause) {
+        failures[cause].increment();
+    }
+
+    /**
+     * Records the time taken to format an event into VarBinds.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    public void formatted(final long nanos) {
+        formatLatency.record(nanos);
+    }
+
+    /**
+     * Records the time taken to hand a trap to the sender.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    public void sent(final long nanos) {
+        sendLatency.record(nanos);
+    }
+
+    /**
+     * Records the time taken to fork and exec a trap sending process.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    public void processForked(final long nanos) {
+        forkLatency.record(nanos);
+    }
+
+    /**
+     * Counts a trap sending process killed because it did not exit in time.
+     */
+    public void processTimedOut() {
+        processTimeouts.increment();
+    }
+
+    /**
+     * Counts a trap dropped because too many were waiting for a process to send them.
+     */
+    public void processDropped() {
+        processQueueDrops.increment();
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server, under the name of the appender, unless it already is.
+     */
+    synchronized void register() {
+        if (null != registeredName) return;
+        try {
+            final ObjectName name = new ObjectName(new StringBuffer().append(DOMAIN)
+                    .append(":type=SNMPTrapAppender,name=")
+                    .append(ObjectName.quote(null == appender.getName() ? "" : appender.getName())).toString());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            LogLog.warn("Could not register the MBean of the appender " + appender.getName(), e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean, if it is registered.
+     */
+    synchronized void unregister() {
+        if (null == registeredName) return;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(registeredName)) server.unregisterMBean(registeredName);
+        } catch (JMException e) {
+            LogLog.warn("Could not unregister the MBean of the appender " + appender.getName(), e);
+        }
+        registeredName = null;
+    }
+
+    public long getEventsSeen() {
+        return eventsSeen.sum();
+    }
+
+    public long getEventsFiltered() {
+        return eventsFiltered.sum();
+    }
+
+    public long getTrapsEncoded() {
+        return trapsEncoded.sum();
+    }
+
+    public long getTrapsSent() {
+        return trapsSent.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getUnresolvedFailures() {
+        return failures[FAILURE_UNRESOLVED].sum();
+    }
+
+    public long getOversizeFailures() {
+        return failures[FAILURE_OVERSIZE].sum();
+    }
+
+    public long getWouldBlockFailures() {
+        return failures[FAILURE_WOULD_BLOCK].sum();
+    }
+
+    public long getIoFailures() {
+        return failures[FAILURE_IO].sum();
+    }
+
+    public long getEncodingFailures() {
+        return failures[FAILURE_ENCODING].sum();
+    }
+
+    public int getQueueDepth() {
+        return appender.getAsyncQueueDepth();
+    }
+
+    public long getQueueDrops() {
+        return appender.getAsyncDroppedCount();
+    }
+
+    public long getRateLimitDrops() {
+        return appender.getRateLimitSuppressedCount();
+    }
+
+    public long getDedupDrops() {
+        return appender.getDedupSuppressedCount();
+    }
+
+    public long getSpoolDepth() {
+        final TrapSpool spool = appender.getSpool();
+        return null == spool ? 0 : spool.getPendingCount();
+    }
+
+    public LatencySnapshot getFormatLatency() {
+        return formatLatency.snapshot();
+    }
+
+    public LatencySnapshot getEncodeLatency() {
+        return encodeLatency.snapshot();
+    }
+
+    public LatencySnapshot getSendLatency() {
+        return sendLatency.snapshot();
+    }
+
+    public long getProcessTimeouts() {
+        return processTimeouts.sum();
+    }
+
+    public long getProcessQueueDrops() {
+        return processQueueDrops.sum();
+    }
+
+    public LatencySnapshot getForkLatency() {
+        return forkLatency.snapshot();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+/**
+ * Title: TrapMetricsMXBean<br>
+ * Description: The management interface of the {@link TrapMetrics} of an SNMPTrapAppender, registered with the
+ * platform MBean server as "org.apache.log4j.ext:type=SNMPTrapAppender,name=<i>appender name</i>".<br>
+ * @version 1.0<br>
+ */
+public interface TrapMetricsMXBean {
+
+    /**
+     * @return the number of events passed to the appender
+     */
+    long getEventsSeen();
+
+    /**
+     * @return the number of events below the threshold of the appender
+     */
+    long getEventsFiltered();
+
+    /**
+     * @return the number of messages encoded by the sender
+     */
+    long getTrapsEncoded();
+
+    /**
+     * @return the number of datagrams sent
+     */
+    long getTrapsSent();
+
+    /**
+     * @return the number of bytes sent, not counting the UDP and IP headers
+     */
+    long getBytesSent();
+
+    /**
+     * @return the number of traps not sent because the management host has not been resolved
+     */
+    long getUnresolvedFailures();
+
+    /**
+     * @return the number of traps not sent because they are too large for a datagram
+     */
+    long getOversizeFailures();
+
+    /**
+     * @return the number of traps not sent because the channel could not take them without waiting
+     */
+    long getWouldBlockFailures();
+
+    /**
+     * @return the number of traps not sent because of an I/O error
+     */
+    long getIoFailures();
+
+    /**
+     * @return the number of traps not sent because they could not be encoded, encrypted or authenticated
+     */
+    long getEncodingFailures();
+
+    /**
+     * @return the number of events waiting in the AsyncDispatch queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of events discarded by the AsyncDispatch overflow policy
+     */
+    long getQueueDrops();
+
+    /**
+     * @return the number of events suppressed by the rate limit
+     */
+    long getRateLimitDrops();
+
+    /**
+     * @return the number of repeated events suppressed
+     */
+    long getDedupDrops();
+
+    /**
+     * @return the number of traps waiting in the spool to be sent again
+     */
+    long getSpoolDepth();
+
+    /**
+     * @return the time taken to format events into VarBinds
+     */
+    LatencySnapshot getFormatLatency();
+
+    /**
+     * @return the time taken by the sender to encode traps
+     */
+    LatencySnapshot getEncodeLatency();
+
+    /**
+     * @return the time taken to hand traps to the sender, including encoding them
+     */
+    LatencySnapshot getSendLatency();
+
+    /**
+     * @return the number of snmptrap processes of the NetSnmpCommandLineTrapSender killed for not exiting in time
+     */
+    long getProcessTimeouts();
+
+    /**
+     * @return the number of traps the NetSnmpCommandLineTrapSender dropped because its process queue was full
+     */
+    long getProcessQueueDrops();
+
+    /**
+     * @return the time taken by the NetSnmpCommandLineTrapSender to fork and exec snmptrap
+     */
+    LatencySnapshot getForkLatency();
+}
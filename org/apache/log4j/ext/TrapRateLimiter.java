@@ -0,0 +1,272 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.Level;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: TrapRateLimiter<br>
+ * Description: Limits the rate at which logging events are turned into traps, with a separate token bucket for each
+ * level.<p>
+ * Each bucket holds up to <i>burst</i> tokens, and is refilled at its rate, in events per second; an event that finds
+ * its bucket empty is suppressed.  The default rate applies to every level that is not given a rate of its own,
+ * except FATAL, which is not limited unless it is given a rate explicitly.  A rate of 0 means no limit.<p>
+ * The buckets are lock-free: each one is a single AtomicLong holding the time at which it will next be full (the
+ * "generic cell rate algorithm" form of a token bucket), updated by compare-and-set.<p>
+ * Suppressed events are counted, and every summary period, if any were suppressed, the handler is told how many, so
+ * that it can send a summary trap.  The {@link TrapTimer} hands each summary to the summary executor, as sending it
+ * may block.<br>
+ * @version 1.0<br>
+ */
+public final class TrapRateLimiter {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Receives the number of events suppressed during the last summary period.
+     */
+    public interface SummaryHandler {
+        void suppressed(long count, String detail);
+    }
+
+    private final int[] levels;
+    private final Bucket[] buckets;
+    private final Bucket defaultBucket;
+    private final SummaryHandler handler;
+    private final Executor summaryExecutor;
+    private final AtomicBoolean isSummaryPending = new AtomicBoolean();
+    private final ScheduledFuture summaryTask;
+
+    /**
+     * @param defaultRate events per second for the levels that have no rate of their own; 0 for no limit
+     * @param levelRates a comma separated list of LEVEL=rate pairs, e.g. "ERROR=10,WARN=2"; may be null
+     * @param burst the number of events that may be sent at once, after a quiet period
+     * @param summaryMillis the period of the summary, in milliseconds
+     * @param handler told about the suppressed events, every summary period
+     * @param summaryExecutor runs the summaries, off the timer thread
+     * @throws IllegalArgumentException if the level rates are malformed
+     */
+    public TrapRateLimiter(final double defaultRate,
+                           final String levelRates,
+                           final int burst,
+                           final long summaryMillis,
+                           final SummaryHandler handler,
+                           final Executor summaryExecutor) {
+        final double[] rates = parseLevelRates(levelRates);
+        levels = new int[rates.length / 2];
+        buckets = new Bucket[rates.length / 2];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (int) rates[2 * i];
+            buckets[i] = new Bucket(Level.toLevel(levels[i]).toString(), rates[2 * i + 1], burst);
+        }
+        defaultBucket = new Bucket(null, defaultRate, burst);
+        this.handler = handler;
+        this.summaryExecutor = summaryExecutor;
+        summaryTask = TrapTimer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                scheduleSummary();
+            }
+        }, Math.max(1L, summaryMillis));
+    }
+
+    /**
+     * Hands a summary to the summary executor, unless one is already waiting there.
+     */
+    private void scheduleSummary() {
+        if (!isSummaryPending.compareAndSet(false, true)) return;
+        try {
+            summaryExecutor.execute(new Runnable() {
+                public void run() {
+                    isSummaryPending.set(false);
+                    summarize();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //the appender is being closed, and close() sends a last summary
+            isSummaryPending.set(false);
+        }
+    }
+
+    /**
+     * Parses a comma separated list of LEVEL=rate pairs.
+     *
+     * @param levelRates the list; may be null
+     * @return the level and rate of each pair, one after the other
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    static double[] parseLevelRates(final String levelRates) {
+        final List pairs = new ArrayList();
+        final StringTokenizer splitter = new StringTokenizer(null == levelRates ? "" : levelRates, ",");
+        while (splitter.hasMoreTokens()) {
+            final String pair = splitter.nextToken().trim();
+            if (0 == pair.length()) continue;
+            final int separator = pair.indexOf('=');
+            final Level level = -1 == separator ? null : Level.toLevel(pair.substring(0, separator).trim(), null);
+            double rate = -1;
+            try {
+                if (null != level) rate = Double.parseDouble(pair.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                rate = -1;
+            }
+            if (0 > rate) {
+                throw new IllegalArgumentException(new StringBuffer()
+                        .append("LevelRateLimits must be a list of LEVEL=rate pairs! Illegal value was:")
+                        .append(levelRates).toString());
+            }
+            pairs.add(new double[]{level.toInt(), rate});
+        }
+        final double[] parsed = new double[2 * pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            System.arraycopy((double[]) pairs.get(i), 0, parsed, 2 * i, 2);
+        }
+        return parsed;
+    }
+
+    /**
+     * Takes a token from the bucket of the level, if there is one.
+     *
+     * @param level the level of the event
+     * @return true if the event may be sent, false if it is suppressed
+     */
+    public boolean tryAcquire(final Level level) {
+        final int levelValue = level.toInt();
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] == levelValue) return buckets[i].tryAcquire();
+        }
+        return Level.FATAL_INT <= levelValue || defaultBucket.tryAcquire();
+    }
+
+    /**
+     * @return the number of events suppressed since the last summary
+     */
+    public long getSuppressedCount() {
+        long total = defaultBucket.suppressed.get();
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].suppressed.get();
+        }
+        return total;
+    }
+
+    /**
+     * Hands the number of events suppressed since the last summary to the handler, if there were any.
+     */
+    void summarize() {
+        long total = 0;
+        final StringBuffer detail = new StringBuffer();
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].takeSuppressed(detail);
+        }
+        final long others = defaultBucket.takeSuppressed(null);
+        if (0 < others && 0 < detail.length()) detail.append(", other=").append(others);
+        total += others;
+        if (0 < total) handler.suppressed(total, detail.toString());
+    }
+
+    /**
+     * Stops the summary, after a last one for the events suppressed so far.
+     */
+    public void close() {
+        summaryTask.cancel(false);
+        summarize();
+    }
+
+    /**
+     * A token bucket, held as the time at which it will next be full.
+     */
+    private static final class Bucket {
+
+        private final String name;
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final AtomicLong fullAt;
+        private final AtomicLong suppressed = new AtomicLong();
+
+        Bucket(final String nameValue, final double rate, final int burst) {
+            name = nameValue;
+            intervalNanos = 0 < rate ? Math.max(1L, (long) (NANOS_PER_SECOND / rate)) : 0;
+            burstNanos = intervalNanos * Math.max(1, burst);
+            fullAt = new AtomicLong(System.nanoTime());
+        }
+
+        boolean tryAcquire() {
+            if (0 == intervalNanos) return true;
+            final long now = System.nanoTime();
+            while (true) {
+                final long current = fullAt.get();
+                //each event adds one interval to the time the bucket will be full; it is empty when that is a whole
+                //burst ahead of now
+                final long next = (current - now < 0 ? now : current) + intervalNanos;
+                if (next - now > burstNanos) {
+                    suppressed.incrementAndGet();
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, next)) return true;
+            }
+        }
+
+        long takeSuppressed(final StringBuffer detail) {
+            final long count = suppressed.getAndSet(0);
+            if (0 < count && null != detail) {
+                if (0 < detail.length()) detail.append(", ");
+                detail.append(name).append('=').append(count);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Title: TrapRuleSet<br>
+ * Description: Chooses the trap OID, the specific trap type and the extra VarBinds of each event, by rules on the
+ * logger name, the level and the MDC.<p>
+ * The rules are separated by ';', and each is a comma separated list of key=value pairs, e.g.
+ * "logger=com.acme.db, levels=ERROR+, oid=1.3.6.1.4.1.99999.3, type=10;
+ * logger=com.acme.billing, mdc=tenant, varbinds=tenant:1.3.6.1.4.1.99999.4|order:1.3.6.1.4.1.99999.5".<br>
+ * "logger" is the logger, or the parent of the loggers, that the rule applies to, and defaults to every logger;
+ * "levels" is a list of levels separated by '|', or a level followed by '+' for that level and those above it, and
+ * defaults to every level; "mdc" is a list of MDC keys, separated by '|', that must all be set; "oid" replaces the
+ * ApplicationTrapOID, "type" the specific trap type; and "varbinds" adds the value of each MDC key that is set as a
+ * VarBind with the given OID.<p>
+ * The rules are compiled into a tree of the segments of the logger names, with the levels of each rule as a bit
+ * mask, so an event is matched by walking its logger name once, segment by segment, without any regular expression.
+ * The rule of the most specific logger wins; among the rules of the same logger, the first one that matches.<br>
+ * @version 1.0<br>
+ */
+public final class TrapRuleSet {
+
+    private static final int[] LEVEL_VALUES = new int[]{
+        Level.TRACE_INT, Level.DEBUG_INT, Level.INFO_INT, Level.WARN_INT, Level.ERROR_INT, Level.FATAL_INT
+    };
+    private static final int ALL_LEVELS = (1 << LEVEL_VALUES.length) - 1;
+    private static final String[] NONE = new String[0];
+
+    private final Node root = new Node();
+    private final int ruleCount;
+
+    /**
+     * Compiles the rules.
+     *
+     * @param rules the rules, separated by ';'
+     * @throws IllegalArgumentException if the rules cannot be parsed
+     */
+    public TrapRuleSet(final String rules) {
+        final String[] parts = null == rules ? NONE : rules.split(";");
+        int count = 0;
+        for (int i = 0; i < parts.length; i++) {
+            if (0 == parts[i].trim().length()) continue;
+            parseRule(parts[i], rules);
+            count++;
+        }
+        ruleCount = count;
+    }
+
+    /**
+     * Gets the rule for an event.
+     *
+     * @param event the event
+     * @return the rule of the most specific logger that matches the event, or null if there is none
+     */
+    public Rule match(final LoggingEvent event) {
+        final int levelBit = levelBit(event.getLevel());
+        final String name = event.getLoggerName();
+        Node node = root;
+        Rule matched = node.match(event, levelBit);
+        final int length = null == name ? 0 : name.length();
+        int start = 0;
+        while (start < length) {
+            int end = name.indexOf('.', start);
+            if (-1 == end) end = length;
+            node = node.child(name, start, end);
+            if (null == node) break;
+            final Rule rule = node.match(event, levelBit);
+            if (null != rule) matched = rule;
+            start = end + 1;
+        }
+        return matched;
+    }
+
+    /**
+     * @return the number of rules
+     */
+    public int size() {
+        return ruleCount;
+    }
+
+    private void parseRule(final String rule, final String rules) {
+        String logger = "";
+        int levels = ALL_LEVELS;
+        String[] mdcKeys = NONE;
+        String oid = null;
+        int specificTrapType = -1;
+        boolean hasSpecificTrapType = false;
+        String[] varBindKeys = NONE;
+        String[] varBindOIDs = NONE;
+        final String[] pairs = rule.split(",");
+        for (int i = 0; i < pairs.length; i++) {
+            final int separator = pairs[i].indexOf('=');
+            if (-1 == separator) throw illegal("each rule must be a list of key=value pairs", rules);
+            final String key = pairs[i].substring(0, separator).trim();
+            final String value = pairs[i].substring(separator + 1).trim();
+            if ("logger".equalsIgnoreCase(key)) {
+                logger = "*".equals(value) ? "" : value;
+            } else if ("levels".equalsIgnoreCase(key)) {
+                levels = parseLevels(value, rules);
+            } else if ("mdc".equalsIgnoreCase(key)) {
+                mdcKeys = split(value);
+            } else if ("oid".equalsIgnoreCase(key)) {
+                oid = parseOID(value, rules);
+            } else if ("type".equalsIgnoreCase(key)) {
+                try {
+                    specificTrapType = Integer.parseInt(value);
+                    hasSpecificTrapType = true;
+                } catch (NumberFormatException e) {
+                    throw illegal("the type must be a number", rules);
+                }
+            } else if ("varbinds".equalsIgnoreCase(key)) {
+                final String[] varBinds = split(value);
+                varBindKeys = new String[varBinds.length];
+                varBindOIDs = new String[varBinds.length];
+                for (int j = 0; j < varBinds.length; j++) {
+                    final int colon = varBinds[j].indexOf(':');
+                    if (-1 == colon) throw illegal("varbinds must be a list of key:oid pairs", rules);
+                    varBindKeys[j] = varBinds[j].substring(0, colon).trim();
+                    varBindOIDs[j] = parseOID(varBinds[j].substring(colon + 1).trim(), rules);
+                }
+            } else {
+                throw illegal(new StringBuffer().append("unknown key ").append(key).toString(), rules);
+            }
+        }
+        Node node = root;
+        final String[] segments = 0 == logger.length() ? NONE : logger.split("\\.");
+        for (int i = 0; i < segments.length; i++) {
+            if (0 == segments[i].length()) throw illegal("the logger name has an empty segment", rules);
+            node = node.addChild(segments[i]);
+        }
+        node.addRule(new Rule(rule.trim(), levels, mdcKeys, oid, specificTrapType, hasSpecificTrapType,
+                              varBindKeys, varBindOIDs));
+    }
+
+    private static int parseLevels(final String value, final String rules) {
+        final String[] names = split(value);
+        int mask = 0;
+        for (int i = 0; i < names.length; i++) {
+            final boolean andAbove = names[i].endsWith("+");
+            final String name = andAbove ? names[i].substring(0, names[i].length() - 1).trim() : names[i];
+            final Level level = Level.toLevel(name, null);
+            if (null == level) {
+                throw illegal(new StringBuffer().append("unknown level ").append(name).toString(), rules);
+            }
+            final int bit = levelBit(level);
+            mask |= andAbove ? ALL_LEVELS & ~(bit - 1) : bit;
+        }
+        return mask;
+    }
+
+    private static String parseOID(final String value, final String rules) {
+        try {
+            return OIDRegistry.lookup(value).getName();
+        } catch (IllegalArgumentException e) {
+            throw illegal(new StringBuffer().append("malformed OID ").append(value).toString(), rules);
+        }
+    }
+
+    private static String[] split(final String value) {
+        if (0 == value.length()) return NONE;
+        final String[] parts = value.split("\\|");
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = parts[i].trim();
+        }
+        return parts;
+    }
+
+    private static IllegalArgumentException illegal(final String reason, final String rules) {
+        return new IllegalArgumentException(new StringBuffer()
+                .append("TrapRules must be a list of rules separated by ';' -- ")
+                .append(reason)
+                .append("! Illegal value was:")
+                .append(rules).toString());
+    }
+
+    /**
+     * Gets the bit of a level in the level mask of a rule; levels in between the standard ones count as the standard
+     * level below them.
+     */
+    private static int levelBit(final Level level) {
+        final int value = level.toInt();
+        for (int i = LEVEL_VALUES.length - 1; i > 0; i--) {
+            if (value >= LEVEL_VALUES[i]) return 1 << i;
+        }
+        return 1;
+    }
+
+    /**
+     * A segment of the logger names, with the rules of the logger it ends, and its children sorted by name.
+     */
+    private static final class Node {
+
+        private String[] segments = NONE;
+        private Node[] children = new Node[0];
+        private Rule[] rules = new Rule[0];
+
+        Node child(final String name, final int start, final int end) {
+            int low = 0;
+            int high = segments.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int comparison = compare(segments[middle], name, start, end);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(final String segment) {
+            final Node existing = child(segment, 0, segment.length());
+            if (null != existing) return existing;
+            int index = 0;
+            while (index < segments.length && segments[index].compareTo(segment) < 0) index++;
+            final String[] newSegments = new String[segments.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(segments, 0, newSegments, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newSegments[index] = segment;
+            newChildren[index] = new Node();
+            System.arraycopy(segments, index, newSegments, index + 1, segments.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            segments = newSegments;
+            children = newChildren;
+            return newChildren[index];
+        }
+
+        void addRule(final Rule rule) {
+            final List list = new ArrayList(rules.length + 1);
+            for (int i = 0; i < rules.length; i++) {
+                list.add(rules[i]);
+            }
+            list.add(rule);
+            rules = (Rule[]) list.toArray(new Rule[list.size()]);
+        }
+
+        Rule match(final LoggingEvent event, final int levelBit) {
+            for (int i = 0; i < rules.length; i++) {
+                if (rules[i].matches(event, levelBit)) return rules[i];
+            }
+            return null;
+        }
+
+        /**
+         * Compares a segment with a region of a logger name, as String#compareTo would with the region on its own.
+         */
+        private static int compare(final String segment, final String name, final int start, final int end) {
+            final int length = Math.min(segment.length(), end - start);
+            for (int i = 0; i < length; i++) {
+                final int difference = segment.charAt(i) - name.charAt(start + i);
+                if (0 != difference) return difference;
+            }
+            return segment.length() - (end - start);
+        }
+    }
+
+    /**
+     * A compiled rule.
+     */
+    public static final class Rule {
+
+        private final String text;
+        private final int levels;
+        private final String[] mdcKeys;
+        private final String trapOID;
+        private final int specificTrapType;
+        private final boolean hasSpecificTrapType;
+        private final String[] varBindKeys;
+        private final String[] varBindOIDs;
+
+        Rule(final String text,
+             final int levels,
+             final String[] mdcKeys,
+             final String trapOID,
+             final int specificTrapType,
+             final boolean hasSpecificTrapType,
+             final String[] varBindKeys,
+             final String[] varBindOIDs) {
+            this.text = text;
+            this.levels = levels;
+            this.mdcKeys = mdcKeys;
+            this.trapOID = trapOID;
+            this.specificTrapType = specificTrapType;
+            this.hasSpecificTrapType = hasSpecificTrapType;
+            this.varBindKeys = varBindKeys;
+            this.varBindOIDs = varBindOIDs;
+        }
+
+        boolean matches(final LoggingEvent event, final int levelBit) {
+            if (0 == (levels & levelBit)) return false;
+            for (int i = 0; i < mdcKeys.length; i++) {
+                if (null == event.getMDC(mdcKeys[i])) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return the OID that replaces the ApplicationTrapOID, or null if the rule does not set one
+         */
+        public String getTrapOID() {
+            return trapOID;
+        }
+
+        /**
+         * @return true if the rule sets the specific trap type
+         */
+        public boolean hasSpecificTrapType() {
+            return hasSpecificTrapType;
+        }
+
+        /**
+         * @return the specific trap type set by the rule, if any
+         */
+        public int getSpecificTrapType() {
+            return specificTrapType;
+        }
+
+        /**
+         * Adds a VarBind for each of the MDC keys of the rule that is set for the event.
+         *
+         * @param event the event
+         * @param out the trap to add the VarBinds to
+         */
+        public void addVarBinds(final LoggingEvent event, final SnmpVarBindSink out) {
+            for (int i = 0; i < varBindKeys.length; i++) {
+                final Object value = event.getMDC(varBindKeys[i]);
+                if (null != value) out.addTrapMessageVariable(varBindOIDs[i], String.valueOf(value));
+            }
+        }
+
+        public String toString() {
+            return text;
+        }
+    }
+}
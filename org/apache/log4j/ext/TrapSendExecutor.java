@@ -0,0 +1,229 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Title: TrapSendExecutor<br>
+ * Description: Runs the sending of formatted traps off the formatting thread, for the senders that block in
+ * sendTrap.<p>
+ * On JDK 21 and later, in the "virtual" mode, each trap is sent on a virtual thread of its own, so that a sender
+ * waiting on the network or on a child process costs no more than its stack frames.  The virtual-thread executor is
+ * looked up by reflection, since the appender is built for older JDKs; where it is not available, and in the
+ * "platform" mode, a fixed pool of daemon platform threads is used instead.<p>
+ * Either way, at most "maxConcurrency" traps are being sent at once: the formatting thread waits for a permit
+ * before handing a trap over, so that a slow management host holds up the appender (and fills its AsyncDispatch
+ * queue, if it has one), rather than piling up threads or tasks.  Every trap goes to all of the destinations, so
+ * this is also the bound on the traps in flight to each destination.<br>
+ * @version 1.0<br>
+ */
+public final class TrapSendExecutor {
+
+    /** A virtual thread per trap, or the platform pool on older JDKs. */
+    public static final String VIRTUAL = "virtual";
+    /** A fixed pool of platform threads. */
+    public static final String PLATFORM = "platform";
+
+    //Thread.isVirtual() of JDK 21, or null
+    private static final Method IS_VIRTUAL = getIsVirtualMethod();
+
+    private final ExecutorService executor;
+    private final boolean isVirtual;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    /**
+     * @param mode VIRTUAL or PLATFORM
+     * @param platformThreads the number of threads of the platform pool
+     * @param maxConcurrency the number of traps that may be sent at once
+     * @param name the name of the appender, for the thread names
+     */
+    public TrapSendExecutor(final String mode,
+                            final int platformThreads,
+                            final int maxConcurrency,
+                            final String name) {
+        ExecutorService virtualExecutor = null;
+        if (VIRTUAL.equalsIgnoreCase(mode)) {
+            virtualExecutor = newVirtualThreadPerTaskExecutor();
+            if (null == virtualExecutor) {
+                LogLog.warn("Virtual threads are not available on this JDK -- the traps will be sent from a pool of "
+                            + platformThreads + " threads.");
+            }
+        }
+        isVirtual = null != virtualExecutor;
+        executor = isVirtual ? virtualExecutor : newPlatformPool(Math.max(1, platformThreads), name);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        permits = new Semaphore(this.maxConcurrency);
+    }
+
+    /**
+     * @return the virtual-thread-per-task executor of JDK 21, or null if there is none
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            LogLog.warn("Could not create the virtual-thread executor", e);
+            return null;
+        }
+    }
+
+    private static Method getIsVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the current thread is a virtual thread
+     */
+    static boolean isVirtualThread() {
+        if (null == IS_VIRTUAL) return false;
+        try {
+            return Boolean.TRUE.equals(IS_VIRTUAL.invoke(Thread.currentThread()));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newPlatformPool(final int threads, final String name) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        //the permits bound the tasks, so the queue never holds more than maxConcurrency of them
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                                      new ThreadFactory() {
+                                          public Thread newThread(final Runnable r) {
+                                              final Thread thread = new Thread(r, "SNMPTrapAppender-" + name
+                                                      + "-sender-" + threadNumber.incrementAndGet());
+                                              thread.setDaemon(true);
+                                              return thread;
+                                          }
+                                      });
+    }
+
+    /**
+     * @return true if the traps are sent on virtual threads
+     */
+    public boolean isVirtual() {
+        return isVirtual;
+    }
+
+    /**
+     * @return the number of traps being sent, or waiting to be
+     */
+    public int getInFlightCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Sends a trap, once there is a permit for it.  Waits for the permit on the calling thread.
+     *
+     * @param task sends the trap
+     * @return whether the task was taken; if not, it will never run
+     */
+    public boolean execute(final Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LogLog.warn("Interrupted while waiting to send a trap -- it has been dropped.");
+            return false;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LogLog.error("Unexpected error while sending a trap", e);
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            LogLog.warn("The appender is closed -- the trap has been dropped.");
+            return false;
+        }
+    }
+
+    /**
+     * Stops taking traps, and waits a while for those already handed over to be sent.
+     *
+     * @param timeoutMillis the longest time to wait
+     */
+    public void close(final long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                LogLog.warn("Some traps were still being sent when the appender was closed.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
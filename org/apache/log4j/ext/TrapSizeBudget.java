@@ -0,0 +1,260 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title: TrapSizeBudget<br>
+ * Description: Keeps each trap within a maximum datagram size, so that it is not fragmented on the wire.<p>
+ * The size of the trap is worked out from the BER encoding of its VarBinds, plus an allowance for the header that
+ * covers the version, community and enterprise OID of every destination, and, for the {@link UsmSNMPTrapSender},
+ * the SNMPv3 header, security parameters and scoped PDU.  As VarBinds are added, a value that could
+ * not fit in a trap of its own is truncated, at a UTF-8 character boundary.  When the trap is sent, if its VarBinds
+ * do not all fit, they are split across as many traps as needed, each of which starts with a correlation VarBind
+ * holding "<i>id</i> <i>part</i>/<i>parts</i>", so that the receiver can put them back together.<p>
+ * The estimate is an upper bound for the BerSNMPTrapSender and the UsmSNMPTrapSender, which allows for the longest
+ * encoding of each length and integer in the header; the other senders encode traps much the same way, but the
+ * Wengsoft sender adds a second VarBind for each one, so that its traps can be up to twice the size.<br>
+ * @version 1.0<br>
+ */
+public final class TrapSizeBudget {
+
+    private static final int FIXED_HEADER_SIZE = 96;
+    private static final String LARGEST_CORRELATION = "ffffffffffffffff 99999/99999";
+    //the SNMPv3 message less the SNMPv2c one, but for the engine ID, user name and digest, with each tag and length
+    //taking up to 4 bytes: msgGlobalData 22, msgSecurityParameters 36, and the encryptedPDU, scopedPDU and
+    //contextName 12
+    private static final int FIXED_USM_OVERHEAD = 70;
+
+    private final int maxDatagramSize;
+    private final int varBindBudget;
+    private final String correlationOID;
+    private final int correlationSize;
+    private final AtomicLong correlationIds;
+
+    /**
+     * @param maxDatagramSize the largest datagram to send, e.g. 1472 for an Ethernet MTU of 1500
+     * @param enterpriseOID the enterprise OID of the traps
+     * @param destinations the destinations of the traps, for their communities
+     * @param correlationOID the name of the correlation VarBind
+     * @param securityOverhead the extra bytes of the security model, e.g. {@link #usmOverhead}, or 0 for SNMPv1/v2c
+     */
+    public TrapSizeBudget(final int maxDatagramSize,
+                          final String enterpriseOID,
+                          final TrapDestination[] destinations,
+                          final String correlationOID,
+                          final int securityOverhead) {
+        int communitySize = 0;
+        for (int i = 0; i < destinations.length; i++) {
+            communitySize = Math.max(communitySize, BerEncoder.utf8Length(destinations[i].getCommunityString()));
+        }
+        //an SNMPv2c trap carries the enterprise OID twice, in snmpTrapOID.0 and snmpTrapEnterprise.0
+        final int headerSize = FIXED_HEADER_SIZE + communitySize + 2 * BerEncoder.sizeOfOIDContents(enterpriseOID)
+                               + securityOverhead;
+        this.maxDatagramSize = maxDatagramSize;
+        this.varBindBudget = maxDatagramSize - headerSize;
+        this.correlationOID = correlationOID;
+        this.correlationSize = BerEncoder.sizeOfVarBind(correlationOID, LARGEST_CORRELATION);
+        this.correlationIds = new AtomicLong(System.currentTimeMillis() << 16);
+    }
+
+    /**
+     * Works out how many more bytes an SNMPv3 message with the User-based Security Model takes than an SNMPv2c one:
+     * the msgGlobalData, the security parameters, and the scoped PDU, with its contextEngineID, in the encryptedPDU.
+     *
+     * @param engineIDLength the length of the engine ID, which is sent twice
+     * @param securityName the user name
+     * @param authLength the length of the digest, 12 for HMAC-SHA-96 or 24 for HMAC-SHA-256-192
+     * @return the extra bytes
+     */
+    static int usmOverhead(final int engineIDLength, final String securityName, final int authLength) {
+        return FIXED_USM_OVERHEAD + 2 * engineIDLength + BerEncoder.utf8Length(securityName) + authLength;
+    }
+
+    /**
+     * @return the largest datagram to send
+     */
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    /**
+     * Creates a trap that keeps to this budget.
+     *
+     * @param sender creates the traps that are actually sent
+     * @return the new trap
+     */
+    public SnmpTrapBuilder createTrap(final ReusableSnmpTrapSender sender) {
+        return new BudgetedTrap(sender);
+    }
+
+    /**
+     * Truncates a value to a number of bytes of UTF-8, without splitting a character.
+     *
+     * @param value the value
+     * @param maxBytes the most bytes to keep
+     * @return the value, or as much of it as fits
+     */
+    static String truncateUtf8(final String value, final int maxBytes) {
+        if (null == value || BerEncoder.utf8Length(value) <= maxBytes) return value;
+        int bytes = 0;
+        int end = 0;
+        while (end < value.length()) {
+            final char c = value.charAt(end);
+            final boolean isPair = Character.isHighSurrogate(c) && end + 1 < value.length()
+                                   && Character.isLowSurrogate(value.charAt(end + 1));
+            final int size = BerEncoder.utf8Length(value.substring(end, end + (isPair ? 2 : 1)));
+            if (bytes + size > maxBytes) break;
+            bytes += size;
+            end += isPair ? 2 : 1;
+        }
+        return value.substring(0, end);
+    }
+
+    /**
+     * The VarBinds of a trap, held until it is sent, and then sent in as many traps as needed.
+     */
+    private final class BudgetedTrap implements SnmpTrapBuilder {
+
+        private final ReusableSnmpTrapSender sender;
+        private String[] oids = new String[8];
+        private String[] values = new String[8];
+        private int[] sizes = new int[8];
+        private int count;
+        private int size;
+        private boolean hasSysUpTime;
+        private long trapSysUpTime;
+        private boolean hasSpecificTrapType;
+        private int trapSpecificTrapType;
+
+        BudgetedTrap(final ReusableSnmpTrapSender senderValue) {
+            sender = senderValue;
+        }
+
+        public void setSysUpTime(final long sysUpTimeValue) {
+            hasSysUpTime = true;
+            trapSysUpTime = sysUpTimeValue;
+        }
+
+        public void setSpecificTrapType(final int specificTrapTypeValue) {
+            hasSpecificTrapType = true;
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void addTrapMessageVariable(final String applicationTrapOIDValue, final String value) {
+            //a VarBind must fit in a trap of its own, with the correlation VarBind
+            final int emptySize = BerEncoder.sizeOfVarBind(applicationTrapOIDValue, "");
+            final int maxValueSize = varBindBudget - correlationSize - emptySize - 4;
+            final String kept = truncateUtf8(value, Math.max(0, maxValueSize));
+            if (count == oids.length) {
+                final String[] newOids = new String[2 * count];
+                final String[] newValues = new String[2 * count];
+                final int[] newSizes = new int[2 * count];
+                System.arraycopy(oids, 0, newOids, 0, count);
+                System.arraycopy(values, 0, newValues, 0, count);
+                System.arraycopy(sizes, 0, newSizes, 0, count);
+                oids = newOids;
+                values = newValues;
+                sizes = newSizes;
+            }
+            oids[count] = applicationTrapOIDValue;
+            values[count] = kept;
+            sizes[count] = BerEncoder.sizeOfVarBind(applicationTrapOIDValue, kept);
+            size += sizes[count];
+            count++;
+        }
+
+        public void sendTrap() {
+            if (size <= varBindBudget) {
+                sendPart(0, count, null);
+                return;
+            }
+            final int partBudget = varBindBudget - correlationSize;
+            int parts = 0;
+            for (int from = 0; from < count; from = nextPart(from, partBudget)) {
+                parts++;
+            }
+            final String id = Long.toHexString(correlationIds.incrementAndGet());
+            int part = 0;
+            for (int from = 0; from < count;) {
+                final int to = nextPart(from, partBudget);
+                part++;
+                sendPart(from, to, new StringBuffer().append(id).append(' ').append(part).append('/').append(parts)
+                        .toString());
+                from = to;
+            }
+        }
+
+        /**
+         * @return the index of the first VarBind that does not fit in a trap that starts with the given one
+         */
+        private int nextPart(final int from, final int partBudget) {
+            int to = from;
+            int partSize = 0;
+            while (to < count && (to == from || partSize + sizes[to] <= partBudget)) {
+                partSize += sizes[to];
+                to++;
+            }
+            return to;
+        }
+
+        private void sendPart(final int from, final int to, final String correlation) {
+            final SnmpTrapBuilder trap = sender.createTrap();
+            if (hasSysUpTime) trap.setSysUpTime(trapSysUpTime);
+            if (hasSpecificTrapType) trap.setSpecificTrapType(trapSpecificTrapType);
+            if (null != correlation) trap.addTrapMessageVariable(correlationOID, correlation);
+            for (int i = from; i < to; i++) {
+                trap.addTrapMessageVariable(oids[i], values[i]);
+            }
+            trap.sendTrap();
+        }
+    }
+}
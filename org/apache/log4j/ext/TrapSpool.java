@@ -0,0 +1,542 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Title: TrapSpool<br>
+ * Description: A journal of the encoded traps that could not be sent, kept on disk until they can be.<p>
+ * The journal is a directory of segment files, each mapped into memory.  A trap is appended by copying it into the
+ * mapped segment, so the logging thread never waits for the disk: the operating system writes the pages back, and
+ * the replayer thread forces them to disk about once a second.  When a segment is full, a new one is started; when
+ * there are "maxSegments" of them, the oldest is deleted, with the traps still in it.<p>
+ * Each record is written as its length, a CRC-32 of its contents, its state, the port and host it was meant for, and
+ * the message.  The length is written last, so that a record is either complete or not there at all, and the CRC
+ * catches the records torn by a crash of the host.  Once a record is replayed, its state is changed in place, and a
+ * segment is deleted once all of its records are.  The spool survives a restart: the segments found in the directory
+ * are scanned, and their remaining records replayed.<p>
+ * The replayer sends the records, oldest first, at up to "replayPerSecond" a second.  Each new failure, and each
+ * record that could not be replayed, holds it off for a while, from 1 second up to a minute, so that an unreachable
+ * management host is only probed now and then; {@link #resume()} starts it again at once, e.g. when an inform has
+ * been acknowledged.<br>
+ * @version 1.0<br>
+ */
+public final class TrapSpool {
+
+    private static final String SEGMENT_PREFIX = "traps-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int HEADER_SIZE = 13;
+    private static final int STATE_OFFSET = 8;
+    private static final byte STATE_LIVE = 1;
+    private static final byte STATE_REPLAYED = 2;
+    private static final int MIN_SEGMENT_SIZE = 65536 + 512;
+    private static final long FORCE_INTERVAL_MILLIS = 1000;
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /**
+     * Sends the replayed records.
+     */
+    public interface ReplayHandler {
+
+        /**
+         * Sends a spooled message again.  Called on the replayer thread.
+         *
+         * @param message the encoded message
+         * @param host the management host it was meant for
+         * @param port the port it was meant for
+         * @return true if the message is done with, false if it should be replayed again later
+         */
+        boolean replay(ByteBuffer message, String host, int port);
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long replayIntervalNanos;
+    private final ReplayHandler handler;
+    private final List segments = new ArrayList();
+    private final CRC32 crc = new CRC32();
+    private final Thread replayer;
+    private long nextSequence;
+    private long resumeAt;
+    private long backoffMillis = MIN_BACKOFF_MILLIS;
+    private long pendingCount;
+    private volatile boolean isClosed;
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Opens the spool, recovering the records left in the directory, and starts replaying them.
+     *
+     * @param directoryValue the directory of the segment files; it is created if need be
+     * @param segmentSizeValue the size of each segment file, in bytes
+     * @param maxSegmentsValue the number of segment files kept
+     * @param replayPerSecond the number of records replayed a second
+     * @param handlerValue sends the replayed records
+     * @throws IOException if the directory cannot be used
+     */
+    public TrapSpool(final File directoryValue,
+                     final int segmentSizeValue,
+                     final int maxSegmentsValue,
+                     final int replayPerSecond,
+                     final ReplayHandler handlerValue) throws IOException {
+        directory = directoryValue;
+        segmentSize = Math.max(MIN_SEGMENT_SIZE, segmentSizeValue);
+        maxSegments = Math.max(2, maxSegmentsValue);
+        replayIntervalNanos = 0 < replayPerSecond ? 1000000000L / replayPerSecond : 0;
+        handler = handlerValue;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the spool directory " + directory);
+        }
+        recover();
+        replayer = new Thread(new Runnable() {
+            public void run() {
+                replay();
+            }
+        }, "SNMPTrapAppender-spool-replayer");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    /**
+     * Appends an encoded message to the spool.  Does not wait for the disk.
+     *
+     * @param message the message, from its position to its limit; it is copied
+     * @param host the management host it is meant for
+     * @param port the port it is meant for
+     * @return true if the message was spooled, false if it has been dropped
+     */
+    public boolean append(final ByteBuffer message, final String host, final int port) {
+        final byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+        final int length = HEADER_SIZE + hostBytes.length + message.remaining();
+        if (segmentSize < length + 4 || 0xFFFF < hostBytes.length) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        synchronized (this) {
+            if (isClosed) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            try {
+                final Segment segment = getWritableSegment(length);
+                final MappedByteBuffer buffer = segment.buffer;
+                final int start = segment.writePosition;
+                buffer.put(start + STATE_OFFSET, STATE_LIVE);
+                buffer.putShort(start + 9, (short) port);
+                buffer.putShort(start + 11, (short) hostBytes.length);
+                final ByteBuffer body = buffer.duplicate();
+                body.position(start + HEADER_SIZE);
+                body.put(hostBytes);
+                body.put(message.duplicate());
+                buffer.putInt(start + 4, checksum(buffer, start, length));
+                //the length last, which makes the record part of the segment
+                buffer.putInt(start, length);
+                segment.writePosition = start + length;
+                segment.liveCount++;
+                segment.isDirty = true;
+                pendingCount++;
+            } catch (IOException e) {
+                droppedCount.incrementAndGet();
+                LogLog.error("Could not create a new spool segment", e);
+                return false;
+            }
+            //hold off the replay, the management host is likely still unreachable
+            resumeAt = Math.max(resumeAt, System.currentTimeMillis() + backoffMillis);
+        }
+        spooledCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Starts replaying at once, e.g. because the management host has been heard from.
+     */
+    public synchronized void resume() {
+        if (0 != resumeAt) {
+            resumeAt = 0;
+            backoffMillis = MIN_BACKOFF_MILLIS;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the replayer, and forces the segments to disk.  The records not yet replayed are kept for the next time
+     * the spool is opened.
+     */
+    public void close() {
+        synchronized (this) {
+            isClosed = true;
+            notifyAll();
+        }
+        try {
+            replayer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        force(true);
+    }
+
+    /**
+     * @return the number of messages appended to the spool
+     */
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    /**
+     * @return the number of messages replayed from the spool
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * @return the number of messages dropped, because they did not fit, or their segment was deleted to make room
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of messages waiting to be replayed
+     */
+    public synchronized long getPendingCount() {
+        return pendingCount;
+    }
+
+    private int checksum(final ByteBuffer buffer, final int start, final int length) {
+        final ByteBuffer contents = buffer.duplicate();
+        contents.limit(start + length).position(start + STATE_OFFSET + 1);
+        crc.reset();
+        crc.update(contents);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Opens the segment files left in the directory, oldest first, and finds the records still to be replayed.
+     */
+    private void recover() throws IOException {
+        final String[] names = directory.list(new FilenameFilter() {
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        Arrays.sort(names);
+        for (int i = 0; i < names.length; i++) {
+            final String hex = names[i].substring(SEGMENT_PREFIX.length(),
+                                                  names[i].length() - SEGMENT_SUFFIX.length());
+            final long sequence;
+            try {
+                sequence = Long.parseLong(hex, 16);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            final Segment segment = new Segment(new File(directory, names[i]), 0);
+            segment.scan();
+            if (0 == segment.liveCount) {
+                segment.delete();
+            } else {
+                segments.add(segment);
+                pendingCount += segment.liveCount;
+            }
+        }
+        if (0 < pendingCount) {
+            LogLog.debug(new StringBuffer().append(pendingCount).append(" spooled traps are waiting in ")
+                    .append(directory).toString());
+        }
+    }
+
+    /**
+     * @return the last segment, or a new one if it has no room for the record
+     */
+    private Segment getWritableSegment(final int length) throws IOException {
+        if (!segments.isEmpty()) {
+            final Segment last = (Segment) segments.get(segments.size() - 1);
+            //the trailing zero length marks the end of the records
+            if (last.writePosition + length + 4 <= last.buffer.capacity()) return last;
+        }
+        while (maxSegments <= segments.size()) {
+            final Segment oldest = (Segment) segments.remove(0);
+            pendingCount -= oldest.liveCount;
+            droppedCount.addAndGet(oldest.liveCount);
+            LogLog.warn(new StringBuffer().append("The trap spool is full -- ").append(oldest.liveCount)
+                    .append(" spooled traps have been dropped.").toString());
+            oldest.delete();
+        }
+        final String name = new StringBuffer(SEGMENT_PREFIX)
+                .append(Long.toHexString(0x1000000000000000L | nextSequence++).substring(1))
+                .append(SEGMENT_SUFFIX).toString();
+        final Segment segment = new Segment(new File(directory, name), segmentSize);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void replay() {
+        long lastForce = System.currentTimeMillis();
+        while (!isClosed) {
+            final long now = System.currentTimeMillis();
+            if (now - lastForce >= FORCE_INTERVAL_MILLIS) {
+                force(false);
+                lastForce = now;
+            }
+            final Record record;
+            synchronized (this) {
+                final long wait = 0 < pendingCount ? resumeAt - now : FORCE_INTERVAL_MILLIS;
+                if (0 < wait) {
+                    try {
+                        wait(Math.min(wait, FORCE_INTERVAL_MILLIS));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                record = next();
+            }
+            if (null == record) continue;
+            boolean isDone;
+            try {
+                isDone = handler.replay(ByteBuffer.wrap(record.message), record.host, record.port);
+            } catch (RuntimeException e) {
+                LogLog.error("There was an unexpected error while replaying a spooled trap", e);
+                isDone = false;
+            }
+            synchronized (this) {
+                if (isDone) {
+                    record.segment.markReplayed(record.position);
+                    backoffMillis = MIN_BACKOFF_MILLIS;
+                } else {
+                    resumeAt = System.currentTimeMillis() + backoffMillis;
+                    backoffMillis = Math.min(MAX_BACKOFF_MILLIS, 2 * backoffMillis);
+                }
+            }
+            if (isDone) {
+                replayedCount.incrementAndGet();
+                if (0 < replayIntervalNanos) sleepNanos(replayIntervalNanos);
+            }
+        }
+    }
+
+    private static void sleepNanos(final long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a copy of the oldest record still to be replayed, or null if there is none
+     */
+    private Record next() {
+        while (!segments.isEmpty()) {
+            final Segment segment = (Segment) segments.get(0);
+            final Record record = segment.next();
+            if (null != record) return record;
+            //all of its records have been replayed, and no more will be written to it
+            if (1 == segments.size()) return null;
+            segments.remove(0);
+            segment.delete();
+        }
+        return null;
+    }
+
+    /**
+     * Forces the segments written to since the last time to disk.  Called without holding the lock, since it waits
+     * for the disk.
+     */
+    private void force(final boolean isAll) {
+        final Segment[] current;
+        synchronized (this) {
+            current = (Segment[]) segments.toArray(new Segment[segments.size()]);
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (isAll || current[i].isDirty) {
+                current[i].isDirty = false;
+                try {
+                    current[i].buffer.force();
+                } catch (RuntimeException e) {
+                    //deleted under us
+                }
+            }
+        }
+    }
+
+    /**
+     * A copy of a record, taken for the replayer.
+     */
+    private static final class Record {
+
+        final Segment segment;
+        final int position;
+        final String host;
+        final int port;
+        final byte[] message;
+
+        Record(final Segment segmentValue,
+               final int positionValue,
+               final String hostValue,
+               final int portValue,
+               final byte[] messageValue) {
+            segment = segmentValue;
+            position = positionValue;
+            host = hostValue;
+            port = portValue;
+            message = messageValue;
+        }
+    }
+
+    /**
+     * One mapped segment file.  Guarded by the lock of the spool.
+     */
+    private final class Segment {
+
+        final File file;
+        final MappedByteBuffer buffer;
+        int readPosition;
+        int writePosition;
+        int liveCount;
+        volatile boolean isDirty;
+        boolean isDeleted;
+
+        /**
+         * @param fileValue the file
+         * @param size the size of a new file, or 0 to map an existing one as it is
+         */
+        Segment(final File fileValue, final int size) throws IOException {
+            file = fileValue;
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (0 < size) raf.setLength(size);
+                final FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, channel.size()));
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * Finds the end of the complete records, and the first one still to be replayed.
+         */
+        void scan() {
+            int position = 0;
+            readPosition = -1;
+            while (position + HEADER_SIZE <= buffer.capacity()) {
+                final int length = buffer.getInt(position);
+                if (HEADER_SIZE > length || position + length > buffer.capacity()
+                    || buffer.getInt(position + 4) != checksum(buffer, position, length)) {
+                    break;
+                }
+                if (STATE_LIVE == buffer.get(position + STATE_OFFSET)) {
+                    if (0 > readPosition) readPosition = position;
+                    liveCount++;
+                }
+                position += length;
+            }
+            writePosition = position;
+            if (0 > readPosition) readPosition = position;
+        }
+
+        Record next() {
+            while (readPosition < writePosition) {
+                final int position = readPosition;
+                final int length = buffer.getInt(position);
+                if (STATE_LIVE == buffer.get(position + STATE_OFFSET)) {
+                    final int port = buffer.getShort(position + 9) & 0xFFFF;
+                    final int hostLength = buffer.getShort(position + 11) & 0xFFFF;
+                    final byte[] hostBytes = new byte[hostLength];
+                    final byte[] message = new byte[length - HEADER_SIZE - hostLength];
+                    final ByteBuffer body = buffer.duplicate();
+                    body.position(position + HEADER_SIZE);
+                    body.get(hostBytes);
+                    body.get(message);
+                    return new Record(this, position, new String(hostBytes, StandardCharsets.UTF_8), port, message);
+                }
+                readPosition += length;
+            }
+            return null;
+        }
+
+        void markReplayed(final int position) {
+            if (isDeleted || STATE_LIVE != buffer.get(position + STATE_OFFSET)) return;
+            buffer.put(position + STATE_OFFSET, STATE_REPLAYED);
+            if (readPosition == position) readPosition += buffer.getInt(position);
+            liveCount--;
+            pendingCount--;
+            isDirty = true;
+        }
+
+        void delete() {
+            isDeleted = true;
+            //the mapping itself goes when the buffer is collected
+            if (!file.delete()) {
+                LogLog.warn("Could not delete the spool segment " + file);
+            }
+        }
+    }
+}
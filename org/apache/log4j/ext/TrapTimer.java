@@ -0,0 +1,125 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title: TrapTimer<br>
+ * Description: A single daemon thread, shared by all appenders and senders of this package, for the small
+ * housekeeping tasks that must happen in the background (flushing batches, refreshing addresses, and so on).<p>
+ * Tasks must be short and must not block; anything that does real work should hand it off to another thread.<br>
+ * @version 1.0<br>
+ */
+public final class TrapTimer {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "SNMPTrapAppender-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private TrapTimer() {
+    }
+
+    /**
+     * Runs the task once, after the delay.
+     *
+     * @param task to run
+     * @param delayMillis delay, in milliseconds
+     * @return a handle that can be used to cancel the task
+     */
+    public static ScheduledFuture schedule(final Runnable task, final long delayMillis) {
+        return EXECUTOR.schedule(new Guarded(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task repeatedly, with the given delay between the end of one run and the start of the next.
+     *
+     * @param task to run
+     * @param periodMillis delay, in milliseconds
+     * @return a handle that can be used to cancel the task
+     */
+    public static ScheduledFuture scheduleWithFixedDelay(final Runnable task, final long periodMillis) {
+        return EXECUTOR.scheduleWithFixedDelay(new Guarded(task), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keeps a failing task from being silently descheduled by the executor.
+     */
+    private static final class Guarded implements Runnable {
+
+        private final Runnable task;
+
+        Guarded(final Runnable taskValue) {
+            task = taskValue;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LogLog.error("Unexpected error in a background task of the SNMPTrapAppender", e);
+            }
+        }
+    }
+}
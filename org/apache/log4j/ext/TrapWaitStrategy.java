@@ -0,0 +1,200 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Title: TrapWaitStrategy<br>
+ * Description: Decides how a thread of the asynchronous dispatcher waits for the ring buffer to become readable (a
+ * consumer with nothing to do) or writable (a producer facing a full buffer, with the "block" overflow policy).<p>
+ * The available strategies, selected by name via {@link #forName(String)}, are:<br>
+ * <b>blocking</b> -- park on a lock/condition pair until signalled.  Lowest CPU use, highest wake-up latency.  This is
+ * the default.<br>
+ * <b>sleeping</b> -- spin briefly, then yield, then sleep in short intervals.  Nothing to signal, so publishing costs
+ * nothing, at the price of up to ~100 microseconds of latency.<br>
+ * <b>yielding</b> -- spin briefly, then yield the CPU between checks.<br>
+ * <b>busyspin</b> -- never give up the CPU.  Only sensible with a dedicated core per consumer thread.<br>
+ * @version 1.0<br>
+ */
+public abstract class TrapWaitStrategy {
+
+    public static final String BLOCKING = "blocking";
+    public static final String SLEEPING = "sleeping";
+    public static final String YIELDING = "yielding";
+    public static final String BUSY_SPIN = "busyspin";
+
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * A condition that the waiting thread is waiting for.
+     */
+    public interface Ready {
+        boolean isReady();
+    }
+
+    /**
+     * Returns a new instance of the named strategy.
+     *
+     * @param name one of "blocking", "sleeping", "yielding" or "busyspin" (case insensitive)
+     * @return the strategy
+     * @throws IllegalArgumentException if the name is not known
+     */
+    public static TrapWaitStrategy forName(final String name) {
+        if (BLOCKING.equalsIgnoreCase(name)) return new BlockingWaitStrategy();
+        if (SLEEPING.equalsIgnoreCase(name)) return new SpinningWaitStrategy(true);
+        if (YIELDING.equalsIgnoreCase(name)) return new SpinningWaitStrategy(false);
+        if (BUSY_SPIN.equalsIgnoreCase(name)) return new BusySpinWaitStrategy();
+        throw new IllegalArgumentException(new StringBuffer().append("Unknown wait strategy: ")
+                .append(name).toString());
+    }
+
+    /**
+     * Tests if the name is one of those understood by {@link #forName(String)}.
+     *
+     * @param name to be tested
+     * @return true if the name is known
+     */
+    public static boolean isKnown(final String name) {
+        return BLOCKING.equalsIgnoreCase(name) || SLEEPING.equalsIgnoreCase(name)
+               || YIELDING.equalsIgnoreCase(name) || BUSY_SPIN.equalsIgnoreCase(name);
+    }
+
+    /**
+     * Returns once the condition holds.
+     *
+     * @param ready the condition to wait for
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public abstract void waitUntil(Ready ready) throws InterruptedException;
+
+    /**
+     * Called after any change to the ring buffer that might satisfy a waiting thread.
+     */
+    public abstract void signalAll();
+
+    private static final class BlockingWaitStrategy extends TrapWaitStrategy {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        public void waitUntil(final Ready ready) throws InterruptedException {
+            if (ready.isReady()) return;
+            lock.lock();
+            try {
+                //register before re-checking, so that a concurrent signalAll() can not be missed
+                waiters.incrementAndGet();
+                try {
+                    while (!ready.isReady()) {
+                        changed.await();
+                    }
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void signalAll() {
+            if (0 == waiters.get()) return;
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class SpinningWaitStrategy extends TrapWaitStrategy {
+
+        private static final long SLEEP_NANOS = 100000L;
+        private final boolean sleep;
+
+        SpinningWaitStrategy(final boolean sleepValue) {
+            sleep = sleepValue;
+        }
+
+        public void waitUntil(final Ready ready) throws InterruptedException {
+            int counter = 0;
+            while (!ready.isReady()) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                if (SPIN_TRIES > counter) {
+                    counter++;
+                } else if (sleep && 2 * SPIN_TRIES < counter) {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                } else {
+                    counter++;
+                    Thread.yield();
+                }
+            }
+        }
+
+        public void signalAll() {
+        }
+    }
+
+    private static final class BusySpinWaitStrategy extends TrapWaitStrategy {
+
+        public void waitUntil(final Ready ready) throws InterruptedException {
+            while (!ready.isReady()) {
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        }
+
+        public void signalAll() {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Title: UsmKeyLocalizer<br>
+ * Description: Turns an SNMPv3 password into a key localized to an engine ID, as described by RFC 3414, A.2.<p>
+ * The password is first stretched into a megabyte of data and hashed, which is deliberately slow, and the result
+ * is then hashed again with the engine ID.  Localized keys are cached for the life of the JVM, keyed by the digest
+ * algorithm, the engine ID and a hash of the password, so that each key is computed only once, however often the
+ * appender is reconfigured.<br>
+ * @version 1.0<br>
+ */
+final class UsmKeyLocalizer {
+
+    private static final int PASSWORD_EXPANSION = 1048576;
+    private static final Map LOCALIZED_KEYS = new ConcurrentHashMap();
+
+    private UsmKeyLocalizer() {
+    }
+
+    /**
+     * Gets the localized key for a password, computing it on first use.
+     *
+     * @param digestAlgorithm the digest of the authentication protocol, e.g. "SHA-1"
+     * @param password the password
+     * @param engineID the authoritative engine ID
+     * @return the key, as long as the digest; a copy, which the caller may keep
+     * @throws GeneralSecurityException if the digest algorithm is not available
+     */
+    static byte[] localize(final String digestAlgorithm,
+                           final String password,
+                           final byte[] engineID) throws GeneralSecurityException {
+        final byte[] passwordBytes = toBytes(password);
+        final String cacheKey = new StringBuffer().append(digestAlgorithm).append('|').append(toHex(engineID))
+                .append('|').append(toHex(MessageDigest.getInstance("SHA-256").digest(passwordBytes))).toString();
+        byte[] key = (byte[]) LOCALIZED_KEYS.get(cacheKey);
+        if (null == key) {
+            final MessageDigest digest = MessageDigest.getInstance(digestAlgorithm);
+            final byte[] passwordKey = passwordToKey(digest, passwordBytes);
+            digest.update(passwordKey);
+            digest.update(engineID);
+            digest.update(passwordKey);
+            key = digest.digest();
+            LOCALIZED_KEYS.put(cacheKey, key);
+        }
+        return key.clone();
+    }
+
+    /**
+     * Hashes a megabyte of the password, repeated.
+     */
+    private static byte[] passwordToKey(final MessageDigest digest, final byte[] password) {
+        final byte[] chunk = new byte[64];
+        int index = 0;
+        for (int count = 0; count < PASSWORD_EXPANSION; count += chunk.length) {
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = password[index++ % password.length];
+            }
+            digest.update(chunk);
+        }
+        return digest.digest();
+    }
+
+    private static byte[] toBytes(final String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+    /**
+     * @return the bytes as lower case hexadecimal
+     */
+    static String toHex(final byte[] bytes) {
+        final StringBuffer hex = new StringBuffer(2 * bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Parses hexadecimal bytes, e.g. an engine ID, with an optional "0x" prefix and optional ':' or ' ' separators.
+     *
+     * @param value the hexadecimal
+     * @return the bytes
+     * @throws IllegalArgumentException if the value is not hexadecimal
+     */
+    static byte[] parseHex(final String value) {
+        String digits = value.trim();
+        if (digits.startsWith("0x") || digits.startsWith("0X")) digits = digits.substring(2);
+        final StringBuffer stripped = new StringBuffer(digits.length());
+        for (int i = 0; i < digits.length(); i++) {
+            final char c = digits.charAt(i);
+            if (':' != c && ' ' != c) stripped.append(c);
+        }
+        if (0 == stripped.length() || 0 != stripped.length() % 2) {
+            throw new IllegalArgumentException("Not an even number of hexadecimal digits: " + value);
+        }
+        final byte[] bytes = new byte[stripped.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(stripped.charAt(2 * i), 16);
+            final int low = Character.digit(stripped.charAt(2 * i + 1), 16);
+            if (0 > high || 0 > low) throw new IllegalArgumentException("Not hexadecimal: " + value);
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,640 @@
+/*
+ *
+ *
+============================================================================
+ *     This license is based on the Apache Software License, Version 1.1
+ *
+============================================================================
+ *
+ *    Copyright (C) 2001-2003 Mark Masterson. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modifica-
+ * tion, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of  source code must  retain the above copyright  notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if any, must
+ *    include  the following  acknowledgment:  "This product includes  software
+ *    developed  by the  Apache Software Foundation  (http://www.apache.org/)."
+ *    Alternately, this  acknowledgment may  appear in the software itself,  if
+ *    and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names Mark Masterson, M2 Technologies, SNMPTrapAppender or log4j must
+ *    not be used to endorse or promote products derived  from this  software
+ *    without  prior written permission. For written permission, please contact
+ *    m.masterson@computer.org.
+ *
+ * 5. Products  derived from this software may not  be called "Apache", nor may
+ *    "Apache" appear  in their name,  without prior written permission  of the
+ *    Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS  FOR A PARTICULAR  PURPOSE ARE  DISCLAIMED.  IN NO  EVENT SHALL  THE
+ * APACHE SOFTWARE  FOUNDATION  OR ITS CONTRIBUTORS  BE LIABLE FOR  ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL,  EXEMPLARY, OR CONSEQUENTIAL  DAMAGES (INCLU-
+ * DING, BUT NOT LIMITED TO, PROCUREMENT  OF SUBSTITUTE GOODS OR SERVICES; LOSS
+ * OF USE, DATA, OR  PROFITS; OR BUSINESS  INTERRUPTION)  HOWEVER CAUSED AND ON
+ * ANY  THEORY OF LIABILITY,  WHETHER  IN CONTRACT,  STRICT LIABILITY,  OR TORT
+ * (INCLUDING  NEGLIGENCE OR  OTHERWISE) ARISING IN  ANY WAY OUT OF THE  USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ */
+
+package org.apache.log4j.ext;
+
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Title: UsmSNMPTrapSender<br>
+ * Description: A self-contained sender of SNMPv3 traps, authenticated and encrypted with the User-based Security
+ * Model (authPriv): HMAC-SHA-96 (RFC 3414) or HMAC-SHA-256-192 (RFC 7860) for authentication, and AES-128 in CFB
+ * mode (RFC 3826) for privacy.<p>
+ * A trap is an unacknowledged notification, so the sender is the authoritative engine: the traps carry its own
+ * engine ID, boots and time, and no discovery is needed.  The engine ID is the appender's EngineID, or, if it is not
+ * set, one made from the net-snmp enterprise number and the local IPv4 address; the management host must be
+ * configured with the user for that engine ID.  The engine boots are fixed the first time an engine ID is used in
+ * the JVM: if the appender has an EngineBootsFile, they are the number in that file, which is incremented then;
+ * otherwise they are its EngineBoots plus the seconds since 2020, so that they still go up when the JVM is
+ * restarted.  The engine time is counted in seconds from then, and neither is reset when the sender is initialized
+ * again, so that the management host does not reject the traps as outside its time window.<p>
+ * The keys are localized once per engine ID, see {@link UsmKeyLocalizer}.  As with the {@link BerSNMPTrapSender},
+ * each sending thread has its own trap builder, which keeps its encoders and buffers, and its Mac and Cipher, from
+ * one trap to the next; only the Cipher is re-initialized for each trap, with the IV made from the engine boots, the
+ * engine time and a fresh salt.<p>
+ * Every trap goes to all of the appender's {@link TrapDestination}s, whatever their version and community; the
+ * CommunityString and the inform mode are not used.  The traps are counted, and their encoding timed, in the
+ * appender's {@link TrapMetrics}.<br>
+ * @version 1.0<br>
+ */
+public class UsmSNMPTrapSender implements ReusableSnmpTrapSender {
+
+    static final String AUTH_SHA = "SHA";
+    static final String AUTH_SHA256 = "SHA256";
+    private static final int INITIAL_BUFFER_SIZE = 2048;
+    //the builders kept for the virtual threads of the SendExecutor: its default SendMaxConcurrency
+    private static final int BUILDER_POOL_SIZE = 64;
+    private static final int MAX_BUFFER_SIZE = 65536;
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int SECURITY_MODEL_USM = 3;
+    private static final byte[] AUTH_PRIV_FLAGS = {3};
+    private static final int PRIV_KEY_LENGTH = 16;
+    private static final int SALT_LENGTH = 8;
+    private static final byte[] ZERO_AUTH_PARAMETERS = new byte[24];
+    //2020-01-01T00:00:00Z: without an EngineBootsFile, the boots count the seconds since then
+    private static final long BOOTS_EPOCH_MILLIS = 1577836800000L;
+    //the boots and start time of each engine ID, kept from one initialization to the next
+    private static final Map ENGINE_CLOCKS = new HashMap();
+
+    private String enterpriseOID = "1.3.6.1.2.1.1.2.0";
+    private int genericTrapType;
+    private int specificTrapType = 6;
+    private String applicationTrapOID = "1.3.6.1.2.1.1.2.0.0.0.0";
+    private long sysUpTime;
+    private final Map templates = new ConcurrentHashMap();
+    private TrapDestination[] destinations = new TrapDestination[0];
+    private DatagramChannel channel;
+    private volatile UsmContext context;
+    private TrapMetrics metrics;
+    private volatile boolean isInitialized;
+    private SnmpTrapBuilder legacyTrap;
+    private final AtomicInteger messageId = new AtomicInteger();
+    private final AtomicInteger requestId = new AtomicInteger();
+    private final AtomicLong salt = new AtomicLong(new SecureRandom().nextLong());
+
+    private final TrapBuilderPool builders = new TrapBuilderPool(BUILDER_POOL_SIZE) {
+        protected Object newBuilder() {
+            return new UsmTrap();
+        }
+    };
+
+    /**
+     * Default constructor.
+     */
+    public UsmSNMPTrapSender() {
+    }
+
+    public void initialize(final SNMPTrapAppender appender) {
+        isInitialized = false;
+        metrics = appender.getMetrics();
+        enterpriseOID = appender.getEnterpriseOID();
+        sysUpTime = appender.getSysUpTime();
+        genericTrapType = appender.getGenericTrapType();
+        specificTrapType = appender.getSpecificTrapType();
+        destinations = appender.getDestinations();
+        templates.clear();
+        try {
+            context = createContext(appender);
+        } catch (GeneralSecurityException e) {
+            LogLog.error("Could not create the SNMPv3 keys -- no traps will be sent", e);
+            return;
+        } catch (IllegalArgumentException e) {
+            LogLog.error("There were problems with the SNMPv3 parameters -- no traps will be sent", e);
+            return;
+        }
+        try {
+            closeChannel();
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(null);
+            isInitialized = true;
+        } catch (IOException e) {
+            LogLog.error("Could not open a channel to send the traps on", e);
+        }
+        legacyTrap = new UsmTrap();
+    }
+
+    public SnmpTrapBuilder createTrap() {
+        final UsmTrap trap = (UsmTrap) builders.take();
+        trap.reset(sysUpTime);
+        return trap;
+    }
+
+    public void close() {
+        isInitialized = false;
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LogLog.warn("Error closing the trap channel", e);
+            }
+            channel = null;
+        }
+    }
+
+    public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                       final String value) {
+        //check pre-condition
+        if (!isInitialized) {
+            LogLog.error("The initialize() method must be called before calling addTrapMessageVariable()");
+            return;
+        }
+        legacyTrap.addTrapMessageVariable(applicationTrapOIDValue, value);
+    }
+
+    public void sendTrap() {
+        //check pre-condition
+        if (!isInitialized) {
+            LogLog.error("The initialize() method must be called before calling sendTrap()");
+            return;
+        }
+        legacyTrap.sendTrap();
+        legacyTrap = new UsmTrap();
+    }
+
+    /**
+     * Works out the engine ID and boots, and localizes the keys, from the properties of the appender.
+     */
+    private static UsmContext createContext(final SNMPTrapAppender appender) throws GeneralSecurityException {
+        final String securityName = appender.getSecurityName();
+        if (null == securityName || 0 == securityName.length()) {
+            throw new IllegalArgumentException("The SecurityName must be set");
+        }
+        checkPassword("AuthPassword", appender.getAuthPassword());
+        checkPassword("PrivPassword", appender.getPrivPassword());
+        final boolean isSha256 = AUTH_SHA256.equalsIgnoreCase(appender.getAuthProtocol());
+        final String digestAlgorithm = isSha256 ? "SHA-256" : "SHA-1";
+        final byte[] engineID = getEngineID(appender);
+        if (5 > engineID.length || 32 < engineID.length) {
+            throw new IllegalArgumentException("The EngineID must be from 5 to 32 bytes long");
+        }
+        final byte[] authKey = UsmKeyLocalizer.localize(digestAlgorithm, appender.getAuthPassword(), engineID);
+        final byte[] privKey = UsmKeyLocalizer.localize(digestAlgorithm, appender.getPrivPassword(), engineID);
+        final long[] clock = getEngineClock(engineID, appender);
+        return new UsmContext(engineID,
+                              (int) clock[0],
+                              clock[1],
+                              securityName,
+                              isSha256 ? "HmacSHA256" : "HmacSHA1",
+                              new SecretKeySpec(authKey, isSha256 ? "HmacSHA256" : "HmacSHA1"),
+                              isSha256 ? 24 : 12,
+                              new SecretKeySpec(privKey, 0, PRIV_KEY_LENGTH, "AES"));
+    }
+
+    /**
+     * @return the EngineID of the appender, or the default one if it is not set
+     */
+    private static byte[] getEngineID(final SNMPTrapAppender appender) {
+        return null == appender.getEngineID()
+               ? getDefaultEngineID(appender.getLocalAddress())
+               : UsmKeyLocalizer.parseHex(appender.getEngineID());
+    }
+
+    /**
+     * Works out how many more bytes the SNMPv3 message of a trap takes than the SNMPv2c message, with the engine ID,
+     * security name and authentication protocol of the appender, for the {@link TrapSizeBudget}.
+     *
+     * @param appender the appender
+     * @return the extra bytes
+     */
+    static int getHeaderOverhead(final SNMPTrapAppender appender) {
+        int engineIDLength;
+        try {
+            engineIDLength = getEngineID(appender).length;
+        } catch (IllegalArgumentException e) {
+            //the sender will not start; assume the longest
+            engineIDLength = 32;
+        }
+        return TrapSizeBudget.usmOverhead(engineIDLength,
+                                          appender.getSecurityName(),
+                                          AUTH_SHA256.equalsIgnoreCase(appender.getAuthProtocol()) ? 24 : 12);
+    }
+
+    private static void checkPassword(final String name, final String password) {
+        if (null == password || 8 > password.length()) {
+            throw new IllegalArgumentException(name + " must be at least 8 characters long");
+        }
+    }
+
+    /**
+     * @return an RFC 3411 engine ID, from the net-snmp enterprise number and the local IPv4 address, if it is known
+     */
+    private static byte[] getDefaultEngineID(final CachedInetAddress localAddress) {
+        final byte[] address = null == localAddress ? null : localAddress.getAddressBytes();
+        if (null != address && 4 == address.length) {
+            return new byte[]{(byte) 0x80, 0x00, 0x1F, (byte) 0x88, 1,
+                              address[0], address[1], address[2], address[3]};
+        }
+        return new byte[]{(byte) 0x80, 0x00, 0x1F, (byte) 0x88, 4, 'l', 'o', 'g', '4', 'j'};
+    }
+
+    /**
+     * Gets the boots and start time of an engine.  They are fixed the first time the engine ID is used, and kept for
+     * the life of the class, so that re-initializing the sender neither restarts the engine time nor reuses the
+     * boots with an earlier time, which the management host would reject as not in its time window.
+     *
+     * @return the engine boots and the time, in milliseconds, from which the engine time is counted
+     */
+    static long[] getEngineClock(final byte[] engineID, final SNMPTrapAppender appender) {
+        final String key = UsmKeyLocalizer.toHex(engineID);
+        synchronized (ENGINE_CLOCKS) {
+            long[] clock = (long[]) ENGINE_CLOCKS.get(key);
+            if (null == clock) {
+                clock = new long[]{getEngineBoots(appender), System.currentTimeMillis()};
+                ENGINE_CLOCKS.put(key, clock);
+            }
+            return clock;
+        }
+    }
+
+    /**
+     * @return the engine boots, incremented in the EngineBootsFile if there is one, otherwise the EngineBoots plus
+     * the seconds since 2020, so that they go up each time the JVM is restarted
+     */
+    private static int getEngineBoots(final SNMPTrapAppender appender) {
+        final String fileName = appender.getEngineBootsFile();
+        if (null == fileName) {
+            return appender.getEngineBoots() + (int) ((System.currentTimeMillis() - BOOTS_EPOCH_MILLIS) / 1000);
+        }
+        final File file = new File(fileName);
+        int boots = appender.getEngineBoots();
+        if (file.exists()) {
+            try {
+                final BufferedReader reader = new BufferedReader(new FileReader(file));
+                try {
+                    final String line = reader.readLine();
+                    if (null != line) boots = Integer.parseInt(line.trim()) + 1;
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                LogLog.warn("Could not read the engine boots from " + fileName, e);
+            } catch (NumberFormatException e) {
+                LogLog.warn("Could not read the engine boots from " + fileName, e);
+            }
+        }
+        try {
+            final FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(Integer.toString(boots));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            LogLog.warn("Could not save the engine boots to " + fileName, e);
+        }
+        return boots;
+    }
+
+    private TrapHeaderTemplate getTemplate(final int trapSpecificTrapType) {
+        final Integer key = Integer.valueOf(trapSpecificTrapType);
+        TrapHeaderTemplate template = (TrapHeaderTemplate) templates.get(key);
+        if (null == template) {
+            //the community and agent address are not part of an SNMPv2-Trap-PDU
+            template = new TrapHeaderTemplate(2, "", enterpriseOID, null, genericTrapType, trapSpecificTrapType,
+                                              false);
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * The engine parameters and keys, fixed from one initialization of the sender to the next.
+     */
+    private static final class UsmContext {
+
+        final byte[] engineID;
+        final int engineBoots;
+        final long startMillis;
+        final String securityName;
+        final String macAlgorithm;
+        final SecretKeySpec authKey;
+        final int authParametersLength;
+        final SecretKeySpec privKey;
+
+        UsmContext(final byte[] engineIDValue,
+                   final int engineBootsValue,
+                   final long startMillisValue,
+                   final String securityNameValue,
+                   final String macAlgorithmValue,
+                   final SecretKeySpec authKeyValue,
+                   final int authParametersLengthValue,
+                   final SecretKeySpec privKeyValue) {
+            engineID = engineIDValue;
+            engineBoots = engineBootsValue;
+            startMillis = startMillisValue;
+            securityName = securityNameValue;
+            macAlgorithm = macAlgorithmValue;
+            authKey = authKeyValue;
+            authParametersLength = authParametersLengthValue;
+            privKey = privKeyValue;
+        }
+    }
+
+    /**
+     * A single trap, held as the list of its VarBinds until it is encoded, encrypted, authenticated and sent.  One
+     * instance per thread is reused for every trap that the thread sends.
+     */
+    private final class UsmTrap implements SnmpTrapBuilder {
+
+        private final BerEncoder scopedPduEncoder = new BerEncoder(ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE));
+        private final BerEncoder messageEncoder = new BerEncoder(ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE));
+        private ByteBuffer encryptedPdu = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+        private final byte[] iv = new byte[16];
+        private final byte[] saltBytes = new byte[SALT_LENGTH];
+        private final byte[] digest = new byte[32];
+        private Cipher cipher;
+        private Mac mac;
+        private UsmContext macContext;
+        private String[] oids = new String[8];
+        private String[] values = new String[8];
+        private int count;
+        private long trapSysUpTime;
+        private int trapSpecificTrapType;
+
+        UsmTrap() {
+            reset(sysUpTime);
+        }
+
+        void reset(final long sysUpTimeValue) {
+            for (int i = 0; i < count; i++) {
+                oids[i] = null;
+                values[i] = null;
+            }
+            count = 0;
+            trapSysUpTime = sysUpTimeValue;
+            trapSpecificTrapType = specificTrapType;
+        }
+
+        public void setSysUpTime(final long sysUpTimeValue) {
+            trapSysUpTime = sysUpTimeValue;
+        }
+
+        public void setSpecificTrapType(final int specificTrapTypeValue) {
+            trapSpecificTrapType = specificTrapTypeValue;
+        }
+
+        public void addTrapMessageVariable(final String applicationTrapOIDValue,
+                                           final String value) {
+            if (count == oids.length) {
+                final String[] newOids = new String[2 * count];
+                final String[] newValues = new String[2 * count];
+                System.arraycopy(oids, 0, newOids, 0, count);
+                System.arraycopy(values, 0, newValues, 0, count);
+                oids = newOids;
+                values = newValues;
+            }
+            oids[count] = applicationTrapOIDValue;
+            values[count] = value;
+            count++;
+        }
+
+        public void sendTrap() {
+            //check pre-condition
+            final UsmContext usm = context;
+            if (!isInitialized || null == usm) {
+                LogLog.error("The initialize() method must be called before calling sendTrap()");
+                return;
+            }
+            final TrapDestination[] targets = destinations;
+            try {
+                final long start = System.nanoTime();
+                final long engineTime = (System.currentTimeMillis() - usm.startMillis) / 1000;
+                encodeScopedPdu(usm, trapSysUpTime / 10, requestId.incrementAndGet() & 0x7FFFFFFF);
+                encrypt(usm, engineTime);
+                final int authOffset = encodeMessage(usm, engineTime);
+                authenticate(usm, authOffset);
+                metrics.trapEncoded(System.nanoTime() - start);
+                for (int i = 0; i < targets.length; i++) {
+                    send(targets[i]);
+                }
+            } catch (BufferOverflowException e) {
+                metrics.sendFailed(TrapMetrics.FAILURE_OVERSIZE);
+                LogLog.error("The trap is too large to be sent in a single datagram -- it has been dropped.");
+            } catch (IllegalArgumentException e) {
+                metrics.sendFailed(TrapMetrics.FAILURE_ENCODING);
+                LogLog.error("There were problems with the SNMP parameters -- could not create and send trap", e);
+            } catch (GeneralSecurityException e) {
+                metrics.sendFailed(TrapMetrics.FAILURE_ENCODING);
+                LogLog.error("Could not encrypt or authenticate the trap -- it has been dropped.", e);
+            } finally {
+                reset(trapSysUpTime);
+                if (this != legacyTrap) builders.give(this);
+            }
+        }
+
+        /**
+         * Encodes the ScopedPDU: the context engine ID, an empty context name, and the SNMPv2-Trap-PDU.
+         */
+        private void encodeScopedPdu(final UsmContext usm, final long timeTicks, final int trapRequestId) {
+            final TrapHeaderTemplate template = getTemplate(trapSpecificTrapType);
+            while (true) {
+                try {
+                    final BerEncoder encoder = scopedPduEncoder;
+                    encoder.reset();
+                    final int end = encoder.position();
+                    template.writeTrailer(encoder);
+                    for (int i = count - 1; i >= 0; i--) {
+                        final int varBindEnd = encoder.position();
+                        encoder.writeOctetString(values[i]);
+                        encoder.writeOID(null != oids[i] ? oids[i] : applicationTrapOID);
+                        encoder.writeHeader(BerEncoder.SEQUENCE, varBindEnd - encoder.position());
+                    }
+                    template.writePdu(encoder, end, timeTicks, trapRequestId);
+                    encoder.writeOctetString("");
+                    encoder.writeOctets(BerEncoder.OCTET_STRING, usm.engineID);
+                    encoder.writeHeader(BerEncoder.SEQUENCE, end - encoder.position());
+                    return;
+                } catch (BufferOverflowException e) {
+                    grow(scopedPduEncoder);
+                }
+            }
+        }
+
+        /**
+         * Encrypts the ScopedPDU with AES-128 in CFB mode, into the encryptedPdu buffer.
+         */
+        private void encrypt(final UsmContext usm, final long engineTime) throws GeneralSecurityException {
+            final ByteBuffer scopedPdu = scopedPduEncoder.flip();
+            final int length = scopedPdu.remaining();
+            if (encryptedPdu.capacity() < length) {
+                if (MAX_BUFFER_SIZE < length) throw new BufferOverflowException();
+                encryptedPdu = ByteBuffer.allocateDirect(scopedPduEncoder.getBuffer().capacity());
+            }
+            long saltValue = salt.incrementAndGet();
+            for (int i = SALT_LENGTH - 1; i >= 0; i--) {
+                saltBytes[i] = (byte) saltValue;
+                saltValue >>>= 8;
+            }
+            putInt(iv, 0, usm.engineBoots);
+            putInt(iv, 4, (int) engineTime);
+            System.arraycopy(saltBytes, 0, iv, 8, SALT_LENGTH);
+            if (null == cipher) cipher = Cipher.getInstance("AES/CFB/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, usm.privKey, new IvParameterSpec(iv));
+            encryptedPdu.clear();
+            cipher.doFinal(scopedPdu, encryptedPdu);
+            encryptedPdu.flip();
+        }
+
+        /**
+         * Encodes the whole message around the encrypted ScopedPDU, with the authentication parameters zeroed.
+         *
+         * @return the index, in the buffer of the message encoder, of the authentication parameters
+         */
+        private int encodeMessage(final UsmContext usm, final long engineTime) {
+            while (true) {
+                try {
+                    final BerEncoder encoder = messageEncoder;
+                    encoder.reset();
+                    final int end = encoder.position();
+                    encoder.writeBytes(encryptedPdu);
+                    encoder.writeHeader(BerEncoder.OCTET_STRING, encryptedPdu.remaining());
+                    //msgSecurityParameters
+                    final int securityEnd = encoder.position();
+                    encoder.writeOctets(BerEncoder.OCTET_STRING, saltBytes);
+                    encoder.writeBytes(ZERO_AUTH_PARAMETERS, 0, usm.authParametersLength);
+                    final int authOffset = encoder.position();
+                    encoder.writeHeader(BerEncoder.OCTET_STRING, usm.authParametersLength);
+                    encoder.writeOctetString(usm.securityName);
+                    encoder.writeInteger(BerEncoder.INTEGER, engineTime);
+                    encoder.writeInteger(BerEncoder.INTEGER, usm.engineBoots);
+                    encoder.writeOctets(BerEncoder.OCTET_STRING, usm.engineID);
+                    encoder.writeHeader(BerEncoder.SEQUENCE, securityEnd - encoder.position());
+                    encoder.writeHeader(BerEncoder.OCTET_STRING, securityEnd - encoder.position());
+                    //msgGlobalData
+                    final int globalEnd = encoder.position();
+                    encoder.writeInteger(BerEncoder.INTEGER, SECURITY_MODEL_USM);
+                    encoder.writeOctets(BerEncoder.OCTET_STRING, AUTH_PRIV_FLAGS);
+                    encoder.writeInteger(BerEncoder.INTEGER, MAX_DATAGRAM_SIZE);
+                    encoder.writeInteger(BerEncoder.INTEGER, messageId.incrementAndGet() & 0x7FFFFFFF);
+                    encoder.writeHeader(BerEncoder.SEQUENCE, globalEnd - encoder.position());
+                    encoder.writeInteger(BerEncoder.INTEGER, 3);
+                    encoder.writeHeader(BerEncoder.SEQUENCE, end - encoder.position());
+                    return authOffset;
+                } catch (BufferOverflowException e) {
+                    grow(messageEncoder);
+                }
+            }
+        }
+
+        /**
+         * Computes the HMAC of the message, and puts the start of it into the authentication parameters.
+         */
+        private void authenticate(final UsmContext usm, final int authOffset) throws GeneralSecurityException {
+            if (macContext != usm) {
+                mac = Mac.getInstance(usm.macAlgorithm);
+                mac.init(usm.authKey);
+                macContext = usm;
+            }
+            mac.update(messageEncoder.flip());
+            mac.doFinal(digest, 0);
+            final ByteBuffer buffer = messageEncoder.getBuffer();
+            for (int i = 0; i < usm.authParametersLength; i++) {
+                buffer.put(authOffset + i, digest[i]);
+            }
+        }
+
+        private void grow(final BerEncoder overflowed) {
+            final int capacity = overflowed.getBuffer().capacity();
+            if (MAX_BUFFER_SIZE <= capacity) throw new BufferOverflowException();
+            overflowed.setBuffer(ByteBuffer.allocateDirect(2 * capacity));
+        }
+
+        /**
+         * Sends the message to one destination.  Failures are logged, and do not affect the other destinations.
+         */
+        private void send(final TrapDestination target) {
+            final InetSocketAddress address = target.getSocketAddress();
+            if (null == address) {
+                metrics.sendFailed(TrapMetrics.FAILURE_UNRESOLVED);
+                LogLog.error(new StringBuffer().append("The management host ").append(target.getHost())
+                        .append(" has not been resolved -- the trap has been dropped.").toString());
+            } else if (MAX_DATAGRAM_SIZE < messageEncoder.length()) {
+                metrics.sendFailed(TrapMetrics.FAILURE_OVERSIZE);
+                LogLog.error("The trap is too large to be sent in a single datagram -- it has been dropped.");
+            } else {
+                try {
+                    if (0 == channel.send(messageEncoder.flip(), address)) {
+                        metrics.sendFailed(TrapMetrics.FAILURE_WOULD_BLOCK);
+                        LogLog.warn(new StringBuffer().append("The trap to ").append(target)
+                                .append(" could not be sent without waiting -- it has been dropped.").toString());
+                    } else {
+                        metrics.trapSent(messageEncoder.length());
+                    }
+                } catch (IOException e) {
+                    metrics.sendFailed(TrapMetrics.FAILURE_IO);
+                    LogLog.error(new StringBuffer().append("There was an unexpected error while sending the trap to ")
+                            .append(target).toString(), e);
+                }
+            }
+        }
+    }
+
+    private static void putInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
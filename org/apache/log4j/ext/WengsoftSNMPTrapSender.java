@@ -86,17 +86,29 @@ import org.apache.log4j.helpers.LogLog;
  * 2002-12-10: mwm : minor tweaks and prettying up of code.<br>
  *
  * 2003-05-24: mwm : minor changes to accomodate the changes in the SnmpTrapSenderFacade interface.<br>
+ *
+ * 2026-10-17: now a ReusableSnmpTrapSender -- the message and PDU live in a per-trap builder, so one instance can
+ * be shared by all events of an appender.<br>
+ *
+ * 2026-10-17: the management host is now taken from the appender's CachedInetAddress record, so the client is given
+ * a numeric address and does not resolve it for every trap.<br>
+ *
+ * 2026-10-17: the enterprise OID VarBind is now built once per initialization, and shared by every trap.<br>
+ *
+ * 2026-10-17: each trap is sent to every destination of the appender, with the version of that destination.  The
+ * community of a destination is not used -- as before, the library's own is sent.<br>
  */
-public class WengsoftSNMPTrapSender implements SnmpTrapSenderFacade {
+public class WengsoftSNMPTrapSender implements ReusableSnmpTrapSender {
 
     private String managementHost = "127.0.0.1";
     private int managementHostTrapListenPort = 162;
     private String enterpriseOID = "1.3.6.1.2.1.1.2.0";
     private long sysUpTime;
     private int trapVersion = 2;
-    private boolean isInitialized;
-    private SnmpMessage snmpMessage;
-    private SnmpGetSetPdu trapPdu;
+    private volatile boolean isInitialized;
+    private TrapDestination[] destinations = new TrapDestination[0];
+    private SnmpTrapBuilder legacyTrap;
+    private AsnNameValuePair enterpriseNameValuePair;
 
     private static final String SYSTEM_UPTIME_KEY = "1.3.6.1.2.1.1.3";
     private static final String TRAP_OID_KEY = "1.3.6.1.6.3.1.1.4.1";
@@ -114,9 +126,22 @@ public class WengsoftSNMPTrapSender implements SnmpTrapSenderFacade {
         this.enterpriseOID = appender.getEnterpriseOID();
         this.sysUpTime = appender.getSysUpTime();
         this.trapVersion = appender.getTrapVersion();
-        this.snmpMessage = new SnmpMessage();
-        this.trapPdu = new SnmpGetSetPdu();
+        this.destinations = appender.getDestinations();
+        //encoded once, and shared by the PDU of every trap
+        this.enterpriseNameValuePair = new AsnNameValuePair(ENTERPRISE_OID_KEY,
+                                                             new AsnOID(OIDRegistry.intern(this.enterpriseOID)));
         this.isInitialized = true;
+        this.legacyTrap = createTrap();
+    }
+
+    public SnmpTrapBuilder createTrap() {
+        return new WengsoftSnmpTrap(this.sysUpTime);
+    }
+
+    /**
+     * Nothing to release -- the Wengsoft client opens and closes its own socket for each message.
+     */
+    public void close() {
     }
 
     public void addTrapMessageVariable(final String applicationTrapOIDValue, final String value) {
@@ -125,8 +150,7 @@ public class WengsoftSNMPTrapSender implements SnmpTrapSenderFacade {
             LogLog.error("The initialize() method must be called before calling addTrapMessageVariable()");
             return;
         }
-        this.trapPdu.addNameValuePair(new AsnNameValuePair(TRAP_OID_KEY, new AsnOID(applicationTrapOIDValue)));
-        this.trapPdu.addNameValuePair(new AsnNameValuePair(applicationTrapOIDValue, new AsnOctets(value)));
+        this.legacyTrap.addTrapMessageVariable(applicationTrapOIDValue, value);
     }
 
     public void sendTrap() {
@@ -135,20 +159,70 @@ public class WengsoftSNMPTrapSender implements SnmpTrapSenderFacade {
             LogLog.error("The initialize() method must be called before calling sendTrap()");
             return;
         }
-        this.trapPdu.setMsgType(AsnObject.SNMPV2_TRAP);
-        this.trapPdu.setReqId(1);
-        // Add enterprise OID
-        this.trapPdu.addNameValuePair(new AsnNameValuePair(ENTERPRISE_OID_KEY, new AsnOID(this.enterpriseOID)));
-        // Add system up time.
-        this.trapPdu.addNameValuePair(new AsnNameValuePair(SYSTEM_UPTIME_KEY, new AsnInteger(this.sysUpTime)));
-        this.snmpMessage.setPdu(trapPdu);
-        this.snmpMessage.setSnmpVersion(this.trapVersion);
-        //fire it off
-        final SnmpClient client = new SnmpClient();
-        try {
-            client.sendSnmpMessage(this.managementHost, this.managementHostTrapListenPort, this.snmpMessage);
-        } catch (Exception ex) {
-            LogLog.error("There was an unexpected error while sending the trap.", ex);
+        this.legacyTrap.sendTrap();
+        this.legacyTrap = createTrap();
+    }
+
+    /**
+     * A single SNMPv2 trap message, sent using the configuration of the enclosing sender.
+     */
+    private final class WengsoftSnmpTrap implements SnmpTrapBuilder {
+
+        private final SnmpMessage snmpMessage = new SnmpMessage();
+        private final SnmpGetSetPdu trapPdu = new SnmpGetSetPdu();
+        private long trapSysUpTime;
+
+        WengsoftSnmpTrap(final long sysUpTimeValue) {
+            this.trapSysUpTime = sysUpTimeValue;
+        }
+
+        public void setSysUpTime(final long sysUpTimeValue) {
+            this.trapSysUpTime = sysUpTimeValue;
+        }
+
+        /**
+         * Ignored -- this sender identifies its traps by the ApplicationTrapOID of each VarBind.
+         */
+        public void setSpecificTrapType(final int specificTrapTypeValue) {
+        }
+
+        public void addTrapMessageVariable(final String applicationTrapOIDValue, final String value) {
+            //the Wengsoft API only takes strings, so the interned name is the most that can be shared
+            final String oid = OIDRegistry.intern(applicationTrapOIDValue);
+            this.trapPdu.addNameValuePair(new AsnNameValuePair(TRAP_OID_KEY, new AsnOID(oid)));
+            this.trapPdu.addNameValuePair(new AsnNameValuePair(oid, new AsnOctets(value)));
+        }
+
+        public void sendTrap() {
+            //check pre-condition
+            if (!isInitialized) {
+                LogLog.error("The initialize() method must be called before calling sendTrap()");
+                return;
+            }
+            this.trapPdu.setMsgType(AsnObject.SNMPV2_TRAP);
+            this.trapPdu.setReqId(1);
+            // Add enterprise OID
+            this.trapPdu.addNameValuePair(enterpriseNameValuePair);
+            // Add system up time.
+            this.trapPdu.addNameValuePair(new AsnNameValuePair(SYSTEM_UPTIME_KEY, new AsnInteger(this.trapSysUpTime)));
+            this.snmpMessage.setPdu(this.trapPdu);
+            final TrapDestination[] targets = destinations;
+            final SnmpClient client = new SnmpClient();
+            for (int i = 0; i < targets.length; i++) {
+                final String hostAddress = targets[i].getAddress().getHostAddress();
+                if (null == hostAddress) {
+                    LogLog.error(new StringBuffer().append("The management host ").append(targets[i].getHost())
+                            .append(" has not been resolved -- the trap has been dropped.").toString());
+                    continue;
+                }
+                this.snmpMessage.setSnmpVersion(targets[i].getTrapVersion());
+                //fire it off
+                try {
+                    client.sendSnmpMessage(hostAddress, targets[i].getPort(), this.snmpMessage);
+                } catch (Exception ex) {
+                    LogLog.error("There was an unexpected error while sending the trap.", ex);
+                }
+            }
         }
     }
 }
\ No newline at end of file